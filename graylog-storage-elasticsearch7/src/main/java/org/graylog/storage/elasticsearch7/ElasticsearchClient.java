@@ -21,10 +21,12 @@ import com.github.joschi.jadconfig.util.Duration;
 import com.google.common.collect.Streams;
 import org.graylog.shaded.elasticsearch7.org.apache.http.client.config.RequestConfig;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.ElasticsearchException;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.ActionListener;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.MultiSearchRequest;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.MultiSearchResponse;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchRequest;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.search.SearchResponse;
+import org.graylog.shaded.elasticsearch7.org.elasticsearch.client.Cancellable;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.client.RequestOptions;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.client.ResponseException;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.client.RestHighLevelClient;
@@ -41,6 +43,8 @@ import javax.inject.Named;
 import java.io.IOException;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -83,7 +87,7 @@ public class ElasticsearchClient {
 
         searchRequests.forEach(multiSearchRequest::add);
 
-        final MultiSearchResponse result = this.execute((c, requestOptions) -> c.msearch(multiSearchRequest, requestOptions), errorMessage);
+        final MultiSearchResponse result = this.executeInterruptibly((c, requestOptions, listener) -> c.msearchAsync(multiSearchRequest, requestOptions, listener), errorMessage);
 
         return Streams.stream(result)
                 .collect(Collectors.toList());
@@ -123,6 +127,85 @@ public class ElasticsearchClient {
         }
     }
 
+    /**
+     * Runs a request through the asynchronous API of the client. Failures are translated like in
+     * {@link #execute(ThrowingBiFunction, String)} and complete the returned future exceptionally.
+     */
+    public <R> CompletableFuture<R> executeAsync(AsyncRequest<R> fn, String errorMessage) {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        final ActionListener<R> listener = new ActionListener<R>() {
+            @Override
+            public void onResponse(R response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                completeExceptionally(result, e, errorMessage);
+            }
+        };
+        try {
+            fn.apply(client, requestOptions(), listener);
+        } catch (Exception e) {
+            completeExceptionally(result, e, errorMessage);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a request through the asynchronous API of the client and waits for its response. If the waiting thread is
+     * interrupted, e.g. because the search it belongs to got cancelled, the request is aborted. Elasticsearch then
+     * cancels the search tasks of the closed connection.
+     */
+    private <R> R executeInterruptibly(CancellableRequest<R> fn, String errorMessage) {
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        final ActionListener<R> listener = new ActionListener<R>() {
+            @Override
+            public void onResponse(R response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                result.completeExceptionally(e);
+            }
+        };
+        final Cancellable cancellable;
+        try {
+            cancellable = fn.apply(client, requestOptions(), listener);
+        } catch (Exception e) {
+            throw exceptionFrom(e, errorMessage);
+        }
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            cancellable.cancel();
+            Thread.currentThread().interrupt();
+            throw exceptionFrom(e, errorMessage);
+        } catch (ExecutionException e) {
+            throw exceptionFrom(e.getCause() instanceof Exception ? (Exception) e.getCause() : e, errorMessage);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CancellableRequest<R> {
+        Cancellable apply(RestHighLevelClient client, RequestOptions requestOptions, ActionListener<R> listener);
+    }
+
+    private void completeExceptionally(CompletableFuture<?> result, Exception e, String errorMessage) {
+        try {
+            result.completeExceptionally(exceptionFrom(e, errorMessage));
+        } catch (RuntimeException translated) {
+            // exceptionFrom throws the more specific exceptions instead of returning them
+            result.completeExceptionally(translated);
+        }
+    }
+
+    @FunctionalInterface
+    public interface AsyncRequest<R> {
+        void apply(RestHighLevelClient client, RequestOptions requestOptions, ActionListener<R> listener);
+    }
+
     private RequestOptions requestOptions() {
         return compressionEnabled
                 ? RequestOptions.DEFAULT.toBuilder()
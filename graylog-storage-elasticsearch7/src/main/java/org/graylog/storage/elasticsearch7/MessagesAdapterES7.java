@@ -18,9 +18,10 @@ package org.graylog.storage.elasticsearch7;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.ElasticsearchException;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.bulk.BulkItemResponse;
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.action.bulk.BulkRequest;
@@ -43,6 +44,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -50,6 +52,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -67,6 +70,9 @@ public class MessagesAdapterES7 implements MessagesAdapter {
     static final String ILLEGAL_ARGUMENT_EXCEPTION = "illegal_argument_exception";
     static final String NO_WRITE_INDEX_DEFINED_FOR_ALIAS = "no write index is defined for alias";
 
+    // initial buffer size per document, the buffer grows if the documents are larger
+    private static final int ESTIMATED_DOCUMENT_SIZE = 1024;
+
     private final ElasticsearchClient client;
     private final Meter invalidTimestampMeter;
     private final ChunkedBulkIndexer chunkedBulkIndexer;
@@ -141,6 +147,74 @@ public class MessagesAdapterES7 implements MessagesAdapter {
         return indexFailures;
     }
 
+    @Override
+    public CompletableFuture<List<Messages.IndexingError>> bulkIndexAsync(List<IndexingRequest> messageList) {
+        return chunkedBulkIndexer.indexAsync(messageList, this::bulkIndexChunkedAsync);
+    }
+
+    private CompletableFuture<List<Messages.IndexingError>> bulkIndexChunkedAsync(ChunkedBulkIndexer.Chunk command) {
+        final List<IndexingRequest> messageList = command.requests;
+
+        if (messageList.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        final List<List<IndexingRequest>> chunks = Lists.partition(messageList.subList(command.offset, messageList.size()), command.size);
+        return runBulkRequestsAsync(command, chunks, 0, 0, new ArrayList<>());
+    }
+
+    // sends the chunks one after another, so a failing chunk can report how many messages were indexed before
+    private CompletableFuture<List<Messages.IndexingError>> runBulkRequestsAsync(ChunkedBulkIndexer.Chunk command,
+                                                                               List<List<IndexingRequest>> chunks,
+                                                                               int chunkIndex,
+                                                                               int indexedSuccessfully,
+                                                                               List<Messages.IndexingError> indexFailures) {
+        if (chunkIndex == chunks.size()) {
+            return CompletableFuture.completedFuture(indexFailures);
+        }
+
+        final CompletableFuture<List<Messages.IndexingError>> result = new CompletableFuture<>();
+        final List<IndexingRequest> chunk = chunks.get(chunkIndex);
+        final BulkRequest bulkRequest;
+        try {
+            bulkRequest = createBulkRequest(chunk);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        client.<BulkResponse>executeAsync((c, requestOptions, listener) -> c.bulkAsync(bulkRequest, requestOptions, listener), "An error occurred: ")
+                .whenComplete((response, throwable) -> {
+                    if (throwable != null) {
+                        result.completeExceptionally(throwable instanceof ElasticsearchException
+                                ? bulkRequestFailure((ElasticsearchException) throwable, indexedSuccessfully)
+                                : throwable);
+                        return;
+                    }
+                    try {
+                        final List<BulkItemResponse> failures = extractFailures(response);
+
+                        indexFailures.addAll(indexingErrorsFrom(failures, command.requests));
+
+                        logDebugInfo(command.requests, command.offset, command.size, chunkIndex + 1, response, failures);
+
+                        logFailures(response, failures.size());
+
+                        runBulkRequestsAsync(command, chunks, chunkIndex + 1, indexedSuccessfully + chunk.size(), indexFailures)
+                                .whenComplete((errors, nextThrowable) -> {
+                                    if (nextThrowable == null) {
+                                        result.complete(errors);
+                                    } else {
+                                        result.completeExceptionally(nextThrowable);
+                                    }
+                                });
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                });
+        return result;
+    }
+
     private List<BulkItemResponse> extractFailures(BulkResponse result) {
         return Arrays.stream(result.getItems())
                         .filter(BulkItemResponse::isFailed)
@@ -173,27 +247,66 @@ public class MessagesAdapterES7 implements MessagesAdapter {
         try {
             result = this.client.execute((c, requestOptions) -> c.bulk(bulkRequest, requestOptions));
         } catch (ElasticsearchException e) {
-            for (ElasticsearchException cause : e.guessRootCauses()) {
-                if (cause.status().equals(RestStatus.REQUEST_ENTITY_TOO_LARGE)) {
-                    throw new ChunkedBulkIndexer.EntityTooLargeException(indexedSuccessfully);
-                }
-                if (cause.status().equals(RestStatus.TOO_MANY_REQUESTS)) {
-                    throw new ChunkedBulkIndexer.TooManyRequestsException(indexedSuccessfully);
-                }
+            final Exception failure = bulkRequestFailure(e, indexedSuccessfully);
+            if (failure instanceof ChunkedBulkIndexer.EntityTooLargeException) {
+                throw (ChunkedBulkIndexer.EntityTooLargeException) failure;
             }
-            throw new org.graylog2.indexer.ElasticsearchException(e);
+            throw (RuntimeException) failure;
         }
         return result;
     }
 
+    private Exception bulkRequestFailure(ElasticsearchException e, int indexedSuccessfully) {
+        for (ElasticsearchException cause : e.guessRootCauses()) {
+            if (cause.status().equals(RestStatus.REQUEST_ENTITY_TOO_LARGE)) {
+                return new ChunkedBulkIndexer.EntityTooLargeException(indexedSuccessfully);
+            }
+            if (cause.status().equals(RestStatus.TOO_MANY_REQUESTS)) {
+                return new ChunkedBulkIndexer.TooManyRequestsException(indexedSuccessfully);
+            }
+        }
+        return new org.graylog2.indexer.ElasticsearchException(e);
+    }
+
+    // all documents of a bulk request are serialized into one shared buffer, every index request references its slice
     private BulkRequest createBulkRequest(List<IndexingRequest> chunk) {
+        final BulkRequestBodyBuffer buffer = new BulkRequestBodyBuffer(chunk.size() * ESTIMATED_DOCUMENT_SIZE);
+        final int[] offsets = new int[chunk.size() + 1];
+        try (final JsonGenerator generator = objectMapper.getFactory().createGenerator(buffer)) {
+            // documents are sliced out of the buffer by offset, so they must not be separated
+            generator.setRootValueSeparator(null);
+            for (int i = 0; i < chunk.size(); i++) {
+                offsets[i] = buffer.size();
+                chunk.get(i).message().writeElasticSearchObject(objectMapper, generator, this.invalidTimestampMeter);
+                generator.flush();
+            }
+            offsets[chunk.size()] = buffer.size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        final byte[] body = buffer.buffer();
         final BulkRequest bulkRequest = new BulkRequest();
-        chunk.forEach(request -> bulkRequest.add(
-                indexRequestFrom(request)
-        ));
+        for (int i = 0; i < chunk.size(); i++) {
+            final IndexingRequest request = chunk.get(i);
+            bulkRequest.add(new IndexRequest(request.indexSet().getWriteIndexAlias())
+                    .id(request.message().getId())
+                    .source(body, offsets[i], offsets[i + 1] - offsets[i], XContentType.JSON));
+        }
         return bulkRequest;
     }
 
+    private static class BulkRequestBodyBuffer extends ByteArrayOutputStream {
+        BulkRequestBodyBuffer(int size) {
+            super(size);
+        }
+
+        // exposes the internal buffer instead of copying it like toByteArray()
+        byte[] buffer() {
+            return buf;
+        }
+    }
+
     private List<Messages.IndexingError> indexingErrorsFrom(List<IndexingRequest> messageList) {
         return messageList.stream()
                 .map(this::indexingErrorFrom)
@@ -243,16 +356,4 @@ public class MessagesAdapterES7 implements MessagesAdapter {
             default: return Messages.IndexingError.ErrorType.Unknown;
         }
     }
-
-    private IndexRequest indexRequestFrom(IndexingRequest request) {
-        final byte[] body;
-        try {
-            body = this.objectMapper.writeValueAsBytes(request.message().toElasticSearchObject(objectMapper, this.invalidTimestampMeter));
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
-        return new IndexRequest(request.indexSet().getWriteIndexAlias())
-                .id(request.message().getId())
-                .source(body, XContentType.JSON);
-    }
 }
@@ -16,10 +16,13 @@
  */
 package org.graylog.storage.elasticsearch7.views.export;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.name.Named;
 import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
 import org.graylog.plugins.views.search.elasticsearch.IndexLookup;
 import org.graylog.plugins.views.search.export.ExportBackend;
+import org.graylog.plugins.views.search.export.ExportException;
 import org.graylog.plugins.views.search.export.ExportMessagesCommand;
 import org.graylog.plugins.views.search.export.SimpleMessage;
 import org.graylog.plugins.views.search.export.SimpleMessageChunk;
@@ -32,12 +35,15 @@ import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.builder.Search
 import org.graylog.shaded.elasticsearch7.org.elasticsearch.search.sort.SortOrder;
 import org.graylog.storage.elasticsearch7.TimeRangeQueryFactory;
 import org.graylog2.plugin.Message;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -45,7 +51,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toCollection;
@@ -60,23 +72,33 @@ public class ElasticsearchExportBackend implements ExportBackend {
     private static final Logger LOG = LoggerFactory.getLogger(ElasticsearchExportBackend.class);
 
     private final IndexLookup indexLookup;
-    private final RequestStrategy requestStrategy;
+    private final Provider<RequestStrategy> requestStrategyProvider;
     private final boolean allowLeadingWildcard;
 
     @Inject
-    public ElasticsearchExportBackend(IndexLookup indexLookup, RequestStrategy requestStrategy, @Named("allow_leading_wildcard_searches") boolean allowLeadingWildcard) {
+    public ElasticsearchExportBackend(IndexLookup indexLookup, Provider<RequestStrategy> requestStrategyProvider, @Named("allow_leading_wildcard_searches") boolean allowLeadingWildcard) {
         this.indexLookup = indexLookup;
-        this.requestStrategy = requestStrategy;
+        this.requestStrategyProvider = requestStrategyProvider;
         this.allowLeadingWildcard = allowLeadingWildcard;
     }
 
     @Override
     public void run(ExportMessagesCommand command, Consumer<SimpleMessageChunk> chunkCollector) {
+        final List<AbsoluteRange> slices = slicesOf(command.timeRange(), command.parallelism());
+        if (slices.size() > 1) {
+            new SlicedExport(command, chunkCollector).run(slices);
+        } else {
+            runSequentially(command, chunkCollector);
+        }
+    }
+
+    private void runSequentially(ExportMessagesCommand command, Consumer<SimpleMessageChunk> chunkCollector) {
+        final RequestStrategy requestStrategy = requestStrategyProvider.get();
         boolean isFirstChunk = true;
         int totalCount = 0;
 
         while (true) {
-            List<SearchHit> hits = search(command);
+            List<SearchHit> hits = search(command, requestStrategy);
 
             if (hits.isEmpty()) {
                 publishChunk(chunkCollector, hits, command.fieldsInOrder(), command.timeZone(), SimpleMessageChunk.ChunkOrder.LAST);
@@ -99,14 +121,36 @@ public class ElasticsearchExportBackend implements ExportBackend {
         }
     }
 
-    private List<SearchHit> search(ExportMessagesCommand command) {
-        SearchRequest search = prepareSearchRequest(command);
+    /**
+     * Splits the time range into contiguous slices of equal length. The time range filter includes the start and
+     * excludes the end of a range, so every message falls into exactly one slice.
+     */
+    @VisibleForTesting
+    static List<AbsoluteRange> slicesOf(AbsoluteRange timeRange, int count) {
+        final long from = timeRange.getFrom().getMillis();
+        final long to = timeRange.getTo().getMillis();
+        final long length = to - from;
+        if (count <= 1 || length < count) {
+            return Collections.singletonList(timeRange);
+        }
+
+        final List<AbsoluteRange> slices = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final DateTime sliceFrom = i == 0 ? timeRange.getFrom() : new DateTime(from + length * i / count, DateTimeZone.UTC);
+            final DateTime sliceTo = i == count - 1 ? timeRange.getTo() : new DateTime(from + length * (i + 1) / count, DateTimeZone.UTC);
+            slices.add(AbsoluteRange.create(sliceFrom, sliceTo));
+        }
+        return slices;
+    }
+
+    private List<SearchHit> search(ExportMessagesCommand command, RequestStrategy requestStrategy) {
+        SearchRequest search = prepareSearchRequest(command, requestStrategy);
 
         return requestStrategy.nextChunk(search, command);
     }
 
-    private SearchRequest prepareSearchRequest(ExportMessagesCommand command) {
-        SearchSourceBuilder ssb = searchSourceBuilderFrom(command);
+    private SearchRequest prepareSearchRequest(ExportMessagesCommand command, RequestStrategy requestStrategy) {
+        SearchSourceBuilder ssb = searchSourceBuilderFrom(command, requestStrategy);
 
         Set<String> indices = indicesFor(command);
         return new SearchRequest()
@@ -115,7 +159,7 @@ public class ElasticsearchExportBackend implements ExportBackend {
                 .indicesOptions(IndicesOptions.fromOptions(false, false, true, false));
     }
 
-    private SearchSourceBuilder searchSourceBuilderFrom(ExportMessagesCommand command) {
+    private SearchSourceBuilder searchSourceBuilderFrom(ExportMessagesCommand command, RequestStrategy requestStrategy) {
         QueryBuilder query = queryFrom(command);
 
         SearchSourceBuilder ssb = new SearchSourceBuilder()
@@ -123,6 +167,11 @@ public class ElasticsearchExportBackend implements ExportBackend {
                 .size(command.chunkSize())
                 .sort(Message.FIELD_TIMESTAMP, SortOrder.ASC);
 
+        // decorators may read any field of a message, without them only the exported fields are ever looked at
+        if (command.decorators().isEmpty()) {
+            ssb.fetchSource(command.fieldsInOrder().toArray(new String[0]), null);
+        }
+
         return requestStrategy.configure(ssb);
     }
 
@@ -211,4 +260,114 @@ public class ElasticsearchExportBackend implements ExportBackend {
             return rawTimestamp;
         }
     }
+
+    /**
+     * Runs one search after loop per time slice concurrently. Chunks are converted on the slice threads and handed to
+     * the chunk collector one at a time, in the order in which they arrive.
+     */
+    private class SlicedExport {
+        private final ExportMessagesCommand command;
+        private final Consumer<SimpleMessageChunk> chunkCollector;
+        private final AtomicInteger totalCount = new AtomicInteger();
+        private volatile boolean stopped = false;
+        private boolean isFirstChunk = true;
+        private boolean failed = false;
+
+        SlicedExport(ExportMessagesCommand command, Consumer<SimpleMessageChunk> chunkCollector) {
+            this.command = command;
+            this.chunkCollector = chunkCollector;
+        }
+
+        void run(List<AbsoluteRange> slices) {
+            final ExecutorService executor = Executors.newFixedThreadPool(slices.size(),
+                    new ThreadFactoryBuilder().setNameFormat("export-slice-%d").setDaemon(true).build());
+            try {
+                final List<Future<?>> slicesDone = slices.stream()
+                        .map(slice -> executor.submit(() -> runSlice(slice)))
+                        .collect(Collectors.toList());
+                for (Future<?> sliceDone : slicesDone) {
+                    awaitSlice(sliceDone);
+                }
+            } catch (RuntimeException e) {
+                // slices which are still running must not publish anything after the error has been reported
+                synchronized (this) {
+                    failed = true;
+                }
+                throw e;
+            } finally {
+                stopped = true;
+                executor.shutdownNow();
+            }
+
+            synchronized (this) {
+                if (!failed) {
+                    publishChunk(chunkCollector, Collections.emptyList(), command.fieldsInOrder(), command.timeZone(), SimpleMessageChunk.ChunkOrder.LAST);
+                }
+            }
+        }
+
+        private void awaitSlice(Future<?> sliceDone) {
+            try {
+                sliceDone.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ExportException("Interrupted while waiting for export slices", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new ExportException("Failed to export slice", e);
+            }
+        }
+
+        private void runSlice(AbsoluteRange slice) {
+            final ExportMessagesCommand sliceCommand = command.toBuilder().timeRange(slice).build();
+            final RequestStrategy requestStrategy = requestStrategyProvider.get();
+
+            while (!stopped) {
+                final List<SearchHit> hits = limited(search(sliceCommand, requestStrategy));
+                if (hits.isEmpty()) {
+                    return;
+                }
+
+                final SimpleMessageChunk chunk = chunkFrom(hits, command.fieldsInOrder(), command.timeZone(), SimpleMessageChunk.ChunkOrder.INTERMEDIATE);
+                if (!publish(chunk)) {
+                    stopped = true;
+                    return;
+                }
+            }
+        }
+
+        private List<SearchHit> limited(List<SearchHit> hits) {
+            if (!command.limit().isPresent()) {
+                return hits;
+            }
+            final int limit = command.limit().getAsInt();
+            final int countBefore = totalCount.getAndAdd(hits.size());
+            if (countBefore + hits.size() < limit) {
+                return hits;
+            }
+            if (!stopped) {
+                LOG.info("Limit of {} reached. Stopping message retrieval.", limit);
+            }
+            stopped = true;
+            return hits.subList(0, Math.max(0, limit - countBefore));
+        }
+
+        private synchronized boolean publish(SimpleMessageChunk chunk) {
+            if (failed) {
+                return false;
+            }
+            final SimpleMessageChunk orderedChunk = isFirstChunk ? chunk.toBuilder().chunkOrder(SimpleMessageChunk.ChunkOrder.FIRST).build() : chunk;
+            try {
+                chunkCollector.accept(orderedChunk);
+                isFirstChunk = false;
+                return true;
+            } catch (Exception e) {
+                LOG.warn("Chunk publishing threw exception. Stopping search after queries", e);
+                failed = true;
+                return false;
+            }
+        }
+    }
 }
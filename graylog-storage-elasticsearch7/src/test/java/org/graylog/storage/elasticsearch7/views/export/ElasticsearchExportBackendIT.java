@@ -28,6 +28,7 @@ import org.graylog.plugins.views.search.export.TestData;
 import org.graylog.storage.elasticsearch7.testing.ElasticsearchInstanceES7;
 import org.graylog.testing.elasticsearch.ElasticsearchBaseTest;
 import org.graylog.testing.elasticsearch.SearchServerInstance;
+import org.graylog2.decorators.DecoratorImpl;
 import org.graylog2.indexer.ElasticsearchException;
 import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
 import org.graylog2.plugin.indexer.searches.timeranges.InvalidRangeParametersException;
@@ -36,8 +37,11 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -63,7 +67,7 @@ public class ElasticsearchExportBackendIT extends ElasticsearchBaseTest {
     public void setUp() {
         indexLookup = mock(IndexLookup.class);
 
-        sut = new ElasticsearchExportBackend(indexLookup, requestStrategy(), false);
+        sut = new ElasticsearchExportBackend(indexLookup, this::requestStrategy, false);
     }
 
     private RequestStrategy requestStrategy() {
@@ -180,7 +184,7 @@ public class ElasticsearchExportBackendIT extends ElasticsearchBaseTest {
     }
 
     @Test
-    public void resultsHaveAllMessageFields() {
+    public void resultsOnlyHaveRequestedFieldsWithoutDecorators() {
         importFixture("messages.json");
 
         ExportMessagesCommand command = commandBuilderWithAllStreams()
@@ -192,6 +196,26 @@ public class ElasticsearchExportBackendIT extends ElasticsearchBaseTest {
 
         Set<String> allFieldsInResult = actualFieldNamesFrom(totalResult);
 
+        assertThat(allFieldsInResult).containsExactlyInAnyOrder(
+                "message",
+                "timestamp",
+                "_id");
+    }
+
+    @Test
+    public void resultsHaveAllMessageFieldsWithDecorators() {
+        importFixture("messages.json");
+
+        ExportMessagesCommand command = commandBuilderWithAllStreams()
+                .fieldsInOrder("timestamp", "message")
+                .decorators(Collections.singletonList(DecoratorImpl.create("some-decorator", Collections.emptyMap(), 0)))
+                .build();
+
+        LinkedHashSet<SimpleMessageChunk> allChunks = collectChunksFor(command);
+        SimpleMessageChunk totalResult = allChunks.iterator().next();
+
+        Set<String> allFieldsInResult = actualFieldNamesFrom(totalResult);
+
         assertThat(allFieldsInResult).containsExactlyInAnyOrder(
                 "gl2_message_id",
                 "source",
@@ -229,6 +253,63 @@ public class ElasticsearchExportBackendIT extends ElasticsearchBaseTest {
                 "graylog_0, 2015-01-01T14:30:00.000+10:30, source-2, Ho");
     }
 
+    @Test
+    public void exportsAllMessagesInParallelSlices() {
+        importFixture("messages.json");
+
+        ExportMessagesCommand command = commandBuilderWithAllStreams()
+                .chunkSize(1)
+                .parallelism(4)
+                .build();
+
+        runWithExpectedResultIgnoringSort(command, "timestamp,source,message",
+                "graylog_0, 2015-01-01T01:00:00.000Z, source-1, Ha",
+                "graylog_1, 2015-01-01T01:59:59.999Z, source-2, He",
+                "graylog_0, 2015-01-01T03:00:00.000Z, source-1, Hi",
+                "graylog_0, 2015-01-01T04:00:00.000Z, source-2, Ho");
+    }
+
+    @Test
+    public void marksFirstAndLastChunkOnceInParallelSlices() {
+        importFixture("messages.json");
+
+        ExportMessagesCommand command = commandBuilderWithAllStreams()
+                .chunkSize(1)
+                .parallelism(4)
+                .build();
+
+        List<SimpleMessageChunk> chunks = new ArrayList<>(collectChunksFor(command));
+
+        assertThat(chunks.get(0).isFirstChunk()).isTrue();
+        assertThat(chunks.get(chunks.size() - 1).isLastChunk()).isTrue();
+        assertThat(chunks).filteredOn(SimpleMessageChunk::isFirstChunk).hasSize(1);
+        assertThat(chunks).filteredOn(SimpleMessageChunk::isLastChunk).hasSize(1);
+    }
+
+    @Test
+    public void respectsResultLimitInParallelSlices() {
+        importFixture("messages.json");
+
+        ExportMessagesCommand command = commandBuilderWithAllStreams().chunkSize(1).limit(3).parallelism(4).build();
+
+        SimpleMessageChunk totalResult = collectTotalResult(command);
+
+        assertThat(totalResult.messages()).hasSize(3);
+    }
+
+    @Test
+    public void slicesTimeRangeIntoContiguousRanges() {
+        AbsoluteRange timeRange = timerange("2015-01-01T00:00:00.000Z", "2015-01-01T00:00:00.010Z");
+
+        List<AbsoluteRange> slices = ElasticsearchExportBackend.slicesOf(timeRange, 3);
+
+        assertThat(slices).hasSize(3);
+        assertThat(slices.get(0).getFrom()).isEqualTo(timeRange.getFrom());
+        assertThat(slices.get(0).getTo()).isEqualTo(slices.get(1).getFrom());
+        assertThat(slices.get(1).getTo()).isEqualTo(slices.get(2).getFrom());
+        assertThat(slices.get(2).getTo()).isEqualTo(timeRange.getTo());
+    }
+
     private Set<String> actualFieldNamesFrom(SimpleMessageChunk chunk) {
         return chunk.messages()
                 .stream().map(m -> m.fields().keySet()).reduce(Sets::union)
@@ -349,6 +349,7 @@ public class PivotAggregationSearch implements AggregationSearch {
         } catch (ExecutionException e) {
             throw new EventProcessorException("Error executing search job: " + e.getMessage(), false, eventDefinition, e);
         } catch (TimeoutException e) {
+            searchJob.cancel();
             throw new EventProcessorException("Timeout while executing search job.", false, eventDefinition, e);
         } catch (Exception e) {
             throw new EventProcessorException("Unhandled exception in search job.", false, eventDefinition, e);
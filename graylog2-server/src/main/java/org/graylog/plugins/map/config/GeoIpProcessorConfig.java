@@ -18,6 +18,7 @@ package org.graylog.plugins.map.config;
 
 import com.github.joschi.jadconfig.Parameter;
 import com.github.joschi.jadconfig.validators.PathReadableValidator;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import org.graylog2.configuration.PathConfiguration;
 
 import javax.inject.Singleton;
@@ -27,12 +28,21 @@ import java.nio.file.Path;
 public class GeoIpProcessorConfig extends PathConfiguration {
     private static final String PREFIX = "geo_ip_processor";
     public static final String S3_DOWNLOAD_LOCATION = PREFIX + "_s3_download_location";
+    public static final String CACHE_SIZE = PREFIX + "_cache_size";
+    public static final int DEFAULT_CACHE_SIZE = 10000;
 
     @Parameter(value = S3_DOWNLOAD_LOCATION, required = true, validators = PathReadableValidator.class)
     private final Path s3DownloadLocation = DEFAULT_DATA_DIR.resolve("geolocation");
 
+    @Parameter(value = CACHE_SIZE, validators = PositiveIntegerValidator.class)
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+
     public Path getS3DownloadLocation() {
         return s3DownloadLocation;
     }
 
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
 }
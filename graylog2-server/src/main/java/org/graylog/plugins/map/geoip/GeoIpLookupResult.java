@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.map.geoip;
+
+import com.google.auto.value.AutoValue;
+
+import javax.annotation.Nullable;
+import java.util.Optional;
+
+/**
+ * The outcome of a single {@link GeoIpResolver} lookup: the data found for the address, if any, or the error which
+ * prevented the lookup. Addresses which are simply not part of the database are no error.
+ */
+@AutoValue
+public abstract class GeoIpLookupResult<V> {
+
+    public abstract Optional<V> data();
+
+    public abstract Optional<String> error();
+
+    public boolean failed() {
+        return error().isPresent();
+    }
+
+    public static <V> GeoIpLookupResult<V> of(@Nullable V data) {
+        return new AutoValue_GeoIpLookupResult<>(Optional.ofNullable(data), Optional.empty());
+    }
+
+    public static <V> GeoIpLookupResult<V> empty() {
+        return of(null);
+    }
+
+    public static <V> GeoIpLookupResult<V> failure(Exception e) {
+        final String error = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+        return new AutoValue_GeoIpLookupResult<>(Optional.empty(), Optional.of(error));
+    }
+}
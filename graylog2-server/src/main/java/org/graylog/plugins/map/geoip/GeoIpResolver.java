@@ -30,7 +30,6 @@ public abstract class GeoIpResolver<V> {
 
     private static final Logger LOG = LoggerFactory.getLogger(GeoIpResolver.class);
 
-    protected String lastError = null;
     protected final Timer resolveTime;
     private final boolean enabled;
 
@@ -57,21 +56,21 @@ public abstract class GeoIpResolver<V> {
     abstract boolean createDataProvider(File configFile);
 
     public Optional<V> getGeoIpData(InetAddress address) {
-        lastError = null;
-        if (!enabled || address == null) {
-            return Optional.empty();
-        }
-        return doGetGeoIpData(address);
+        return lookup(address).data();
     }
 
     /**
-     * Get the last error, if any, produced after having called {@link #getGeoIpData(InetAddress)}.
+     * Looks up the given address and reports whether the lookup failed, e.g. because the database file doesn't
+     * match the configured database type.
      *
-     * @return optional error message
+     * @return the data found for the address or the lookup error
      */
-    public Optional<String> getLastError() {
-        return Optional.ofNullable(lastError);
+    public GeoIpLookupResult<V> lookup(InetAddress address) {
+        if (!enabled || address == null) {
+            return GeoIpLookupResult.empty();
+        }
+        return doLookup(address);
     }
 
-    protected abstract Optional<V> doGetGeoIpData(InetAddress address);
+    protected abstract GeoIpLookupResult<V> doLookup(InetAddress address);
 }
@@ -19,20 +19,27 @@ package org.graylog.plugins.map.geoip;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.net.InetAddresses;
 import org.apache.commons.lang3.StringUtils;
+import org.graylog.plugins.map.config.GeoIpProcessorConfig;
 import org.graylog.plugins.map.config.GeoIpResolverConfig;
 import org.graylog.plugins.map.config.S3GeoIpFileService;
+import org.graylog2.metrics.CacheStatsSet;
 import org.graylog2.plugin.Message;
+import org.graylog2.shared.metrics.MetricUtils;
 import org.graylog2.utilities.ReservedIpChecker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -41,6 +48,10 @@ import static com.codahale.metrics.MetricRegistry.name;
 
 public class GeoIpResolverEngine {
     private static final Logger LOG = LoggerFactory.getLogger(GeoIpResolverEngine.class);
+    private static final String LOCATION_CACHE_METRIC_NAME = name(GeoIpResolverEngine.class, "location-cache");
+    private static final String ASN_CACHE_METRIC_NAME = name(GeoIpResolverEngine.class, "asn-cache");
+    // "ffff:ffff:ffff:ffff:ffff:ffff:255.255.255.255", IPv6 addresses with a scope ID are checked separately
+    private static final int MAX_IP_ADDRESS_LENGTH = 45;
 
     /**
      * This is a list of schema fields defined in package <b></b>org.graylog.schema</b> as of 2022-07-15 which we want to scan for IP addresses.  If the schema changes, or we need to add/remove fields,
@@ -73,10 +84,17 @@ public class GeoIpResolverEngine {
     private final GeoIpResolver<GeoAsnInformation> ipAsnResolver;
     private final boolean enabled;
     private final boolean enforceGraylogSchema;
-
+    // lookup results by address, messages often contain the same few addresses over and over again
+    private final Cache<InetAddress, Optional<GeoLocationInformation>> locationCache;
+    private final Cache<InetAddress, Optional<GeoAsnInformation>> asnCache;
 
     public GeoIpResolverEngine(GeoIpVendorResolverService resolverService, GeoIpResolverConfig config, S3GeoIpFileService s3GeoIpFileService,
                                MetricRegistry metricRegistry) {
+        this(resolverService, config, s3GeoIpFileService, metricRegistry, GeoIpProcessorConfig.DEFAULT_CACHE_SIZE);
+    }
+
+    public GeoIpResolverEngine(GeoIpVendorResolverService resolverService, GeoIpResolverConfig config, S3GeoIpFileService s3GeoIpFileService,
+                               MetricRegistry metricRegistry, long cacheSize) {
         Timer resolveTime = metricRegistry.timer(name(GeoIpResolverEngine.class, "resolveTime"));
 
         enforceGraylogSchema = config.enforceGraylogSchema();
@@ -95,6 +113,14 @@ public class GeoIpResolverEngine {
 
         this.enabled = ipLocationResolver.isEnabled() || ipAsnResolver.isEnabled();
 
+        locationCache = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build();
+        asnCache = CacheBuilder.newBuilder().maximumSize(cacheSize).recordStats().build();
+        // the engine is replaced on every configuration or database change, which also discards the cached results.
+        // we have to remove the metrics, because otherwise we leak references to the old caches (and the register call would throw)
+        metricRegistry.removeMatching((metricName, metric) -> metricName.startsWith(LOCATION_CACHE_METRIC_NAME)
+                || metricName.startsWith(ASN_CACHE_METRIC_NAME));
+        MetricUtils.safelyRegisterAll(metricRegistry, new CacheStatsSet(LOCATION_CACHE_METRIC_NAME, locationCache));
+        MetricUtils.safelyRegisterAll(metricRegistry, new CacheStatsSet(ASN_CACHE_METRIC_NAME, asnCache));
     }
 
     public boolean filter(Message message) {
@@ -114,7 +140,7 @@ public class GeoIpResolverEngine {
             // For reserved IPs just mark as reserved. Otherwise, enforce Graylog schema on only relevant IP fields
             // or add legacy fields on all IP fields in the message if enforcement is disabled.
             final String prefix = enforceGraylogSchema ? ipAddressFields.getOrDefault(key, key) : key;
-            if (ReservedIpChecker.getInstance().isReservedIpAddress(address.getHostAddress())) {
+            if (ReservedIpChecker.getInstance().isReservedIpAddress(address)) {
                 message.addField(prefix + "_reserved_ip", true);
             } else if (enforceGraylogSchema) {
                 addGIMGeoIpDataIfPresent(message, address, prefix);
@@ -128,7 +154,7 @@ public class GeoIpResolverEngine {
 
     // Pre-4.3 logic for adding geo fields to message.
     private void addLegacyGeoIpDataIfPresent(Message message, InetAddress address, String key) {
-        ipLocationResolver.getGeoIpData(address).ifPresent(locationInformation -> {
+        lookup(ipLocationResolver, locationCache, address).ifPresent(locationInformation -> {
             // We will store the coordinates as a "lat,long" string
             message.addField(key + "_geolocation", locationInformation.latitude() + "," + locationInformation.longitude());
             message.addField(key + "_country_code", locationInformation.countryIsoCode());
@@ -137,7 +163,7 @@ public class GeoIpResolverEngine {
     }
 
     private void addGIMGeoIpDataIfPresent(Message message, InetAddress address, String newFieldPrefix) {
-        ipLocationResolver.getGeoIpData(address).ifPresent(locationInformation -> {
+        lookup(ipLocationResolver, locationCache, address).ifPresent(locationInformation -> {
             message.addField(newFieldPrefix + "_geo_coordinates", locationInformation.latitude() + "," + locationInformation.longitude());
             message.addField(newFieldPrefix + "_geo_country_iso", locationInformation.countryIsoCode());
             message.addField(newFieldPrefix + "_geo_city", locationInformation.cityName());
@@ -154,19 +180,32 @@ public class GeoIpResolverEngine {
             }
         });
 
-        ipAsnResolver.getGeoIpData(address).ifPresent(info -> {
+        lookup(ipAsnResolver, asnCache, address).ifPresent(info -> {
 
             message.addField(newFieldPrefix + "_as_organization", info.organization());
             message.addField(newFieldPrefix + "_as_number", info.asn());
         });
     }
 
+    private <V> Optional<V> lookup(GeoIpResolver<V> resolver, Cache<InetAddress, Optional<V>> cache, InetAddress address) {
+        final Optional<V> cached = cache.getIfPresent(address);
+        if (cached != null) {
+            return cached;
+        }
+        final GeoIpLookupResult<V> result = resolver.lookup(address);
+        // don't remember failed lookups, the error might be temporary
+        if (!result.failed()) {
+            cache.put(address, result.data());
+        }
+        return result.data();
+    }
+
     /**
      * Get the message fields that will be checked for IP addresses.
      *
      * <p>
      * If the user has chosen NOT to enforce the Graylog Schema, then all fields will be checked as any field could
-     * have an IP address.
+     * have an IP address. Fields whose values can't be IP addresses are skipped.
      * </p>
      *
      * @param message message
@@ -174,11 +213,23 @@ public class GeoIpResolverEngine {
      */
     @VisibleForTesting
     List<String> getIpAddressFields(Message message) {
-        return message.getFieldNames()
-                .stream()
-                .filter(e -> (!enforceGraylogSchema || ipAddressFields.containsKey(e))
-                        && !e.startsWith(Message.INTERNAL_FIELD_PREFIX))
-                .collect(Collectors.toList());
+        final List<String> fields = new ArrayList<>();
+        if (enforceGraylogSchema) {
+            for (String field : ipAddressFields.keySet()) {
+                if (message.hasField(field)) {
+                    fields.add(field);
+                }
+            }
+            return fields;
+        }
+        for (Map.Entry<String, Object> field : message.getFieldsEntries()) {
+            final Object value = field.getValue();
+            if (!field.getKey().startsWith(Message.INTERNAL_FIELD_PREFIX)
+                    && (value instanceof InetAddress || value instanceof String && couldBeIpAddress((String) value))) {
+                fields.add(field.getKey());
+            }
+        }
+        return fields;
     }
 
     private InetAddress getValidRoutableInetAddress(Object fieldValue) {
@@ -207,6 +258,9 @@ public class GeoIpResolverEngine {
     @Nullable
     @VisibleForTesting
     InetAddress getIpFromFieldValue(String fieldValue) {
+        if (!couldBeIpAddress(fieldValue)) {
+            return null;
+        }
         try {
             return InetAddresses.forString(fieldValue.trim());
         } catch (IllegalArgumentException e) {
@@ -216,6 +270,48 @@ public class GeoIpResolverEngine {
         return null;
     }
 
+    /**
+     * A cheap check which rejects most strings that are not IP addresses, e.g. log messages, host names or
+     * timestamps, before they have to be parsed.
+     *
+     * @param value the field value
+     * @return {@code false} if the value is certainly no IP address
+     */
+    @VisibleForTesting
+    static boolean couldBeIpAddress(String value) {
+        // same whitespace as String#trim()
+        int start = 0;
+        int end = value.length();
+        while (start < end && value.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        // "::" is the shortest IP address
+        if (end - start < 2) {
+            return false;
+        }
+
+        boolean separator = false;
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c == '.' || c == ':') {
+                separator = true;
+            } else if (c == '%') {
+                // the scope ID of an IPv6 address can be an arbitrary interface name
+                return separator;
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+            // neither an IPv4 octet nor an IPv6 group has more than 4 characters
+            if (!separator && i - start >= 4) {
+                return false;
+            }
+        }
+        return separator && end - start <= MAX_IP_ADDRESS_LENGTH;
+    }
+
     private static Function<String, String> mapFieldNameToPrefix() {
         return string -> string.replace("_ip", "");
     }
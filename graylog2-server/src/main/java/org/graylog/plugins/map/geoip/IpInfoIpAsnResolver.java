@@ -25,7 +25,6 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Locale;
-import java.util.Optional;
 
 /**
  * A {@link GeoIpResolver} to load IP ASN data from {@link org.graylog.plugins.map.config.DatabaseVendorType#IPINFO}.
@@ -40,20 +39,18 @@ public class IpInfoIpAsnResolver extends IpInfoIpResolver<GeoAsnInformation> {
     }
 
     @Override
-    protected Optional<GeoAsnInformation> doGetGeoIpData(InetAddress address) {
-
-        GeoAsnInformation info;
+    protected GeoIpLookupResult<GeoAsnInformation> doLookup(InetAddress address) {
         try (Timer.Context ignored = resolveTime.time()) {
             final IPinfoASN ipInfoASN = adapter.ipInfoASN(address);
-            info = GeoAsnInformation.create(ipInfoASN.name(), ipInfoASN.type(), ipInfoASN.asn());
+            final GeoAsnInformation info = GeoAsnInformation.create(ipInfoASN.name(), ipInfoASN.type(), ipInfoASN.asn());
+            return GeoIpLookupResult.of(info);
         } catch (IOException | AddressNotFoundException | UnsupportedOperationException e) {
-            info = null;
-            if (!(e instanceof AddressNotFoundException)) {
-                String error = String.format(Locale.US, "Error getting ASN for IP Address '%s'. %s", address, e.getMessage());
-                LOG.warn(error, e);
-                lastError = e.getMessage();
+            if (e instanceof AddressNotFoundException) {
+                return GeoIpLookupResult.empty();
             }
+            String error = String.format(Locale.US, "Error getting ASN for IP Address '%s'. %s", address, e.getMessage());
+            LOG.warn(error, e);
+            return GeoIpLookupResult.failure(e);
         }
-        return Optional.ofNullable(info);
     }
 }
@@ -25,7 +25,6 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Locale;
-import java.util.Optional;
 
 /**
  * A {@link GeoIpResolver} to load IP Location data from {@link org.graylog.plugins.map.config.DatabaseVendorType#IPINFO}.
@@ -40,22 +39,19 @@ public class IpInfoLocationResolver extends IpInfoIpResolver<GeoLocationInformat
     }
 
     @Override
-    protected Optional<GeoLocationInformation> doGetGeoIpData(InetAddress address) {
-        GeoLocationInformation info;
-
+    protected GeoIpLookupResult<GeoLocationInformation> doLookup(InetAddress address) {
         try (Timer.Context ignored = resolveTime.time()) {
             IPinfoStandardLocation loc = adapter.ipInfoStandardLocation(address);
-            info = GeoLocationInformation.create(loc.latitude(), loc.longitude(), loc.country(), "N/A",
+            final GeoLocationInformation info = GeoLocationInformation.create(loc.latitude(), loc.longitude(), loc.country(), "N/A",
                     loc.city(), loc.region(), loc.timezone());
-
+            return GeoIpLookupResult.of(info);
         } catch (NullPointerException | IOException | AddressNotFoundException | UnsupportedOperationException e) {
-            info = null;
-            if (!(e instanceof AddressNotFoundException)) {
-                String error = String.format(Locale.US, "Error getting IP location info for '%s'. %s", address, e.getMessage());
-                LOG.error(error, e);
-                lastError = e.getMessage();
+            if (e instanceof AddressNotFoundException) {
+                return GeoIpLookupResult.empty();
             }
+            String error = String.format(Locale.US, "Error getting IP location info for '%s'. %s", address, e.getMessage());
+            LOG.error(error, e);
+            return GeoIpLookupResult.failure(e);
         }
-        return Optional.ofNullable(info);
     }
 }
@@ -30,7 +30,6 @@ import com.maxmind.geoip2.record.Location;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.util.Optional;
 
 /**
  * A {@link GeoIpResolver} to load IP location data from {@link org.graylog.plugins.map.config.DatabaseVendorType#MAXMIND}.
@@ -45,7 +44,7 @@ public class MaxMindIpLocationResolver extends MaxMindIpResolver<GeoLocationInfo
     }
 
     @Override
-    public Optional<GeoLocationInformation> doGetGeoIpData(InetAddress address) {
+    public GeoIpLookupResult<GeoLocationInformation> doLookup(InetAddress address) {
 
         try (Timer.Context ignored = getTimer()) {
             final CityResponse response = getCityResponse(address);
@@ -60,13 +59,13 @@ public class MaxMindIpLocationResolver extends MaxMindIpResolver<GeoLocationInfo
                     city.getGeoNameId() == null ? "N/A" : city.getName(),// calling to .getName() may throw a NPE
                     "N/A",
                     "N/A");
-            return Optional.of(info);
+            return GeoIpLookupResult.of(info);
         } catch (Exception e) {
-            if (!(e instanceof AddressNotFoundException)) {
-                LOG.debug("Could not get location from IP {}", address.getHostAddress(), e);
-                lastError = e.getMessage();
+            if (e instanceof AddressNotFoundException) {
+                return GeoIpLookupResult.empty();
             }
-            return Optional.empty();
+            LOG.debug("Could not get location from IP {}", address.getHostAddress(), e);
+            return GeoIpLookupResult.failure(e);
         }
     }
 
@@ -19,6 +19,7 @@ package org.graylog.plugins.map.geoip.processor;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import org.graylog.plugins.map.config.GeoIpProcessorConfig;
 import org.graylog.plugins.map.config.GeoIpResolverConfig;
 import org.graylog.plugins.map.config.S3GeoIpFileService;
 import org.graylog.plugins.map.geoip.GeoIpDbFileChangedEvent;
@@ -60,6 +61,7 @@ public class GeoIpProcessor implements MessageProcessor {
     private final GeoIpVendorResolverService geoIpVendorResolverService;
     private final ServerStatus serverStatus;
     private final S3GeoIpFileService s3GeoIpFileService;
+    private final int cacheSize;
 
     private final AtomicReference<GeoIpResolverEngine> filterEngine = new AtomicReference<>(null);
 
@@ -70,13 +72,15 @@ public class GeoIpProcessor implements MessageProcessor {
                           MetricRegistry metricRegistry,
                           GeoIpVendorResolverService geoIpVendorResolverService,
                           ServerStatus serverStatus,
-                          S3GeoIpFileService s3GeoIpFileService) {
+                          S3GeoIpFileService s3GeoIpFileService,
+                          GeoIpProcessorConfig processorConfig) {
         this.clusterConfigService = clusterConfigService;
         this.scheduler = scheduler;
         this.metricRegistry = metricRegistry;
         this.geoIpVendorResolverService = geoIpVendorResolverService;
         this.serverStatus = serverStatus;
         this.s3GeoIpFileService = s3GeoIpFileService;
+        this.cacheSize = processorConfig.getCacheSize();
 
         eventBus.register(this);
     }
@@ -124,6 +128,6 @@ public class GeoIpProcessor implements MessageProcessor {
                 GeoIpResolverConfig.defaultConfig());
 
         LOG.debug("Updating GeoIP resolver engine - {}", newConfig);
-        filterEngine.set(new GeoIpResolverEngine(geoIpVendorResolverService, newConfig, s3GeoIpFileService, metricRegistry));
+        filterEngine.set(new GeoIpResolverEngine(geoIpVendorResolverService, newConfig, s3GeoIpFileService, metricRegistry, cacheSize));
     }
 }
@@ -16,6 +16,7 @@
  */
 package org.graylog.plugins.pipelineprocessor.ast;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
@@ -25,6 +26,7 @@ import org.antlr.v4.runtime.CommonToken;
 import org.graylog.plugins.pipelineprocessor.ast.expressions.BooleanExpression;
 import org.graylog.plugins.pipelineprocessor.ast.expressions.LogicalExpression;
 import org.graylog.plugins.pipelineprocessor.ast.statements.Statement;
+import org.graylog.plugins.pipelineprocessor.compiler.CompiledRule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +50,8 @@ public abstract class Rule {
     private transient Meter globalNotMatched;
     private transient Meter localNotMatched;
 
+    private transient CompiledRule compiledRule;
+
     @Nullable
     public abstract String id();
 
@@ -94,9 +98,19 @@ public abstract class Rule {
             globalNotMatched = registerGlobalMeter(metricRegistry, "not-matched");
             localNotMatched = registerLocalMeter(metricRegistry, pipelineId, stageId, "not-matched");
 
+            registerCompiledGauge(metricRegistry, pipelineId, stageId);
         }
     }
 
+    // reports 1 if this rule is executed in compiled mode and 0 if it falls back to the interpreter
+    private void registerCompiledGauge(MetricRegistry metricRegistry, String pipelineId, String stageId) {
+        final String name = MetricRegistry.name(Rule.class, id(), pipelineId, stageId, "compiled");
+        metricNames.add(name);
+        // a reloaded copy of this rule replaces the gauge of the previous one
+        metricRegistry.remove(name);
+        metricRegistry.register(name, (Gauge<Integer>) () -> compiledRule != null ? 1 : 0);
+    }
+
     private Meter registerGlobalMeter(MetricRegistry metricRegistry, String type) {
         final String name = MetricRegistry.name(Rule.class, id(), type);
         metricNames.add(name);
@@ -153,6 +167,20 @@ public abstract class Rule {
         }
     }
 
+    /**
+     * The compiled form of this rule, if it has been compiled.
+     *
+     * @return the compiled rule or {@code null} if this rule should be interpreted
+     */
+    @Nullable
+    public CompiledRule compiledRule() {
+        return compiledRule;
+    }
+
+    public void setCompiledRule(@Nullable CompiledRule compiledRule) {
+        this.compiledRule = compiledRule;
+    }
+
     /**
      * Creates a copy of this Rule.
      *
@@ -20,6 +20,7 @@ import org.antlr.v4.runtime.Token;
 import org.graylog.plugins.pipelineprocessor.EvaluationContext;
 import org.graylog2.plugin.Message;
 
+import javax.annotation.Nullable;
 import java.util.Collections;
 
 public class MessageRefExpression extends BaseExpression {
@@ -70,6 +71,14 @@ public class MessageRefExpression extends BaseExpression {
         return fieldExpr;
     }
 
+    /**
+     * Returns the expression naming the referenced field, or {@code null} for a plain {@code $message} reference.
+     */
+    @Nullable
+    public Expression getFieldNameExpr() {
+        return fieldExpr;
+    }
+
     @Override
     public Iterable<Expression> children() {
         return Collections.singleton(fieldExpr);
@@ -77,6 +77,15 @@ public class FunctionArgs {
         constantValues.put(name, value);
     }
 
+    /**
+     * Returns a copy of these arguments using the given argument expressions, keeping the pre-computed values.
+     */
+    public FunctionArgs withArgs(Map<String, Expression> args) {
+        final FunctionArgs copy = new FunctionArgs(function, args);
+        copy.constantValues.putAll(constantValues);
+        return copy;
+    }
+
     public Function<?> getFunction() {
         return function;
     }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.compiler;
+
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.BaseExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.Expression;
+
+/**
+ * Stands in for a function argument, so that functions reading their parameters through
+ * {@link org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor#required} evaluate the compiled
+ * form of the argument. Everything else is answered by the original expression.
+ */
+class CompiledArgumentExpression extends BaseExpression {
+    private final Expression original;
+    private final CompiledExpression compiled;
+
+    CompiledArgumentExpression(Expression original, CompiledExpression compiled) {
+        super(original.getStartToken());
+        this.original = original;
+        this.compiled = compiled;
+    }
+
+    @Override
+    public boolean isConstant() {
+        return original.isConstant();
+    }
+
+    @Override
+    public Object evaluateUnsafe(EvaluationContext context) {
+        return compiled.evaluate(context);
+    }
+
+    @Override
+    public Class getType() {
+        return original.getType();
+    }
+
+    @Override
+    public Iterable<Expression> children() {
+        return original.children();
+    }
+
+    @Override
+    public String toString() {
+        return original.toString();
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.compiler;
+
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+
+import javax.annotation.Nullable;
+
+/**
+ * A compiled form of an {@link org.graylog.plugins.pipelineprocessor.ast.expressions.Expression expression}.
+ * Like {@link org.graylog.plugins.pipelineprocessor.ast.expressions.Expression#evaluateUnsafe(EvaluationContext)},
+ * implementations are allowed to throw exceptions.
+ */
+@FunctionalInterface
+public interface CompiledExpression {
+    @Nullable
+    Object evaluate(EvaluationContext context);
+}
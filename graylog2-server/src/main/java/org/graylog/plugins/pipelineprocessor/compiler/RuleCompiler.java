@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.compiler;
+
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+import org.graylog.plugins.pipelineprocessor.ast.Rule;
+import org.graylog.plugins.pipelineprocessor.ast.exceptions.FunctionEvaluationException;
+import org.graylog.plugins.pipelineprocessor.ast.exceptions.LocationAwareEvalException;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.AndExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.BooleanExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.BooleanValuedFunctionWrapper;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.ConstantExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.EqualityExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.Expression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FieldRefExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FunctionExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.LogicalExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.MessageRefExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.NotExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.OrExpression;
+import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
+import org.graylog.plugins.pipelineprocessor.ast.statements.FunctionStatement;
+import org.graylog.plugins.pipelineprocessor.ast.statements.Statement;
+import org.graylog.plugins.pipelineprocessor.ast.statements.VarAssignStatement;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the expression tree of a parsed {@link Rule} into a tree of specialized closures.
+ * <p>
+ * Constant literals are folded into the closures, field names of {@code $message.field} references are resolved once
+ * and the boolean operators are turned into direct calls between the compiled nodes. Function calls are bound to their
+ * {@link Function} once and receive their compiled argument expressions. This gives the JIT monomorphic call sites it
+ * can inline, instead of the megamorphic {@code evaluate()} calls of the tree-walking interpreter.
+ * <p>
+ * Node types without a specialized translation (e.g. arithmetic, indexed access) are evaluated through their
+ * original {@link Expression}, so a compiled rule always behaves exactly like the interpreted one.
+ */
+public class RuleCompiler {
+    private static final Logger LOG = LoggerFactory.getLogger(RuleCompiler.class);
+
+    public CompiledRule compile(Rule rule) {
+        final CompiledCondition when = compileCondition(rule.when());
+        final List<Statement> then = new ArrayList<>(rule.then().size());
+        for (Statement statement : rule.then()) {
+            then.add(compileStatement(statement));
+        }
+        return CompiledRule.create(when, Collections.unmodifiableList(then));
+    }
+
+    CompiledCondition compileCondition(LogicalExpression expression) {
+        if (expression instanceof BooleanExpression) {
+            final boolean value = expression.evaluateBool(EvaluationContext.emptyContext());
+            return value ? context -> true : context -> false;
+        }
+        if (expression instanceof AndExpression) {
+            final AndExpression and = (AndExpression) expression;
+            final CompiledCondition left = compileCondition((LogicalExpression) and.left());
+            final CompiledCondition right = compileCondition((LogicalExpression) and.right());
+            return context -> left.evaluate(context) && right.evaluate(context);
+        }
+        if (expression instanceof OrExpression) {
+            final OrExpression or = (OrExpression) expression;
+            final CompiledCondition left = compileCondition((LogicalExpression) or.left());
+            final CompiledCondition right = compileCondition((LogicalExpression) or.right());
+            return context -> left.evaluate(context) || right.evaluate(context);
+        }
+        if (expression instanceof NotExpression) {
+            final CompiledCondition operand = compileCondition((LogicalExpression) ((NotExpression) expression).right());
+            return context -> !operand.evaluate(context);
+        }
+        if (expression instanceof BooleanValuedFunctionWrapper) {
+            final CompiledExpression wrapped = compileExpression(((BooleanValuedFunctionWrapper) expression).expression());
+            return context -> {
+                final Object value = wrapped.evaluate(context);
+                return value != null && (Boolean) value;
+            };
+        }
+        if (expression instanceof EqualityExpression) {
+            return compileEquality((EqualityExpression) expression);
+        }
+        return expression::evaluateBool;
+    }
+
+    private CompiledCondition compileEquality(EqualityExpression expression) {
+        final CompiledExpression left = compileExpression(expression.left());
+        final boolean checkEquality = expression.isCheckEquality();
+
+        if (isFoldable(expression.right())) {
+            final Object constant = expression.right().evaluateUnsafe(EvaluationContext.emptyContext());
+            if (constant != null && !(constant instanceof DateTime)) {
+                return context -> {
+                    final Object leftValue = left.evaluate(context);
+                    if (leftValue == null) {
+                        LOG.warn("left expression evaluated to null, returning false: {}", expression.left());
+                        return false;
+                    }
+                    return leftValue.equals(constant) == checkEquality;
+                };
+            }
+        }
+
+        final CompiledExpression right = compileExpression(expression.right());
+        return context -> {
+            final Object leftValue = left.evaluate(context);
+            final Object rightValue = right.evaluate(context);
+            if (leftValue == null) {
+                LOG.warn("left expression evaluated to null, returning false: {}", expression.left());
+                return false;
+            }
+            final boolean equals;
+            if (leftValue instanceof DateTime && rightValue instanceof DateTime) {
+                equals = ((DateTime) leftValue).isEqual((DateTime) rightValue);
+            } else {
+                equals = leftValue.equals(rightValue);
+            }
+            return equals == checkEquality;
+        };
+    }
+
+    CompiledExpression compileExpression(Expression expression) {
+        if (isFoldable(expression)) {
+            final Object value = expression.evaluateUnsafe(EvaluationContext.emptyContext());
+            return context -> value;
+        }
+        if (expression instanceof MessageRefExpression) {
+            return compileMessageRef((MessageRefExpression) expression);
+        }
+        if (expression instanceof LogicalExpression) {
+            final CompiledCondition condition = compileCondition((LogicalExpression) expression);
+            return condition::evaluate;
+        }
+        if (expression instanceof FunctionExpression) {
+            return compileFunction((FunctionExpression) expression);
+        }
+        return expression::evaluateUnsafe;
+    }
+
+    private CompiledExpression compileFunction(FunctionExpression expression) {
+        final Function<?> function = expression.getFunction();
+        final Class<?> returnType = function.descriptor().returnType();
+        final FunctionArgs args = compileArgs(expression.getArgs());
+        // mirrors FunctionExpression#evaluateUnsafe
+        return context -> {
+            try {
+                return returnType.cast(function.evaluate(args, context));
+            } catch (LocationAwareEvalException laee) {
+                throw laee;
+            } catch (Exception e) {
+                throw new FunctionEvaluationException(expression, e);
+            }
+        };
+    }
+
+    private FunctionArgs compileArgs(FunctionArgs args) {
+        final Map<String, Expression> compiled = new LinkedHashMap<>();
+        for (Map.Entry<String, Expression> arg : args.getArgs().entrySet()) {
+            final Expression argument = arg.getValue();
+            compiled.put(arg.getKey(),
+                    argument == null ? null : new CompiledArgumentExpression(argument, compileExpression(argument)));
+        }
+        return args.withArgs(compiled);
+    }
+
+    private CompiledExpression compileMessageRef(MessageRefExpression expression) {
+        final Expression fieldExpr = expression.getFieldNameExpr();
+        if (fieldExpr == null) {
+            // plain `$message` reference
+            return EvaluationContext::currentMessage;
+        }
+        if (isFoldable(fieldExpr)) {
+            final Object fieldName = fieldExpr.evaluateUnsafe(EvaluationContext.emptyContext());
+            if (fieldName == null) {
+                return context -> null;
+            }
+            final String name = fieldName.toString();
+            return context -> context.currentMessage().getField(name);
+        }
+        return expression::evaluateUnsafe;
+    }
+
+    private Statement compileStatement(Statement statement) {
+        if (statement instanceof VarAssignStatement) {
+            final VarAssignStatement assignment = (VarAssignStatement) statement;
+            final Expression valueExpression = assignment.getValueExpression();
+            final CompiledExpression value = compileExpression(valueExpression);
+            final String name = assignment.getName();
+            final Class type = valueExpression.getType();
+            return context -> {
+                context.define(name, type, evaluateSafely(value, valueExpression, context));
+                return null;
+            };
+        }
+        if (statement instanceof FunctionStatement) {
+            final Expression functionExpression = ((FunctionStatement) statement).getFunctionExpression();
+            final CompiledExpression function = compileExpression(functionExpression);
+            return context -> evaluateSafely(function, functionExpression, context);
+        }
+        return statement;
+    }
+
+    // mirrors Expression#evaluate, which records exceptions as evaluation errors instead of propagating them
+    private static Object evaluateSafely(CompiledExpression compiled, Expression expression, EvaluationContext context) {
+        try {
+            return compiled.evaluate(context);
+        } catch (Exception e) {
+            context.onEvaluationException(e, expression);
+        }
+        return null;
+    }
+
+    // only literals are safe to evaluate ahead of time, variable references claim to be constant but depend on the context
+    private static boolean isFoldable(Expression expression) {
+        return expression instanceof ConstantExpression || expression instanceof FieldRefExpression;
+    }
+}
@@ -21,9 +21,10 @@ import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
-import org.graylog2.utilities.IpSubnet;
+import com.google.common.base.Splitter;
+import org.graylog2.utilities.IpPrefixTrie;
 
-import java.net.UnknownHostException;
+import java.util.Collection;
 
 import static com.google.common.collect.ImmutableList.of;
 
@@ -31,25 +32,22 @@ public class CidrMatch extends AbstractFunction<Boolean> {
 
     public static final String NAME = "cidr_match";
     public static final String IP = "ip";
+    private static final Splitter CIDR_SPLITTER = Splitter.on(',').trimResults().omitEmptyStrings();
 
-    private final ParameterDescriptor<String, IpSubnet> cidrParam;
+    private final ParameterDescriptor<Object, IpPrefixTrie> cidrParam;
     private final ParameterDescriptor<IpAddress, IpAddress> ipParam;
 
     public CidrMatch() {
-        // a little ugly because newCIDR throws a checked exception :(
-        cidrParam = ParameterDescriptor.string("cidr", IpSubnet.class).transform(cidrString -> {
-            try {
-                return new IpSubnet(cidrString);
-            } catch (UnknownHostException e) {
-                throw new IllegalArgumentException(e);
-            }
-        }).description("The CIDR subnet mask").build();
+        // constant arguments are transformed once, so even long lists of subnets are only parsed when the rule is loaded
+        cidrParam = ParameterDescriptor.object("cidr", IpPrefixTrie.class)
+                .transform(CidrMatch::toPrefixTrie)
+                .description("The CIDR subnet mask, a comma separated list or an array of them").build();
         ipParam = ParameterDescriptor.type(IP, IpAddress.class).description("The parsed IP address to match against the CIDR mask").build();
     }
 
     @Override
     public Boolean evaluate(FunctionArgs args, EvaluationContext context) {
-        final IpSubnet cidr = cidrParam.required(args, context);
+        final IpPrefixTrie cidr = cidrParam.required(args, context);
         final IpAddress ipAddress = ipParam.required(args, context);
         if (cidr == null || ipAddress == null) {
             return null;
@@ -57,6 +55,20 @@ public class CidrMatch extends AbstractFunction<Boolean> {
         return cidr.contains(ipAddress.inetAddress());
     }
 
+    private static IpPrefixTrie toPrefixTrie(Object cidrs) {
+        final IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+        if (cidrs instanceof Collection) {
+            for (Object cidr : (Collection<?>) cidrs) {
+                builder.add(String.valueOf(cidr).trim());
+            }
+        } else {
+            for (String cidr : CIDR_SPLITTER.split(String.valueOf(cidrs))) {
+                builder.add(cidr);
+            }
+        }
+        return builder.build();
+    }
+
     @Override
     public FunctionDescriptor<Boolean> descriptor() {
         return FunctionDescriptor.<Boolean>builder()
@@ -65,7 +77,7 @@ public class CidrMatch extends AbstractFunction<Boolean> {
                 .params(of(
                         cidrParam,
                         ipParam))
-                .description("Checks if an IP address matches a CIDR subnet mask")
+                .description("Checks if an IP address matches one of the given CIDR subnet masks")
                 .build();
     }
 }
@@ -24,32 +24,39 @@ import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog2.utilities.regex.JavaRegexEngine;
+import org.graylog2.utilities.regex.RegexEngine;
+import org.graylog2.utilities.regex.RegexPattern;
 
+import javax.inject.Inject;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static com.google.common.collect.ImmutableList.of;
 
 public class RegexMatch extends AbstractFunction<RegexMatch.RegexMatchResult> {
 
     public static final String NAME = "regex";
-    private final ParameterDescriptor<String, Pattern> pattern;
+    private final ParameterDescriptor<String, RegexPattern> pattern;
     private final ParameterDescriptor<String, String> value;
     private final ParameterDescriptor<List, List> optionalGroupNames;
 
     public RegexMatch() {
-        pattern = ParameterDescriptor.string("pattern", Pattern.class).transform(Pattern::compile).description("The regular expression to match against 'value', uses Java regex syntax").build();
+        this(JavaRegexEngine.INSTANCE);
+    }
+
+    @Inject
+    public RegexMatch(RegexEngine regexEngine) {
+        pattern = ParameterDescriptor.string("pattern", RegexPattern.class).transform(regexEngine::compile).description("The regular expression to match against 'value', uses Java regex syntax").build();
         value = ParameterDescriptor.string("value").description("The string to match the pattern against").build();
         optionalGroupNames = ParameterDescriptor.type("group_names", List.class).optional().description("List of names to use for matcher groups").build();
     }
 
     @Override
     public RegexMatchResult evaluate(FunctionArgs args, EvaluationContext context) {
-        final Pattern regex = pattern.required(args, context);
+        final RegexPattern regex = pattern.required(args, context);
         final String value = this.value.required(args, context);
         if (regex == null || value == null) {
             final String nullArgument = regex == null ? "pattern" : "value";
@@ -59,10 +66,10 @@ public class RegexMatch extends AbstractFunction<RegexMatch.RegexMatchResult> {
         final List<String> groupNames =
                 (List<String>) optionalGroupNames.optional(args, context).orElse(Collections.emptyList());
 
-        final Matcher matcher = regex.matcher(value);
+        final RegexPattern.Matcher matcher = regex.matcher(value);
         final boolean matches = matcher.find();
 
-        return new RegexMatchResult(matches, matcher.toMatchResult(), groupNames);
+        return new RegexMatchResult(matches, matcher, groupNames);
 
     }
 
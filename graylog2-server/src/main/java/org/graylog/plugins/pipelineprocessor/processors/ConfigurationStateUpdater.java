@@ -25,6 +25,7 @@ import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import org.graylog.plugins.pipelineprocessor.ast.Pipeline;
 import org.graylog.plugins.pipelineprocessor.ast.Rule;
+import org.graylog.plugins.pipelineprocessor.compiler.RuleCompiler;
 import org.graylog.plugins.pipelineprocessor.db.PipelineService;
 import org.graylog.plugins.pipelineprocessor.db.PipelineStreamConnectionsService;
 import org.graylog.plugins.pipelineprocessor.db.RuleMetricsConfigDto;
@@ -67,6 +68,8 @@ public class ConfigurationStateUpdater {
     private final ScheduledExecutorService scheduler;
     private final EventBus serverEventBus;
     private final PipelineInterpreter.State.Factory stateFactory;
+    private final boolean compileRules;
+    private final RuleCompiler ruleCompiler = new RuleCompiler();
     /**
      * non-null if the update has successfully loaded a state
      */
@@ -81,7 +84,8 @@ public class ConfigurationStateUpdater {
                                      MetricRegistry metricRegistry,
                                      @Named("daemonScheduler") ScheduledExecutorService scheduler,
                                      EventBus serverEventBus,
-                                     PipelineInterpreter.State.Factory stateFactory) {
+                                     PipelineInterpreter.State.Factory stateFactory,
+                                     @Named("compiled_pipeline_rules") boolean compileRules) {
         this.ruleService = ruleService;
         this.pipelineService = pipelineService;
         this.pipelineStreamConnectionsService = pipelineStreamConnectionsService;
@@ -91,6 +95,7 @@ public class ConfigurationStateUpdater {
         this.scheduler = scheduler;
         this.serverEventBus = serverEventBus;
         this.stateFactory = stateFactory;
+        this.compileRules = compileRules;
 
         // listens to cluster wide Rule, Pipeline and pipeline stream connection changes
         serverEventBus.register(this);
@@ -170,6 +175,9 @@ public class ConfigurationStateUpdater {
                         // make a copy so that the metrics match up (we don't share actual objects between stages)
                         rule = rule.copy();
                         log.debug("Resolved rule `{}` to {}", ref, rule);
+                        if (compileRules) {
+                            compileRule(rule);
+                        }
                         // include back reference to stage
                         rule.registerMetrics(metricRegistry, pipeline.id(), String.valueOf(stage.stage()));
                         return rule;
@@ -184,6 +192,16 @@ public class ConfigurationStateUpdater {
         return pipeline;
     }
 
+    private void compileRule(Rule rule) {
+        try {
+            rule.setCompiledRule(ruleCompiler.compile(rule));
+        } catch (Exception e) {
+            // the interpreter is always able to run the rule, so compilation failures are never fatal
+            log.warn("Unable to compile rule <{}/{}>, falling back to interpreted execution", rule.name(), rule.id(), e);
+            rule.setCompiledRule(null);
+        }
+    }
+
     // TODO avoid reloading everything on every change, certain changes can get away with doing less work
     @Subscribe
     public void handleRuleChanges(RulesChangedEvent event) {
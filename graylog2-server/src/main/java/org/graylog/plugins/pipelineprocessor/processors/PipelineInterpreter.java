@@ -37,6 +37,7 @@ import org.graylog.plugins.pipelineprocessor.ast.Rule;
 import org.graylog.plugins.pipelineprocessor.ast.Stage;
 import org.graylog.plugins.pipelineprocessor.ast.expressions.LogicalExpression;
 import org.graylog.plugins.pipelineprocessor.ast.statements.Statement;
+import org.graylog.plugins.pipelineprocessor.compiler.CompiledRule;
 import org.graylog.plugins.pipelineprocessor.db.RuleMetricsConfigDto;
 import org.graylog.plugins.pipelineprocessor.processors.listeners.InterpreterListener;
 import org.graylog.plugins.pipelineprocessor.processors.listeners.NoopInterpreterListener;
@@ -59,6 +60,7 @@ import javax.annotation.Nonnull;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -78,17 +80,20 @@ public class PipelineInterpreter implements MessageProcessor {
     private final Timer executionTime;
     private final MetricRegistry metricRegistry;
     private final ConfigurationStateUpdater stateUpdater;
+    private final int ruleTimerSampleRate;
 
     @Inject
     public PipelineInterpreter(MessageQueueAcknowledger messageQueueAcknowledger,
                                MetricRegistry metricRegistry,
-                               ConfigurationStateUpdater stateUpdater) {
+                               ConfigurationStateUpdater stateUpdater,
+                               @Named("processing_timer_sample_rate") int ruleTimerSampleRate) {
 
         this.messageQueueAcknowledger = messageQueueAcknowledger;
         this.filteredOutMessages = metricRegistry.meter(name(ProcessBufferProcessor.class, "filteredOutMessages"));
         this.executionTime = metricRegistry.timer(name(PipelineInterpreter.class, "executionTime"));
         this.metricRegistry = metricRegistry;
         this.stateUpdater = stateUpdater;
+        this.ruleTimerSampleRate = ruleTimerSampleRate;
     }
 
     /**
@@ -100,7 +105,7 @@ public class PipelineInterpreter implements MessageProcessor {
         try (Timer.Context ignored = executionTime.time()) {
             final State latestState = stateUpdater.getLatestState();
             if (latestState.enableRuleMetrics()) {
-                return process(messages, new RuleMetricsListener(metricRegistry), latestState);
+                return process(messages, new RuleMetricsListener(metricRegistry, ruleTimerSampleRate), latestState);
             }
             return process(messages, new NoopInterpreterListener(), latestState);
         }
@@ -376,7 +381,9 @@ public class PipelineInterpreter implements MessageProcessor {
         interpreterListener.executeRule(rule, pipeline);
         try {
             log.debug("[{}] rule `{}` matched running actions", msgId, rule.name());
-            for (Statement statement : rule.then()) {
+            final CompiledRule compiledRule = rule.compiledRule();
+            final Collection<Statement> statements = compiledRule != null ? compiledRule.then() : rule.then();
+            for (Statement statement : statements) {
                 if (!evaluateStatement(message, interpreterListener, pipeline, context, rule, statement)) {
                     // statement raised an error, skip the rest of the rule
                     return false;
@@ -421,8 +428,13 @@ public class PipelineInterpreter implements MessageProcessor {
         interpreterListener.evaluateRule(rule, pipeline);
         final boolean matched;
         final LogicalExpression logicalExpression = rule.when();
+        final CompiledRule compiledRule = rule.compiledRule();
         try {
-            matched = logicalExpression.evaluateBool(context);
+            if (compiledRule != null) {
+                matched = compiledRule.when().evaluate(context);
+            } else {
+                matched = logicalExpression.evaluateBool(context);
+            }
         } catch (Exception e) {
 
             context.onEvaluationException(e, logicalExpression);
@@ -17,12 +17,11 @@
 package org.graylog.plugins.pipelineprocessor.processors.listeners;
 
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.Timer;
 import org.graylog.plugins.pipelineprocessor.ast.Pipeline;
 import org.graylog.plugins.pipelineprocessor.ast.Rule;
 import org.graylog.plugins.pipelineprocessor.ast.Stage;
 import org.graylog2.plugin.Message;
-import org.graylog2.shared.metrics.MetricUtils;
+import org.graylog2.shared.metrics.SampledTimer;
 
 import javax.annotation.Nullable;
 import java.util.HashMap;
@@ -43,11 +42,20 @@ public class RuleMetricsListener implements InterpreterListener {
     }
 
     private final MetricRegistry metricRegistry;
-    private final Map<TimerMapKey, Timer.Context> evaluateTimers = new HashMap<>();
-    private final Map<TimerMapKey, Timer.Context> executeTimers = new HashMap<>();
+    private final int sampleRate;
+    private final Map<TimerMapKey, SampledTimer.Sample> evaluateTimers = new HashMap<>();
+    private final Map<TimerMapKey, SampledTimer.Sample> executeTimers = new HashMap<>();
 
     public RuleMetricsListener(MetricRegistry metricRegistry) {
+        this(metricRegistry, 1);
+    }
+
+    /**
+     * @param sampleRate only time one in {@code sampleRate} rule invocations, the invocation counts stay exact
+     */
+    public RuleMetricsListener(MetricRegistry metricRegistry, int sampleRate) {
         this.metricRegistry = metricRegistry;
+        this.sampleRate = sampleRate;
     }
 
     public static String getMetricName(String name, Type type) {
@@ -62,29 +70,31 @@ public class RuleMetricsListener implements InterpreterListener {
         });
     }
 
-    private void startTimerForKey(TimerMapKey key, String metricName, Map<TimerMapKey, Timer.Context> timers) {
-        final Timer timer = MetricUtils.getOrRegister(metricRegistry, metricName, new Timer());
-        timers.put(key, timer.time());
+    private void startTimerForKey(TimerMapKey key, String metricName, boolean timed, Map<TimerMapKey, SampledTimer.Sample> timers) {
+        final SampledTimer timer = (SampledTimer) metricRegistry.timer(metricName, () -> new SampledTimer(sampleRate));
+        timers.put(key, timer.sample(timed));
     }
 
-    private void startTimer(Rule rule, Pipeline pipeline, Type type, Map<TimerMapKey, Timer.Context> timers) {
+    private void startTimer(Rule rule, Pipeline pipeline, Type type, Map<TimerMapKey, SampledTimer.Sample> timers) {
         if (rule.id() != null && pipeline.id() != null) {
+            // the per-stage and the overall timer of a rule invocation are either both timed or not
+            final boolean timed = SampledTimer.nextSampled(sampleRate);
             forEachStage(rule, pipeline, stage -> {
                 final String name = name(rule.id(), pipeline.id(), String.valueOf(stage.stage()));
-                startTimerForKey(new TimerMapKey(rule, pipeline, stage), getMetricName(name, type), timers);
+                startTimerForKey(new TimerMapKey(rule, pipeline, stage), getMetricName(name, type), timed, timers);
             });
-            startTimerForKey(new TimerMapKey(rule), getMetricName(rule.id(), type), timers);
+            startTimerForKey(new TimerMapKey(rule), getMetricName(rule.id(), type), timed, timers);
         }
     }
 
-    private void stopTimerForKey(TimerMapKey key, Map<TimerMapKey, Timer.Context> timers) {
-        final Timer.Context timer = timers.get(key);
+    private void stopTimerForKey(TimerMapKey key, Map<TimerMapKey, SampledTimer.Sample> timers) {
+        final SampledTimer.Sample timer = timers.remove(key);
         if (timer != null) {
-            timer.stop();
+            timer.close();
         }
     }
 
-    private void stopTimer(Rule rule, Pipeline pipeline, Map<TimerMapKey, Timer.Context> timers) {
+    private void stopTimer(Rule rule, Pipeline pipeline, Map<TimerMapKey, SampledTimer.Sample> timers) {
         if (rule.id() != null && pipeline.id() != null) {
             forEachStage(rule, pipeline, stage -> stopTimerForKey(new TimerMapKey(rule, pipeline, stage), timers));
             stopTimerForKey(new TimerMapKey(rule), timers);
@@ -17,6 +17,7 @@
 package org.graylog.plugins.views;
 
 import com.github.joschi.jadconfig.Parameter;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import org.graylog2.plugin.PluginConfigBean;
 import org.joda.time.Duration;
 
@@ -24,7 +25,55 @@ public class ViewsConfig implements PluginConfigBean {
     private static final Duration DEFAULT_MAXIMUM_AGE_FOR_SEARCHES = Duration.standardDays(4);
     private static final String PREFIX = "views_";
     private static final String MAX_SEARCH_AGE = PREFIX + "maximum_search_age";
+    private static final String QUERY_RESULT_CACHE_SIZE = PREFIX + "query_result_cache_size";
+    private static final String QUERY_RESULT_CACHE_TTL = PREFIX + "query_result_cache_ttl";
+    private static final String QUERY_RESULT_CACHE_TIME_GRANULARITY = PREFIX + "query_result_cache_time_granularity";
+    private static final String INCREMENTAL_PIVOT_CACHE_SIZE = PREFIX + "incremental_pivot_cache_size";
+    private static final String INCREMENTAL_PIVOT_GRACE_PERIOD = PREFIX + "incremental_pivot_grace_period";
+    private static final String QUERY_ENGINE_THREADS = PREFIX + "query_engine_threads";
+    private static final String QUERY_ENGINE_HEAVY_THREADS = PREFIX + "query_engine_heavy_threads";
+    private static final String QUERY_ENGINE_HEAVY_TIME_RANGE = PREFIX + "query_engine_heavy_time_range";
+    private static final String QUERY_ENGINE_HEAVY_INDEX_COUNT = PREFIX + "query_engine_heavy_index_count";
+    private static final String QUERY_ENGINE_HEAVY_MAX_WAIT = PREFIX + "query_engine_heavy_max_wait";
+    private static final String SEARCH_JOB_TIMEOUT = PREFIX + "search_job_timeout";
+    private static final String SEARCH_JOB_CANCEL_ON_TIMEOUT = PREFIX + "search_job_cancel_on_timeout";
 
     @Parameter(MAX_SEARCH_AGE)
     private Duration maxSearchAge = DEFAULT_MAXIMUM_AGE_FOR_SEARCHES;
+
+    @Parameter(QUERY_RESULT_CACHE_SIZE)
+    private int queryResultCacheSize = 0;
+
+    @Parameter(QUERY_RESULT_CACHE_TTL)
+    private Duration queryResultCacheTtl = Duration.standardSeconds(10);
+
+    @Parameter(QUERY_RESULT_CACHE_TIME_GRANULARITY)
+    private Duration queryResultCacheTimeGranularity = Duration.standardSeconds(10);
+
+    @Parameter(INCREMENTAL_PIVOT_CACHE_SIZE)
+    private int incrementalPivotCacheSize = 0;
+
+    @Parameter(INCREMENTAL_PIVOT_GRACE_PERIOD)
+    private Duration incrementalPivotGracePeriod = Duration.standardMinutes(1);
+
+    @Parameter(value = QUERY_ENGINE_THREADS, validators = PositiveIntegerValidator.class)
+    private int queryEngineThreads = 4;
+
+    @Parameter(value = QUERY_ENGINE_HEAVY_THREADS, validators = PositiveIntegerValidator.class)
+    private int queryEngineHeavyThreads = 2;
+
+    @Parameter(QUERY_ENGINE_HEAVY_TIME_RANGE)
+    private Duration queryEngineHeavyTimeRange = Duration.standardDays(7);
+
+    @Parameter(value = QUERY_ENGINE_HEAVY_INDEX_COUNT, validators = PositiveIntegerValidator.class)
+    private int queryEngineHeavyIndexCount = 20;
+
+    @Parameter(QUERY_ENGINE_HEAVY_MAX_WAIT)
+    private Duration queryEngineHeavyMaxWait = Duration.standardSeconds(30);
+
+    @Parameter(SEARCH_JOB_TIMEOUT)
+    private Duration searchJobTimeout = Duration.standardMinutes(1);
+
+    @Parameter(SEARCH_JOB_CANCEL_ON_TIMEOUT)
+    private boolean searchJobCancelOnTimeout = false;
 }
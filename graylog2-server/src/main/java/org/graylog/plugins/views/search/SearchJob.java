@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 @JsonAutoDetect
 // execution must come before results, as it signals the overall "done" state
@@ -45,6 +46,10 @@ public class SearchJob implements ParameterProvider {
 
     private final Map<String, CompletableFuture<QueryResult>> queryResults = Maps.newHashMap();
 
+    private final Map<String, Future<QueryResult>> queryExecutions = Maps.newConcurrentMap();
+
+    private volatile boolean cancelled = false;
+
     private Set<SearchError> errors = Sets.newHashSet();
 
     public SearchJob(String id, Search search, String owner) {
@@ -88,6 +93,18 @@ public class SearchJob implements ParameterProvider {
         queryResults.put(queryId, resultFuture);
     }
 
+    public void addQueryExecution(String queryId, Future<QueryResult> execution) {
+        queryExecutions.put(queryId, execution);
+    }
+
+    /**
+     * Cancels all queries of this job which are still queued or running. Their results are replaced by errors.
+     */
+    public void cancel() {
+        cancelled = true;
+        queryExecutions.values().forEach(execution -> execution.cancel(true));
+    }
+
     @JsonProperty("results")
     public Map<String, QueryResult> results() {
         return EntryStream.of(queryResults)
@@ -100,7 +117,7 @@ public class SearchJob implements ParameterProvider {
     @JsonProperty("execution")
     public ExecutionInfo execution() {
         final boolean isDone = resultFuture != null && resultFuture.isDone();
-        final boolean isCancelled = resultFuture != null && resultFuture.isCancelled();
+        final boolean isCancelled = cancelled || (resultFuture != null && resultFuture.isCancelled());
         return new ExecutionInfo(isDone, isCancelled, !errors.isEmpty());
     }
 
@@ -18,10 +18,9 @@ package org.graylog.plugins.views.search.elasticsearch;
 
 import org.graylog.plugins.views.search.IndexRangeContainsOneOfStreams;
 import org.graylog2.indexer.ranges.IndexRange;
-import org.graylog2.indexer.ranges.IndexRangeService;
+import org.graylog2.indexer.ranges.IndexRangeCacheService;
 import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
 import org.graylog2.plugin.streams.Stream;
-import org.graylog2.streams.StreamService;
 
 import javax.inject.Inject;
 import java.util.Collections;
@@ -31,24 +30,22 @@ import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
 public class IndexLookup {
-    private final IndexRangeService indexRangeService;
-    private final StreamService streamService;
+    private final IndexRangeCacheService indexRangeCacheService;
 
     //this is only here for mocking purposes
     BiFunction<IndexRange, Set<Stream>, Boolean> indexRangeContainsOneOfStreams = this::indexRangeContainsOneOfStreams;
 
     @Inject
-    public IndexLookup(IndexRangeService indexRangeService, StreamService streamService) {
-        this.indexRangeService = indexRangeService;
-        this.streamService = streamService;
+    public IndexLookup(IndexRangeCacheService indexRangeCacheService) {
+        this.indexRangeCacheService = indexRangeCacheService;
     }
 
     public Set<String> indexNamesForStreamsInTimeRange(Set<String> streamIds, TimeRange timeRange) {
         if (streamIds.isEmpty())
             return Collections.emptySet();
 
-        Set<Stream> usedStreams = streamService.loadByIds(streamIds);
-        SortedSet<IndexRange> candidateIndices = indexRangeService.find(timeRange.getFrom(), timeRange.getTo());
+        Set<Stream> usedStreams = indexRangeCacheService.getByIds(streamIds);
+        SortedSet<IndexRange> candidateIndices = indexRangeCacheService.find(streamIds, timeRange.getFrom(), timeRange.getTo());
 
         return candidateIndices.stream()
                 .filter(i -> indexRangeContainsOneOfStreams.apply(i, usedStreams))
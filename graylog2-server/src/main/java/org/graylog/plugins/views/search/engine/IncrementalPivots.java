@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.GlobalOverride;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.searchtypes.pivot.BucketSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSort;
+import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.SortSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.DateInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Time;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.TimeUnitInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Max;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Min;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Sum;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.SumOfSquares;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Incremental execution of time histogram pivots, e.g. of auto-refreshing dashboard widgets.
+ * <p>
+ * The rows of a pivot whose first row group is a {@link Time} bucket on the message timestamp only depend on the
+ * messages within their time bucket. When such a pivot is run again for a time window of the same length, the
+ * buckets which were already complete during the previous run are taken from the previous result and only the new
+ * tail of the window and the partial bucket at its head are queried. Buckets which dropped out of the window are
+ * evicted.
+ * <p>
+ * The rollup row for the whole window and the total are recomputed from the buckets, so this is limited to pivots
+ * with rollups whose series can be combined across buckets (count, sum, sum of squares, min and max) and which
+ * contain a plain {@code count()} series. Buckets which ended less than the grace period before the previous run
+ * are queried again to pick up messages which arrived late.
+ */
+@Singleton
+public class IncrementalPivots {
+    private static final String HEAD_SUFFIX = "-incremental-head";
+    private static final Set<String> MERGEABLE_SERIES = ImmutableSet.of(Count.NAME, Sum.NAME, SumOfSquares.NAME, Min.NAME, Max.NAME);
+    // calendar units longer than a day don't have a fixed length
+    private static final Map<String, Long> FIXED_UNIT_MILLIS = ImmutableMap.of(
+            "s", TimeUnit.SECONDS.toMillis(1),
+            "m", TimeUnit.MINUTES.toMillis(1),
+            "h", TimeUnit.HOURS.toMillis(1),
+            "d", TimeUnit.DAYS.toMillis(1));
+
+    private final boolean enabled;
+    private final long gracePeriodMillis;
+    private final Cache<List<Object>, PivotState> states;
+    private final Meter incrementalRuns;
+    private final Meter fullRuns;
+
+    @Inject
+    public IncrementalPivots(@Named("views_incremental_pivot_cache_size") int maximumSize,
+                             @Named("views_incremental_pivot_grace_period") Duration gracePeriod,
+                             MetricRegistry metricRegistry) {
+        this.enabled = maximumSize > 0;
+        this.gracePeriodMillis = Math.max(0L, gracePeriod.getMillis());
+        this.states = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(0, maximumSize))
+                // widgets which haven't been refreshed for a while are unlikely to come back soon
+                .expireAfterAccess(1, TimeUnit.HOURS)
+                .build();
+        this.incrementalRuns = metricRegistry.meter(name(IncrementalPivots.class, "incremental"));
+        this.fullRuns = metricRegistry.meter(name(IncrementalPivots.class, "full"));
+    }
+
+    /**
+     * Rewrites the eligible pivots of the given query. The returned execution holds the query which has to be run
+     * instead and turns its result into the result of the original query.
+     */
+    public Execution prepare(Query query) {
+        if (!enabled || !hasOnlyQueryTimeRange(query)) {
+            return new Execution(query, query, Collections.emptyList());
+        }
+
+        final DateTime now = Tools.nowUTC();
+        final List<PivotPlan> plans = new ArrayList<>();
+        final Set<SearchType> searchTypes = new LinkedHashSet<>();
+        for (SearchType searchType : query.searchTypes()) {
+            final PivotPlan plan = searchType instanceof Pivot ? plan(query, (Pivot) searchType, now) : null;
+            if (plan == null) {
+                searchTypes.add(searchType);
+            } else {
+                plans.add(plan);
+                searchTypes.addAll(plan.searchTypes);
+            }
+        }
+        if (plans.isEmpty()) {
+            return new Execution(query, query, Collections.emptyList());
+        }
+
+        // the time range of a global override would replace the time ranges of the rewritten pivots,
+        // it is the same as the query time range anyway
+        final Query.Builder builder = query.toBuilder().searchTypes(searchTypes);
+        query.globalOverride().ifPresent(globalOverride -> {
+            final Optional<GlobalOverride> withoutTimeRange = globalOverride.query()
+                    .map(backendQuery -> GlobalOverride.builder().query(backendQuery).build());
+            builder.globalOverride(withoutTimeRange.orElse(null));
+        });
+        return new Execution(query, builder.build(), plans);
+    }
+
+    // search types with their own time range would be affected by removing the time range of the global override
+    private static boolean hasOnlyQueryTimeRange(Query query) {
+        final Optional<GlobalOverride> globalOverride = query.globalOverride();
+        if (!globalOverride.isPresent() || !globalOverride.get().timerange().isPresent()) {
+            return true;
+        }
+        return globalOverride.get().timerange().get().equals(query.timerange())
+                && query.searchTypes().stream().noneMatch(searchType -> searchType.timerange().isPresent());
+    }
+
+    @Nullable
+    private PivotPlan plan(Query query, Pivot pivot, DateTime now) {
+        if (!isEligible(pivot)) {
+            return null;
+        }
+        final AbsoluteRange window = QueryResultCache.toAbsoluteRange(query.effectiveTimeRange(pivot), now);
+        if (window == null || !window.to().isAfter(window.from())) {
+            return null;
+        }
+        final Time time = (Time) pivot.rowGroups().get(0);
+        final DateInterval interval = time.interval().toDateInterval(window);
+        final long intervalMillis = fixedIntervalMillis(interval);
+        if (intervalMillis <= 0) {
+            return null;
+        }
+
+        // the interval of the time bucket must not depend on the shorter time ranges we are going to query
+        final Pivot pinnedPivot = pivot.toBuilder()
+                .rowGroups(ImmutableList.<BucketSpec>builder()
+                        .add(Time.builder()
+                                .field(time.field())
+                                .interval(TimeUnitInterval.Builder.builder().timeunit(interval.toString()).build())
+                                .build())
+                        .addAll(pivot.rowGroups().subList(1, pivot.rowGroups().size()))
+                        .build())
+                .build();
+        final long from = window.from().getMillis();
+        final long to = window.to().getMillis();
+        final List<Object> key = Arrays.asList(query.filter(), query.query(), query.filters(), pinnedPivot, (to - from) / 1000);
+
+        final PivotPlan plan = new PivotPlan(pinnedPivot, key, from, to, intervalMillis);
+        final PivotState state = states.getIfPresent(key);
+        if (state != null) {
+            final long tailStart = floor(state.to - gracePeriodMillis, intervalMillis);
+            if (state.from <= plan.headEnd && tailStart > plan.headEnd && tailStart <= to) {
+                plan.incremental(state, tailStart);
+                return plan;
+            }
+        }
+        plan.full();
+        return plan;
+    }
+
+    private static boolean isEligible(Pivot pivot) {
+        if (!pivot.rollup() || pivot.timerange().isPresent() || pivot.rowGroups().isEmpty()) {
+            return false;
+        }
+        final BucketSpec firstRowGroup = pivot.rowGroups().get(0);
+        if (!(firstRowGroup instanceof Time) || !Message.FIELD_TIMESTAMP.equals(firstRowGroup.field())) {
+            return false;
+        }
+        for (SortSpec sortSpec : pivot.sort()) {
+            // sorting could change the order of the time buckets
+            if (sortSpec instanceof SeriesSort
+                    || (firstRowGroup.field().equals(sortSpec.field()) && sortSpec.direction() == SortSpec.Direction.Descending)) {
+                return false;
+            }
+        }
+        return pivot.series().stream().allMatch(series -> MERGEABLE_SERIES.contains(series.type()))
+                && pivot.series().stream().anyMatch(IncrementalPivots::isDocumentCount);
+    }
+
+    private static boolean isDocumentCount(SeriesSpec series) {
+        return series instanceof Count && ((Count) series).field() == null;
+    }
+
+    private static long fixedIntervalMillis(DateInterval interval) {
+        final Long unitMillis = FIXED_UNIT_MILLIS.get(interval.getUnit());
+        if (unitMillis == null || !(interval.getQuantity() instanceof Integer)) {
+            return -1;
+        }
+        return interval.getQuantity().intValue() * unitMillis;
+    }
+
+    private static long floor(long timestamp, long interval) {
+        return timestamp - Math.floorMod(timestamp, interval);
+    }
+
+    private static AbsoluteRange range(long from, long to) {
+        return AbsoluteRange.create(new DateTime(from, DateTimeZone.UTC), new DateTime(to, DateTimeZone.UTC));
+    }
+
+    /**
+     * Groups the rows of a pivot result by the start of their time bucket, leaving out the rollup row for the
+     * whole time range. Returns {@code null} if a row doesn't belong to a time bucket.
+     */
+    @Nullable
+    private static NavigableMap<Long, List<PivotResult.Row>> bucketRows(PivotResult result) {
+        final NavigableMap<Long, List<PivotResult.Row>> buckets = new TreeMap<>();
+        for (PivotResult.Row row : result.rows()) {
+            if (row.key().isEmpty()) {
+                continue;
+            }
+            final long bucket;
+            try {
+                bucket = DateTime.parse(row.key().get(0)).getMillis();
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            buckets.computeIfAbsent(bucket, b -> new ArrayList<>()).add(row);
+        }
+        return buckets;
+    }
+
+    private static class PivotState {
+        private final long from;
+        private final long to;
+        private final NavigableMap<Long, List<PivotResult.Row>> buckets;
+
+        private PivotState(long from, long to, NavigableMap<Long, List<PivotResult.Row>> buckets) {
+            this.from = from;
+            this.to = to;
+            this.buckets = buckets;
+        }
+    }
+
+    private static class PivotPlan {
+        private final Pivot pivot;
+        private final List<Object> key;
+        private final long from;
+        private final long to;
+        private final long headStart;
+        private final long headEnd;
+        private final List<SearchType> searchTypes = new ArrayList<>();
+        private PivotState state;
+        private long tailStart;
+
+        private PivotPlan(Pivot pivot, List<Object> key, long from, long to, long interval) {
+            this.pivot = pivot;
+            this.key = key;
+            this.from = from;
+            this.to = to;
+            this.headStart = floor(from, interval);
+            this.headEnd = headStart == from ? from : headStart + interval;
+        }
+
+        private void full() {
+            searchTypes.add(pivot.toBuilder().timerange(range(from, to)).build());
+        }
+
+        private void incremental(PivotState state, long tailStart) {
+            this.state = state;
+            this.tailStart = tailStart;
+            searchTypes.add(pivot.toBuilder().timerange(range(tailStart, to)).build());
+            if (hasHead()) {
+                searchTypes.add(pivot.toBuilder().id(headId()).timerange(range(from, headEnd)).build());
+            }
+        }
+
+        private boolean isIncremental() {
+            return state != null;
+        }
+
+        private boolean hasHead() {
+            return headStart != from;
+        }
+
+        private String headId() {
+            return pivot.id() + HEAD_SUFFIX;
+        }
+    }
+
+    public class Execution {
+        private final Query originalQuery;
+        private final Query query;
+        private final List<PivotPlan> plans;
+
+        private Execution(Query originalQuery, Query query, List<PivotPlan> plans) {
+            this.originalQuery = originalQuery;
+            this.query = query;
+            this.plans = plans;
+        }
+
+        /**
+         * @return the query which has to be run
+         */
+        public Query query() {
+            return query;
+        }
+
+        /**
+         * Merges the result of {@link #query()} with the previous results of the incrementally executed pivots.
+         *
+         * @return the result of the original query, or an empty optional if the results could not be merged and the
+         * original query has to be run instead
+         */
+        public Optional<QueryResult> complete(QueryResult result) {
+            if (plans.isEmpty()) {
+                return Optional.of(result);
+            }
+            final Map<String, SearchType.Result> searchTypeResults = new HashMap<>(result.searchTypes());
+            for (PivotPlan plan : plans) {
+                final SearchType.Result pivotResult = searchTypeResults.get(plan.pivot.id());
+                final SearchType.Result headResult = plan.hasHead() ? searchTypeResults.remove(plan.headId()) : null;
+                if (!(pivotResult instanceof PivotResult)) {
+                    // the pivot failed, its error is part of the result
+                    states.invalidate(plan.key);
+                    continue;
+                }
+                if (!plan.isIncremental()) {
+                    fullRuns.mark();
+                    final NavigableMap<Long, List<PivotResult.Row>> buckets = bucketRows((PivotResult) pivotResult);
+                    if (buckets == null) {
+                        states.invalidate(plan.key);
+                    } else {
+                        states.put(plan.key, new PivotState(plan.from, plan.to, buckets));
+                    }
+                    continue;
+                }
+
+                final PivotResult merged = merge(plan, (PivotResult) pivotResult, (PivotResult) headResult);
+                if (merged == null) {
+                    states.invalidate(plan.key);
+                    return Optional.empty();
+                }
+                incrementalRuns.mark();
+                searchTypeResults.put(plan.pivot.id(), merged);
+            }
+            return Optional.of(result.toBuilder()
+                    .query(originalQuery)
+                    .searchTypes(searchTypeResults)
+                    .build());
+        }
+
+        @Nullable
+        private PivotResult merge(PivotPlan plan, PivotResult tail, @Nullable PivotResult head) {
+            final NavigableMap<Long, List<PivotResult.Row>> buckets = new TreeMap<>();
+            if (plan.hasHead()) {
+                final NavigableMap<Long, List<PivotResult.Row>> headBuckets = head == null ? null : bucketRows(head);
+                if (headBuckets == null) {
+                    return null;
+                }
+                // the head query also returns the bucket starting at its end
+                final List<PivotResult.Row> headRows = headBuckets.get(plan.headStart);
+                if (headRows != null) {
+                    buckets.put(plan.headStart, headRows);
+                }
+            }
+            buckets.putAll(plan.state.buckets.subMap(plan.headEnd, true, plan.tailStart, false));
+            final NavigableMap<Long, List<PivotResult.Row>> tailBuckets = bucketRows(tail);
+            if (tailBuckets == null) {
+                return null;
+            }
+            buckets.putAll(tailBuckets.tailMap(plan.tailStart, true));
+            states.put(plan.key, new PivotState(plan.from, plan.to, buckets));
+
+            final PivotResult.Builder builder = PivotResult.builder()
+                    .id(tail.id())
+                    .effectiveTimerange(range(plan.from, plan.to));
+            tail.name().ifPresent(builder::name);
+            buckets.values().forEach(builder::addAllRows);
+
+            final PivotResult.Row.Builder rollupRow = PivotResult.Row.builder()
+                    .key(ImmutableList.of())
+                    .source("non-leaf");
+            long total = 0;
+            for (SeriesSpec series : plan.pivot.series()) {
+                final Object value = combine(series.type(), bucketValues(buckets, series.id()));
+                rollupRow.addValue(PivotResult.Value.create(Collections.singletonList(series.id()), value, true, "row-inner"));
+                if (isDocumentCount(series)) {
+                    total = ((Number) value).longValue();
+                }
+            }
+            return builder.addRow(rollupRow.build()).total(total).build();
+        }
+    }
+
+    // the rollup values of the time bucket rows, which cover all other row and column groups within the bucket
+    private static List<Number> bucketValues(NavigableMap<Long, List<PivotResult.Row>> buckets, String seriesId) {
+        final List<Number> values = new ArrayList<>();
+        for (List<PivotResult.Row> rows : buckets.values()) {
+            for (PivotResult.Row row : rows) {
+                if (row.key().size() != 1) {
+                    continue;
+                }
+                for (PivotResult.Value value : row.values()) {
+                    if (value.rollup() && value.key().size() == 1 && seriesId.equals(value.key().get(0))
+                            && value.value() instanceof Number) {
+                        values.add((Number) value.value());
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private static Object combine(String seriesType, List<Number> values) {
+        switch (seriesType) {
+            case Count.NAME:
+                return values.stream().mapToLong(Number::longValue).sum();
+            case Min.NAME:
+                return values.stream().mapToDouble(Number::doubleValue).min().orElse(Double.POSITIVE_INFINITY);
+            case Max.NAME:
+                return values.stream().mapToDouble(Number::doubleValue).max().orElse(Double.NEGATIVE_INFINITY);
+            default:
+                return values.stream().mapToDouble(Number::doubleValue).sum();
+        }
+    }
+}
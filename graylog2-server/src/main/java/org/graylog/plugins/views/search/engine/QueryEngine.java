@@ -16,7 +16,6 @@
  */
 package org.graylog.plugins.views.search.engine;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.graylog.plugins.views.search.Query;
 import org.graylog.plugins.views.search.QueryMetadata;
 import org.graylog.plugins.views.search.QueryMetadataDecorator;
@@ -34,31 +33,34 @@ import javax.inject.Singleton;
 import java.util.Collection;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
-import static org.apache.commons.lang3.StringUtils.defaultIfEmpty;
-
 @Singleton
 public class QueryEngine {
     private static final Logger LOG = LoggerFactory.getLogger(QueryEngine.class);
 
     private final Set<QueryMetadataDecorator> queryMetadataDecorators;
     private final QueryParser queryParser;
-
-    // TODO proper thread pool with tunable settings
-    private final Executor queryPool = Executors.newFixedThreadPool(4, new ThreadFactoryBuilder().setNameFormat("query-engine-%d").build());
+    private final QueryResultCache queryResultCache;
+    private final IncrementalPivots incrementalPivots;
+    private final QueryExecutionPool queryPool;
     private final QueryBackend<? extends GeneratedQueryContext> backend;
 
     @Inject
     public QueryEngine(QueryBackend<? extends GeneratedQueryContext> backend,
                        Set<QueryMetadataDecorator> queryMetadataDecorators,
-                       QueryParser queryParser) {
+                       QueryParser queryParser,
+                       QueryResultCache queryResultCache,
+                       IncrementalPivots incrementalPivots,
+                       QueryExecutionPool queryPool) {
         this.backend = backend;
         this.queryMetadataDecorators = queryMetadataDecorators;
         this.queryParser = queryParser;
+        this.queryResultCache = queryResultCache;
+        this.incrementalPivots = incrementalPivots;
+        this.queryPool = queryPool;
     }
 
     public QueryMetadata parse(Search search, Query query) {
@@ -76,15 +78,20 @@ public class QueryEngine {
                 .filter(query -> !isQueryWithError(validationErrors, query))
                 .collect(Collectors.toSet());
 
-        validQueries.forEach(query -> searchJob.addQueryResultFuture(query.id(),
+        validQueries.forEach(query -> {
+            final CompletableFuture<QueryResult> execution = queryPool.submit(searchJob.getOwner(), query, () -> prepareAndRun(searchJob, query, validationErrors));
+            searchJob.addQueryExecution(query.id(), execution);
+            searchJob.addQueryResultFuture(query.id(),
                 // generate and run each query, making sure we never let an exception escape
                 // if need be we default to an empty result with a failed state and the wrapped exception
-                CompletableFuture.supplyAsync(() -> prepareAndRun(searchJob, query, validationErrors), queryPool)
+                execution
                         .handle((queryResult, throwable) -> {
                             if (throwable != null) {
                                 final Throwable cause = throwable.getCause();
                                 final SearchError error;
-                                if (cause instanceof SearchException) {
+                                if (throwable instanceof CancellationException) {
+                                    error = new QueryError(query, "Query was cancelled");
+                                } else if (cause instanceof SearchException) {
                                     error = ((SearchException) cause).error();
                                 } else {
                                     error = new QueryError(query, cause);
@@ -94,25 +101,30 @@ public class QueryEngine {
                                 return QueryResult.failedQueryWithError(query, error);
                             }
                             return queryResult;
-                        })
-        ));
-
-        validQueries.forEach(query -> {
-            final CompletableFuture<QueryResult> queryResultFuture = searchJob.getQueryResultFuture(query.id());
-            if (!queryResultFuture.isDone()) {
-                // this is not going to throw an exception, because we will always replace it with a placeholder "FAILED" result above
-                final QueryResult result = queryResultFuture.join();
-
-            } else {
-                LOG.debug("[{}] Not generating query for query {}", defaultIfEmpty(query.id(), "root"), query);
-            }
+                        }));
         });
 
+        // callers wait for the result future of the sealed job with their own timeout and cancel the job when it expires
         LOG.debug("Search job {} executing", searchJob.getId());
         return searchJob.seal();
     }
 
     private QueryResult prepareAndRun(SearchJob searchJob, Query query, Set<SearchError> validationErrors) {
+        // identical queries of other search jobs share their results, the cache hands us the query it expects us to run
+        return queryResultCache.get(query, cacheableQuery -> runIncrementally(searchJob, cacheableQuery, validationErrors));
+    }
+
+    private QueryResult runIncrementally(SearchJob searchJob, Query query, Set<SearchError> validationErrors) {
+        // pivots which have been run before for the same time window length only query the new tail of the window
+        final IncrementalPivots.Execution execution = incrementalPivots.prepare(query);
+        final QueryResult result = run(searchJob, execution.query(), validationErrors);
+        return execution.complete(result).orElseGet(() -> {
+            LOG.debug("[{}] Unable to merge incremental pivot results, running the full query", query.id());
+            return run(searchJob, query, validationErrors);
+        });
+    }
+
+    private QueryResult run(SearchJob searchJob, Query query, Set<SearchError> validationErrors) {
         LOG.debug("[{}] Using {} to generate query", query.id(), backend);
         // with all the results done, we can execute the current query and eventually complete our own result
         // if any of this throws an exception, the handle in #execute will convert it to an error and return a "failed" result instead
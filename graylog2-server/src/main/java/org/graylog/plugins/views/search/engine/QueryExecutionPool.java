@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.elasticsearch.IndexLookup;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.graylog2.shared.metrics.MetricUtils.safelyRegister;
+
+/**
+ * Runs the queries of the {@link QueryEngine} on a fixed number of threads.
+ * <p>
+ * Queries are put into one of two lanes: heavy queries, which span a long time range or many indices, and all other,
+ * interactive queries. Interactive queries are run first and heavy queries never occupy more than
+ * {@code views_query_engine_heavy_threads} threads, so a few expensive searches cannot block all dashboards of a
+ * node. A heavy query which has been queued for longer than {@code views_query_engine_heavy_max_wait} is run before
+ * the interactive ones, so a steady stream of interactive queries cannot starve heavy queries. Within each lane the
+ * queued queries of different users are taken in turns.
+ * <p>
+ * Cancelling a returned future removes a queued query or interrupts the thread running it, unless the running query
+ * is shared with other callers (see {@link #setInterruptGuard(BooleanSupplier)}).
+ */
+@Singleton
+public class QueryExecutionPool {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryExecutionPool.class);
+    private static final ThreadLocal<Task> CURRENT_TASK = new ThreadLocal<>();
+
+    private final IndexLookup indexLookup;
+    private final int maximumHeavyThreads;
+    private final Duration heavyTimeRange;
+    private final int heavyIndexCount;
+    private final long heavyMaxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queryAvailable = lock.newCondition();
+    private final Lane interactive;
+    private final Lane heavy;
+    // guarded by lock
+    private int runningQueries = 0;
+    // guarded by lock
+    private int runningHeavyQueries = 0;
+
+    @Inject
+    public QueryExecutionPool(@Named("views_query_engine_threads") int threads,
+                              @Named("views_query_engine_heavy_threads") int heavyThreads,
+                              @Named("views_query_engine_heavy_time_range") Duration heavyTimeRange,
+                              @Named("views_query_engine_heavy_index_count") int heavyIndexCount,
+                              @Named("views_query_engine_heavy_max_wait") Duration heavyMaxWait,
+                              IndexLookup indexLookup,
+                              MetricRegistry metricRegistry) {
+        this.indexLookup = indexLookup;
+        this.maximumHeavyThreads = Math.max(1, Math.min(heavyThreads, threads));
+        this.heavyTimeRange = heavyTimeRange;
+        this.heavyIndexCount = heavyIndexCount;
+        this.heavyMaxWaitNanos = TimeUnit.MILLISECONDS.toNanos(heavyMaxWait.getMillis());
+        this.interactive = new Lane(metricRegistry.timer(name(QueryExecutionPool.class, "interactive", "waitTime")));
+        this.heavy = new Lane(metricRegistry.timer(name(QueryExecutionPool.class, "heavy", "waitTime")));
+
+        safelyRegister(metricRegistry, name(QueryExecutionPool.class, "interactive", "queued"), (Gauge<Integer>) () -> locked(interactive::size));
+        safelyRegister(metricRegistry, name(QueryExecutionPool.class, "heavy", "queued"), (Gauge<Integer>) () -> locked(heavy::size));
+        safelyRegister(metricRegistry, name(QueryExecutionPool.class, "running"), (Gauge<Integer>) () -> locked(() -> runningQueries));
+
+        final ExecutorService workers = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("query-engine-%d").build());
+        for (int i = 0; i < threads; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Queues the given query.
+     *
+     * @param owner    the user the query is run for, queries of different users are run in turns
+     * @param query    the query, used to estimate its cost
+     * @param supplier runs the query
+     * @return the future result, cancelling it aborts the query
+     */
+    public CompletableFuture<QueryResult> submit(String owner, Query query, Supplier<QueryResult> supplier) {
+        final boolean isHeavy = isHeavy(query);
+        LOG.debug("[{}] Queueing {} query of {}", query.id(), isHeavy ? "heavy" : "interactive", owner);
+        final Task task = new Task(String.valueOf(owner), isHeavy ? heavy : interactive, supplier);
+        lock.lock();
+        try {
+            task.lane.add(task);
+            queryAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return task;
+    }
+
+    /**
+     * Lets the query running on the current thread decide whether cancelling its task may interrupt it, e.g. because
+     * other callers are still waiting for its result. The guard is consulted once, when the task is cancelled, and
+     * may be reset by passing {@code null}. Has no effect on threads which are not part of a pool.
+     */
+    static void setInterruptGuard(@Nullable BooleanSupplier mayInterrupt) {
+        final Task task = CURRENT_TASK.get();
+        if (task != null) {
+            task.interruptGuard = mayInterrupt;
+        }
+    }
+
+    @VisibleForTesting
+    boolean isHeavy(Query query) {
+        // indices are collected over all search types, the query as a whole counts
+        final Set<String> indices = new HashSet<>();
+        if (query.searchTypes().isEmpty()) {
+            return isHeavy(query.timerange(), query.usedStreamIds(), indices);
+        }
+        for (SearchType searchType : query.searchTypes()) {
+            if (isHeavy(query.effectiveTimeRange(searchType), query.effectiveStreams(searchType), indices)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isHeavy(TimeRange timeRange, Set<String> streamIds, Set<String> indices) {
+        if (timeRange.getFrom() == null || timeRange.getTo() == null) {
+            return false;
+        }
+        if (timeRange.getTo().getMillis() - timeRange.getFrom().getMillis() > heavyTimeRange.getMillis()) {
+            return true;
+        }
+        indices.addAll(indexLookup.indexNamesForStreamsInTimeRange(streamIds, timeRange));
+        return indices.size() > heavyIndexCount;
+    }
+
+    private void work() {
+        while (true) {
+            final Task task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                // a cancellation which arrived after its query finished
+                continue;
+            }
+            CURRENT_TASK.set(task);
+            try {
+                task.run();
+            } finally {
+                CURRENT_TASK.remove();
+                release(task);
+            }
+        }
+    }
+
+    private Task take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                Task task = null;
+                if (runningHeavyQueries < maximumHeavyThreads) {
+                    final Task nextHeavy = heavy.peek();
+                    if (nextHeavy != null && System.nanoTime() - nextHeavy.queuedAt >= heavyMaxWaitNanos) {
+                        task = heavy.poll();
+                    }
+                }
+                if (task == null) {
+                    task = interactive.poll();
+                }
+                if (task == null && runningHeavyQueries < maximumHeavyThreads) {
+                    task = heavy.poll();
+                }
+                if (task != null) {
+                    task.runner = Thread.currentThread();
+                    runningQueries++;
+                    if (task.lane == heavy) {
+                        runningHeavyQueries++;
+                    }
+                    return task;
+                }
+                queryAvailable.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(Task task) {
+        lock.lock();
+        try {
+            task.runner = null;
+            runningQueries--;
+            if (task.lane == heavy) {
+                runningHeavyQueries--;
+                // a heavy query might have been waiting for a free slot
+                queryAvailable.signal();
+            }
+            // cancellations only interrupt while the query is running, clear the flag before taking the next one
+            Thread.interrupted();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private <T> T locked(Supplier<T> supplier) {
+        lock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class Task extends CompletableFuture<QueryResult> {
+        private final String owner;
+        private final Lane lane;
+        private final Supplier<QueryResult> supplier;
+        private final long queuedAt = System.nanoTime();
+        // guarded by lock
+        private Thread runner;
+        private volatile BooleanSupplier interruptGuard;
+
+        private Task(String owner, Lane lane, Supplier<QueryResult> supplier) {
+            this.owner = owner;
+            this.lane = lane;
+            this.supplier = supplier;
+        }
+
+        private void run() {
+            lane.waitTime.update(System.nanoTime() - queuedAt, TimeUnit.NANOSECONDS);
+            if (isDone()) {
+                return;
+            }
+            try {
+                complete(supplier.get());
+            } catch (Throwable t) {
+                // same as CompletableFuture#supplyAsync, callers unwrap the cause
+                completeExceptionally(new CompletionException(t));
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            final boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                lock.lock();
+                try {
+                    if (!lane.remove(this) && runner != null && mayInterruptIfRunning && mayInterrupt()) {
+                        // the backends abort their requests when the thread waiting for them is interrupted
+                        runner.interrupt();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return cancelled;
+        }
+
+        private boolean mayInterrupt() {
+            final BooleanSupplier guard = interruptGuard;
+            return guard == null || guard.getAsBoolean();
+        }
+    }
+
+    // not thread-safe, guarded by the lock of the pool
+    private static class Lane {
+        private final Map<String, Deque<Task>> queuesByOwner = new LinkedHashMap<>();
+        private final Timer waitTime;
+        private int size = 0;
+
+        private Lane(Timer waitTime) {
+            this.waitTime = waitTime;
+        }
+
+        void add(Task task) {
+            queuesByOwner.computeIfAbsent(task.owner, owner -> new ArrayDeque<>()).add(task);
+            size++;
+        }
+
+        /**
+         * Takes the next query of the owner who waited the longest, the owner is moved to the end of the line.
+         */
+        Task poll() {
+            final Iterator<Map.Entry<String, Deque<Task>>> it = queuesByOwner.entrySet().iterator();
+            if (!it.hasNext()) {
+                return null;
+            }
+            final Map.Entry<String, Deque<Task>> next = it.next();
+            final Task task = next.getValue().poll();
+            it.remove();
+            if (!next.getValue().isEmpty()) {
+                queuesByOwner.put(next.getKey(), next.getValue());
+            }
+            size--;
+            return task;
+        }
+
+        /**
+         * Returns the query {@link #poll()} would take next without removing it.
+         */
+        Task peek() {
+            final Iterator<Deque<Task>> it = queuesByOwner.values().iterator();
+            return it.hasNext() ? it.next().peek() : null;
+        }
+
+        boolean remove(Task task) {
+            final Deque<Task> queue = queuesByOwner.get(task.owner);
+            if (queue == null || !queue.remove(task)) {
+                return false;
+            }
+            if (queue.isEmpty()) {
+                queuesByOwner.remove(task.owner);
+            }
+            size--;
+            return true;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.graylog.plugins.views.search.GlobalOverride;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
+import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.graylog2.shared.metrics.MetricUtils.safelyRegister;
+
+/**
+ * Node-local cache for the results of identical queries, e.g. of a dashboard which is shown on many screens.
+ * <p>
+ * The cache key is the normalized query itself, which contains the query string, filters, streams and search types.
+ * Relative time ranges are turned into absolute time ranges whose end is rounded down to the configured granularity,
+ * so all requests within the same time slot share one result. Concurrent requests for the same query wait for the
+ * first one instead of sending their own request to the search backend. The query is only aborted when all callers
+ * waiting for it have been cancelled.
+ * <p>
+ * Failed results and results with errors are never cached. Queries with time ranges which cannot be expressed as
+ * absolute time ranges (e.g. "all messages") are not cached either.
+ */
+@Singleton
+public class QueryResultCache {
+    private final boolean enabled;
+    private final long granularityMillis;
+    private final Cache<Query, Entry> cache;
+    private final Meter hits;
+    private final Meter misses;
+
+    @Inject
+    public QueryResultCache(@Named("views_query_result_cache_size") int maximumSize,
+                            @Named("views_query_result_cache_ttl") Duration ttl,
+                            @Named("views_query_result_cache_time_granularity") Duration timeGranularity,
+                            MetricRegistry metricRegistry) {
+        this.enabled = maximumSize > 0 && ttl.getMillis() > 0;
+        this.granularityMillis = Math.max(1L, timeGranularity.getMillis());
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(0, maximumSize))
+                .expireAfterWrite(ttl.getMillis(), TimeUnit.MILLISECONDS)
+                .build();
+        this.hits = metricRegistry.meter(name(QueryResultCache.class, "hits"));
+        this.misses = metricRegistry.meter(name(QueryResultCache.class, "misses"));
+        safelyRegister(metricRegistry, name(QueryResultCache.class, "size"), (Gauge<Long>) cache::size);
+    }
+
+    /**
+     * Returns the cached result for the given query or runs it with the given function.
+     * <p>
+     * The function receives the query with the time ranges which were used for the cache key and has to run exactly
+     * this query, otherwise cached results wouldn't match their key.
+     */
+    public QueryResult get(Query query, Function<Query, QueryResult> runQuery) {
+        final Query key = enabled ? cacheKey(query, Tools.nowUTC()) : null;
+        if (key == null) {
+            return runQuery.apply(query);
+        }
+
+        final ConcurrentMap<Query, Entry> entries = cache.asMap();
+        while (true) {
+            final Entry entry = new Entry(Thread.currentThread());
+            final Entry existing = entries.putIfAbsent(key, entry);
+            if (existing == null) {
+                misses.mark();
+                return run(key, entry, runQuery);
+            }
+            if (existing.join()) {
+                hits.mark();
+                return await(key, existing);
+            }
+            // everybody else stopped waiting and the query is being aborted, start over
+            entries.remove(key, existing);
+        }
+    }
+
+    private QueryResult run(Query key, Entry entry, Function<Query, QueryResult> runQuery) {
+        // the query must keep running if our own task is cancelled while others still wait for it
+        QueryExecutionPool.setInterruptGuard(() -> leave(key, entry));
+        try {
+            final QueryResult result = runQuery.apply(key);
+            if (result.state() == QueryResult.State.FAILED || (result.errors() != null && !result.errors().isEmpty())) {
+                cache.asMap().remove(key, entry);
+            }
+            entry.result.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            cache.asMap().remove(key, entry);
+            entry.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            QueryExecutionPool.setInterruptGuard(null);
+            entry.finished();
+        }
+    }
+
+    private QueryResult await(Query key, Entry entry) {
+        try {
+            return entry.result.get();
+        } catch (InterruptedException e) {
+            // our own task has been cancelled, stop waiting and abort the query if nobody else waits for it
+            if (leave(key, entry)) {
+                entry.interruptRunner();
+            }
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Stopped waiting for the result of an identical query");
+        } catch (ExecutionException e) {
+            // rethrows the failure of the query we have been waiting for, as if we had run it ourselves
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    /**
+     * Removes a waiting caller from the entry and returns whether its query should be aborted because nobody waits
+     * for it anymore.
+     */
+    private boolean leave(Query key, Entry entry) {
+        if (!entry.leave()) {
+            return false;
+        }
+        cache.asMap().remove(key, entry);
+        return true;
+    }
+
+    // the result of a query and the callers waiting for it, including the one running it
+    private static class Entry {
+        private final CompletableFuture<QueryResult> result = new CompletableFuture<>();
+        // guarded by this
+        private int waiters = 1;
+        // guarded by this
+        private Thread runner;
+
+        private Entry(Thread runner) {
+            this.runner = runner;
+        }
+
+        synchronized boolean join() {
+            if (waiters == 0 && !result.isDone()) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        synchronized boolean leave() {
+            return --waiters == 0 && !result.isDone();
+        }
+
+        synchronized void interruptRunner() {
+            if (runner != null && !result.isDone()) {
+                runner.interrupt();
+            }
+        }
+
+        synchronized void finished() {
+            runner = null;
+        }
+    }
+
+    @VisibleForTesting
+    @Nullable
+    Query cacheKey(Query query, DateTime now) {
+        final DateTime roundedNow = new DateTime(now.getMillis() - Math.floorMod(now.getMillis(), granularityMillis), now.getZone());
+        final AbsoluteRange timeRange = toAbsoluteRange(query.timerange(), roundedNow);
+        if (timeRange == null) {
+            return null;
+        }
+        final Query.Builder builder = query.toBuilder().timerange(timeRange);
+
+        final Optional<GlobalOverride> globalOverride = query.globalOverride();
+        if (globalOverride.isPresent() && globalOverride.get().timerange().isPresent()) {
+            final AbsoluteRange overrideTimeRange = toAbsoluteRange(globalOverride.get().timerange().get(), roundedNow);
+            if (overrideTimeRange == null) {
+                return null;
+            }
+            builder.globalOverride(globalOverride.get().toBuilder().timerange(overrideTimeRange).build());
+        }
+
+        final Query key = builder.build();
+        for (SearchType searchType : key.searchTypes()) {
+            if (searchType.timerange().isPresent() && !(key.effectiveTimeRange(searchType) instanceof AbsoluteRange)) {
+                return null;
+            }
+        }
+        return key;
+    }
+
+    @Nullable
+    static AbsoluteRange toAbsoluteRange(TimeRange timeRange, DateTime now) {
+        if (timeRange instanceof AbsoluteRange) {
+            return (AbsoluteRange) timeRange;
+        }
+        if (timeRange instanceof RelativeRange) {
+            final RelativeRange relativeRange = (RelativeRange) timeRange;
+            if (relativeRange.isAllMessages()) {
+                return null;
+            }
+            if (relativeRange.range().isPresent()) {
+                return AbsoluteRange.create(now.minusSeconds(relativeRange.range().getAsInt()), now);
+            }
+            if (relativeRange.from().isPresent()) {
+                return AbsoluteRange.create(now.minusSeconds(relativeRange.from().getAsInt()),
+                        now.minusSeconds(relativeRange.to().orElse(0)));
+            }
+        }
+        return null;
+    }
+}
@@ -26,10 +26,12 @@ import org.graylog.plugins.views.search.engine.validation.SearchValidation;
 import org.graylog.plugins.views.search.errors.SearchError;
 import org.graylog.plugins.views.search.permissions.SearchUser;
 import org.graylog.plugins.views.search.rest.ExecutionState;
+import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotFoundException;
 import java.util.Set;
@@ -45,18 +47,24 @@ public class SearchExecutor {
     private final QueryEngine queryEngine;
     private final SearchValidation searchValidation;
     private final SearchNormalization searchNormalization;
+    private final Duration searchJobTimeout;
+    private final boolean cancelOnTimeout;
 
     @Inject
     public SearchExecutor(SearchDomain searchDomain,
                           SearchJobService searchJobService,
                           QueryEngine queryEngine,
                           SearchValidation searchValidation,
-                          SearchNormalization searchNormalization) {
+                          SearchNormalization searchNormalization,
+                          @Named("views_search_job_timeout") Duration searchJobTimeout,
+                          @Named("views_search_job_cancel_on_timeout") boolean cancelOnTimeout) {
         this.searchDomain = searchDomain;
         this.searchJobService = searchJobService;
         this.queryEngine = queryEngine;
         this.searchValidation = searchValidation;
         this.searchNormalization = searchNormalization;
+        this.searchJobTimeout = searchJobTimeout;
+        this.cancelOnTimeout = cancelOnTimeout;
     }
 
     public SearchJob execute(String searchId, SearchUser searchUser, ExecutionState executionState) {
@@ -81,11 +89,14 @@ public class SearchExecutor {
         validationErrors.forEach(searchJob::addError);
 
         try {
-            Uninterruptibles.getUninterruptibly(searchJob.getResultFuture(), 60000, TimeUnit.MILLISECONDS);
+            Uninterruptibles.getUninterruptibly(searchJob.getResultFuture(), searchJobTimeout.getMillis(), TimeUnit.MILLISECONDS);
         } catch (ExecutionException e) {
             LOG.error("Error executing search job <{}>", searchJob.getId(), e);
             throw new InternalServerErrorException("Error executing search job: " + e.getMessage(), e);
         } catch (TimeoutException e) {
+            if (cancelOnTimeout) {
+                searchJob.cancel();
+            }
             throw new InternalServerErrorException("Timeout while executing search job");
         } catch (Exception e) {
             LOG.error("Other error", e);
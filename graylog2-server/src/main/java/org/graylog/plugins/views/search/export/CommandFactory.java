@@ -43,7 +43,8 @@ public class CommandFactory {
                 .queryString(request.queryString())
                 .streams(request.streams())
                 .fieldsInOrder(request.fieldsInOrder())
-                .chunkSize(request.chunkSize());
+                .chunkSize(request.chunkSize())
+                .parallelism(request.parallelism());
 
         if (request.limit().isPresent()) {
             builder.limit(request.limit().getAsInt());
@@ -16,25 +16,55 @@
  */
 package org.graylog.plugins.views.search.export;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.inject.Inject;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 public class DecoratingMessagesExporter implements MessagesExporter {
+    private static final Logger LOG = LoggerFactory.getLogger(DecoratingMessagesExporter.class);
+
     private final ExportBackend backend;
     private final ChunkDecorator chunkDecorator;
+    private final Meter exportedMessages;
+    private final Timer exportDuration;
+    private final Histogram exportThroughput;
 
     @Inject
     public DecoratingMessagesExporter(
             ExportBackend backend,
-            ChunkDecorator chunkDecorator) {
+            ChunkDecorator chunkDecorator,
+            MetricRegistry metricRegistry) {
         this.backend = backend;
         this.chunkDecorator = chunkDecorator;
+        this.exportedMessages = metricRegistry.meter(name(MessagesExporter.class, "messages"));
+        this.exportDuration = metricRegistry.timer(name(MessagesExporter.class, "duration"));
+        this.exportThroughput = metricRegistry.histogram(name(MessagesExporter.class, "throughput"));
     }
 
     public void export(ExportMessagesCommand command, Consumer<SimpleMessageChunk> chunkForwarder) {
-        Consumer<SimpleMessageChunk> decoratedForwarder = chunk -> decorate(chunkForwarder, chunk, command);
+        final LongAdder exportedCount = new LongAdder();
+        Consumer<SimpleMessageChunk> decoratedForwarder = chunk -> {
+            exportedCount.add(chunk.size());
+            exportedMessages.mark(chunk.size());
+            decorate(chunkForwarder, chunk, command);
+        };
 
-        backend.run(command, decoratedForwarder);
+        final Timer.Context timer = exportDuration.time();
+        try {
+            backend.run(command, decoratedForwarder);
+        } finally {
+            report(command, exportedCount.sum(), timer.stop());
+        }
     }
 
     private void decorate(Consumer<SimpleMessageChunk> chunkForwarder, SimpleMessageChunk chunk, ExportMessagesCommand command) {
@@ -42,4 +72,11 @@ public class DecoratingMessagesExporter implements MessagesExporter {
 
         chunkForwarder.accept(decoratedChunk);
     }
+
+    private void report(ExportMessagesCommand command, long messageCount, long durationNanos) {
+        final long messagesPerSecond = durationNanos > 0 ? messageCount * TimeUnit.SECONDS.toNanos(1) / durationNanos : messageCount;
+        exportThroughput.update(messagesPerSecond);
+        LOG.info("Exported {} messages in {}ms ({} messages/s, parallelism {})",
+                messageCount, TimeUnit.NANOSECONDS.toMillis(durationNanos), messagesPerSecond, command.parallelism());
+    }
 }
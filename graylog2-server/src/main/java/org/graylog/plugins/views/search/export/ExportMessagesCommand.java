@@ -40,6 +40,8 @@ public abstract class ExportMessagesCommand {
     public static final LinkedHashSet<String> DEFAULT_FIELDS = linkedHashSetOf("timestamp", "source", "message");
     public static final int DEFAULT_CHUNK_SIZE = 1000;
     public static final DateTimeZone DEFAULT_TIME_ZONE = DateTimeZone.UTC;
+    public static final int DEFAULT_PARALLELISM = 1;
+    public static final int MAX_PARALLELISM = 16;
 
     public static AbsoluteRange defaultTimeRange() {
         try {
@@ -66,6 +68,12 @@ public abstract class ExportMessagesCommand {
 
     public abstract DateTimeZone timeZone();
 
+    /**
+     * Number of concurrent searches the export may be split into. Messages of a parallel export are not returned in
+     * timestamp order.
+     */
+    public abstract int parallelism();
+
     public static ExportMessagesCommand withDefaults() {
         return builder().build();
     }
@@ -102,6 +110,8 @@ public abstract class ExportMessagesCommand {
 
         public abstract Builder timeZone(DateTimeZone timeZone);
 
+        public abstract Builder parallelism(int parallelism);
+
         abstract ExportMessagesCommand autoBuild();
 
         public ExportMessagesCommand build() {
@@ -116,7 +126,8 @@ public abstract class ExportMessagesCommand {
                     .fieldsInOrder(DEFAULT_FIELDS)
                     .decorators(Collections.emptyList())
                     .chunkSize(DEFAULT_CHUNK_SIZE)
-                    .timeZone(DEFAULT_TIME_ZONE);
+                    .timeZone(DEFAULT_TIME_ZONE)
+                    .parallelism(DEFAULT_PARALLELISM);
         }
     }
 }
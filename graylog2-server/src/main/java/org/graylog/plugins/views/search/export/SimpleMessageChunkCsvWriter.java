@@ -33,10 +33,6 @@ import java.io.OutputStreamWriter;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.List;
-
-import static java.util.stream.Collectors.toList;
 
 @Provider
 @Produces(MoreMediaTypes.TEXT_CSV)
@@ -79,19 +75,15 @@ public class SimpleMessageChunkCsvWriter extends SimpleMessageChunkWriter {
     }
 
     private void writeValues(SimpleMessageChunk chunk, CSVWriter csvWriter) {
-        List<String[]> valueMatrix = valuesAsStringsInOrder(chunk);
-        csvWriter.writeAll(valueMatrix);
-    }
-
-    private List<String[]> valuesAsStringsInOrder(SimpleMessageChunk simpleMessageChunk) {
-        return Arrays.stream(simpleMessageChunk.getAllValuesInOrder())
-                .map(this::toStringArray)
-                .collect(toList());
-    }
-
-    private String[] toStringArray(Object[] objects) {
-        return Arrays.stream(objects)
-                .map(o -> o == null ? null : o.toString())
-                .toArray(String[]::new);
+        // the CSV writer is done with a row once writeNext returns, so a single row buffer is enough for the whole chunk
+        final String[] row = new String[chunk.fieldsInOrder().size()];
+        for (SimpleMessage message : chunk.messages()) {
+            int column = 0;
+            for (String field : chunk.fieldsInOrder()) {
+                final Object value = message.valueFor(field);
+                row[column++] = value == null ? null : value.toString();
+            }
+            csvWriter.writeNext(row);
+        }
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.export;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+import org.graylog2.rest.MoreMediaTypes;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Writes every message of a chunk as one JSON object per line, containing the requested fields in order.
+ * <p>
+ * Messages are streamed straight into the response, responses are gzip compressed by the HTTP server if the client
+ * accepts it and {@code http_enable_gzip} is enabled.
+ */
+@Provider
+@Produces(MoreMediaTypes.APPLICATION_NDJSON)
+public class SimpleMessageChunkNdjsonWriter extends SimpleMessageChunkWriter {
+    private static final JsonFactory JSON_FACTORY = new MappingJsonFactory()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return typesMatch(type, genericType) && MoreMediaTypes.APPLICATION_NDJSON_TYPE.isCompatible(mediaType);
+    }
+
+    @Override
+    public void writeTo(
+            SimpleMessageChunk chunk,
+            Class<?> type, Type genericType,
+            Annotation[] annotations,
+            MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders,
+            OutputStream entityStream) throws IOException, WebApplicationException {
+
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(entityStream)) {
+            generator.setRootValueSeparator(null);
+            for (SimpleMessage message : chunk.messages()) {
+                writeMessage(generator, message, chunk);
+            }
+        }
+    }
+
+    private void writeMessage(JsonGenerator generator, SimpleMessage message, SimpleMessageChunk chunk) throws IOException {
+        generator.writeStartObject();
+        for (String field : chunk.fieldsInOrder()) {
+            final Object value = message.valueFor(field);
+            if (value != null) {
+                generator.writeFieldName(field);
+                generator.writeObject(value);
+            }
+        }
+        generator.writeEndObject();
+        generator.writeRaw('\n');
+    }
+}
@@ -23,6 +23,7 @@ import com.github.joschi.jadconfig.ValidatorMethod;
 import com.github.joschi.jadconfig.converters.StringSetConverter;
 import com.github.joschi.jadconfig.converters.TrimmedStringSetConverter;
 import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
 import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import com.github.joschi.jadconfig.validators.PositiveLongValidator;
@@ -36,6 +37,7 @@ import org.graylog2.plugin.BaseConfiguration;
 import org.graylog2.security.realm.RootAccountRealm;
 import org.graylog2.utilities.IPSubnetConverter;
 import org.graylog2.utilities.IpSubnet;
+import org.graylog2.utilities.regex.RegexEngineType;
 import org.joda.time.DateTimeZone;
 
 import java.io.File;
@@ -72,6 +74,12 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "output_flush_interval", required = true, validators = PositiveIntegerValidator.class)
     private int outputFlushInterval = 1;
 
+    @Parameter(value = "output_batch_size_bytes")
+    private Size outputBatchSizeBytes = Size.bytes(0L);
+
+    @Parameter(value = "output_bulk_max_in_flight_requests")
+    private int outputBulkMaxInFlightRequests = 0;
+
     @Parameter(value = "outputbuffer_processors", required = true, validators = PositiveIntegerValidator.class)
     private int outputBufferProcessors = 3;
 
@@ -84,6 +92,9 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "outputbuffer_processor_keep_alive_time", validators = PositiveIntegerValidator.class)
     private int outputBufferProcessorKeepAliveTime = 5000;
 
+    @Parameter(value = "outputbuffer_batched_dispatch")
+    private boolean outputBufferBatchedDispatch = false;
+
     @Parameter(value = "node_id_file", validators = NodeIdFileValidator.class)
     private String nodeIdFile = "/etc/graylog/server/node-id";
 
@@ -217,6 +228,12 @@ public class Configuration extends BaseConfiguration {
     @Parameter(value = "lock_service_lock_ttl", converter = JavaDurationConverter.class)
     private java.time.Duration lockServiceLockTTL = MongoLockService.MIN_LOCK_TTL;
 
+    @Parameter(value = "regex_engine", converter = RegexEngineType.Converter.class)
+    private RegexEngineType regexEngine = RegexEngineType.JAVA;
+
+    @Parameter(value = "processing_timer_sample_rate", validators = PositiveIntegerValidator.class)
+    private int processingTimerSampleRate = 1;
+
     /**
      * @deprecated Use {@link #isLeader()} instead.
      */
@@ -258,6 +275,14 @@ public class Configuration extends BaseConfiguration {
         return lockServiceLockTTL;
     }
 
+    public RegexEngineType getRegexEngine() {
+        return regexEngine;
+    }
+
+    public int getProcessingTimerSampleRate() {
+        return processingTimerSampleRate;
+    }
+
     public java.time.Duration getLeaderElectionLockPollingInterval() {
         return leaderElectionLockPollingInterval;
     }
@@ -274,6 +299,14 @@ public class Configuration extends BaseConfiguration {
         return outputFlushInterval;
     }
 
+    public Size getOutputBatchSizeBytes() {
+        return outputBatchSizeBytes;
+    }
+
+    public int getOutputBulkMaxInFlightRequests() {
+        return outputBulkMaxInFlightRequests;
+    }
+
     public int getOutputBufferProcessors() {
         return outputBufferProcessors;
     }
@@ -351,6 +384,10 @@ public class Configuration extends BaseConfiguration {
         return streamProcessingMaxFaults;
     }
 
+    public boolean isOutputBufferBatchedDispatch() {
+        return outputBufferBatchedDispatch;
+    }
+
     public long getOutputModuleTimeout() {
         return outputModuleTimeout;
     }
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.bindings.providers;
+
+import org.graylog2.utilities.regex.RegexEngine;
+import org.graylog2.utilities.regex.RegexEngineType;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+
+public class RegexEngineProvider implements Provider<RegexEngine> {
+    private final RegexEngine regexEngine;
+
+    @Inject
+    public RegexEngineProvider(@Named("regex_engine") RegexEngineType regexEngineType) {
+        this.regexEngine = regexEngineType.create();
+    }
+
+    @Override
+    public RegexEngine get() {
+        return regexEngine;
+    }
+}
@@ -24,6 +24,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.lmax.disruptor.WaitStrategy;
 import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.ProducerType;
+import org.graylog2.buffers.processors.BatchedOutputBufferProcessor;
 import org.graylog2.buffers.processors.OutputBufferProcessor;
 import org.graylog2.plugin.GlobalMetricNames;
 import org.graylog2.plugin.Message;
@@ -52,7 +53,9 @@ public class OutputBuffer extends Buffer {
     @Inject
     public OutputBuffer(MetricRegistry metricRegistry,
                         Provider<OutputBufferProcessor> processorProvider,
+                        BatchedOutputBufferProcessor.Factory batchedProcessorFactory,
                         @Named("outputbuffer_processors") int processorCount,
+                        @Named("outputbuffer_batched_dispatch") boolean batchedDispatch,
                         @Named("ring_size") int ringSize,
                         @Named("processor_wait_strategy") String waitStrategyName) {
         this.ringBufferSize = ringSize;
@@ -80,13 +83,24 @@ public class OutputBuffer extends Buffer {
         LOG.info("Initialized OutputBuffer with ring size <{}> and wait strategy <{}>.",
                 ringBufferSize, waitStrategy.getClass().getSimpleName());
 
-        final OutputBufferProcessor[] processors = new OutputBufferProcessor[processorCount];
+        if (batchedDispatch) {
+            // every handler sees all events and only processes its share, this gives us the end of batch signal
+            final BatchedOutputBufferProcessor[] processors = new BatchedOutputBufferProcessor[processorCount];
 
-        for (int i = 0; i < processorCount; i++) {
-            processors[i] = processorProvider.get();
-        }
+            for (int i = 0; i < processorCount; i++) {
+                processors[i] = batchedProcessorFactory.create(i, processorCount);
+            }
+
+            disruptor.handleEventsWith(processors);
+        } else {
+            final OutputBufferProcessor[] processors = new OutputBufferProcessor[processorCount];
 
-        disruptor.handleEventsWithWorkerPool(processors);
+            for (int i = 0; i < processorCount; i++) {
+                processors[i] = processorProvider.get();
+            }
+
+            disruptor.handleEventsWithWorkerPool(processors);
+        }
 
         ringBuffer = disruptor.start();
     }
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.assistedinject.Assisted;
+import com.google.inject.assistedinject.AssistedInject;
+import com.lmax.disruptor.EventHandler;
+import org.graylog2.Configuration;
+import org.graylog2.outputs.DefaultMessageOutput;
+import org.graylog2.outputs.OutputRouter;
+import org.graylog2.plugin.GlobalMetricNames;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Output buffer processor which hands the messages of a whole Disruptor batch to every output with a single
+ * {@link MessageOutput#write(List)} call, instead of submitting one task per message and output.
+ * <p>
+ * All processors see every event, each of them only handles the sequences for its {@code ordinal}. The collected
+ * messages are written once the Disruptor signals the end of a batch or the output batch size is reached.
+ * </p>
+ * <p>
+ * The default output is written directly on the processor thread, so it exerts back pressure like in
+ * {@link OutputBufferProcessor}. The stream outputs are written on a separate thread pool at the same time and are
+ * subject to the output module timeout.
+ * </p>
+ */
+public class BatchedOutputBufferProcessor implements EventHandler<MessageEvent> {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedOutputBufferProcessor.class);
+
+    public interface Factory {
+        BatchedOutputBufferProcessor create(@Assisted("ordinal") long ordinal,
+                                            @Assisted("numberOfConsumers") long numberOfConsumers);
+    }
+
+    private final ExecutorService executor;
+
+    private final Configuration configuration;
+    private final ServerStatus serverStatus;
+
+    private final Meter incomingMessages;
+    private final Counter outputThroughput;
+    private final Timer processTime;
+
+    private final OutputRouter outputRouter;
+    private final MessageOutput defaultMessageOutput;
+
+    private final long ordinal;
+    private final long numberOfConsumers;
+    private final int maxBatchSize;
+
+    // only accessed by the processor thread, new lists are used for every batch because outputs might keep them
+    private List<Message> batch = new ArrayList<>();
+    private Map<MessageOutput, List<Message>> streamOutputBatches = new LinkedHashMap<>();
+
+    @AssistedInject
+    public BatchedOutputBufferProcessor(Configuration configuration,
+                                        MetricRegistry metricRegistry,
+                                        ServerStatus serverStatus,
+                                        OutputRouter outputRouter,
+                                        @DefaultMessageOutput MessageOutput defaultMessageOutput,
+                                        @Assisted("ordinal") long ordinal,
+                                        @Assisted("numberOfConsumers") long numberOfConsumers) {
+        this.configuration = configuration;
+        this.serverStatus = serverStatus;
+        this.outputRouter = outputRouter;
+        this.defaultMessageOutput = defaultMessageOutput;
+        this.ordinal = ordinal;
+        this.numberOfConsumers = numberOfConsumers;
+        this.maxBatchSize = configuration.getOutputBatchSize();
+
+        final String nameFormat = "outputbuffer-processor-stream-output-executor-%d";
+        final int corePoolSize = configuration.getOutputBufferProcessorThreadsCorePoolSize();
+        final int maxPoolSize = configuration.getOutputBufferProcessorThreadsMaxPoolSize();
+        final int keepAliveTime = configuration.getOutputBufferProcessorKeepAliveTime();
+        this.executor = executorService(metricRegistry, nameFormat, corePoolSize, maxPoolSize, keepAliveTime);
+
+        // shares the incoming messages meter with the OutputBufferProcessor, only one of them is in use
+        this.incomingMessages = metricRegistry.meter(name(OutputBufferProcessor.class, "incomingMessages"));
+        this.outputThroughput = metricRegistry.counter(GlobalMetricNames.OUTPUT_THROUGHPUT);
+        this.processTime = metricRegistry.timer(name(BatchedOutputBufferProcessor.class, "processTime"));
+    }
+
+    private ExecutorService executorService(final MetricRegistry metricRegistry, final String nameFormat,
+                                            final int corePoolSize, final int maxPoolSize, final int keepAliveTime) {
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(nameFormat).build();
+        // the queue is bounded, so stream outputs which don't keep up make the pool grow up to the max pool size and
+        // batches beyond that are rejected instead of piling up in memory
+        return new InstrumentedExecutorService(
+                new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, TimeUnit.MILLISECONDS,
+                        new LinkedBlockingQueue<>(maxPoolSize), threadFactory),
+                metricRegistry,
+                name(this.getClass(), "executor-service"));
+    }
+
+    @Override
+    public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if (sequence % numberOfConsumers == ordinal) {
+            addMessage(event);
+        }
+
+        if (endOfBatch || batch.size() >= maxBatchSize) {
+            flush();
+        }
+    }
+
+    private void addMessage(MessageEvent event) {
+        incomingMessages.mark();
+
+        final Message msg = event.getMessage();
+        // the message is referenced by the batch from now on
+        event.clearMessages();
+        if (msg == null) {
+            LOG.debug("Skipping null message.");
+            return;
+        }
+        LOG.trace("Processing message <{}> from OutputBuffer.", msg.getId());
+
+        final Set<MessageOutput> messageOutputs = outputRouter.getStreamOutputsForMessage(msg);
+        msg.recordCounter(serverStatus, "matched-outputs", messageOutputs.size());
+
+        batch.add(msg);
+        for (final MessageOutput output : messageOutputs) {
+            streamOutputBatches.computeIfAbsent(output, o -> new ArrayList<>()).add(msg);
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        final List<Message> messages = batch;
+        final Map<MessageOutput, List<Message>> outputBatches = streamOutputBatches;
+        batch = new ArrayList<>(messages.size());
+        streamOutputBatches = new LinkedHashMap<>();
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(configuration.getOutputModuleTimeout());
+        final CountDownLatch streamOutputsDoneSignal = new CountDownLatch(outputBatches.size());
+        for (final Map.Entry<MessageOutput, List<Message>> entry : outputBatches.entrySet()) {
+            final MessageOutput output = entry.getKey();
+            final List<Message> outputMessages = Collections.unmodifiableList(entry.getValue());
+            try {
+                executor.execute(() -> {
+                    try {
+                        writeBatch(output, outputMessages);
+                    } finally {
+                        streamOutputsDoneSignal.countDown();
+                    }
+                });
+            } catch (Exception e) {
+                LOG.error("Could not write message batch to output [" + (output == null ? null : output.getClass()) + "].", e);
+                streamOutputsDoneSignal.countDown();
+            }
+        }
+
+        // the default output blocks the processor thread, this exerts the back pressure to the system
+        writeBatch(defaultMessageOutput, messages);
+
+        // Wait until all writer threads for stream outputs have finished or timeout is reached.
+        try {
+            if (!streamOutputsDoneSignal.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                LOG.warn("Timeout reached. Not waiting any longer for stream output writer threads to complete.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (final Message msg : messages) {
+            if (msg.hasRecordings()) {
+                LOG.debug("Message event trace: {}", msg.recordingsAsString());
+            }
+        }
+        outputThroughput.inc(messages.size());
+
+        LOG.debug("Wrote {} messages to all outputs. Finished handling.", messages.size());
+    }
+
+    private void writeBatch(final MessageOutput output, final List<Message> messages) {
+        if (output == null) {
+            LOG.error("Output was null!");
+            return;
+        }
+        if (!output.isRunning()) {
+            LOG.debug("Skipping stopped output {}", output.getClass().getName());
+            return;
+        }
+
+        LOG.debug("Writing {} messages to [{}].", messages.size(), output.getClass());
+        try (Timer.Context ignored = processTime.time()) {
+            output.write(messages);
+        } catch (Exception e) {
+            LOG.error("Error in output [" + output.getClass() + "].", e);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.graylog2.inputs.codecs.CodecsModule;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.journal.CodecConfigStore;
 import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.shared.bindings.ObjectMapperModule;
 import org.graylog2.shared.journal.Journal;
@@ -87,12 +88,12 @@ public class JournalDecode extends AbstractJournalCommand {
                 injector.getInstance(Key.get(new TypeLiteral<Map<String, Codec.Factory<? extends Codec>>>() {
                 }));
 
-        final Long readOffset = range.lowerEndpoint();
-        final long count = range.upperEndpoint() - range.lowerEndpoint() + 1;
-        final List<Journal.JournalReadEntry> entries = journal.read(readOffset,
-                count);
+        final CodecConfigStore codecConfigStore = injector.getInstance(CodecConfigStore.class);
+
+        // the offsets of a partitioned journal are interleaved, so the range has to be read from every partition
+        final List<Journal.JournalReadEntry> entries = journal.readRange(range.lowerEndpoint(), range.upperEndpoint());
         for (final Journal.JournalReadEntry entry : entries) {
-            final RawMessage raw = RawMessage.decode(entry.getPayload(), entry.getOffset());
+            final RawMessage raw = RawMessage.decode(entry.getPayload(), entry.getOffset(), codecConfigStore);
             if (raw == null) {
                 System.err.println(MessageFormatter.format("Journal entry at offset {} failed to decode",
                         entry.getOffset()));
@@ -50,15 +50,15 @@ public class JournalShow extends AbstractJournalCommand {
         sb.append("\t").append("Number of segments: ").append(numSegments).append("\n");
         sb.append("\t").append("Log start offset: ").append(startOffset).append("\n");
         sb.append("\t").append("Log end offset: ").append(lastOffset).append("\n");
-        sb.append("\t").append("Number of messages: ").append(lastOffset - startOffset + 1).append("\n");
+        sb.append("\t").append("Number of messages: ").append(numberOfMessages(journal)).append("\n");
         sb.append("\t").append("Committed read offset: ");
-        if (committedReadOffset == Long.MIN_VALUE) {
-            sb.append("nothing committed");
-        } else {
-            sb.append(committedReadOffset);
-        }
+        appendCommittedOffset(sb, committedReadOffset);
         sb.append("\n");
 
+        if (journal.getNumberOfPartitions() > 1) {
+            appendPartitionDetails(journal, sb);
+        }
+
         if (showSegmentDetails) {
             appendSegmentDetails(journal, sb);
         }
@@ -68,6 +68,34 @@ public class JournalShow extends AbstractJournalCommand {
         System.out.flush();
     }
 
+    private long numberOfMessages(LocalKafkaJournal journal) {
+        long numberOfMessages = 0;
+        for (int partition = 0; partition < journal.getNumberOfPartitions(); partition++) {
+            numberOfMessages += journal.getLogEndOffset(partition) - journal.getLogStartOffset(partition);
+        }
+        return numberOfMessages;
+    }
+
+    private void appendCommittedOffset(StringBuilder sb, long committedOffset) {
+        if (committedOffset == Long.MIN_VALUE) {
+            sb.append("nothing committed");
+        } else {
+            sb.append(committedOffset);
+        }
+    }
+
+    // the journal offsets of the partitions are interleaved, the offsets within each partition are easier to follow
+    private void appendPartitionDetails(LocalKafkaJournal journal, StringBuilder sb) {
+        for (int partition = 0; partition < journal.getNumberOfPartitions(); partition++) {
+            sb.append("\t\t").append("Partition ").append(partition).append("\n");
+            sb.append("\t\t\t").append("Log start offset: ").append(journal.getLogStartOffset(partition)).append("\n");
+            sb.append("\t\t\t").append("Log end offset: ").append(journal.getLogEndOffset(partition) - 1).append("\n");
+            sb.append("\t\t\t").append("Committed read offset: ");
+            appendCommittedOffset(sb, journal.getCommittedOffset(partition));
+            sb.append("\n");
+        }
+    }
+
     private void appendSegmentDetails(LocalKafkaJournal journal, StringBuilder sb) {
         final Iterable<LogSegment> segments = journal.getSegments();
         int i = 1;
@@ -42,6 +42,8 @@ public class JournalTruncate extends AbstractJournalCommand {
             }
         } catch (IllegalArgumentException e) {
             System.err.println("Illegal offset value " + offset);
+        } catch (IllegalStateException e) {
+            System.err.println(e.getMessage());
         }
     }
 }
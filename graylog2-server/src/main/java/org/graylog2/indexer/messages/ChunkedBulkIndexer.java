@@ -23,6 +23,8 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class ChunkedBulkIndexer {
     private static final Logger LOG = LoggerFactory.getLogger(ChunkedBulkIndexer.class);
@@ -31,32 +33,84 @@ public class ChunkedBulkIndexer {
         List<Messages.IndexingError> apply(Chunk chunk) throws ChunkedBulkIndexer.EntityTooLargeException, IOException;
     }
 
+    /**
+     * Asynchronous variant of {@link BulkIndex}. The returned future fails with an {@link EntityTooLargeException}
+     * if the chunk has to be split up.
+     */
+    public interface AsyncBulkIndex {
+        CompletableFuture<List<Messages.IndexingError>> apply(Chunk chunk);
+    }
+
     public List<Messages.IndexingError> index(List<IndexingRequest> messageList, BulkIndex bulkIndex) throws IOException {
         if (messageList.isEmpty()) {
             return Collections.emptyList();
         }
 
-        int chunkSize = messageList.size();
-        int offset = 0;
+        Chunk chunk = new Chunk(messageList, 0, messageList.size());
         for (;;) {
             try {
-                return bulkIndex.apply(new Chunk(messageList, offset, chunkSize));
+                return bulkIndex.apply(chunk);
             } catch (EntityTooLargeException e) {
-                if (e instanceof TooManyRequestsException) {
-                    LOG.warn("Bulk index failed with 'Too many requests' error. Retrying by splitting up batch size <{}>.", chunkSize);
-                } else {
-                    LOG.warn("Bulk index failed with 'Request Entity Too Large' error. Retrying by splitting up batch size <{}>.", chunkSize);
-                }
-                if (chunkSize == messageList.size()) {
-                    LOG.warn("Consider lowering the \"output_batch_size\" setting. Or resizing your Search cluster");
-                }
-                offset += e.indexedSuccessfully;
-                chunkSize /= 2;
+                chunk = splitChunk(chunk, e);
             }
-            if (chunkSize == 0) {
-                throw new ElasticsearchException("Bulk index cannot split output batch any further.");
+        }
+    }
+
+    /**
+     * Like {@link #index(List, BulkIndex)}, but without blocking the calling thread. The chunks are split up with the
+     * same semantics, the next attempt is issued when the previous one failed.
+     */
+    public CompletableFuture<List<Messages.IndexingError>> indexAsync(List<IndexingRequest> messageList, AsyncBulkIndex bulkIndex) {
+        if (messageList.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        return indexAsync(new Chunk(messageList, 0, messageList.size()), bulkIndex);
+    }
+
+    private CompletableFuture<List<Messages.IndexingError>> indexAsync(Chunk chunk, AsyncBulkIndex bulkIndex) {
+        final CompletableFuture<List<Messages.IndexingError>> result = new CompletableFuture<>();
+        bulkIndex.apply(chunk).whenComplete((indexingErrors, throwable) -> {
+            if (throwable == null) {
+                result.complete(indexingErrors);
+                return;
+            }
+            final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                    ? throwable.getCause()
+                    : throwable;
+            if (!(cause instanceof EntityTooLargeException)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            try {
+                indexAsync(splitChunk(chunk, (EntityTooLargeException) cause), bulkIndex).whenComplete((retriedErrors, retryThrowable) -> {
+                    if (retryThrowable == null) {
+                        result.complete(retriedErrors);
+                    } else {
+                        result.completeExceptionally(retryThrowable);
+                    }
+                });
+            } catch (ElasticsearchException e) {
+                result.completeExceptionally(e);
             }
+        });
+        return result;
+    }
+
+    private Chunk splitChunk(Chunk chunk, EntityTooLargeException e) {
+        final int chunkSize = chunk.size;
+        if (e instanceof TooManyRequestsException) {
+            LOG.warn("Bulk index failed with 'Too many requests' error. Retrying by splitting up batch size <{}>.", chunkSize);
+        } else {
+            LOG.warn("Bulk index failed with 'Request Entity Too Large' error. Retrying by splitting up batch size <{}>.", chunkSize);
+        }
+        if (chunkSize == chunk.requests.size()) {
+            LOG.warn("Consider lowering the \"output_batch_size\" setting. Or resizing your Search cluster");
+        }
+        if (chunkSize / 2 == 0) {
+            throw new ElasticsearchException("Bulk index cannot split output batch any further.");
         }
+        return new Chunk(chunk.requests, chunk.offset + e.indexedSuccessfully, chunkSize / 2);
     }
 
     public static class Chunk {
@@ -17,10 +17,12 @@
 package org.graylog2.indexer.messages;
 
 import com.codahale.metrics.Meter;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.joda.time.DateTime;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
 import java.util.Map;
 
 public interface Indexable {
@@ -41,6 +43,16 @@ public interface Indexable {
     long getSize();
     DateTime getReceiveTime();
     Map<String, Object> toElasticSearchObject(ObjectMapper objectMapper,@Nonnull final Meter invalidTimestampMeter);
+
+    /**
+     * Writes the document returned by {@link #toElasticSearchObject(ObjectMapper, Meter)} to the given generator.
+     * Implementations may override this to serialize their fields without building the intermediate map.
+     *
+     * @param generator a generator created by the given object mapper
+     */
+    default void writeElasticSearchObject(ObjectMapper objectMapper, JsonGenerator generator, @Nonnull final Meter invalidTimestampMeter) throws IOException {
+        objectMapper.writeValue(generator, toElasticSearchObject(objectMapper, invalidTimestampMeter));
+    }
     DateTime getTimestamp();
 
     /**
@@ -48,7 +48,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 @Singleton
@@ -76,9 +79,7 @@ public class Messages {
     @SuppressWarnings("UnstableApiUsage")
     private RetryerBuilder<List<IndexingError>> createBulkRequestRetryerBuilder() {
         return RetryerBuilder.<List<IndexingError>>newBuilder()
-                .retryIfException(t -> ExceptionUtils.hasCauseOf(t, IOException.class)
-                        || t instanceof InvalidWriteTargetException
-                        || t instanceof MasterNotDiscoveredException)
+                .retryIfException(Messages::isRetryableException)
                 .withWaitStrategy(WaitStrategies.exponentialWait(MAX_WAIT_TIME.getQuantity(), MAX_WAIT_TIME.getUnit()))
                 .withRetryListener(new RetryListener() {
                     @Override
@@ -92,6 +93,12 @@ public class Messages {
                 });
     }
 
+    private static boolean isRetryableException(Throwable t) {
+        return ExceptionUtils.hasCauseOf(t, IOException.class)
+                || t instanceof InvalidWriteTargetException
+                || t instanceof MasterNotDiscoveredException;
+    }
+
     private final FailureSubmissionService failureSubmissionService;
     private final MessagesAdapter messagesAdapter;
     private final ProcessingStatusRecorder processingStatusRecorder;
@@ -147,6 +154,53 @@ public class Messages {
     public List<String> bulkIndexRequests(List<IndexingRequest> indexingRequestList, boolean isSystemTraffic, IndexingListener indexingListener) {
         final List<IndexingError> indexingErrors = runBulkRequest(indexingRequestList, indexingRequestList.size(), indexingListener);
 
+        return completeBulkRequest(indexingRequestList, indexingErrors, isSystemTraffic, indexingListener);
+    }
+
+    /**
+     * Like {@link #bulkIndex(List)}, but the first bulk request is sent without blocking the calling thread.
+     * <p>
+     * If the first attempt fails with a retryable exception or because of blocked indices, the messages are retried
+     * with the same semantics as in {@link #bulkIndex(List)} before the returned future completes.
+     *
+     * @param completionExecutor the executor which completes the request, this includes the blocking retries, so it
+     *                           must not be the I/O thread of the client
+     * @return a future with the IDs of the messages which could not be indexed
+     */
+    public CompletableFuture<List<String>> bulkIndexAsync(final List<Map.Entry<IndexSet, Message>> messageList, Executor completionExecutor) {
+        if (messageList.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        final List<IndexingRequest> indexingRequestList = messageList.stream()
+                .map(entry -> IndexingRequest.create(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+
+        final CompletableFuture<List<String>> result = new CompletableFuture<>();
+        messagesAdapter.bulkIndexAsync(indexingRequestList).whenCompleteAsync((indexingErrors, throwable) -> {
+            try {
+                if (throwable == null) {
+                    result.complete(completeBulkRequest(indexingRequestList, indexingErrors, false, null));
+                    return;
+                }
+                final Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause()
+                        : throwable;
+                if (isRetryableException(cause)) {
+                    LOG.error("Caught exception during asynchronous bulk indexing, retrying.", cause);
+                    result.complete(bulkIndexRequests(indexingRequestList, false));
+                } else {
+                    LOG.error("Couldn't bulk index " + indexingRequestList.size() + " messages.", cause);
+                    result.completeExceptionally(cause);
+                }
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }, completionExecutor);
+        return result;
+    }
+
+    private List<String> completeBulkRequest(List<IndexingRequest> indexingRequestList, List<IndexingError> indexingErrors, boolean isSystemTraffic, @Nullable IndexingListener indexingListener) {
         final Set<IndexingError> remainingErrors = retryOnlyIndexBlockItemsForever(indexingRequestList, indexingErrors, indexingListener);
 
         final Set<String> failedIds = remainingErrors.stream()
@@ -20,6 +20,7 @@ import org.graylog2.indexer.results.ResultMessage;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface MessagesAdapter {
     ResultMessage get(String messageId, String index) throws IOException, DocumentNotFoundException;
@@ -27,4 +28,19 @@ public interface MessagesAdapter {
     List<String> analyze(String toAnalyze, String index, String analyzer) throws IOException;
 
     List<Messages.IndexingError> bulkIndex(final List<IndexingRequest> messageList) throws IOException;
+
+    /**
+     * Indexes the given messages without blocking the calling thread until the search cluster responded.
+     * <p>
+     * The default implementation runs {@link #bulkIndex(List)} synchronously and returns a completed future.
+     */
+    default CompletableFuture<List<Messages.IndexingError>> bulkIndexAsync(final List<IndexingRequest> messageList) {
+        final CompletableFuture<List<Messages.IndexingError>> result = new CompletableFuture<>();
+        try {
+            result.complete(bulkIndex(messageList));
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
 }
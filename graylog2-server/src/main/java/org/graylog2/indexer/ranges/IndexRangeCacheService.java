@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.AbstractIdleService;
+import org.graylog2.database.NotFoundException;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.IndexSetRegistry;
+import org.graylog2.indexer.indexset.events.IndexSetCreatedEvent;
+import org.graylog2.indexer.indexset.events.IndexSetDeletedEvent;
+import org.graylog2.indexer.indices.events.IndicesDeletedEvent;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamService;
+import org.graylog2.streams.events.StreamsChangedEvent;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Keeps all index ranges and streams in memory, so that the indices of a search can be resolved without any
+ * database round trips.
+ * <p>
+ * Index ranges which know their stream ids are indexed per stream, incomplete index ranges without stream ids are
+ * indexed per index set. Both are kept in static interval indices which are rebuilt when index ranges are created or
+ * removed anywhere in the cluster, see {@link IndexRangesUpdatedEvent}.
+ */
+@Singleton
+public class IndexRangeCacheService extends AbstractIdleService {
+    private static final Logger LOG = LoggerFactory.getLogger(IndexRangeCacheService.class);
+
+    private final EventBus eventBus;
+    private final IndexRangeService indexRangeService;
+    private final IndexSetRegistry indexSetRegistry;
+    private final StreamService streamService;
+    private final ScheduledExecutorService executorService;
+
+    private final Set<String> updatedIndices = ConcurrentHashMap.newKeySet();
+    // guarded by this
+    private final Map<String, IndexRange> indexRanges = new HashMap<>();
+
+    private volatile Map<String, Stream> streamsById = Collections.emptyMap();
+    private volatile Map<String, IntervalIndex> rangesByStreamId = Collections.emptyMap();
+    private volatile Map<String, IntervalIndex> incompleteRangesByIndexSetId = Collections.emptyMap();
+
+    @Inject
+    public IndexRangeCacheService(EventBus eventBus,
+                                  IndexRangeService indexRangeService,
+                                  IndexSetRegistry indexSetRegistry,
+                                  StreamService streamService,
+                                  @Named("daemonScheduler") ScheduledExecutorService executorService) {
+        this.eventBus = eventBus;
+        this.indexRangeService = indexRangeService;
+        this.indexSetRegistry = indexSetRegistry;
+        this.streamService = streamService;
+        this.executorService = executorService;
+    }
+
+    @Override
+    protected void startUp() {
+        // register first, updates which arrive during the initial load are applied afterwards
+        eventBus.register(this);
+        updateStreams();
+        reloadIndexRanges();
+    }
+
+    @Override
+    protected void shutDown() {
+        eventBus.unregister(this);
+    }
+
+    @Subscribe
+    public void handleIndexRangesUpdate(IndexRangesUpdatedEvent event) {
+        updatedIndices.addAll(event.indexNames());
+        executorService.execute(this::updateIndexRanges);
+    }
+
+    @Subscribe
+    public void handleIndexDeletion(IndicesDeletedEvent event) {
+        updatedIndices.addAll(event.indices());
+        executorService.execute(this::updateIndexRanges);
+    }
+
+    @Subscribe
+    public void handleStreamsUpdate(StreamsChangedEvent event) {
+        executorService.execute(this::updateStreams);
+    }
+
+    @Subscribe
+    public void handleIndexSetCreation(IndexSetCreatedEvent event) {
+        executorService.execute(this::reloadIndexRanges);
+    }
+
+    @Subscribe
+    public void handleIndexSetDeletion(IndexSetDeletedEvent event) {
+        executorService.execute(this::reloadIndexRanges);
+    }
+
+    /**
+     * @param streamIds the ids of the streams to look up
+     * @return the streams which exist, unknown stream ids are ignored
+     */
+    public Set<Stream> getByIds(Collection<String> streamIds) {
+        final Map<String, Stream> streams = this.streamsById;
+        final ImmutableSet.Builder<Stream> result = ImmutableSet.builder();
+        for (String streamId : streamIds) {
+            final Stream stream = streams.get(streamId);
+            if (stream != null) {
+                result.add(stream);
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * Returns the index ranges which overlap the given time range and which contain messages of one of the given
+     * streams, or which are incomplete and belong to the index set of one of the streams. Like
+     * {@link IndexRangeService#find(DateTime, DateTime)} this includes index ranges of unknown extent.
+     */
+    public SortedSet<IndexRange> find(Collection<String> streamIds, DateTime begin, DateTime end) {
+        final Map<String, Stream> streams = this.streamsById;
+        final Map<String, IntervalIndex> byStreamId = this.rangesByStreamId;
+        final Map<String, IntervalIndex> byIndexSetId = this.incompleteRangesByIndexSetId;
+        final long from = begin.getMillis();
+        final long to = end.getMillis();
+
+        final ImmutableSortedSet.Builder<IndexRange> result = ImmutableSortedSet.orderedBy(IndexRange.COMPARATOR);
+        for (String streamId : streamIds) {
+            final IntervalIndex streamRanges = byStreamId.get(streamId);
+            if (streamRanges != null) {
+                streamRanges.find(from, to, result::add);
+            }
+            final Stream stream = streams.get(streamId);
+            final IntervalIndex indexSetRanges = stream == null ? null : byIndexSetId.get(stream.getIndexSetId());
+            if (indexSetRanges != null) {
+                indexSetRanges.find(from, to, result::add);
+            }
+        }
+        return result.build();
+    }
+
+    @VisibleForTesting
+    void updateStreams() {
+        final Map<String, Stream> streams = new HashMap<>();
+        for (Stream stream : streamService.loadAll()) {
+            streams.put(stream.getId(), stream);
+        }
+        this.streamsById = streams;
+    }
+
+    @VisibleForTesting
+    synchronized void reloadIndexRanges() {
+        indexRanges.clear();
+        for (IndexRange indexRange : indexRangeService.findAll()) {
+            indexRanges.put(indexRange.indexName(), indexRange);
+        }
+        rebuild();
+    }
+
+    private synchronized void updateIndexRanges() {
+        // concurrent updates are coalesced, the first run picks up the indices of all of them
+        final Set<String> indices = new HashSet<>();
+        for (Iterator<String> it = updatedIndices.iterator(); it.hasNext(); ) {
+            indices.add(it.next());
+            it.remove();
+        }
+        if (indices.isEmpty()) {
+            return;
+        }
+        for (String index : indices) {
+            try {
+                indexRanges.put(index, indexRangeService.get(index));
+            } catch (NotFoundException e) {
+                indexRanges.remove(index);
+            }
+        }
+        LOG.debug("Updated index ranges of {}", indices);
+        rebuild();
+    }
+
+    private void rebuild() {
+        final Set<IndexSet> indexSets = indexSetRegistry.getAll();
+        final Map<String, List<IndexRange>> byStreamId = new HashMap<>();
+        final Map<String, List<IndexRange>> byIndexSetId = new HashMap<>();
+        for (IndexRange indexRange : indexRanges.values()) {
+            if (indexRange.streamIds() != null) {
+                for (String streamId : indexRange.streamIds()) {
+                    byStreamId.computeIfAbsent(streamId, id -> new ArrayList<>()).add(indexRange);
+                }
+                continue;
+            }
+            // incomplete index ranges can only be attributed to the index set managing them
+            for (IndexSet indexSet : indexSets) {
+                if (indexSet.isManagedIndex(indexRange.indexName())) {
+                    byIndexSetId.computeIfAbsent(indexSet.getConfig().id(), id -> new ArrayList<>()).add(indexRange);
+                    break;
+                }
+            }
+        }
+        this.rangesByStreamId = toIntervalIndices(byStreamId);
+        this.incompleteRangesByIndexSetId = toIntervalIndices(byIndexSetId);
+    }
+
+    private static Map<String, IntervalIndex> toIntervalIndices(Map<String, List<IndexRange>> indexRanges) {
+        final Map<String, IntervalIndex> result = new HashMap<>(indexRanges.size());
+        indexRanges.forEach((key, ranges) -> result.put(key, new IntervalIndex(ranges)));
+        return result;
+    }
+
+    /**
+     * Immutable interval index over index ranges: the ranges are sorted by their begin, and every position also
+     * stores the maximum end of all ranges up to it. Searching the ranges overlapping a time range starts at the last
+     * range beginning before its end and walks backwards until no earlier range can reach its start anymore.
+     */
+    @VisibleForTesting
+    static class IntervalIndex {
+        private final IndexRange[] ranges;
+        private final long[] begins;
+        private final long[] ends;
+        private final long[] maxEnds;
+
+        IntervalIndex(Collection<IndexRange> indexRanges) {
+            this.ranges = indexRanges.stream()
+                    .sorted(Comparator.comparing(IndexRange::begin))
+                    .toArray(IndexRange[]::new);
+            this.begins = new long[ranges.length];
+            this.ends = new long[ranges.length];
+            this.maxEnds = new long[ranges.length];
+            long maxEnd = Long.MIN_VALUE;
+            for (int i = 0; i < ranges.length; i++) {
+                begins[i] = ranges[i].begin().getMillis();
+                ends[i] = ranges[i].end().getMillis();
+                maxEnd = Math.max(maxEnd, ends[i]);
+                maxEnds[i] = maxEnd;
+            }
+        }
+
+        void find(long from, long to, Consumer<IndexRange> consumer) {
+            overlapping(from, to, consumer);
+            // index ranges of unknown extent start and end at the epoch, see MongoIndexRangeService#find
+            if (from > 0L || to < 0L) {
+                overlapping(0L, 0L, consumer);
+            }
+        }
+
+        private void overlapping(long from, long to, Consumer<IndexRange> consumer) {
+            // position of the first range beginning after the end of the searched time range
+            int i = Arrays.binarySearch(begins, to);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            while (i < begins.length && begins[i] <= to) {
+                i++;
+            }
+            for (i = i - 1; i >= 0 && maxEnds[i] >= from; i--) {
+                if (ends[i] >= from) {
+                    consumer.accept(ranges[i]);
+                }
+            }
+        }
+    }
+}
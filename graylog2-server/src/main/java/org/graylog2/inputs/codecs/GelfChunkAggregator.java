@@ -20,9 +20,10 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.MoreObjects;
-import com.google.common.collect.Maps;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
 import org.graylog2.inputs.codecs.gelf.GELFMessage;
 import org.graylog2.inputs.codecs.gelf.GELFMessageChunk;
 import org.graylog2.plugin.Tools;
@@ -34,18 +35,22 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.Arrays;
+import java.util.Locale;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static com.codahale.metrics.MetricRegistry.name;
-import static java.util.Objects.requireNonNull;
 
+/**
+ * Reassembles chunked GELF messages.
+ * <p>
+ * The data of a chunk is kept as a retained slice of the received buffer and a complete message is returned as a
+ * composite buffer of these slices, so chunk payloads are not copied. Incomplete messages are stored by their 8 byte
+ * message ID in striped primitive maps and expire through a timer wheel with one slot per {@link #CHECK_PERIOD}.
+ * <p>
+ * The returned buffers have to be released by the caller.
+ */
 public class GelfChunkAggregator implements CodecAggregator {
     private static final Logger log = LoggerFactory.getLogger(GelfChunkAggregator.class);
 
@@ -54,6 +59,11 @@ public class GelfChunkAggregator implements CodecAggregator {
     public static final Result INVALID_RESULT = new Result(null, false);
     public static final int VALIDITY_PERIOD = 5000; // millis
     private static final long CHECK_PERIOD = 1000;
+    // must cover the validity period plus some slack for late runs of the eviction task
+    private static final int WHEEL_SIZE = 8;
+    private static final int STRIPES = 16;
+    // chunks using less than half of their buffer are copied, a slice would keep the whole receive buffer alive
+    private static final int MAX_SLICE_OVERHEAD = 2;
 
     public static final String CHUNK_COUNTER = name(GelfChunkAggregator.class, "total-chunks");
     public static final String WAITING_MESSAGES = name(GelfChunkAggregator.class, "waiting-messages");
@@ -62,8 +72,10 @@ public class GelfChunkAggregator implements CodecAggregator {
     public static final String EXPIRED_CHUNKS = name(GelfChunkAggregator.class, "expired-chunks");
     public static final String DUPLICATE_CHUNKS = name(GelfChunkAggregator.class, "duplicate-chunks");
 
-    private final ConcurrentMap<String, ChunkEntry> chunks = Maps.newConcurrentMap();
-    private final ConcurrentSkipListSet<ChunkEntry> sortedEvictionSet = new ConcurrentSkipListSet<>();
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final WheelSlot[] wheel = new WheelSlot[WHEEL_SIZE];
+    // the oldest tick of the timer wheel which might still contain outdated messages
+    private volatile long nextTick;
     private final Counter chunkCounter;
     private final Counter waitingMessages;
     private final Counter expiredMessages;
@@ -73,9 +85,16 @@ public class GelfChunkAggregator implements CodecAggregator {
 
     @Inject
     public GelfChunkAggregator(@Named("daemonScheduler") ScheduledExecutorService scheduler, MetricRegistry metricRegistry) {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new WheelSlot();
+        }
+        nextTick = tick(Tools.nowUTC().getMillis());
         scheduler.scheduleAtFixedRate(new ChunkEvictionTask(), VALIDITY_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
         chunkCounter = metricRegistry.counter(CHUNK_COUNTER);
-        // this is a counter instead of a Gauge, because calling sortedEvictionSet.size() is expensive
+        // this is a counter instead of a Gauge, because counting the entries of all stripes is expensive
         waitingMessages = metricRegistry.counter(WAITING_MESSAGES);
         completeMessages = metricRegistry.counter(COMPLETE_MESSAGES);
         expiredMessages = metricRegistry.counter(EXPIRED_MESSAGES);
@@ -86,17 +105,19 @@ public class GelfChunkAggregator implements CodecAggregator {
     @Nonnull
     @Override
     public Result addChunk(ByteBuf buffer) {
-        final byte[] readable = new byte[buffer.readableBytes()];
-        buffer.readBytes(readable, buffer.readerIndex(), buffer.readableBytes());
-
-        final GELFMessage msg = new GELFMessage(readable);
+        if (buffer.readableBytes() < 2) {
+            log.debug("GELF message is too short. Not even the type header would fit.");
+            return INVALID_RESULT;
+        }
+        final int readerIndex = buffer.readerIndex();
+        final GELFMessage.Type type = GELFMessage.Type.determineType(buffer.getByte(readerIndex), buffer.getByte(readerIndex + 1));
 
         final ByteBuf aggregatedBuffer;
-        switch (msg.getGELFType()) {
+        switch (type) {
             case CHUNKED:
                 try {
                     chunkCounter.inc();
-                    aggregatedBuffer = checkForCompletion(msg);
+                    aggregatedBuffer = checkForCompletion(buffer);
                     if (aggregatedBuffer == null) {
                         return VALID_EMPTY_RESULT;
                     }
@@ -108,7 +129,8 @@ public class GelfChunkAggregator implements CodecAggregator {
             case ZLIB:
             case GZIP:
             case UNCOMPRESSED:
-                aggregatedBuffer = Unpooled.wrappedBuffer(readable);
+                // the buffer is released by the calling handler, the slice by the handler receiving the result
+                aggregatedBuffer = buffer.retainedSlice();
                 break;
             case UNSUPPORTED:
                 return INVALID_RESULT;
@@ -123,158 +145,208 @@ public class GelfChunkAggregator implements CodecAggregator {
      * If the message isn't complete, it adds the chunk to the internal buffer and waits for more incoming messages.
      * Outdated chunks are being purged regularly.
      *
-     * @param gelfMessage the gelf message chunk
-     * @return null or a {@link org.graylog2.plugin.journal.RawMessage raw message} object
+     * @param buffer the gelf message chunk
+     * @return null or a buffer with the reassembled message
      */
     @Nullable
-    private ByteBuf checkForCompletion(GELFMessage gelfMessage) {
-        if (!chunks.isEmpty() && log.isDebugEnabled()) {
-            log.debug("Dumping GELF chunk map [chunks for {} messages]:\n{}", chunks.size(), humanReadableChunkMap());
+    private ByteBuf checkForCompletion(ByteBuf buffer) {
+        if (buffer.readableBytes() < GELFMessageChunk.HEADER_TOTAL_LENGTH) {
+            throw new IllegalArgumentException("This GELF message chunk is too short. Cannot even contain the required header.");
+        }
+        if (log.isDebugEnabled() && waitingMessages.getCount() > 0) {
+            log.debug("Dumping GELF chunk map [chunks for {} messages]:\n{}", waitingMessages.getCount(), humanReadableChunkMap());
         }
-        final GELFMessageChunk chunk = new GELFMessageChunk(gelfMessage, null); // TODO second parameter
-        final int sequenceCount = chunk.getSequenceCount();
+        final int readerIndex = buffer.readerIndex();
+        final long messageId = buffer.getLong(readerIndex + GELFMessageChunk.HEADER_PART_HASH_START);
+        final int sequenceNumber = buffer.getUnsignedByte(readerIndex + GELFMessageChunk.HEADER_PART_SEQNUM_START);
+        final int sequenceCount = buffer.getUnsignedByte(readerIndex + GELFMessageChunk.HEADER_PART_SEQCNT_START);
+        final long now = Tools.nowUTC().getMillis();
+
+        final Stripe stripe = stripeFor(messageId);
+        final ChunkEntry completeEntry;
+        synchronized (stripe) {
+            ChunkEntry entry = stripe.entries.get(messageId);
+            if (entry == null) {
+                checkSequenceNumber(sequenceNumber, sequenceCount);
+                entry = new ChunkEntry(sequenceCount, now, messageId);
+                stripe.entries.put(messageId, entry);
+                wheel[slotIndex(tick(now))].add(messageId);
+                waitingMessages.inc();
+            } else {
+                checkSequenceNumber(sequenceNumber, entry.chunks.length);
+            }
 
-        final String messageId = chunk.getId();
+            if (entry.chunks[sequenceNumber] != null) {
+                log.error("Received duplicate chunk {} for message {}", sequenceNumber, messageIdToString(messageId));
+                duplicateChunks.inc();
+                return null;
+            }
+            entry.chunks[sequenceNumber] = chunkData(buffer);
+            entry.chunksWritten++;
 
-        ChunkEntry entry = new ChunkEntry(sequenceCount, chunk.getArrival(), messageId);
+            if (entry.chunksWritten > MAX_CHUNKS) {
+                removeEntry(stripe, entry);
+                entry.release();
+                throw new IllegalStateException("Maximum number of chunks reached, discarding message");
+            }
 
-        final ChunkEntry existing = chunks.putIfAbsent(messageId, entry);
-        if (existing == null) {
-            // add this chunk entry to the eviction set
-            waitingMessages.inc();
-            sortedEvictionSet.add(entry);
-        } else {
-            // the entry is already in the eviction set and chunk map
-            entry = existing;
-        }
+            if (entry.chunksWritten < entry.chunks.length) {
+                // message isn't complete yet, check if we should remove the other parts as well
+                if (isOutdated(entry, now)) {
+                    // chunks are outdated, the oldest came in over 5 seconds ago, clean them all up
+                    log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", messageIdToString(messageId), VALIDITY_PERIOD);
+                    expireEntry(stripe, entry);
+                }
+                return null;
+            }
 
-        final int sequenceNumber = chunk.getSequenceNumber();
-        if (!entry.payloadArray.compareAndSet(sequenceNumber, null, chunk)) {
-            log.error("Received duplicate chunk {} for message {} from {}", sequenceNumber, messageId, gelfMessage.getSourceAddress());
-            duplicateChunks.inc();
-            return null;
+            // message is complete by chunk count, it might still be corrupt etc, but we've seen enough chunks
+            removeEntry(stripe, entry);
+            completeEntry = entry;
         }
 
-        final int chunkWatermark = entry.chunkSlotsWritten.incrementAndGet();
+        completeMessages.inc();
+        // the composite buffer takes over the chunk buffers and releases them together with the message
+        return Unpooled.wrappedBuffer(completeEntry.chunks);
+    }
 
-        if (chunkWatermark > MAX_CHUNKS) {
-            getAndCleanupEntry(messageId);
-            throw new IllegalStateException("Maximum number of chunks reached, discarding message");
-        }
-
-        if (chunkWatermark == sequenceCount) {
-            // message is complete by chunk count, assemble and return it.
-            // it might still be corrupt etc, but we've seen enough chunks
-            // remove before operating on it, to avoid racing too much with the clean up job, some race is inevitable, though.
-            entry = getAndCleanupEntry(messageId);
-
-            final byte[] allChunks[] = new byte[sequenceCount][];
-            for (int i = 0; i < entry.payloadArray.length(); i++) {
-                final GELFMessageChunk messageChunk = entry.payloadArray.get(i);
-                if (messageChunk == null) {
-                    log.debug("Couldn't read chunk {} of message {}, skipping this chunk.", i, messageId);
-                } else {
-                    allChunks[i] = messageChunk.getData();
-                }
-            }
-            completeMessages.inc();
-            return Unpooled.wrappedBuffer(allChunks);
+    private static void checkSequenceNumber(int sequenceNumber, int sequenceCount) {
+        if (sequenceNumber >= sequenceCount) {
+            throw new IllegalArgumentException("Invalid sequence number " + sequenceNumber + " for " + sequenceCount + " chunks");
         }
+    }
 
-        // message isn't complete yet, check if we should remove the other parts as well
-        if (isOutdated(entry)) {
-            // chunks are outdated, the oldest came in over 5 seconds ago, clean them all up
-            log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", messageId, VALIDITY_PERIOD);
-            expireEntry(messageId);
+    private static ByteBuf chunkData(ByteBuf buffer) {
+        final int index = buffer.readerIndex() + GELFMessageChunk.HEADER_TOTAL_LENGTH;
+        final int length = buffer.readableBytes() - GELFMessageChunk.HEADER_TOTAL_LENGTH;
+        if (buffer.capacity() > MAX_SLICE_OVERHEAD * buffer.readableBytes()) {
+            return buffer.alloc().buffer(length, length).writeBytes(buffer, index, length);
         }
+        return buffer.retainedSlice(index, length);
+    }
 
-        return null;
+    // the following methods must be called while holding the lock of the stripe
+    private void removeEntry(Stripe stripe, ChunkEntry entry) {
+        stripe.entries.remove(entry.id);
+        waitingMessages.dec();
     }
 
-    private void expireEntry(String messageId) {
-        final ChunkEntry cleanupEntry = getAndCleanupEntry(messageId);
+    private void expireEntry(Stripe stripe, ChunkEntry entry) {
+        removeEntry(stripe, entry);
+        entry.release();
         expiredMessages.inc();
-        expiredChunks.inc(cleanupEntry.chunkSlotsWritten.get());
+        expiredChunks.inc(entry.chunksWritten);
     }
 
-    private boolean isOutdated(ChunkEntry entry) {
-        return (Tools.nowUTC().getMillis() - entry.firstTimestamp) > VALIDITY_PERIOD;
+    private static boolean isOutdated(ChunkEntry entry, long now) {
+        return (now - entry.firstTimestamp) > VALIDITY_PERIOD;
     }
 
-    private ChunkEntry getAndCleanupEntry(String id) {
-        final ChunkEntry entry = chunks.remove(id);
-        sortedEvictionSet.remove(entry);
-        waitingMessages.dec();
-        return entry;
+    private Stripe stripeFor(long messageId) {
+        final int hash = Long.hashCode(messageId);
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private static long tick(long millis) {
+        return Math.floorDiv(millis, CHECK_PERIOD);
+    }
+
+    private static int slotIndex(long tick) {
+        return (int) Math.floorMod(tick, (long) WHEEL_SIZE);
+    }
+
+    private static String messageIdToString(long messageId) {
+        return String.format(Locale.ENGLISH, "%016x", messageId);
     }
 
     private String humanReadableChunkMap() {
         final StringBuilder sb = new StringBuilder();
 
-        for (final Map.Entry<String, ChunkEntry> entry : chunks.entrySet()) {
-            sb.append("Message <").append(entry.getKey()).append("> ");
-            sb.append("\tChunks:\n");
-            for (int i = 0; i < entry.getValue().payloadArray.length(); i++) {
-                final GELFMessageChunk chunk = entry.getValue().payloadArray.get(i);
-                sb.append("\t\t").append(chunk == null ? "<not arrived yet>" : chunk).append("\n");
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (ChunkEntry entry : stripe.entries.values()) {
+                    sb.append("Message <").append(messageIdToString(entry.id)).append("> ");
+                    sb.append("\tChunks:\n");
+                    for (int i = 0; i < entry.chunks.length; i++) {
+                        final ByteBuf chunk = entry.chunks[i];
+                        sb.append("\t\t");
+                        if (chunk == null) {
+                            sb.append("<not arrived yet>");
+                        } else {
+                            // +1 for readability: 1/2 not 0/2
+                            sb.append("Sequence: ").append(i + 1).append('/').append(entry.chunks.length)
+                                    .append("\tData size: ").append(chunk.readableBytes());
+                        }
+                        sb.append("\n");
+                    }
+                }
             }
         }
 
         return sb.toString();
     }
 
-    @VisibleForTesting
-    static class ChunkEntry implements Comparable<ChunkEntry> {
-        protected final AtomicInteger chunkSlotsWritten = new AtomicInteger(0);
-        protected final long firstTimestamp;
-        protected final AtomicReferenceArray<GELFMessageChunk> payloadArray;
-        protected final String id;
-
-        public ChunkEntry(int chunkCount, long firstTimestamp, String id) {
-            this.payloadArray = new AtomicReferenceArray<>(chunkCount);
-            this.firstTimestamp = firstTimestamp;
-            this.id = requireNonNull(id);
-        }
+    private static class Stripe {
+        private final LongObjectMap<ChunkEntry> entries = new LongObjectHashMap<>();
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
+    /**
+     * The message IDs of all messages whose first chunk arrived within one tick of the timer wheel. IDs of completed
+     * messages are not removed, they are skipped when the slot is evicted.
+     */
+    private static class WheelSlot {
+        private static final int INITIAL_CAPACITY = 16;
+        private static final int MAX_RETAINED_CAPACITY = 4096;
 
-            final ChunkEntry that = (ChunkEntry) o;
+        private long[] ids = new long[INITIAL_CAPACITY];
+        private int size = 0;
 
-            if (!id.equals(that.id)) return false;
-            if (firstTimestamp != that.firstTimestamp) return false;
+        synchronized void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
 
-            //noinspection RedundantIfStatement
-            return true;
+        synchronized long[] drain() {
+            final long[] drained = Arrays.copyOf(ids, size);
+            if (ids.length > MAX_RETAINED_CAPACITY) {
+                // don't hold on to the memory of a burst of messages
+                ids = new long[INITIAL_CAPACITY];
+            }
+            size = 0;
+            return drained;
         }
+    }
 
-        @Override
-        public int hashCode() {
-            return Objects.hash(id, firstTimestamp);
+    @VisibleForTesting
+    static class ChunkEntry {
+        protected final long id;
+        protected final long firstTimestamp;
+        // the chunk data by sequence number, guarded by the lock of the stripe holding the entry
+        protected final ByteBuf[] chunks;
+        protected int chunksWritten = 0;
+
+        public ChunkEntry(int chunkCount, long firstTimestamp, long id) {
+            this.chunks = new ByteBuf[chunkCount];
+            this.firstTimestamp = firstTimestamp;
+            this.id = id;
         }
 
-        @Override
-        public int compareTo(@Nonnull ChunkEntry o) {
-            if (equals(o)) {
-                return 0;
-            }
-            // If two chunk entries have the same timestamp, we have to compare the IDs. Otherwise the removal from
-            // the eviction set might not work and leak memory.
-            // See: https://github.com/Graylog2/graylog2-server/issues/1462
-            if (firstTimestamp == o.firstTimestamp) {
-                return id.compareTo(o.id);
+        void release() {
+            for (ByteBuf chunk : chunks) {
+                if (chunk != null) {
+                    chunk.release();
+                }
             }
-            return firstTimestamp < o.firstTimestamp ? -1 : 1;
         }
 
         @Override
         public String toString() {
             return MoreObjects.toStringHelper(this)
-                    .add("id", id)
+                    .add("id", messageIdToString(id))
                     .add("firstTimestamp", firstTimestamp)
-                    .add("chunkSlotsWritten", chunkSlotsWritten)
+                    .add("chunksWritten", chunksWritten)
                     .toString();
         }
     }
@@ -284,25 +356,39 @@ public class GelfChunkAggregator implements CodecAggregator {
         @Override
         public void run() {
             try {
-                // loop until we've either evicted all outdated chunk entries, or the set is completely empty.
                 // this task will run every second by default (see constant in constructor)
-                while (true) {
-                    // Check if eviction set is empty to avoid a NoElementException when calling first().
-                    if (sortedEvictionSet.isEmpty()) {
-                        break;
-                    }
-                    final ChunkEntry oldestChunkEntry = sortedEvictionSet.first();
-                    if (isOutdated(oldestChunkEntry)) {
-                        expireEntry(oldestChunkEntry.id);
-                    } else {
-                        log.debug("No more outdated chunk entries found to evict, leaving cleanup loop.");
-                        break;
-                    }
+                final long now = Tools.nowUTC().getMillis();
+                final long cutoffTick = tick(now - VALIDITY_PERIOD);
+                // after a pause longer than the wheel every slot has to be checked, but only once
+                final long firstTick = Math.max(nextTick, cutoffTick - WHEEL_SIZE + 1);
+                for (long tick = firstTick; tick <= cutoffTick; tick++) {
+                    evictSlot(slotIndex(tick), now);
                 }
+                // the slot of the cutoff tick can still contain messages which are not outdated yet
+                nextTick = Math.max(nextTick, cutoffTick);
             } catch (Exception e) {
                 // Make sure to never throw an exception out of this runnable, it's being run in an executor.
                 log.warn("Error while expiring GELF chunk entries", e);
             }
         }
+
+        private void evictSlot(int slot, long now) {
+            for (long messageId : wheel[slot].drain()) {
+                final Stripe stripe = stripeFor(messageId);
+                synchronized (stripe) {
+                    final ChunkEntry entry = stripe.entries.get(messageId);
+                    if (entry == null) {
+                        // already complete or expired
+                        continue;
+                    }
+                    if (isOutdated(entry, now)) {
+                        log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", messageIdToString(messageId), VALIDITY_PERIOD);
+                        expireEntry(stripe, entry);
+                    } else if (slotIndex(tick(entry.firstTimestamp)) == slot) {
+                        wheel[slot].add(messageId);
+                    }
+                }
+            }
+        }
     }
 }
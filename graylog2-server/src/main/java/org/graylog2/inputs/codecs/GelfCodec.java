@@ -17,9 +17,13 @@
 package org.graylog2.inputs.codecs;
 
 import com.eaio.uuid.UUID;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.assistedinject.Assisted;
 import org.apache.commons.lang3.StringUtils;
 import org.graylog2.inputs.codecs.gelf.GELFMessage;
@@ -29,6 +33,7 @@ import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.configuration.ConfigurationRequest;
+import org.graylog2.plugin.configuration.fields.BooleanField;
 import org.graylog2.plugin.configuration.fields.ConfigurationField;
 import org.graylog2.plugin.configuration.fields.NumberField;
 import org.graylog2.plugin.inputs.annotations.Codec;
@@ -46,18 +51,27 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 
 @Codec(name = "gelf", displayName = "GELF")
 public class GelfCodec extends AbstractCodec {
     private static final Logger log = LoggerFactory.getLogger(GelfCodec.class);
     private static final String CK_DECOMPRESS_SIZE_LIMIT = "decompress_size_limit";
     private static final int DEFAULT_DECOMPRESS_SIZE_LIMIT = 8388608;
+    private static final String CK_STREAMING_DECODER = "streaming_decoder";
+    // fields read by the validation and the message construction, the streaming decoder keeps them as JSON nodes
+    private static final Set<String> STANDARD_FIELDS = ImmutableSet.of("host", "short_message", "message",
+            "full_message", "file", "line", "level", "facility", Message.FIELD_TIMESTAMP);
 
     private final GelfChunkAggregator aggregator;
     private final ObjectMapper objectMapper;
     private final long decompressSizeLimit;
+    private final boolean streamingDecoder;
 
     @Inject
     public GelfCodec(@Assisted Configuration configuration, GelfChunkAggregator aggregator) {
@@ -67,6 +81,7 @@ public class GelfCodec extends AbstractCodec {
             JsonParser.Feature.ALLOW_UNQUOTED_CONTROL_CHARS,
             JsonParser.Feature.ALLOW_TRAILING_COMMA);
         this.decompressSizeLimit = configuration.getInt(CK_DECOMPRESS_SIZE_LIMIT, DEFAULT_DECOMPRESS_SIZE_LIMIT);
+        this.streamingDecoder = configuration.getBoolean(CK_STREAMING_DECODER, false);
     }
 
     private static String stringValue(final JsonNode json, final String fieldName) {
@@ -122,6 +137,10 @@ public class GelfCodec extends AbstractCodec {
     @Override
     public Message decode(@Nonnull final RawMessage rawMessage) {
         final GELFMessage gelfMessage = new GELFMessage(rawMessage.getPayload(), rawMessage.getRemoteAddress());
+        if (streamingDecoder) {
+            return decodeStreaming(gelfMessage, rawMessage);
+        }
+
         final String json = gelfMessage.getJSON(decompressSizeLimit, charset);
 
         final JsonNode node;
@@ -144,6 +163,108 @@ public class GelfCodec extends AbstractCodec {
             throw e;
         }
 
+        return createMessage(node, node.fields(), rawMessage);
+    }
+
+    /**
+     * Decodes the GELF payload without building a JSON tree of the whole message. The payload is decompressed while
+     * it is being parsed and additional fields are converted to their message field values token by token.
+     * <p>
+     * Only the standard GELF fields are kept as JSON nodes, so the validation and the message construction behave
+     * exactly like in {@link #decode(RawMessage)}.
+     */
+    private Message decodeStreaming(GELFMessage gelfMessage, RawMessage rawMessage) {
+        final ObjectNode node = objectMapper.createObjectNode();
+        final Map<String, Object> fields = new LinkedHashMap<>();
+
+        try (JsonParser parser = createParser(gelfMessage)) {
+            final JsonToken firstToken = parser.nextToken();
+            if (firstToken == null) {
+                throw new IOException("null result");
+            }
+            if (firstToken == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String key = parser.getCurrentName();
+                    final JsonToken token = parser.nextToken();
+                    if (STANDARD_FIELDS.contains(key)) {
+                        final JsonNode value = parser.readValueAsTree();
+                        node.set(key, value);
+                        fields.put(key, value);
+                    } else {
+                        // later duplicates replace the value but keep the position, like in a JSON tree
+                        fields.put(key, fieldValue(parser, token, key));
+                    }
+                }
+            } else {
+                // not a JSON object, the validation rejects the message for missing mandatory fields
+                parser.skipChildren();
+            }
+        } catch (final Exception e) {
+            log.error("Could not parse JSON, first 400 characters: " +
+                    StringUtils.abbreviate(jsonForLogging(gelfMessage), 403), e);
+            throw new IllegalStateException("JSON is null/could not be parsed (invalid JSON)", e);
+        }
+
+        try {
+            validateGELFMessage(node, rawMessage.getId(), rawMessage.getRemoteAddress());
+        } catch (IllegalArgumentException e) {
+            log.trace("Invalid GELF message <{}>", node);
+            throw e;
+        }
+
+        return createMessage(node, fields.entrySet().iterator(), rawMessage);
+    }
+
+    private JsonParser createParser(GELFMessage gelfMessage) throws IOException {
+        final JsonFactory factory = objectMapper.getFactory();
+        if (gelfMessage.getGELFType() == GELFMessage.Type.UNCOMPRESSED) {
+            if (StandardCharsets.UTF_8.equals(charset)) {
+                return factory.createParser(gelfMessage.getPayload());
+            }
+            return factory.createParser(new InputStreamReader(gelfMessage.getJSONStream(decompressSizeLimit), charset));
+        }
+        // compressed payloads are always UTF-8, see GELFMessage#getJSON
+        return factory.createParser(gelfMessage.getJSONStream(decompressSizeLimit));
+    }
+
+    /**
+     * Converts the current value of the parser like {@link #fieldValue(String, Object)} converts a JSON node.
+     *
+     * @return the field value or {@code null} if the field should be skipped
+     */
+    @Nullable
+    private static Object fieldValue(JsonParser parser, JsonToken token, String key) throws IOException {
+        switch (token) {
+            case START_OBJECT:
+            case START_ARRAY:
+                return parser.readValueAsTree().toString();
+            case VALUE_NUMBER_FLOAT:
+                return parser.getDoubleValue();
+            case VALUE_NUMBER_INT:
+                if (parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER) {
+                    return parser.getBigIntegerValue().longValue();
+                }
+                return parser.getLongValue();
+            case VALUE_NULL:
+                log.debug("Field [{}] is NULL. Skipping.", key);
+                return null;
+            case VALUE_STRING:
+                return parser.getText();
+            default:
+                log.debug("Field [{}] has unknown value type. Skipping.", key);
+                return null;
+        }
+    }
+
+    private String jsonForLogging(GELFMessage gelfMessage) {
+        try {
+            return gelfMessage.getJSON(decompressSizeLimit, charset);
+        } catch (IllegalStateException e) {
+            return "<unreadable payload>";
+        }
+    }
+
+    private Message createMessage(JsonNode node, Iterator<? extends Map.Entry<String, ?>> fields, RawMessage rawMessage) {
         // Timestamp.
         final double messageTimestamp = timestampValue(node);
         final DateTime timestamp;
@@ -186,10 +307,8 @@ public class GelfCodec extends AbstractCodec {
         }
 
         // Add additional data if there is some.
-        final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
-
         while (fields.hasNext()) {
-            final Map.Entry<String, JsonNode> entry = fields.next();
+            final Map.Entry<String, ?> entry = fields.next();
 
             String key = entry.getKey();
             // Do not index useless GELF "version" field.
@@ -212,32 +331,45 @@ public class GelfCodec extends AbstractCodec {
                 continue;
             }
 
-            // Convert JSON containers to Strings, and pick a suitable number representation.
-            final JsonNode value = entry.getValue();
-
-            final Object fieldValue;
-            if (value.isContainerNode()) {
-                fieldValue = value.toString();
-            } else if (value.isFloatingPointNumber()) {
-                fieldValue = value.asDouble();
-            } else if (value.isIntegralNumber()) {
-                fieldValue = value.asLong();
-            } else if (value.isNull()) {
-                log.debug("Field [{}] is NULL. Skipping.", key);
-                continue;
-            } else if (value.isTextual()) {
-                fieldValue = value.asText();
-            } else {
-                log.debug("Field [{}] has unknown value type. Skipping.", key);
-                continue;
+            final Object fieldValue = fieldValue(key, entry.getValue());
+            if (fieldValue != null) {
+                message.addField(key, fieldValue);
             }
-
-            message.addField(key, fieldValue);
         }
 
         return message;
     }
 
+    /**
+     * Converts JSON containers to Strings, and picks a suitable number representation. Values which have already
+     * been converted by the streaming decoder are passed through.
+     *
+     * @return the field value or {@code null} if the field should be skipped
+     */
+    @Nullable
+    private static Object fieldValue(String key, @Nullable Object rawValue) {
+        if (!(rawValue instanceof JsonNode)) {
+            return rawValue;
+        }
+        final JsonNode value = (JsonNode) rawValue;
+
+        if (value.isContainerNode()) {
+            return value.toString();
+        } else if (value.isFloatingPointNumber()) {
+            return value.asDouble();
+        } else if (value.isIntegralNumber()) {
+            return value.asLong();
+        } else if (value.isNull()) {
+            log.debug("Field [{}] is NULL. Skipping.", key);
+            return null;
+        } else if (value.isTextual()) {
+            return value.asText();
+        } else {
+            log.debug("Field [{}] has unknown value type. Skipping.", key);
+            return null;
+        }
+    }
+
     private void validateGELFMessage(JsonNode jsonNode, UUID id, ResolvableInetSocketAddress remoteAddress) {
         final String prefix = "GELF message <" + id + "> " + (remoteAddress == null ? "" : "(received from <" + remoteAddress + ">) ");
 
@@ -308,6 +440,11 @@ public class GelfCodec extends AbstractCodec {
                 DEFAULT_DECOMPRESS_SIZE_LIMIT,
                 "The maximum number of bytes after decompression.",
                 ConfigurationField.Optional.OPTIONAL));
+            requestedConfiguration.addField(new BooleanField(
+                CK_STREAMING_DECODER,
+                "Streaming decoder",
+                false,
+                "Decode messages while decompressing and parsing them instead of building an intermediate JSON document."));
 
             return requestedConfiguration;
         }
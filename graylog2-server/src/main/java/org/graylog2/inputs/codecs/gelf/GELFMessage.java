@@ -16,14 +16,19 @@
  */
 package org.graylog2.inputs.codecs.gelf;
 
+import com.google.common.io.ByteStreams;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.Tools;
 
 import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 public class GELFMessage {
 
@@ -96,6 +101,33 @@ public class GELFMessage {
         return null;
     }
 
+    /**
+     * Return the JSON payload of the GELF message as a stream. Compressed payloads are decompressed while reading
+     * from the stream.
+     *
+     * @param maxBytes The maximum number of bytes to read from a compressed GELF payload.
+     * @return A stream of the JSON payload of the GELF message.
+     * @see #getJSON(long, Charset)
+     */
+    public InputStream getJSONStream(long maxBytes) {
+        try {
+            switch (getGELFType()) {
+                case ZLIB:
+                    return ByteStreams.limit(new InflaterInputStream(new ByteArrayInputStream(payload)), maxBytes);
+                case GZIP:
+                    return ByteStreams.limit(new GZIPInputStream(new ByteArrayInputStream(payload)), maxBytes);
+                case UNCOMPRESSED:
+                    return new ByteArrayInputStream(payload);
+                case CHUNKED:
+                case UNSUPPORTED:
+                default:
+                    throw new IllegalStateException("Unknown GELF type. Not supported.");
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to decompress the GELF message payload", e);
+        }
+    }
+
     public byte[] getPayload() {
         return payload;
     }
@@ -139,7 +171,7 @@ public class GELFMessage {
             this.second = second;
         }
 
-        static Type determineType(final byte first, final byte second) {
+        public static Type determineType(final byte first, final byte second) {
 
             if (first == ZLIB.first()) {
                 // zlib's second byte is for flags and a checksum -
@@ -22,8 +22,10 @@ import org.graylog2.grok.GrokPatternRegistry;
 import org.graylog2.lookup.LookupTableService;
 import org.graylog2.plugin.inputs.Converter;
 import org.graylog2.plugin.inputs.Extractor;
+import org.graylog2.utilities.regex.RegexEngine;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import java.util.List;
 import java.util.Map;
 
@@ -31,12 +33,20 @@ public class ExtractorFactory {
     private final MetricRegistry metricRegistry;
     private final GrokPatternRegistry grokPatternRegistry;
     private final LookupTableService lookupTableService;
+    private final RegexEngine regexEngine;
+    private final int timingSampleRate;
 
     @Inject
-    public ExtractorFactory(MetricRegistry metricRegistry, GrokPatternRegistry grokPatternRegistry, LookupTableService lookupTableService) {
+    public ExtractorFactory(MetricRegistry metricRegistry,
+                            GrokPatternRegistry grokPatternRegistry,
+                            LookupTableService lookupTableService,
+                            RegexEngine regexEngine,
+                            @Named("processing_timer_sample_rate") int timingSampleRate) {
         this.metricRegistry = metricRegistry;
         this.grokPatternRegistry = grokPatternRegistry;
         this.lookupTableService = lookupTableService;
+        this.regexEngine = regexEngine;
+        this.timingSampleRate = timingSampleRate;
     }
 
     public Extractor factory(String id,
@@ -51,11 +61,28 @@ public class ExtractorFactory {
                              Extractor.ConditionType conditionType,
                              String conditionValue)
             throws NoSuchExtractorException, Extractor.ReservedFieldException, ConfigurationException {
+        final Extractor extractor = create(id, title, order, cursorStrategy, type, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
+        extractor.setTimingSampleRate(timingSampleRate);
+        return extractor;
+    }
+
+    private Extractor create(String id,
+                             String title,
+                             long order,
+                             Extractor.CursorStrategy cursorStrategy,
+                             Extractor.Type type,
+                             String sourceField,
+                             String targetField,
+                             Map<String, Object> extractorConfig,
+                             String creatorUserId, List<Converter> converters,
+                             Extractor.ConditionType conditionType,
+                             String conditionValue)
+            throws NoSuchExtractorException, Extractor.ReservedFieldException, ConfigurationException {
 
         // TODO convert to guice factory
         switch (type) {
             case REGEX:
-                return new RegexExtractor(metricRegistry, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
+                return new RegexExtractor(metricRegistry, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue, regexEngine);
             case SUBSTRING:
                 return new SubstringExtractor(metricRegistry, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
             case SPLIT_AND_INDEX:
@@ -20,16 +20,18 @@ import com.codahale.metrics.MetricRegistry;
 import org.graylog2.ConfigurationException;
 import org.graylog2.plugin.inputs.Converter;
 import org.graylog2.plugin.inputs.Extractor;
+import org.graylog2.utilities.regex.JavaRegexEngine;
+import org.graylog2.utilities.regex.RegexEngine;
+import org.graylog2.utilities.regex.RegexPattern;
 
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class RegexExtractor extends Extractor {
     private static final String CONFIG_REGEX_VALUE = "regex_value".intern();
 
-    private final Pattern pattern;
+    private final RegexPattern pattern;
 
     public RegexExtractor(final MetricRegistry metricRegistry,
                           final String id,
@@ -43,18 +45,34 @@ public class RegexExtractor extends Extractor {
                           final List<Converter> converters,
                           final ConditionType conditionType,
                           final String conditionValue) throws ReservedFieldException, ConfigurationException {
+        this(metricRegistry, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue, JavaRegexEngine.INSTANCE);
+    }
+
+    public RegexExtractor(final MetricRegistry metricRegistry,
+                          final String id,
+                          final String title,
+                          final long order,
+                          final CursorStrategy cursorStrategy,
+                          final String sourceField,
+                          final String targetField,
+                          final Map<String, Object> extractorConfig,
+                          final String creatorUserId,
+                          final List<Converter> converters,
+                          final ConditionType conditionType,
+                          final String conditionValue,
+                          final RegexEngine regexEngine) throws ReservedFieldException, ConfigurationException {
         super(metricRegistry, id, title, order, Type.REGEX, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
 
         if (extractorConfig == null || extractorConfig.get(CONFIG_REGEX_VALUE) == null || ((String) extractorConfig.get(CONFIG_REGEX_VALUE)).isEmpty()) {
             throw new ConfigurationException("Missing regex configuration field: regex_value");
         }
 
-        pattern = Pattern.compile((String) extractorConfig.get(CONFIG_REGEX_VALUE), Pattern.DOTALL);
+        pattern = regexEngine.compile((String) extractorConfig.get(CONFIG_REGEX_VALUE), Pattern.DOTALL);
     }
 
     @Override
     protected Result[] run(String value) {
-        final Matcher matcher = pattern.matcher(value);
+        final RegexPattern.Matcher matcher = pattern.matcher(value);
 
         if (!matcher.find() || matcher.groupCount() == 0 || matcher.start(1) == -1 || matcher.end(1) == -1) {
             return null;
@@ -20,6 +20,7 @@ import com.google.inject.Scopes;
 import com.google.inject.multibindings.MapBinder;
 import com.google.inject.multibindings.MapBinderBinding;
 import org.graylog2.Configuration;
+import org.graylog2.lookup.adapters.CIDRRangeDataAdapter;
 import org.graylog2.lookup.adapters.CSVFileDataAdapter;
 import org.graylog2.lookup.adapters.DSVHTTPDataAdapter;
 import org.graylog2.lookup.adapters.DnsLookupDataAdapter;
@@ -66,6 +67,11 @@ public class LookupModule extends Graylog2Module {
                 CSVFileDataAdapter.Factory.class,
                 CSVFileDataAdapter.Config.class);
 
+        installLookupDataAdapter(CIDRRangeDataAdapter.NAME,
+                CIDRRangeDataAdapter.class,
+                CIDRRangeDataAdapter.Factory.class,
+                CIDRRangeDataAdapter.Config.class);
+
         installLookupDataAdapter2(DnsLookupDataAdapter.NAME,
                 DnsLookupDataAdapter.class,
                 DnsLookupDataAdapter.Factory.class,
@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.adapters;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Multimap;
+import com.google.common.net.InetAddresses;
+import com.google.common.primitives.Ints;
+import com.google.inject.assistedinject.Assisted;
+import org.graylog.autovalue.WithBeanGetter;
+import org.graylog2.lookup.AllowedAuxiliaryPathChecker;
+import org.graylog2.plugin.lookup.LookupCachePurge;
+import org.graylog2.plugin.lookup.LookupDataAdapter;
+import org.graylog2.plugin.lookup.LookupDataAdapterConfiguration;
+import org.graylog2.plugin.lookup.LookupResult;
+import org.graylog2.plugin.utilities.FileInfo;
+import org.graylog2.utilities.IpPrefixMap;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Looks up IP addresses in a list of subnets or address ranges read from a CSV file.
+ * <p>
+ * Every data line of the file contains a subnet in CIDR notation (e.g. {@code 10.1.0.0/16}), a single address or,
+ * if a range end column is configured, the first and last address of a range. The ranges are loaded into a
+ * {@link IpPrefixMap}, so a lookup takes at most 32 (IPv4) or 128 (IPv6) steps regardless of the size of the file.
+ * If an address is contained in several entries, the most specific one wins.
+ * <p>
+ * The single value of a result is taken from the value column, the multi value contains all columns of the matching
+ * line. The file is reloaded when it changes and the new data replaces the old one atomically.
+ */
+public class CIDRRangeDataAdapter extends LookupDataAdapter {
+    private static final Logger LOG = LoggerFactory.getLogger(CIDRRangeDataAdapter.class);
+
+    public static final String NAME = "cidrrange";
+
+    private final Config config;
+    private final AllowedAuxiliaryPathChecker pathChecker;
+    private final AtomicReference<RangeTable> lookupRef = new AtomicReference<>(RangeTable.EMPTY);
+
+    private FileInfo fileInfo = FileInfo.empty();
+
+    @Inject
+    public CIDRRangeDataAdapter(@Assisted("id") String id,
+                                @Assisted("name") String name,
+                                @Assisted LookupDataAdapterConfiguration config,
+                                MetricRegistry metricRegistry,
+                                AllowedAuxiliaryPathChecker pathChecker) {
+        super(id, name, config, metricRegistry);
+        this.config = (Config) config;
+        this.pathChecker = pathChecker;
+    }
+
+    @Override
+    public void doStart() throws Exception {
+        LOG.debug("Starting CIDR range data adapter for file: {}", config.path());
+        if (isNullOrEmpty(config.path())) {
+            throw new IllegalStateException("File path needs to be set");
+        }
+        if (!pathChecker.fileIsInAllowedPath(Paths.get(config.path()))) {
+            throw new IllegalStateException(CSVFileDataAdapter.ALLOWED_PATH_ERROR);
+        }
+        if (config.checkInterval() < 1) {
+            throw new IllegalStateException("Check interval setting cannot be smaller than 1");
+        }
+
+        // Set file info before parsing the data for the first time
+        fileInfo = FileInfo.forPath(Paths.get(config.path()));
+        try {
+            lookupRef.set(parseCSVFile());
+        } catch (Exception e) {
+            logParseError(e);
+            setError(e);
+        }
+    }
+
+    @Override
+    public Duration refreshInterval() {
+        return Duration.standardSeconds(Ints.saturatedCast(config.checkInterval()));
+    }
+
+    @Override
+    protected void doRefresh(LookupCachePurge cachePurge) throws Exception {
+        if (!pathChecker.fileIsInAllowedPath(Paths.get(config.path()))) {
+            LOG.error(CSVFileDataAdapter.ALLOWED_PATH_ERROR);
+            setError(new IllegalStateException(CSVFileDataAdapter.ALLOWED_PATH_ERROR));
+            return;
+        }
+
+        final FileInfo.Change fileChanged = fileInfo.checkForChange();
+        if (!fileChanged.isChanged() && !getError().isPresent()) {
+            // Nothing to do, file did not change
+            return;
+        }
+
+        LOG.debug("CSV file {} has changed, updating data", config.path());
+        try {
+            // a broken file keeps the previous data in place
+            lookupRef.set(parseCSVFile());
+        } catch (Exception e) {
+            logParseError(e);
+            setError(e);
+            return;
+        }
+        cachePurge.purgeAll();
+        fileInfo = fileChanged.fileInfo();
+        clearError();
+    }
+
+    private RangeTable parseCSVFile() throws IOException {
+        final IpPrefixMap.Builder<String[]> ranges = IpPrefixMap.builder();
+        // site or owner names are usually repeated on many lines
+        final Interner<String> interner = Interners.newStrongInterner();
+        final String rangeEndColumnName = config.rangeEndColumn().filter(column -> !column.isEmpty()).orElse(null);
+
+        try (final CSVReader csvReader = new CSVReader(new InputStreamReader(Files.newInputStream(Paths.get(config.path())), StandardCharsets.UTF_8),
+                config.separatorAsChar(), config.quotecharAsChar())) {
+            // The first line in the CSV file provides the column names
+            final String[] header = csvReader.readNext();
+            if (header == null) {
+                return RangeTable.EMPTY;
+            }
+            final int cidrColumn = Arrays.asList(header).indexOf(config.cidrColumn());
+            final int rangeEndColumn = rangeEndColumnName == null ? -1 : Arrays.asList(header).indexOf(rangeEndColumnName);
+            final int valueColumn = Arrays.asList(header).indexOf(config.valueColumn());
+            if (cidrColumn < 0 || valueColumn < 0 || (rangeEndColumnName != null && rangeEndColumn < 0)) {
+                throw new IllegalStateException("Couldn't detect column number for CIDR, range end or value - check CSV file format");
+            }
+
+            final int minColumns = Math.max(Math.max(cidrColumn, rangeEndColumn), valueColumn) + 1;
+
+            int line = 1;
+            String[] next;
+            while ((next = csvReader.readNext()) != null) {
+                line++;
+                if (next.length == 1 && next[0].trim().isEmpty()) {
+                    continue;
+                }
+                if (next.length < minColumns) {
+                    throw new IllegalStateException("Missing columns in line " + line);
+                }
+                for (int i = 0; i < next.length; i++) {
+                    next[i] = interner.intern(next[i]);
+                }
+                try {
+                    if (rangeEndColumn >= 0) {
+                        ranges.putRange(InetAddresses.forString(next[cidrColumn].trim()), InetAddresses.forString(next[rangeEndColumn].trim()), next);
+                    } else if (next[cidrColumn].indexOf('/') >= 0) {
+                        ranges.put(next[cidrColumn], next);
+                    } else {
+                        final InetAddress address = InetAddresses.forString(next[cidrColumn].trim());
+                        ranges.put(address, address.getAddress().length * 8, next);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException("Invalid entry in line " + line + ": " + e.getMessage(), e);
+                }
+            }
+            return new RangeTable(header, valueColumn, ranges.build());
+        }
+    }
+
+    private void logParseError(Exception e) {
+        LOG.error("Couldn't parse CSV file {} (settings separator=<{}> quotechar=<{}> cidr_column=<{}> range_end_column=<{}> value_column=<{}>)",
+                config.path(), config.separator(), config.quotechar(), config.cidrColumn(), config.rangeEndColumn().orElse(""),
+                config.valueColumn(), e);
+    }
+
+    @Override
+    public void doStop() throws Exception {
+        LOG.debug("Stopping CIDR range data adapter for file: {}", config.path());
+    }
+
+    @Override
+    public LookupResult doGet(Object key) {
+        final InetAddress address;
+        if (key instanceof InetAddress) {
+            address = (InetAddress) key;
+        } else {
+            final String stringKey = String.valueOf(key).trim();
+            if (!InetAddresses.isInetAddress(stringKey)) {
+                return getEmptyResult();
+            }
+            address = InetAddresses.forString(stringKey);
+        }
+
+        final RangeTable table = lookupRef.get();
+        final String[] row = table.ranges.get(address);
+        if (row == null) {
+            return getEmptyResult();
+        }
+
+        final Map<Object, Object> columns = new LinkedHashMap<>(table.header.length);
+        for (int i = 0; i < Math.min(table.header.length, row.length); i++) {
+            columns.put(table.header[i], row[i]);
+        }
+        return LookupResult.multi(row[table.valueColumn], columns);
+    }
+
+    @Override
+    public void set(Object key, Object value) {
+
+    }
+
+    private static class RangeTable {
+        static final RangeTable EMPTY = new RangeTable(new String[0], 0, IpPrefixMap.<String[]>builder().build());
+
+        // the CSV lines are stored as they are, the column map of a result is only created on lookup
+        final String[] header;
+        final int valueColumn;
+        final IpPrefixMap<String[]> ranges;
+
+        RangeTable(String[] header, int valueColumn, IpPrefixMap<String[]> ranges) {
+            this.header = header;
+            this.valueColumn = valueColumn;
+            this.ranges = ranges;
+        }
+    }
+
+    public interface Factory extends LookupDataAdapter.Factory<CIDRRangeDataAdapter> {
+        @Override
+        CIDRRangeDataAdapter create(@Assisted("id") String id,
+                                    @Assisted("name") String name,
+                                    LookupDataAdapterConfiguration configuration);
+
+        @Override
+        Descriptor getDescriptor();
+    }
+
+    public static class Descriptor extends LookupDataAdapter.Descriptor<Config> {
+        public Descriptor() {
+            super(NAME, Config.class);
+        }
+
+        @Override
+        public Config defaultConfiguration() {
+            return Config.builder()
+                    .type(NAME)
+                    .path("/etc/graylog/networks.csv")
+                    .separator(",")
+                    .quotechar("\"")
+                    .cidrColumn("cidr")
+                    .valueColumn("value")
+                    .checkInterval(60)
+                    .build();
+        }
+    }
+
+    @AutoValue
+    @WithBeanGetter
+    @JsonAutoDetect
+    @JsonDeserialize(builder = AutoValue_CIDRRangeDataAdapter_Config.Builder.class)
+    @JsonTypeName(NAME)
+    public static abstract class Config implements LookupDataAdapterConfiguration {
+
+        @Override
+        @JsonProperty(TYPE_FIELD)
+        public abstract String type();
+
+        @JsonProperty("path")
+        @NotEmpty
+        public abstract String path();
+
+        // Using String here instead of char to allow deserialization of a longer (invalid) string to get proper
+        // validation error messages
+        @JsonProperty("separator")
+        @Size(min = 1, max = 1)
+        @NotEmpty
+        public abstract String separator();
+
+        @JsonIgnore
+        public char separatorAsChar() {
+            return separator().charAt(0);
+        }
+
+        // Using String here instead of char to allow deserialization of a longer (invalid) string to get proper
+        // validation error messages
+        @JsonProperty("quotechar")
+        @Size(min = 1, max = 1)
+        @NotEmpty
+        public abstract String quotechar();
+
+        @JsonIgnore
+        public char quotecharAsChar() {
+            return quotechar().charAt(0);
+        }
+
+        /**
+         * The column with the subnet, single address or, if {@link #rangeEndColumn()} is set, the first address of
+         * the range.
+         */
+        @JsonProperty("cidr_column")
+        @NotEmpty
+        public abstract String cidrColumn();
+
+        @JsonProperty("range_end_column")
+        public abstract Optional<String> rangeEndColumn();
+
+        @JsonProperty("value_column")
+        @NotEmpty
+        public abstract String valueColumn();
+
+        @JsonProperty("check_interval")
+        @Min(1)
+        public abstract long checkInterval();
+
+        public static Builder builder() {
+            return new AutoValue_CIDRRangeDataAdapter_Config.Builder();
+        }
+
+        @Override
+        public Optional<Multimap<String, String>> validate(LookupDataAdapterValidationContext context) {
+            final ArrayListMultimap<String, String> errors = ArrayListMultimap.create();
+
+            final Path path = Paths.get(path());
+            if (!context.getPathChecker().fileIsInAllowedPath(path)) {
+                errors.put("path", CSVFileDataAdapter.ALLOWED_PATH_ERROR);
+
+                // Intentionally return here, because in the Cloud context, we should not perform the following checks
+                // to report to the user whether or not a file exists.
+                return Optional.of(errors);
+            }
+
+            if (!Files.exists(path)) {
+                errors.put("path", "The file does not exist.");
+            } else if (!Files.isReadable(path)) {
+                errors.put("path", "The file cannot be read.");
+            }
+
+            return errors.isEmpty() ? Optional.empty() : Optional.of(errors);
+        }
+
+        @AutoValue.Builder
+        public abstract static class Builder {
+            @JsonProperty(TYPE_FIELD)
+            public abstract Builder type(String type);
+
+            @JsonProperty("path")
+            public abstract Builder path(String path);
+
+            @JsonProperty("separator")
+            public abstract Builder separator(String separator);
+
+            @JsonProperty("quotechar")
+            public abstract Builder quotechar(String quotechar);
+
+            @JsonProperty("cidr_column")
+            public abstract Builder cidrColumn(String cidrColumn);
+
+            @JsonProperty("range_end_column")
+            public abstract Builder rangeEndColumn(String rangeEndColumn);
+
+            @JsonProperty("value_column")
+            public abstract Builder valueColumn(String valueColumn);
+
+            @JsonProperty("check_interval")
+            public abstract Builder checkInterval(long checkInterval);
+
+            public abstract Config build();
+        }
+    }
+}
@@ -31,6 +31,7 @@ import com.google.common.primitives.Ints;
 import com.google.inject.assistedinject.Assisted;
 import org.graylog.autovalue.WithBeanGetter;
 import org.graylog2.lookup.AllowedAuxiliaryPathChecker;
+import org.graylog2.lookup.adapters.csvfile.MappedKeyValueFile;
 import org.graylog2.plugin.lookup.LookupCachePurge;
 import org.graylog2.plugin.lookup.LookupDataAdapter;
 import org.graylog2.plugin.lookup.LookupDataAdapterConfiguration;
@@ -40,14 +41,18 @@ import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.Size;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -55,6 +60,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
 
@@ -73,9 +79,14 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
     public static final String ALLOWED_PATH_ERROR =
             "The specified CSV file either does not exist or is not in an allowed path.";
 
+    private static final String MAPPED_FILE_DIRECTORY = "lookup-tables";
+
     private final Config config;
     private final AllowedAuxiliaryPathChecker pathChecker;
+    private final Path mappedFileDirectory;
     private final AtomicReference<Map<String, String>> lookupRef = new AtomicReference<>(ImmutableMap.of());
+    // only used with the memory_mapped setting, replaces lookupRef
+    private final AtomicReference<MappedKeyValueFile> mappedLookupRef = new AtomicReference<>();
 
     private FileInfo fileInfo = FileInfo.empty();
 
@@ -84,10 +95,12 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                               @Assisted("name") String name,
                               @Assisted LookupDataAdapterConfiguration config,
                               MetricRegistry metricRegistry,
-                              AllowedAuxiliaryPathChecker pathChecker) {
+                              AllowedAuxiliaryPathChecker pathChecker,
+                              @Named("data_dir") Path dataDir) {
         super(id, name, config, metricRegistry);
         this.config = (Config) config;
         this.pathChecker = pathChecker;
+        this.mappedFileDirectory = dataDir.resolve(MAPPED_FILE_DIRECTORY);
     }
 
     @Override
@@ -105,7 +118,10 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
 
         // Set file info before parsing the data for the first time
         fileInfo = FileInfo.forPath(Paths.get(config.path()));
-        lookupRef.set(parseCSVFile());
+        if (config.isMemoryMapped()) {
+            deleteMappedFiles();
+        }
+        updateLookup();
     }
 
     @Override
@@ -129,7 +145,7 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
             }
 
             LOG.debug("CSV file {} has changed, updating data", config.path());
-            lookupRef.set(parseCSVFile());
+            updateLookup();
             cachePurge.purgeAll();
             fileInfo = fileChanged.fileInfo();
             clearError();
@@ -139,10 +155,55 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
         }
     }
 
-    private Map<String, String> parseCSVFile() throws IOException {
+    private void updateLookup() throws IOException {
+        if (!config.isMemoryMapped()) {
+            final ImmutableMap.Builder<String, String> newLookupBuilder = ImmutableMap.builder();
+            parseCSVFile(newLookupBuilder::put);
+            lookupRef.set(newLookupBuilder.build());
+            return;
+        }
+
+        // The entries are streamed into a new file, the previous table stays in use until the new one is complete
+        Files.createDirectories(mappedFileDirectory);
+        final Path file = Files.createTempFile(mappedFileDirectory, mappedFilePrefix(), ".kv");
+        final MappedKeyValueFile newLookup;
+        try (final MappedKeyValueFile.Builder builder = MappedKeyValueFile.builder(file)) {
+            parseCSVFile((key, value) -> {
+                try {
+                    builder.put(key, value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            newLookup = builder.build();
+        }
+        LOG.debug("Wrote {} entries of CSV file {} to {}", newLookup.size(), config.path(), file);
+
+        final MappedKeyValueFile oldLookup = mappedLookupRef.getAndSet(newLookup);
+        if (oldLookup != null) {
+            oldLookup.delete();
+        }
+    }
+
+    private String mappedFilePrefix() {
+        return "csvfile-" + id() + "-";
+    }
+
+    // removes files left behind by a previous run which didn't stop the adapter
+    private void deleteMappedFiles() throws IOException {
+        if (!Files.isDirectory(mappedFileDirectory)) {
+            return;
+        }
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(mappedFileDirectory, mappedFilePrefix() + "*.kv")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private void parseCSVFile(BiConsumer<String, String> entryConsumer) throws IOException {
         final InputStream inputStream = Files.newInputStream(Paths.get(config.path()));
         final InputStreamReader fileReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
-        final ImmutableMap.Builder<String, String> newLookupBuilder = ImmutableMap.builder();
 
         try (final CSVReader csvReader = new CSVReader(fileReader, config.separatorAsChar(), config.quotecharAsChar())) {
             int line = 0;
@@ -176,9 +237,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                         throw new IllegalStateException("Couldn't detect column number for key or value - check CSV file format");
                     }
                     if (config.isCaseInsensitiveLookup()) {
-                        newLookupBuilder.put(next[keyColumn].toLowerCase(Locale.ENGLISH), next[valueColumn]);
+                        entryConsumer.accept(next[keyColumn].toLowerCase(Locale.ENGLISH), next[valueColumn]);
                     } else {
-                        newLookupBuilder.put(next[keyColumn], next[valueColumn]);
+                        entryConsumer.accept(next[keyColumn], next[valueColumn]);
                     }
                 }
             }
@@ -187,19 +248,21 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                     config.separator(), config.quotechar(), config.keyColumn(), config.valueColumn(), e);
             setError(e);
         }
-
-        return newLookupBuilder.build();
     }
 
     @Override
     public void doStop() throws Exception {
         LOG.debug("Stopping CSV data adapter for file: {}", config.path());
+        final MappedKeyValueFile mappedLookup = mappedLookupRef.get();
+        if (mappedLookup != null) {
+            mappedLookup.delete();
+        }
     }
 
     @Override
     public LookupResult doGet(Object key) {
         final String stringKey = config.isCaseInsensitiveLookup() ? String.valueOf(key).toLowerCase(Locale.ENGLISH) : String.valueOf(key);
-        final String value = lookupRef.get().get(stringKey);
+        final String value = config.isMemoryMapped() ? getMapped(stringKey) : lookupRef.get().get(stringKey);
 
         if (value == null) {
             return getEmptyResult();
@@ -208,6 +271,12 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
         return LookupResult.single(value);
     }
 
+    @Nullable
+    private String getMapped(String key) {
+        final MappedKeyValueFile mappedLookup = mappedLookupRef.get();
+        return mappedLookup == null ? null : mappedLookup.get(key);
+    }
+
     @Override
     public void set(Object key, Object value) {
 
@@ -239,6 +308,7 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                     .valueColumn("value")
                     .checkInterval(60)
                     .caseInsensitiveLookup(false)
+                    .memoryMapped(false)
                     .build();
         }
     }
@@ -301,6 +371,17 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
             return caseInsensitiveLookup().isPresent() && caseInsensitiveLookup().get();
         }
 
+        /**
+         * Keep the data in a memory-mapped file in the data directory instead of the heap. This is meant for files
+         * with millions of lines.
+         */
+        @JsonProperty("memory_mapped")
+        public abstract Optional<Boolean> memoryMapped();
+
+        public boolean isMemoryMapped() {
+            return memoryMapped().isPresent() && memoryMapped().get();
+        }
+
         public static Builder builder() {
             return new AutoValue_CSVFileDataAdapter_Config.Builder();
         }
@@ -353,6 +434,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
             @JsonProperty("case_insensitive_lookup")
             public abstract Builder caseInsensitiveLookup(Boolean caseInsensitiveLookup);
 
+            @JsonProperty("memory_mapped")
+            public abstract Builder memoryMapped(Boolean memoryMapped);
+
             public abstract Config build();
         }
     }
@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.adapters.csvfile;
+
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * An immutable string key-value table stored in a memory-mapped file.
+ * <p>
+ * The file consists of a header, the entries in insertion order and an open addressing hash index over the
+ * entries. Lookups read the index and the entries straight from the mapped pages, so the table doesn't occupy heap
+ * space and its pages are managed by the operating system's page cache. Files larger than 2 GB are mapped in
+ * several segments.
+ * <p>
+ * Use {@link #builder(Path)} to write a new file. The entries are streamed to disk and the index is built inside the
+ * mapped file, so building a table needs constant heap space regardless of the number of entries.
+ * <p>
+ * Instances are thread-safe. There is no way to unmap a file explicitly before Java 9, the mapping is released when
+ * the instance is garbage collected. It's safe to {@link #delete()} the file while other threads still read from it.
+ */
+public class MappedKeyValueFile {
+    private static final int MAGIC = 0x474c4b56; // "GLKV"
+    private static final int VERSION = 1;
+    // magic, version, entries, slots, index position
+    private static final int HEADER_SIZE = 32;
+
+    // index slots contain the position of the entry in the lower 40 bits and a part of the key hash in the upper 24 bits
+    private static final int POSITION_BITS = 40;
+    private static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final Path path;
+    private final MappedByteBuffer[] segments;
+    private final long entries;
+    private final long slotMask;
+    private final long indexPosition;
+
+    private MappedKeyValueFile(Path path, MappedByteBuffer[] segments, long entries, long slots, long indexPosition) {
+        this.path = path;
+        this.segments = segments;
+        this.entries = entries;
+        this.slotMask = slots - 1;
+        this.indexPosition = indexPosition;
+    }
+
+    public static Builder builder(Path path) throws IOException {
+        return new Builder(path);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long size() {
+        return entries;
+    }
+
+    /**
+     * @param key the key
+     * @return the value for the key or {@code null} if there is none
+     */
+    @Nullable
+    public String get(String key) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final long hash = hash(keyBytes, keyBytes.length);
+        final long position = find(keyBytes, keyBytes.length, hash);
+        if (position < 0) {
+            return null;
+        }
+        final long valuePosition = position + 4 + keyBytes.length;
+        final byte[] value = new byte[getInt(valuePosition)];
+        get(valuePosition + 4, value, value.length);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Deletes the file, the table stays readable until it's garbage collected.
+     */
+    public void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    // returns the position of the entry with the given key or -1
+    private long find(byte[] key, int keyLength, long hash) {
+        final long tag = hash >>> POSITION_BITS;
+        long slot = hash & slotMask;
+        while (true) {
+            final long entry = getLong(indexPosition + slot * 8);
+            if (entry == 0) {
+                return -1;
+            }
+            if ((entry >>> POSITION_BITS) == tag && keyEquals(entry & POSITION_MASK, key, keyLength)) {
+                return entry & POSITION_MASK;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    private boolean keyEquals(long position, byte[] key, int keyLength) {
+        if (getInt(position) != keyLength) {
+            return false;
+        }
+        for (int i = 0; i < keyLength; i++) {
+            if (get(position + 4 + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte get(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].get((int) (position & SEGMENT_MASK));
+    }
+
+    private void get(long position, byte[] destination, int length) {
+        for (int i = 0; i < length; i++) {
+            destination[i] = get(position + i);
+        }
+    }
+
+    private int getInt(long position) {
+        final int offset = (int) (position & SEGMENT_MASK);
+        if (offset <= SEGMENT_SIZE - 4) {
+            return segments[(int) (position >>> SEGMENT_BITS)].getInt(offset);
+        }
+        // crosses a segment boundary
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (get(position + i) & 0xff);
+        }
+        return value;
+    }
+
+    // index slots are aligned to 8 bytes and never cross a segment boundary
+    private long getLong(long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)].getLong((int) (position & SEGMENT_MASK));
+    }
+
+    private void putLong(long position, long value) {
+        segments[(int) (position >>> SEGMENT_BITS)].putLong((int) (position & SEGMENT_MASK), value);
+    }
+
+    // FNV-1a with the MurmurHash3 finalizer, the index uses the lower bits for the slot and the upper bits as tag
+    private static long hash(byte[] bytes, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static MappedByteBuffer[] map(FileChannel channel, long size) throws IOException {
+        final MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS)];
+        for (int i = 0; i < segments.length; i++) {
+            final long start = i * SEGMENT_SIZE;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, start, Math.min(SEGMENT_SIZE, size - start));
+        }
+        return segments;
+    }
+
+    /**
+     * Writes a new table file. Call {@link #build()} after adding all entries or {@link #close()} to discard the file.
+     */
+    public static class Builder implements Closeable {
+        private final Path path;
+        private final DataOutputStream out;
+        private long position = HEADER_SIZE;
+        private long entries = 0;
+        private boolean built = false;
+
+        private Builder(Path path) throws IOException {
+            this.path = path;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 64 * 1024));
+            out.write(new byte[HEADER_SIZE]);
+        }
+
+        public Builder put(String key, String value) throws IOException {
+            final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+            final byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+            if (position > POSITION_MASK) {
+                throw new IOException("Table file " + path + " exceeds the maximum size");
+            }
+            out.writeInt(keyBytes.length);
+            out.write(keyBytes);
+            out.writeInt(valueBytes.length);
+            out.write(valueBytes);
+            position += 8L + keyBytes.length + valueBytes.length;
+            entries++;
+            return this;
+        }
+
+        /**
+         * Builds the index and maps the file.
+         *
+         * @return the table
+         * @throws IllegalArgumentException if a key has been added more than once
+         */
+        public MappedKeyValueFile build() throws IOException {
+            out.close();
+            // load factor of at most 0.5 keeps the probe sequences short
+            final long slots = Long.highestOneBit(Math.max(1, entries * 2 - 1)) << 1;
+            final long indexPosition = (position + 7) & ~7L;
+            final long fileSize = indexPosition + slots * 8;
+
+            final MappedByteBuffer[] segments;
+            try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw");
+                 FileChannel channel = file.getChannel()) {
+                file.setLength(fileSize);
+                segments = map(channel, fileSize);
+            }
+            final MappedKeyValueFile table = new MappedKeyValueFile(path, segments, entries, slots, indexPosition);
+
+            byte[] key = new byte[64];
+            long entryPosition = HEADER_SIZE;
+            for (long i = 0; i < entries; i++) {
+                final int keyLength = table.getInt(entryPosition);
+                if (keyLength > key.length) {
+                    key = new byte[Math.max(keyLength, key.length * 2)];
+                }
+                table.get(entryPosition + 4, key, keyLength);
+                final long hash = hash(key, keyLength);
+                if (table.find(key, keyLength, hash) >= 0) {
+                    throw new IllegalArgumentException("Duplicate key <" + new String(key, 0, keyLength, StandardCharsets.UTF_8) + ">");
+                }
+                long slot = hash & table.slotMask;
+                while (table.getLong(indexPosition + slot * 8) != 0) {
+                    slot = (slot + 1) & table.slotMask;
+                }
+                table.putLong(indexPosition + slot * 8, (hash >>> POSITION_BITS << POSITION_BITS) | entryPosition);
+
+                final long valuePosition = entryPosition + 4 + keyLength;
+                entryPosition = valuePosition + 4 + table.getInt(valuePosition);
+            }
+
+            final MappedByteBuffer header = segments[0];
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putLong(8, entries);
+            header.putLong(16, slots);
+            header.putLong(24, indexPosition);
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            built = true;
+            return table;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!built) {
+                out.close();
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.indexer.messages.Messages;
 import org.graylog2.plugin.Message;
@@ -30,31 +31,57 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.codahale.metrics.MetricRegistry.name;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 // Singleton class
 public class BlockingBatchedESOutput extends ElasticSearchOutput {
     private static final Logger log = LoggerFactory.getLogger(BlockingBatchedESOutput.class);
     private final int maxBufferSize;
+    private final long maxBufferSizeBytes;
     private final Timer processTime;
     private final Histogram batchSize;
+    private final Histogram batchSizeBytes;
     private final Meter bufferFlushes;
     private final Meter bufferFlushFailures;
     private final Meter bufferFlushesRequested;
 
-    private volatile List<Map.Entry<IndexSet, Message>> buffer;
+    // every writing thread is pinned to one stripe, so the output buffer processors don't contend on a single buffer
+    private final Stripe[] stripes;
+    private final AtomicInteger nextStripe = new AtomicInteger(0);
+    private final ThreadLocal<Stripe> threadStripe;
+    private final AcknowledgementWatermark watermark = new AcknowledgementWatermark();
 
     private static final AtomicInteger activeFlushThreads = new AtomicInteger(0);
     private final AtomicLong lastFlushTime = new AtomicLong();
     private final int outputFlushInterval;
 
+    // only used if asynchronous bulk requests are enabled, null otherwise
+    private final Semaphore inFlightRequests;
+    // completes the asynchronous bulk requests, every request in flight needs at most one thread
+    private final ExecutorService completionExecutor;
+    private final int maxInFlightRequests;
+    private final int shutdownTimeout;
+    // batches in the order they have been sent, guarded by itself
+    private final Deque<InFlightBatch> inFlightBatches = new ArrayDeque<>();
+
     @Inject
     public BlockingBatchedESOutput(MetricRegistry metricRegistry,
                                    Messages messages,
@@ -63,15 +90,33 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
                                    MessageQueueAcknowledger acknowledger) {
         super(metricRegistry, messages, journal, acknowledger);
         this.maxBufferSize = serverConfiguration.getOutputBatchSize();
+        this.maxBufferSizeBytes = serverConfiguration.getOutputBatchSizeBytes().toBytes();
         outputFlushInterval = serverConfiguration.getOutputFlushInterval();
         this.processTime = metricRegistry.timer(name(this.getClass(), "processTime"));
         this.batchSize = metricRegistry.histogram(name(this.getClass(), "batchSize"));
+        this.batchSizeBytes = metricRegistry.histogram(name(this.getClass(), "batchSizeBytes"));
         this.bufferFlushes = metricRegistry.meter(name(this.getClass(), "bufferFlushes"));
         this.bufferFlushFailures = metricRegistry.meter(name(this.getClass(), "bufferFlushFailures"));
         this.bufferFlushesRequested = metricRegistry.meter(name(this.getClass(), "bufferFlushesRequested"));
 
-        buffer = new ArrayList<>(maxBufferSize);
+        this.maxInFlightRequests = serverConfiguration.getOutputBulkMaxInFlightRequests();
+        this.shutdownTimeout = serverConfiguration.getShutdownTimeout();
+        if (maxInFlightRequests > 0) {
+            this.inFlightRequests = new Semaphore(maxInFlightRequests);
+            this.completionExecutor = Executors.newFixedThreadPool(maxInFlightRequests, new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("blocking-batched-es-output-completion-%d")
+                    .build());
+        } else {
+            this.inFlightRequests = null;
+            this.completionExecutor = null;
+        }
 
+        this.stripes = new Stripe[serverConfiguration.getOutputBufferProcessors()];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.threadStripe = ThreadLocal.withInitial(() -> stripes[Math.floorMod(nextStripe.getAndIncrement(), stripes.length)]);
     }
 
     @Override
@@ -81,16 +126,15 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
         }
     }
 
-    public void writeMessageEntry(Map.Entry<IndexSet, Message> entry) throws Exception {
-        List<Map.Entry<IndexSet, Message>> flushBatch = null;
-        synchronized (this) {
-            buffer.add(entry);
-
-            if (buffer.size() >= maxBufferSize) {
-                flushBatch = buffer;
-                buffer = new ArrayList<>(maxBufferSize);
-            }
+    @Override
+    public void write(List<Message> messages) throws Exception {
+        for (Message message : messages) {
+            write(message);
         }
+    }
+
+    public void writeMessageEntry(Map.Entry<IndexSet, Message> entry) throws Exception {
+        final Batch flushBatch = threadStripe.get().add(entry);
         // if the current thread found it had to flush any messages, it does so but blocks.
         // this ensures we don't flush more than 'processorCount' in parallel.
         // TODO this will still be time limited by the OutputBufferProcessor and thus be called more often than it should
@@ -99,11 +143,16 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
         }
     }
 
-    private void flush(List<Map.Entry<IndexSet, Message>> messages) {
+    private void flush(Batch batch) {
+        final List<Map.Entry<IndexSet, Message>> messages = batch.messages;
         // never try to flush an empty buffer
         if (messages.isEmpty()) {
             return;
         }
+        if (inFlightRequests != null) {
+            flushAsync(batch);
+            return;
+        }
 
         activeFlushThreads.incrementAndGet();
         if (log.isDebugEnabled()) {
@@ -116,30 +165,246 @@ public class BlockingBatchedESOutput extends ElasticSearchOutput {
             lastFlushTime.set(System.nanoTime());
             writeMessageEntries(messages);
             batchSize.update(messages.size());
+            batchSizeBytes.update(batch.sizeBytes);
             bufferFlushes.mark();
         } catch (Exception e) {
             log.error("Unable to flush message buffer", e);
             bufferFlushFailures.mark();
+            releaseFailed(messages);
         }
         activeFlushThreads.decrementAndGet();
         log.debug("Flushing {} messages completed", messages.size());
     }
 
+    private void flushAsync(Batch batch) {
+        final List<Map.Entry<IndexSet, Message>> messages = batch.messages;
+        // this is where the back-pressure happens, the permit is only released once the batch has been acknowledged
+        try {
+            inFlightRequests.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting to flush {} messages", messages.size());
+            bufferFlushFailures.mark();
+            // the messages are tracked by the watermark since they were buffered, they must not hold back other batches
+            releaseFailed(messages);
+            return;
+        }
+        final InFlightBatch inFlightBatch = new InFlightBatch(messages);
+        synchronized (inFlightBatches) {
+            inFlightBatches.add(inFlightBatch);
+            log.debug("Starting asynchronous flush of {} messages, requests in flight {}", messages.size(), inFlightBatches.size());
+        }
+        final Timer.Context timer = processTime.time();
+        lastFlushTime.set(System.nanoTime());
+
+        CompletableFuture<Void> result;
+        try {
+            result = writeMessageEntriesAsync(messages, completionExecutor);
+        } catch (Exception e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete((ignored, throwable) -> {
+            timer.stop();
+            if (throwable == null) {
+                batchSize.update(messages.size());
+                batchSizeBytes.update(batch.sizeBytes);
+                bufferFlushes.mark();
+                log.debug("Flushing {} messages completed", messages.size());
+            } else {
+                log.error("Unable to flush message buffer", throwable);
+                bufferFlushFailures.mark();
+            }
+            acknowledgeCompletedBatches(inFlightBatch, throwable == null);
+        });
+    }
+
+    // acknowledges completed batches in the order they have been sent, so the journal offsets are committed in order
+    private void acknowledgeCompletedBatches(InFlightBatch batch, boolean successful) {
+        synchronized (inFlightBatches) {
+            batch.completed = true;
+            batch.successful = successful;
+            while (!inFlightBatches.isEmpty() && inFlightBatches.peekFirst().completed) {
+                final InFlightBatch completedBatch = inFlightBatches.pollFirst();
+                try {
+                    // like the synchronous flush, a batch whose bulk request failed is not acknowledged
+                    if (completedBatch.successful) {
+                        acknowledge(completedBatch.messages);
+                    } else {
+                        releaseFailed(completedBatch.messages);
+                    }
+                } catch (Exception e) {
+                    log.error("Unable to acknowledge {} messages", completedBatch.messages.size(), e);
+                } finally {
+                    inFlightRequests.release();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (completionExecutor != null) {
+            // the requests in flight still have to acknowledge their messages on the completion threads
+            try {
+                if (!inFlightRequests.tryAcquire(maxInFlightRequests, shutdownTimeout, MILLISECONDS)) {
+                    log.warn("Bulk requests still in flight after {}ms, stopping anyway", shutdownTimeout);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            completionExecutor.shutdown();
+        }
+        super.stop();
+    }
+
     public void forceFlushIfTimedout() {
-        // if we shouldn't flush at all based on the last flush time, no need to synchronize on this.
+        // if we shouldn't flush at all based on the last flush time, there's no need to touch the stripes.
         if (lastFlushTime.get() != 0 &&
                 outputFlushInterval > NANOSECONDS.toSeconds(System.nanoTime() - lastFlushTime.get())) {
                     return;
                 }
-        // flip buffer quickly and initiate flush
-        final List<Map.Entry<IndexSet, Message>> flushBatch;
-        synchronized (this) {
-            flushBatch = buffer;
-            buffer = new ArrayList<>(maxBufferSize);
+        // swap the batch of every stripe for an empty one and flush it
+        bufferFlushesRequested.mark();
+        for (Stripe stripe : stripes) {
+            flush(stripe.swap());
         }
-        if (flushBatch != null) {
-            bufferFlushesRequested.mark();
-            flush(flushBatch);
+        // written messages may still wait for a stripe which had nothing to flush anymore
+        acknowledge(Collections.emptyList());
+    }
+
+    /**
+     * Only acknowledges the written messages whose journal offsets are below every offset that is still buffered in
+     * a stripe or in flight. The journal commits the highest acknowledged offset, acknowledging the messages right
+     * away would lose the messages with lower offsets of other stripes if the server crashes before they are written.
+     */
+    @Override
+    protected void acknowledge(List<Map.Entry<IndexSet, Message>> messageList) {
+        final List<Message> releasable = watermark.complete(messageList, true);
+        if (!releasable.isEmpty()) {
+            acknowledgeMessages(releasable);
+        }
+    }
+
+    // the messages of a failed batch are not acknowledged, but they must not hold back the messages of other batches
+    private void releaseFailed(List<Map.Entry<IndexSet, Message>> messageList) {
+        try {
+            final List<Message> releasable = watermark.complete(messageList, false);
+            if (!releasable.isEmpty()) {
+                acknowledgeMessages(releasable);
+            }
+        } catch (Exception e) {
+            log.error("Unable to acknowledge messages", e);
+        }
+    }
+
+    private static class Batch {
+        private final List<Map.Entry<IndexSet, Message>> messages;
+        // accounted size of the messages in the batch
+        private final long sizeBytes;
+
+        private Batch(List<Map.Entry<IndexSet, Message>> messages, long sizeBytes) {
+            this.messages = messages;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    private static class InFlightBatch {
+        private final List<Map.Entry<IndexSet, Message>> messages;
+        // guarded by the in-flight batches deque
+        private boolean completed = false;
+        private boolean successful = false;
+
+        private InFlightBatch(List<Map.Entry<IndexSet, Message>> messages) {
+            this.messages = messages;
+        }
+    }
+
+    private class AcknowledgementWatermark {
+        // lowest journal offset of every batch which has been swapped out of its stripe but is not completed yet
+        private final Map<List<Map.Entry<IndexSet, Message>>, Long> pendingBatches = new IdentityHashMap<>();
+        // written messages waiting for pending messages with lower journal offsets, by offset
+        private final TreeMap<Long, Message> heldBack = new TreeMap<>();
+
+        synchronized void register(List<Map.Entry<IndexSet, Message>> batch, long lowestOffset) {
+            if (lowestOffset != Long.MAX_VALUE) {
+                pendingBatches.put(batch, lowestOffset);
+            }
+        }
+
+        /**
+         * Marks the batch as completed.
+         *
+         * @return the messages which can be acknowledged now
+         */
+        synchronized List<Message> complete(List<Map.Entry<IndexSet, Message>> batch, boolean written) {
+            pendingBatches.remove(batch);
+
+            final List<Message> releasable = new ArrayList<>();
+            if (written) {
+                for (Map.Entry<IndexSet, Message> entry : batch) {
+                    final Message message = entry.getValue();
+                    if (message.getMessageQueueId() instanceof Long) {
+                        heldBack.put((Long) message.getMessageQueueId(), message);
+                    } else {
+                        // not a journal offset, there is nothing to hold back
+                        releasable.add(message);
+                    }
+                }
+            }
+
+            final NavigableMap<Long, Message> belowWatermark = heldBack.headMap(lowestPendingOffset(), false);
+            releasable.addAll(belowWatermark.values());
+            belowWatermark.clear();
+            return releasable;
+        }
+
+        private long lowestPendingOffset() {
+            long lowest = Long.MAX_VALUE;
+            for (long offset : pendingBatches.values()) {
+                lowest = Math.min(lowest, offset);
+            }
+            for (Stripe stripe : stripes) {
+                lowest = Math.min(lowest, stripe.lowestOffset);
+            }
+            return lowest;
+        }
+    }
+
+    private class Stripe {
+        // guarded by this
+        private List<Map.Entry<IndexSet, Message>> buffer = new ArrayList<>(maxBufferSize);
+        private long bufferSizeBytes = 0;
+        // lowest journal offset in the buffer, only written while holding this
+        private volatile long lowestOffset = Long.MAX_VALUE;
+
+        /**
+         * Adds the entry to the buffer of this stripe.
+         *
+         * @return the batch to flush if the entry filled up the buffer, {@code null} otherwise
+         */
+        synchronized Batch add(Map.Entry<IndexSet, Message> entry) {
+            if (entry.getValue().getMessageQueueId() instanceof Long) {
+                lowestOffset = Math.min(lowestOffset, (Long) entry.getValue().getMessageQueueId());
+            }
+            buffer.add(entry);
+            bufferSizeBytes += entry.getValue().getSize();
+
+            // flush on whichever limit is hit first, the byte limit is only active if configured
+            if (buffer.size() >= maxBufferSize || (maxBufferSizeBytes > 0 && bufferSizeBytes >= maxBufferSizeBytes)) {
+                return swap();
+            }
+            return null;
+        }
+
+        synchronized Batch swap() {
+            final Batch batch = new Batch(buffer, bufferSizeBytes);
+            // the batch has to be pending before the offsets leave the stripe, otherwise they are briefly unaccounted
+            watermark.register(buffer, lowestOffset);
+            buffer = new ArrayList<>(maxBufferSize);
+            bufferSizeBytes = 0;
+            lowestOffset = Long.MAX_VALUE;
+            return batch;
         }
     }
 
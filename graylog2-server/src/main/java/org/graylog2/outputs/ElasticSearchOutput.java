@@ -36,6 +36,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -105,7 +107,32 @@ public class ElasticSearchOutput implements MessageOutput {
         failures.mark(failedMessageIds.size());
 
         // This does not exclude failedMessageIds, because we don't know if ES is ever gonna accept these messages.
-        acknowledger.acknowledge(messageList.stream().map(Map.Entry::getValue).collect(Collectors.toList()));
+        acknowledge(messageList);
+    }
+
+    /**
+     * Like {@link #writeMessageEntries(List)}, but doesn't wait for the bulk request to complete. The messages are
+     * not acknowledged, callers have to {@link #acknowledge(List)} them once the returned future completed.
+     *
+     * @see Messages#bulkIndexAsync(List, Executor)
+     */
+    protected CompletableFuture<Void> writeMessageEntriesAsync(List<Map.Entry<IndexSet, Message>> messageList, Executor completionExecutor) {
+        writes.mark(messageList.size());
+        final Timer.Context timer = processTime.time();
+        return messages.bulkIndexAsync(messageList, completionExecutor).whenComplete((failedMessageIds, throwable) -> {
+            timer.stop();
+            if (failedMessageIds != null) {
+                failures.mark(failedMessageIds.size());
+            }
+        }).thenApply(failedMessageIds -> null);
+    }
+
+    protected void acknowledge(List<Map.Entry<IndexSet, Message>> messageList) {
+        acknowledgeMessages(messageList.stream().map(Map.Entry::getValue).collect(Collectors.toList()));
+    }
+
+    protected void acknowledgeMessages(List<Message> messageList) {
+        acknowledger.acknowledge(messageList);
     }
 
     @Override
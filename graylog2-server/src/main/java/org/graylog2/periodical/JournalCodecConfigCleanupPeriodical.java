@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.periodical;
+
+import org.graylog2.plugin.periodical.Periodical;
+import org.graylog2.shared.journal.JournalCodecConfigStore;
+import org.joda.time.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * A {@link Periodical} which removes codec configurations from the {@link JournalCodecConfigStore} that can't be
+ * referenced by any journal segment anymore.
+ * <p>
+ * A segment is deleted once it hasn't been modified for {@code message_journal_max_age} and it contains messages
+ * written up to {@code message_journal_segment_age} before its last modification. Configurations in use are marked
+ * once per period, so they are kept for that long plus two periods after their last use.
+ */
+public class JournalCodecConfigCleanupPeriodical extends Periodical {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalCodecConfigCleanupPeriodical.class);
+    private static final int PERIOD_SECONDS = 3600;
+
+    private final JournalCodecConfigStore codecConfigStore;
+    private final Duration retentionAge;
+
+    @Inject
+    public JournalCodecConfigCleanupPeriodical(JournalCodecConfigStore codecConfigStore,
+                                               @Named("message_journal_max_age") Duration maxAge,
+                                               @Named("message_journal_segment_age") Duration segmentAge) {
+        this.codecConfigStore = codecConfigStore;
+        this.retentionAge = maxAge.plus(segmentAge).plus(Duration.standardSeconds(2L * PERIOD_SECONDS));
+    }
+
+    @Override
+    public void doRun() {
+        try {
+            final int removed = codecConfigStore.removeUnused(Instant.now().minusMillis(retentionAge.getMillis()));
+            if (removed > 0) {
+                LOG.debug("Removed {} unused journal codec configurations", removed);
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to remove unused journal codec configurations", e);
+        }
+    }
+
+    @Override
+    public boolean runsForever() {
+        return false;
+    }
+
+    @Override
+    public boolean stopOnGracefulShutdown() {
+        return true;
+    }
+
+    @Override
+    public boolean leaderOnly() {
+        return false;
+    }
+
+    @Override
+    public boolean startOnThisNode() {
+        return true;
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return true;
+    }
+
+    @Override
+    public int getInitialDelaySeconds() {
+        return 60;
+    }
+
+    @Override
+    public int getPeriodSeconds() {
+        return PERIOD_SECONDS;
+    }
+
+    @Override
+    protected Logger getLogger() {
+        return LOG;
+    }
+}
@@ -61,8 +61,9 @@ public class ThrottleStateUpdaterThread extends Periodical {
     private final ServerStatus serverStatus;
 
     private boolean firstRun = true;
-    private long logEndOffset;
-    private long currentReadOffset;
+    // the offsets of a partitioned journal are interleaved, so the rates are based on the entries of every partition
+    private long appendedEntries;
+    private long readEntries;
     private long currentTs;
     private ThrottleState throttleState;
 
@@ -193,7 +194,6 @@ public class ThrottleStateUpdaterThread extends Periodical {
     @Override
     public void doRun() {
         throttleState = new ThrottleState(throttleState);
-        final long committedOffset = journal.getCommittedOffset();
 
         // TODO there's a lot of duplication around this class. Probably should be refactored a bit.
         // also update metrics for each of the values, so clients can get to it cheaply
@@ -201,11 +201,14 @@ public class ThrottleStateUpdaterThread extends Periodical {
         long prevTs = currentTs;
         currentTs = System.nanoTime();
 
-        long previousLogEndOffset = logEndOffset;
-        long previousReadOffset = currentReadOffset;
-        long logStartOffset = journal.getLogStartOffset();
-        logEndOffset = journal.getLogEndOffset() - 1; // -1 because getLogEndOffset is the next offset that gets assigned
-        currentReadOffset = journal.getNextReadOffset() - 1; // just to make it clear which field we read
+        long previousAppendedEntries = appendedEntries;
+        long previousReadEntries = readEntries;
+        appendedEntries = 0;
+        readEntries = 0;
+        for (int partition = 0; partition < journal.getNumberOfPartitions(); partition++) {
+            appendedEntries += journal.getLogEndOffset(partition);
+            readEntries += journal.getNextReadOffset(partition);
+        }
 
         // for the first run, don't send an update, there's no previous data available to calc rates
         if (firstRun) {
@@ -213,20 +216,15 @@ public class ThrottleStateUpdaterThread extends Periodical {
             return;
         }
 
-        throttleState.appendEventsPerSec = (long) Math.floor((logEndOffset - previousLogEndOffset) / ((currentTs - prevTs) / 1.0E09));
-        throttleState.readEventsPerSec = (long) Math.floor((currentReadOffset - previousReadOffset) / ((currentTs - prevTs) / 1.0E09));
+        throttleState.appendEventsPerSec = (long) Math.floor((appendedEntries - previousAppendedEntries) / ((currentTs - prevTs) / 1.0E09));
+        throttleState.readEventsPerSec = (long) Math.floor((readEntries - previousReadEntries) / ((currentTs - prevTs) / 1.0E09));
 
         throttleState.journalSize = journal.size();
         throttleState.journalSizeLimit = retentionSize.toBytes();
 
         throttleState.processBufferCapacity = processBuffer.getRemainingCapacity();
 
-        if (committedOffset == LocalKafkaJournal.DEFAULT_COMMITTED_OFFSET) {
-            // nothing committed at all, the entire log is uncommitted, or completely empty.
-            throttleState.uncommittedJournalEntries = journal.size() == 0 ? 0 : logEndOffset - logStartOffset;
-        } else {
-            throttleState.uncommittedJournalEntries = logEndOffset - committedOffset;
-        }
+        throttleState.uncommittedJournalEntries = journal.getUncommittedEntries();
         log.debug("ThrottleState: {}", throttleState);
 
         // the journal needs this to provide information to rest clients
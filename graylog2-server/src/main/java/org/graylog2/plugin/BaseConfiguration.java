@@ -51,6 +51,15 @@ public abstract class BaseConfiguration extends PathConfiguration {
     @Parameter(value = "processbuffer_processors", required = true, validator = PositiveIntegerValidator.class)
     private int processBufferProcessors = 5;
 
+    @Parameter(value = "processbuffer_batch_size", validator = PositiveIntegerValidator.class)
+    private int processBufferBatchSize = 1;
+
+    @Parameter(value = "processbuffer_batch_max_latency", validator = PositiveDurationValidator.class)
+    private Duration processBufferBatchMaxLatency = Duration.milliseconds(100L);
+
+    @Parameter(value = "decodebuffer_processors")
+    private int decodeBufferProcessors = 0;
+
     @Parameter(value = "processor_wait_strategy", required = true)
     private String processorWaitStrategy = "blocking";
 
@@ -109,6 +118,18 @@ public abstract class BaseConfiguration extends PathConfiguration {
         return processBufferProcessors;
     }
 
+    public int getProcessBufferBatchSize() {
+        return processBufferBatchSize;
+    }
+
+    public Duration getProcessBufferBatchMaxLatency() {
+        return processBufferBatchMaxLatency;
+    }
+
+    public int getDecodeBufferProcessors() {
+        return decodeBufferProcessors;
+    }
+
     private WaitStrategy getWaitStrategy(String waitStrategyName, String configOptionName) {
         switch (waitStrategyName) {
             case "sleeping":
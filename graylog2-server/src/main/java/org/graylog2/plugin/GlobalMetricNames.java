@@ -41,6 +41,9 @@ public final class GlobalMetricNames {
     public static final String PROCESS_BUFFER_USAGE = "org.graylog2.buffers.process.usage";
     public static final String PROCESS_BUFFER_SIZE = "org.graylog2.buffers.process.size";
 
+    public static final String DECODE_BUFFER_USAGE = "org.graylog2.buffers.decode.usage";
+    public static final String DECODE_BUFFER_SIZE = "org.graylog2.buffers.decode.size";
+
     public static final String OUTPUT_BUFFER_USAGE = "org.graylog2.buffers.output.usage";
     public static final String OUTPUT_BUFFER_SIZE = "org.graylog2.buffers.output.size";
 
@@ -18,6 +18,7 @@ package org.graylog2.plugin;
 
 import com.github.joschi.jadconfig.Parameter;
 import com.github.joschi.jadconfig.util.Size;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import org.graylog2.configuration.PathConfiguration;
 import org.joda.time.Duration;
 
@@ -48,6 +49,12 @@ public class KafkaJournalConfiguration extends PathConfiguration {
     @Parameter("message_journal_flush_age")
     private Duration messageJournalFlushAge = Duration.standardMinutes(1L);
 
+    @Parameter("message_journal_codec_config_references")
+    private boolean messageJournalCodecConfigReferences = false;
+
+    @Parameter(value = "message_journal_partitions", validators = PositiveIntegerValidator.class)
+    private int messageJournalPartitions = 1;
+
     public Path getMessageJournalDir() {
         return messageJournalDir;
     }
@@ -75,4 +82,12 @@ public class KafkaJournalConfiguration extends PathConfiguration {
     public Duration getMessageJournalFlushAge() {
         return messageJournalFlushAge;
     }
+
+    public boolean isMessageJournalCodecConfigReferences() {
+        return messageJournalCodecConfigReferences;
+    }
+
+    public int getMessageJournalPartitions() {
+        return messageJournalPartitions;
+    }
 }
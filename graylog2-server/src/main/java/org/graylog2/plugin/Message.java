@@ -18,6 +18,7 @@ package org.graylog2.plugin;
 
 import com.codahale.metrics.Meter;
 import com.eaio.uuid.UUID;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
@@ -29,7 +30,6 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.common.net.InetAddresses;
 import org.apache.commons.lang3.StringUtils;
 import org.graylog.failure.FailureCause;
@@ -46,6 +46,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
@@ -195,6 +196,15 @@ public class Message implements Messages, Indexable {
     private static final Pattern VALID_KEY_CHARS = Pattern.compile("^[\\w\\.\\-@]*$");
     private static final char KEY_REPLACEMENT_CHAR = '_';
 
+    // fields which are always overwritten by the computed values in the Elasticsearch document
+    private static final ImmutableSet<String> ELASTICSEARCH_COMPUTED_FIELDS = ImmutableSet.of(
+            FIELD_MESSAGE,
+            FIELD_SOURCE,
+            FIELD_STREAMS,
+            FIELD_GL2_ACCOUNTED_MESSAGE_SIZE,
+            FIELD_TIMESTAMP
+    );
+
     private static final ImmutableSet<String> GRAYLOG_FIELDS = ImmutableSet.of(
         FIELD_GL2_ACCOUNTED_MESSAGE_SIZE,
         FIELD_GL2_PROCESSING_ERROR,
@@ -267,9 +277,9 @@ public class Message implements Messages, Indexable {
     @Deprecated
     public static final Function<Message, String> ID_FUNCTION = new MessageIdFunction();
 
-    private final Map<String, Object> fields = Maps.newHashMap();
-    private Set<Stream> streams = Sets.newHashSet();
-    private Set<IndexSet> indexSets = Sets.newHashSet();
+    private final Map<String, Object> fields = new MessageFields();
+    private Set<Stream> streams = new SmallSet<>();
+    private Set<IndexSet> indexSets = new SmallSet<>();
     private String sourceInputId;
 
     // Used for drools to filter out messages.
@@ -292,7 +302,7 @@ public class Message implements Messages, Indexable {
      */
     private Map<String, Object> metadata;
 
-    private com.codahale.metrics.Counter sizeCounter = new com.codahale.metrics.Counter();
+    private long size = 0;
 
     private List<ProcessingError> processingErrors;
 
@@ -451,6 +461,53 @@ public class Message implements Messages, Indexable {
         return obj;
     }
 
+    /**
+     * Writes the same document as {@link #toElasticSearchObject(ObjectMapper, Meter)}, but streams the fields straight
+     * to the generator instead of copying them into a new map first.
+     */
+    @Override
+    public void writeElasticSearchObject(ObjectMapper objectMapper, JsonGenerator generator, @Nonnull final Meter invalidTimestampMeter) throws IOException {
+        // Replacing the "." in keys can collide with other keys, resolving those conflicts needs the map.
+        for (String key : fields.keySet()) {
+            if (key.indexOf('.') >= 0) {
+                Indexable.super.writeElasticSearchObject(objectMapper, generator, invalidTimestampMeter);
+                return;
+            }
+        }
+
+        // The timestamp conversion might add a processing error, so it has to happen first.
+        final Object timestampValue = getField(FIELD_TIMESTAMP);
+        final DateTime dateTime = timestampValue == null ? fallbackForNullTimestamp() : convertToDateTime(timestampValue);
+        final boolean hasProcessingErrors = processingErrors != null && !processingErrors.isEmpty();
+
+        generator.writeStartObject();
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            final String key = entry.getKey();
+            if (key.equals(FIELD_ID) || ELASTICSEARCH_COMPUTED_FIELDS.contains(key)
+                    || (hasProcessingErrors && key.equals(FIELD_GL2_PROCESSING_ERROR))) {
+                continue;
+            }
+            generator.writeObjectField(key, entry.getValue());
+        }
+
+        generator.writeObjectField(FIELD_MESSAGE, getMessage());
+        generator.writeObjectField(FIELD_SOURCE, getSource());
+        generator.writeObjectField(FIELD_STREAMS, getStreamIds());
+        generator.writeNumberField(FIELD_GL2_ACCOUNTED_MESSAGE_SIZE, getSize());
+        generator.writeStringField(FIELD_TIMESTAMP, buildElasticSearchTimeFormat(dateTime.withZone(UTC)));
+
+        if (hasProcessingErrors) {
+            if (processingErrors.stream().anyMatch(processingError -> processingError.getCause().equals(ProcessingFailureCause.InvalidTimestampException))) {
+                invalidTimestampMeter.mark();
+            }
+            generator.writeStringField(FIELD_GL2_PROCESSING_ERROR,
+                    processingErrors.stream()
+                            .map(pe -> pe.getMessage() + " - " + pe.getDetails())
+                            .collect(Collectors.joining(", ")));
+        }
+        generator.writeEndObject();
+    }
+
     public void ensureValidTimestamp() {
         final Object timestampValue = getField(FIELD_TIMESTAMP);
         if (timestampValue instanceof DateTime) {
@@ -583,24 +640,24 @@ public class Message implements Messages, Indexable {
         }
         long newValueSize = 0;
         long oldValueSize = 0;
-        final long oldSize = sizeCounter.getCount();
+        final long oldSize = size;
         final int keyLength = fieldName.length();
         // if the field is being removed, also subtract the name's length
         if (newValue == null) {
-            sizeCounter.dec(keyLength);
+            size -= keyLength;
         } else {
             newValueSize = sizeForValue(newValue);
-            sizeCounter.inc(newValueSize);
+            size += newValueSize;
         }
         // if the field is new, also count its name's length
         if (previousValue == null) {
-            sizeCounter.inc(keyLength);
+            size += keyLength;
         } else {
             oldValueSize = sizeForValue(previousValue);
-            sizeCounter.dec(oldValueSize);
+            size -= oldValueSize;
         }
         if (LOG.isTraceEnabled()) {
-            final long newSize = sizeCounter.getCount();
+            final long newSize = size;
             LOG.trace("[Message size update][{}] key {}/{}, new/old/change: {}/{}/{} total: {}",
                     getId(), fieldName, keyLength, newValueSize, oldValueSize, newSize - oldSize, newSize);
         }
@@ -619,7 +676,7 @@ public class Message implements Messages, Indexable {
 
     @Override
     public long getSize() {
-        return sizeCounter.getCount();
+        return size;
     }
 
     public static boolean validKey(final String key) {
@@ -706,7 +763,7 @@ public class Message implements Messages, Indexable {
 
     @Deprecated
     public void setStreams(final List<Stream> streams) {
-        this.streams = Sets.newHashSet(streams);
+        this.streams = new SmallSet<>(streams);
     }
 
     /**
@@ -725,9 +782,9 @@ public class Message implements Messages, Indexable {
     public void addStream(Stream stream) {
         indexSets.add(stream.getIndexSet());
         if (streams.add(stream)) {
-            sizeCounter.inc(8);
+            size += 8;
             if (LOG.isTraceEnabled()) {
-                LOG.trace("[Message size update][{}] stream added: {}", getId(), sizeCounter.getCount());
+                LOG.trace("[Message size update][{}] stream added: {}", getId(), size);
             }
         }
     }
@@ -755,9 +812,9 @@ public class Message implements Messages, Indexable {
             for (Stream s : streams) {
                 indexSets.add(s.getIndexSet());
             }
-            sizeCounter.dec(8);
+            size -= 8;
             if (LOG.isTraceEnabled()) {
-                LOG.trace("[Message size update][{}] stream removed: {}", getId(), sizeCounter.getCount());
+                LOG.trace("[Message size update][{}] stream removed: {}", getId(), size);
             }
         }
 
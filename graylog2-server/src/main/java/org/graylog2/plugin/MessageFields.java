@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compact field storage for {@link Message}.
+ * <p>
+ * Keys and values are stored next to each other in a single open-addressed array with linear probing, so there is no
+ * entry object per field like in a {@link java.util.HashMap}. The names of the reserved fields, which every message has,
+ * are replaced by their canonical instances so they are not held once per message.
+ * <p>
+ * Like the iterators of {@link java.util.HashMap}, the entry set iterator supports {@link Iterator#remove()} and
+ * {@link Entry#setValue(Object)} and fails fast if the map is structurally modified otherwise while iterating.
+ * This class is not thread-safe.
+ */
+final class MessageFields extends AbstractMap<String, Object> {
+    // read-only after class initialization, so lookups don't need any synchronization
+    private static final ImmutableMap<String, String> CANONICAL_KEYS = Sets.union(Message.RESERVED_FIELDS, Message.FILTERED_FIELDS)
+            .stream()
+            .collect(ImmutableMap.toImmutableMap(Function.identity(), Function.identity()));
+    // number of key/value slots, must be a power of two
+    private static final int INITIAL_CAPACITY = 16;
+
+    // keys are stored at even indexes, followed by their value
+    private Object[] table = new Object[INITIAL_CAPACITY * 2];
+    private int size = 0;
+    // number of structural modifications, used by the iterators to detect concurrent modifications
+    private int modCount = 0;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : table[index + 1];
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        requireNonNull(key, "key");
+        final int mask = table.length - 1;
+        int index = firstIndex(key, table.length);
+        Object existing;
+        while ((existing = table[index]) != null) {
+            if (existing.equals(key)) {
+                final Object previousValue = table[index + 1];
+                table[index + 1] = value;
+                return previousValue;
+            }
+            index = (index + 2) & mask;
+        }
+        final String canonicalKey = CANONICAL_KEYS.get(key);
+        table[index] = canonicalKey == null ? key : canonicalKey;
+        table[index + 1] = value;
+        modCount++;
+        // keep the load factor at or below 0.5
+        if (++size * 4 > table.length) {
+            resize(table.length * 2);
+        }
+        return null;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        final int index = indexOf(key);
+        return index < 0 ? null : removeAt(index);
+    }
+
+    private Object removeAt(int index) {
+        final Object previousValue = table[index + 1];
+        table[index] = null;
+        table[index + 1] = null;
+        size--;
+        modCount++;
+
+        // shift the following entries of the probe sequence back, so lookups don't stop at the gap
+        final int mask = table.length - 1;
+        int next = (index + 2) & mask;
+        Object nextKey;
+        while ((nextKey = table[next]) != null) {
+            final int wanted = firstIndex(nextKey, table.length);
+            final boolean canMove = next > index
+                    ? wanted <= index || wanted > next
+                    : wanted <= index && wanted > next;
+            if (canMove) {
+                table[index] = nextKey;
+                table[index + 1] = table[next + 1];
+                table[next] = null;
+                table[next + 1] = null;
+                index = next;
+            }
+            next = (next + 2) & mask;
+        }
+        return previousValue;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(table, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public void clear() {
+                MessageFields.this.clear();
+            }
+        };
+    }
+
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        final int mask = table.length - 1;
+        int index = firstIndex(key, table.length);
+        Object existing;
+        while ((existing = table[index]) != null) {
+            if (existing.equals(key)) {
+                return index;
+            }
+            index = (index + 2) & mask;
+        }
+        return -1;
+    }
+
+    // whether the probe sequence following the given slot continues at the start of the table
+    private boolean probeSequenceWraps(int index) {
+        for (int i = index + 2; i < table.length; i += 2) {
+            if (table[i] == null) {
+                return false;
+            }
+        }
+        return table[0] != null;
+    }
+
+    private static int firstIndex(Object key, int length) {
+        final int hash = key.hashCode();
+        return ((hash ^ (hash >>> 16)) << 1) & (length - 1);
+    }
+
+    private void resize(int newLength) {
+        final Object[] oldTable = table;
+        final int mask = newLength - 1;
+        table = new Object[newLength];
+        for (int i = 0; i < oldTable.length; i += 2) {
+            final Object key = oldTable[i];
+            if (key != null) {
+                int index = firstIndex(key, newLength);
+                while (table[index] != null) {
+                    index = (index + 2) & mask;
+                }
+                table[index] = key;
+                table[index + 1] = oldTable[i + 1];
+            }
+        }
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+        // the table being iterated, replaced by a copy if a removal could move entries which have already been returned
+        private Object[] slots = table;
+        private int index = nextIndex(0);
+        private int lastReturned = -1;
+        private int expectedModCount = modCount;
+
+        private int nextIndex(int start) {
+            for (int i = start; i < slots.length; i += 2) {
+                if (slots[i] != null) {
+                    return i;
+                }
+            }
+            return slots.length;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index < slots.length;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            checkForComodification();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry<String, Object> entry = new FieldEntry((String) slots[index], slots[index + 1]);
+            lastReturned = index;
+            index = nextIndex(index + 2);
+            return entry;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned < 0) {
+                throw new IllegalStateException();
+            }
+            checkForComodification();
+            if (slots != table) {
+                MessageFields.this.remove(slots[lastReturned]);
+            } else if (probeSequenceWraps(lastReturned)) {
+                // removing shifts entries from the start of the table back to the end, where they would be returned twice
+                slots = Arrays.copyOf(table, table.length);
+                MessageFields.this.remove(slots[lastReturned]);
+            } else {
+                // the slot may now hold an entry which was shifted back and hasn't been returned yet
+                removeAt(lastReturned);
+                index = nextIndex(lastReturned);
+            }
+            lastReturned = -1;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    private class FieldEntry extends SimpleEntry<String, Object> {
+        private FieldEntry(String key, Object value) {
+            super(key, value);
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            // replacing the value of an existing field is not a structural modification
+            final int index = indexOf(getKey());
+            if (index >= 0) {
+                table[index + 1] = value;
+            }
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Set for the few elements a {@link Message} usually holds, like its streams and index sets.
+ * <p>
+ * Elements are kept in a plain array and looked up with a linear scan, which needs far less memory than a
+ * {@link HashSet} and is just as fast for a handful of elements. Sets which grow beyond
+ * {@value #MAX_ARRAY_SIZE} elements switch to a {@link HashSet}. Iteration follows insertion order as long as the
+ * elements are held in the array. This class is not thread-safe.
+ */
+final class SmallSet<E> extends AbstractSet<E> {
+    static final int MAX_ARRAY_SIZE = 16;
+    private static final Object[] EMPTY = new Object[0];
+
+    private Object[] elements = EMPTY;
+    private int size = 0;
+    // only used once the set outgrew the array
+    private Set<E> large;
+
+    SmallSet() {
+    }
+
+    SmallSet(Collection<? extends E> elements) {
+        addAll(elements);
+    }
+
+    @Override
+    public int size() {
+        return large == null ? size : large.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return large == null ? indexOf(o) >= 0 : large.contains(o);
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (large != null) {
+            return large.add(e);
+        }
+        if (indexOf(e) >= 0) {
+            return false;
+        }
+        if (size == MAX_ARRAY_SIZE) {
+            large = new HashSet<>(this);
+            elements = EMPTY;
+            size = 0;
+            return large.add(e);
+        }
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(2, size * 2));
+        }
+        elements[size++] = e;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (large != null) {
+            return large.remove(o);
+        }
+        final int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        large = null;
+        elements = EMPTY;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return large == null ? new ArrayIterator() : large.iterator();
+    }
+
+    private int indexOf(Object o) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(elements[i], o)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        elements[--size] = null;
+    }
+
+    private class ArrayIterator implements Iterator<E> {
+        private int next = 0;
+        private int last = -1;
+        private final Object[] iteratedElements = elements;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E next() {
+            checkForComodification();
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return (E) elements[last];
+        }
+
+        @Override
+        public void remove() {
+            checkForComodification();
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+
+        private void checkForComodification() {
+            if (elements != iteratedElements) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
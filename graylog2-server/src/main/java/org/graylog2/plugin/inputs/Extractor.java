@@ -18,7 +18,6 @@ package org.graylog2.plugin.inputs;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
-import com.codahale.metrics.Timer;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -26,6 +25,7 @@ import org.graylog.failure.ProcessingFailureCause;
 import org.graylog2.inputs.extractors.ExtractorException;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.database.EmbeddedPersistable;
+import org.graylog2.shared.metrics.SampledTimer;
 import org.graylog2.shared.utilities.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -118,10 +118,10 @@ public abstract class Extractor implements EmbeddedPersistable {
 
     private final Counter conditionHitsCounter;
     private final Counter conditionMissesCounter;
-    private final Timer conditionTimer;
-    private final Timer executionTimer;
-    private final Timer converterTimer;
-    private final Timer completeTimer;
+    private final SampledTimer conditionTimer;
+    private final SampledTimer executionTimer;
+    private final SampledTimer converterTimer;
+    private final SampledTimer completeTimer;
     private final String conditionHitsCounterName;
     private final String conditionMissesCounterName;
     private final String conditionTimerName;
@@ -184,16 +184,30 @@ public abstract class Extractor implements EmbeddedPersistable {
         this.completeTimerName = name(metricsPrefix, "completeExecutionTime");
         this.conditionHitsCounter = metricRegistry.counter(conditionHitsCounterName);
         this.conditionMissesCounter = metricRegistry.counter(conditionMissesCounterName);
-        this.conditionTimer = metricRegistry.timer(conditionTimerName);
-        this.executionTimer = metricRegistry.timer(executionTimerName);
-        this.converterTimer = metricRegistry.timer(converterTimerName);
-        this.completeTimer = metricRegistry.timer(completeTimerName);
+        this.conditionTimer = (SampledTimer) metricRegistry.timer(conditionTimerName, SampledTimer::new);
+        this.executionTimer = (SampledTimer) metricRegistry.timer(executionTimerName, SampledTimer::new);
+        this.converterTimer = (SampledTimer) metricRegistry.timer(converterTimerName, SampledTimer::new);
+        this.completeTimer = (SampledTimer) metricRegistry.timer(completeTimerName, SampledTimer::new);
+    }
+
+    /**
+     * Only time one in {@code sampleRate} runs of the extractor and its converters. The invocation counts stay exact.
+     *
+     * @param sampleRate the sample rate, 1 times every run
+     */
+    public void setTimingSampleRate(int sampleRate) {
+        conditionTimer.setSampleRate(sampleRate);
+        executionTimer.setSampleRate(sampleRate);
+        converterTimer.setSampleRate(sampleRate);
+        completeTimer.setSampleRate(sampleRate);
     }
 
     public void runExtractor(Message msg) {
-        try(final Timer.Context ignored = completeTimer.time()) {
+        // all timers of a run are either timed or not, so the partial times add up
+        final boolean timed = completeTimer.nextSampled();
+        try(final SampledTimer.Sample ignored = completeTimer.sample(timed)) {
             final String field;
-            try (final Timer.Context ignored2 = conditionTimer.time()) {
+            try (final SampledTimer.Sample ignored2 = conditionTimer.sample(timed)) {
                 // We can only work on Strings.
                 if (!(msg.getField(sourceField) instanceof String)) {
                     conditionMissesCounter.inc();
@@ -220,7 +234,7 @@ public abstract class Extractor implements EmbeddedPersistable {
                 }
             }
 
-            try (final Timer.Context ignored2 = executionTimer.time()) {
+            try (final SampledTimer.Sample ignored2 = executionTimer.sample(timed)) {
                 Result[] results;
                 try {
                     results = run(field);
@@ -263,13 +277,13 @@ public abstract class Extractor implements EmbeddedPersistable {
                     msg.addField(sourceField, finalResult);
                 }
 
-                runConverters(msg);
+                runConverters(msg, timed);
             }
         }
     }
 
-    private void runConverters(Message msg) {
-        try(final Timer.Context ignored = converterTimer.time()) {
+    private void runConverters(Message msg, boolean timed) {
+        try(final SampledTimer.Sample ignored = converterTimer.sample(timed)) {
             for (Converter converter : converters) {
                 try {
                     if (!(msg.getField(targetField) instanceof String)) {
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin.journal;
+
+import org.graylog2.plugin.configuration.Configuration;
+
+import javax.annotation.Nullable;
+
+/**
+ * Maps codec configurations to short, stable references, so journal entries don't have to carry the full
+ * configuration of their codec.
+ *
+ * @see RawMessage#encode(CodecConfigStore)
+ */
+public interface CodecConfigStore {
+    /**
+     * Returns the reference for the given codec configuration, registering the configuration if it hasn't been seen
+     * before. Once this method returns, {@link #lookup(String)} must be able to resolve the reference, even after a
+     * restart of the node.
+     *
+     * @param configuration the codec configuration
+     * @return the reference to store in the journal entry
+     */
+    String register(Configuration configuration);
+
+    /**
+     * @param reference a reference previously returned by {@link #register(Configuration)}
+     * @return the codec configuration or {@code null} if the reference is unknown
+     */
+    @Nullable
+    Configuration lookup(String reference);
+}
@@ -43,6 +43,7 @@ import java.util.List;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static org.graylog2.plugin.journal.JournalMessages.JournalMessage;
 
@@ -61,6 +62,11 @@ import static org.graylog2.plugin.journal.JournalMessages.JournalMessage;
  */
 public class RawMessage implements Serializable {
     public static final byte CURRENT_VERSION = 1;
+    /**
+     * Journal format version in which {@link JournalMessages.CodecInfo#getConfig()} holds a reference resolved by a
+     * {@link CodecConfigStore} instead of the serialized codec configuration.
+     */
+    public static final byte CODEC_CONFIG_REFERENCE_VERSION = 2;
 
     private static final Logger log = LoggerFactory.getLogger(RawMessage.class);
 
@@ -121,10 +127,28 @@ public class RawMessage implements Serializable {
     }
 
     public RawMessage(JournalMessage journalMessage, Object messageQueueId) {
+        this(journalMessage, messageQueueId, null);
+    }
+
+    public RawMessage(JournalMessage journalMessage, Object messageQueueId, @Nullable CodecConfigStore codecConfigStore) {
         this.messageQueueId = messageQueueId;
         id = new UUID(journalMessage.getUuidTime(), journalMessage.getUuidClockseq());
         msgBuilder = JournalMessage.newBuilder(journalMessage);
-        codecConfig = Configuration.deserializeFromJson(journalMessage.getCodec().getConfig());
+        codecConfig = decodeCodecConfig(journalMessage, codecConfigStore);
+    }
+
+    private static Configuration decodeCodecConfig(JournalMessage journalMessage, @Nullable CodecConfigStore codecConfigStore) {
+        final String config = journalMessage.getCodec().getConfig();
+        if (journalMessage.getVersion() < CODEC_CONFIG_REFERENCE_VERSION) {
+            return Configuration.deserializeFromJson(config);
+        }
+        if (isNullOrEmpty(config)) {
+            return Configuration.EMPTY_CONFIGURATION;
+        }
+        checkState(codecConfigStore != null, "Journal message version %s requires a codec config store", journalMessage.getVersion());
+        final Configuration configuration = codecConfigStore.lookup(config);
+        checkState(configuration != null, "Unknown codec configuration reference <%s>", config);
+        return configuration;
     }
 
     @Nullable
@@ -147,27 +171,61 @@ public class RawMessage implements Serializable {
 
     @Nullable
     public static RawMessage decode(final byte[] buffer, final long journalOffset) {
+        return decode(buffer, journalOffset, null);
+    }
+
+    /**
+     * Decodes a journal entry written by either {@link #encode()} or {@link #encode(CodecConfigStore)}.
+     *
+     * @param buffer           the encoded journal entry
+     * @param journalOffset    the offset of the entry in the journal
+     * @param codecConfigStore the store to resolve codec configuration references with, may be {@code null} if
+     *                         the journal only contains entries of the {@link #CURRENT_VERSION}
+     * @return the decoded message or {@code null} if the entry could not be decoded
+     */
+    @Nullable
+    public static RawMessage decode(final byte[] buffer, final long journalOffset, @Nullable CodecConfigStore codecConfigStore) {
         try {
             final JournalMessage journalMessage = JournalMessage.parseFrom(buffer);
 
             // TODO validate message based on field contents and version number
 
-            return new RawMessage(journalMessage, journalOffset);
-        } catch (IOException e) {
+            return new RawMessage(journalMessage, journalOffset, codecConfigStore);
+        } catch (IOException | IllegalStateException e) {
             log.error("Cannot read raw message from journal, ignoring this message.", e);
             return null;
         }
     }
 
+    /**
+     * Encodes this message for the journal, including the serialized codec configuration.
+     *
+     * @return the encoded message or {@code null} if required fields are missing
+     */
     public byte[] encode() {
+        return encode(CURRENT_VERSION, codecConfig.serializeToJson());
+    }
+
+    /**
+     * Encodes this message for the journal, storing only a reference to the codec configuration. Decoding the
+     * message requires the same {@link CodecConfigStore}.
+     *
+     * @param codecConfigStore the store to register the codec configuration with
+     * @return the encoded message or {@code null} if required fields are missing
+     */
+    public byte[] encode(CodecConfigStore codecConfigStore) {
+        return encode(CODEC_CONFIG_REFERENCE_VERSION, codecConfigStore.register(codecConfig));
+    }
+
+    private byte[] encode(int version, @Nullable String config) {
         try {
             final JournalMessages.CodecInfo codec = msgBuilder.getCodec();
             final JournalMessages.CodecInfo.Builder builder = JournalMessages.CodecInfo.newBuilder(codec);
 
-            final String codecConfigJson = codecConfig.serializeToJson();
-            if (codecConfigJson != null) {
-                builder.setConfig(codecConfigJson);
+            if (!isNullOrEmpty(config)) {
+                builder.setConfig(config);
             }
+            msgBuilder.setVersion(version);
             msgBuilder.setCodec(builder.build());
 
             final JournalMessage journalMessage = msgBuilder.build();
@@ -264,6 +322,20 @@ public class RawMessage implements Serializable {
         return list;
     }
 
+    /**
+     * Returns the ID of the input which received this message without building the full list of
+     * {@link #getSourceNodes() source nodes}.
+     *
+     * @return the input ID of the first source node or {@code null} if there is none
+     */
+    @Nullable
+    public String getSourceInputId() {
+        if (msgBuilder.getSourceNodesCount() == 0) {
+            return null;
+        }
+        return msgBuilder.getSourceNodes(0).getInputId();
+    }
+
     @Override
     public String toString() {
         final MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this);
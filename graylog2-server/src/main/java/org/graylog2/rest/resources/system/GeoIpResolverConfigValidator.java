@@ -146,8 +146,7 @@ public class GeoIpResolverConfigValidator implements ClusterConfigValidator {
                 String msg = String.format(Locale.ENGLISH, "Invalid '%s'  ASN database file '%s'.  Make sure the file exists and is valid for '%1$s'", config.databaseVendorType(), config.asnDbPath());
                 throw new IllegalArgumentException(msg);
             }
-            asnResolver.getGeoIpData(testAddress);
-            if (asnResolver.getLastError().isPresent()) {
+            if (asnResolver.lookup(testAddress).failed()) {
                 String error = String.format(Locale.ENGLISH, "Error querying ASN.  Make sure you have selected a valid ASN database type for '%s'", config.databaseVendorType());
                 throw new IllegalStateException(error);
             }
@@ -160,8 +159,7 @@ public class GeoIpResolverConfigValidator implements ClusterConfigValidator {
             String msg = String.format(Locale.ENGLISH, "Invalid '%s' City Geo IP database file '%s'.  Make sure the file exists and is valid for '%1$s'", config.databaseVendorType(), config.cityDbPath());
             throw new IllegalArgumentException(msg);
         }
-        cityResolver.getGeoIpData(testAddress);
-        if (cityResolver.getLastError().isPresent()) {
+        if (cityResolver.lookup(testAddress).failed()) {
             String error = String.format(Locale.ENGLISH, "Error querying Geo Location.  Make sure you have selected a valid database type for '%s'", config.databaseVendorType());
             throw new IllegalStateException(error);
         }
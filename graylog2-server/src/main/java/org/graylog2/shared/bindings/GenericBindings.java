@@ -54,7 +54,6 @@ import org.graylog2.shared.inputs.InputRegistry;
 
 import javax.activation.MimetypesFileTypeMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Semaphore;
 
 public class GenericBindings extends Graylog2Module {
     private final boolean isMigrationCommand;
@@ -85,8 +84,6 @@ public class GenericBindings extends Graylog2Module {
 
         bind(EventBus.class).toProvider(EventBusProvider.class).in(Scopes.SINGLETON);
 
-        bind(Semaphore.class).annotatedWith(Names.named("JournalSignal")).toInstance(new Semaphore(0));
-
         install(new FactoryModuleBuilder().build(new TypeLiteral<IOState.Factory<MessageInput>>() {}));
 
         bind(InputRegistry.class).asEagerSingleton();
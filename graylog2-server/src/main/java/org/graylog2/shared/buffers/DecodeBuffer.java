@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.InstrumentedThreadFactory;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.graylog2.plugin.GlobalMetricNames;
+import org.graylog2.plugin.buffers.Buffer;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.buffers.processors.DecodeBufferProcessor;
+import org.graylog2.shared.buffers.processors.DecodingProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ThreadFactory;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.graylog2.shared.metrics.MetricUtils.constantGauge;
+import static org.graylog2.shared.metrics.MetricUtils.safelyRegister;
+
+/**
+ * Optional decode stage in front of the {@link ProcessBuffer}.
+ * <p>
+ * Raw messages are decoded by a dedicated pool of threads with its own ring buffer and the decoded messages are
+ * handed to the process buffer. Expensive codecs therefore only compete with other codecs for CPU time and not with
+ * the message processors, and both stages can be sized independently.
+ */
+public class DecodeBuffer extends Buffer {
+    private static final Logger LOG = LoggerFactory.getLogger(DecodeBuffer.class);
+
+    private final Meter incomingMessages;
+
+    DecodeBuffer(MetricRegistry metricRegistry,
+                 DecodingProcessor.Factory decodingProcessorFactory,
+                 ProcessBuffer processBuffer,
+                 Timer decodeTime,
+                 Timer parseTime,
+                 int processorCount,
+                 int ringSize,
+                 WaitStrategy waitStrategy) {
+        this.ringBufferSize = ringSize;
+        this.incomingMessages = metricRegistry.meter(name(DecodeBuffer.class, "incomingMessages"));
+
+        safelyRegister(metricRegistry, GlobalMetricNames.DECODE_BUFFER_USAGE, new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return DecodeBuffer.this.getUsage();
+            }
+        });
+        safelyRegister(metricRegistry, GlobalMetricNames.DECODE_BUFFER_SIZE, constantGauge(ringBufferSize));
+
+        final Disruptor<MessageEvent> disruptor = new Disruptor<>(
+                MessageEvent.EVENT_FACTORY,
+                ringBufferSize,
+                threadFactory(metricRegistry),
+                ProducerType.MULTI,
+                waitStrategy
+        );
+        disruptor.setDefaultExceptionHandler(new LoggingExceptionHandler(LOG));
+
+        LOG.info("Initialized DecodeBuffer with ring size <{}>, <{}> processors and wait strategy <{}>.",
+                ringBufferSize, processorCount, waitStrategy.getClass().getSimpleName());
+
+        final DecodeBufferProcessor[] processors = new DecodeBufferProcessor[processorCount];
+        for (int i = 0; i < processorCount; i++) {
+            processors[i] = new DecodeBufferProcessor(metricRegistry,
+                    decodingProcessorFactory.create(decodeTime, parseTime),
+                    processBuffer);
+        }
+        disruptor.handleEventsWithWorkerPool(processors);
+
+        ringBuffer = disruptor.start();
+    }
+
+    private ThreadFactory threadFactory(MetricRegistry metricRegistry) {
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("decodebufferprocessor-%d").build();
+        return new InstrumentedThreadFactory(
+                threadFactory,
+                metricRegistry,
+                name(this.getClass(), "thread-factory"));
+    }
+
+    public void insertBlocking(@Nonnull RawMessage rawMessage) {
+        final long sequence = ringBuffer.next();
+        final MessageEvent event = ringBuffer.get(sequence);
+        event.setRaw(rawMessage);
+        ringBuffer.publish(sequence);
+        afterInsert(1);
+    }
+
+    @Override
+    protected void afterInsert(int n) {
+        incomingMessages.mark(n);
+    }
+}
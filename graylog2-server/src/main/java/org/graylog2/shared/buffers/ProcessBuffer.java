@@ -37,9 +37,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.Collection;
 import java.util.concurrent.ThreadFactory;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -52,12 +54,16 @@ public class ProcessBuffer extends Buffer {
 
     private final Meter incomingMessages;
     private final ProcessBufferProcessor[] processors;
+    @Nullable
+    private final DecodeBuffer decodeBuffer;
 
     @Inject
     public ProcessBuffer(MetricRegistry metricRegistry,
                          DecodingProcessor.Factory decodingProcessorFactory,
                          ProcessBufferProcessor.Factory bufferProcessorFactory,
                          @Named("processbuffer_processors") int processorCount,
+                         @Named("processbuffer_batch_size") int batchSize,
+                         @Named("decodebuffer_processors") int decodeProcessorCount,
                          @Named("ring_size") int ringSize,
                          @Named("processor_wait_strategy") String waitStrategyName) {
         this.ringBufferSize = ringSize;
@@ -88,11 +94,23 @@ public class ProcessBuffer extends Buffer {
 
         processors = new ProcessBufferProcessor[processorCount];
         for (int i = 0; i < processorCount; i++) {
-            processors[i] = bufferProcessorFactory.create(decodingProcessorFactory.create(decodeTime, parseTime));
+            processors[i] = bufferProcessorFactory.create(decodingProcessorFactory.create(decodeTime, parseTime), i, processorCount);
+        }
+        if (batchSize > 1) {
+            // every handler sees all events and only processes its share, this gives us the end of batch signal
+            disruptor.handleEventsWith(processors);
+        } else {
+            disruptor.handleEventsWithWorkerPool(processors);
         }
-        disruptor.handleEventsWithWorkerPool(processors);
 
         ringBuffer = disruptor.start();
+
+        if (decodeProcessorCount > 0) {
+            decodeBuffer = new DecodeBuffer(metricRegistry, decodingProcessorFactory, this, decodeTime, parseTime,
+                    decodeProcessorCount, ringSize, getWaitStrategy(waitStrategyName, "processor_wait_strategy"));
+        } else {
+            decodeBuffer = null;
+        }
     }
 
     private ThreadFactory threadFactory(MetricRegistry metricRegistry) {
@@ -104,6 +122,10 @@ public class ProcessBuffer extends Buffer {
     }
 
     public void insertBlocking(@Nonnull RawMessage rawMessage) {
+        if (decodeBuffer != null) {
+            decodeBuffer.insertBlocking(rawMessage);
+            return;
+        }
         final long sequence = ringBuffer.next();
         final MessageEvent event = ringBuffer.get(sequence);
         event.setRaw(rawMessage);
@@ -111,6 +133,50 @@ public class ProcessBuffer extends Buffer {
         afterInsert(1);
     }
 
+    /**
+     * Inserts a message which has already been decoded by the {@link DecodeBuffer}.
+     */
+    public void insertBlocking(@Nonnull Message message) {
+        final long sequence = ringBuffer.next();
+        final MessageEvent event = ringBuffer.get(sequence);
+        event.clearRaw();
+        event.clearMessages();
+        event.setMessage(message);
+        ringBuffer.publish(sequence);
+        afterInsert(1);
+    }
+
+    /**
+     * Inserts the messages which have already been decoded by the {@link DecodeBuffer} from a single raw message.
+     */
+    public void insertBlocking(@Nonnull Collection<Message> messages) {
+        final long sequence = ringBuffer.next();
+        final MessageEvent event = ringBuffer.get(sequence);
+        event.clearRaw();
+        event.clearMessages();
+        event.setMessages(messages);
+        ringBuffer.publish(sequence);
+        afterInsert(1);
+    }
+
+    @Override
+    public long getRemainingCapacity() {
+        // raw messages go to the decode buffer first, but the decoded messages still have to fit in here
+        if (decodeBuffer != null) {
+            return Math.min(decodeBuffer.getRemainingCapacity(), super.getRemainingCapacity());
+        }
+        return super.getRemainingCapacity();
+    }
+
+    /**
+     * Includes the messages waiting in the {@link DecodeBuffer}, so the process buffer is only empty once all raw
+     * messages have been decoded and processed.
+     */
+    @Override
+    public long getUsage() {
+        return decodeBuffer != null ? super.getUsage() + decodeBuffer.getUsage() : super.getUsage();
+    }
+
     @Override
     protected void afterInsert(int n) {
         incomingMessages.mark(n);
@@ -19,26 +19,38 @@ package org.graylog2.shared.buffers;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.lmax.disruptor.WorkHandler;
+import org.graylog2.plugin.journal.CodecConfigStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
 public class RawMessageEncoderHandler implements WorkHandler<RawMessageEvent> {
     private static final Logger log = LoggerFactory.getLogger(RawMessageEncoderHandler.class);
     private final Meter incomingMessages;
+    private final CodecConfigStore codecConfigStore;
+    private final boolean codecConfigReferences;
 
     @Inject
-    public RawMessageEncoderHandler(MetricRegistry metricRegistry) {
+    public RawMessageEncoderHandler(MetricRegistry metricRegistry,
+                                    CodecConfigStore codecConfigStore,
+                                    @Named("message_journal_codec_config_references") boolean codecConfigReferences) {
         incomingMessages = metricRegistry.meter(name(RawMessageEncoderHandler.class, "incomingMessages"));
+        this.codecConfigStore = codecConfigStore;
+        this.codecConfigReferences = codecConfigReferences;
     }
 
     @Override
     public void onEvent(RawMessageEvent event) throws Exception {
         incomingMessages.mark();
-        event.setEncodedRawMessage(event.getRawMessage().encode());
+        if (codecConfigReferences) {
+            event.setEncodedRawMessage(event.getRawMessage().encode(codecConfigStore));
+        } else {
+            event.setEncodedRawMessage(event.getRawMessage().encode());
+        }
         event.setMessageIdBytes(event.getRawMessage().getIdBytes());
         
         if (log.isTraceEnabled()) {
@@ -46,8 +58,9 @@ public class RawMessageEncoderHandler implements WorkHandler<RawMessageEvent> {
                       event.getRawMessage().getId(), event.getEncodedRawMessage().length);
         }
 
-        // Set timestamp in event to retain access to it after we clear the raw message object below
+        // Set timestamp and source input in event to retain access to it after we clear the raw message object below
         event.setMessageTimestamp(event.getRawMessage().getTimestamp());
+        event.setSourceInputId(event.getRawMessage().getSourceInputId());
 
         // clear for gc and to avoid promotion to tenured space
         event.setRawMessage(null);
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.lmax.disruptor.WorkHandler;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.shared.buffers.DecodeBuffer;
+import org.graylog2.shared.buffers.ProcessBuffer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Decodes the raw messages of the {@link DecodeBuffer} and passes the decoded messages on to the
+ * {@link ProcessBuffer}. The decode time is recorded per codec to show which codecs are expensive.
+ */
+public class DecodeBufferProcessor implements WorkHandler<MessageEvent> {
+    private final MetricRegistry metricRegistry;
+    private final DecodingProcessor decodingProcessor;
+    private final ProcessBuffer processBuffer;
+
+    // only accessed by the processor thread
+    private final Map<String, Timer> codecDecodeTimes = new HashMap<>();
+
+    public DecodeBufferProcessor(MetricRegistry metricRegistry,
+                                 DecodingProcessor decodingProcessor,
+                                 ProcessBuffer processBuffer) {
+        this.metricRegistry = metricRegistry;
+        this.decodingProcessor = decodingProcessor;
+        this.processBuffer = processBuffer;
+    }
+
+    @Override
+    public void onEvent(MessageEvent event) throws Exception {
+        final Timer codecDecodeTime = codecDecodeTime(event.getRaw().getCodecName());
+        final long start = System.nanoTime();
+        try {
+            decodingProcessor.onEvent(event, 0L, false);
+        } finally {
+            codecDecodeTime.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        try {
+            if (event.isSingleMessage()) {
+                processBuffer.insertBlocking(event.getMessage());
+            } else if (event.getMessages() != null && !event.getMessages().isEmpty()) {
+                // skip message events which could not be decoded properly
+                processBuffer.insertBlocking(event.getMessages());
+            }
+        } finally {
+            event.clearMessages();
+        }
+    }
+
+    private Timer codecDecodeTime(String codecName) {
+        return codecDecodeTimes.computeIfAbsent(codecName,
+                codec -> metricRegistry.timer(name(DecodeBuffer.class, codec, "decodeTime")));
+    }
+}
@@ -19,15 +19,18 @@ package org.graylog2.shared.buffers.processors;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.github.joschi.jadconfig.util.Duration;
 import com.google.inject.Provider;
 import com.google.inject.assistedinject.Assisted;
 import com.google.inject.assistedinject.AssistedInject;
+import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.WorkHandler;
 import de.huxhorn.sulky.ulid.ULID;
 import org.graylog.failure.FailureSubmissionService;
 import org.graylog2.buffers.OutputBuffer;
 import org.graylog2.messageprocessors.OrderedMessageProcessors;
 import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageCollection;
 import org.graylog2.plugin.Messages;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.buffers.MessageEvent;
@@ -38,15 +41,31 @@ import org.graylog2.system.processing.ProcessingStatusRecorder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.Nonnull;
+import javax.inject.Named;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static com.google.common.base.Strings.isNullOrEmpty;
 
-public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
+/**
+ * Decodes raw messages, runs them through the message processors and hands them to the output buffer.
+ * <p>
+ * As a {@link WorkHandler} in a worker pool, every message is processed on its own. As an {@link EventHandler}, all
+ * processors see every event and each of them only handles the sequences for its {@code ordinal}. The decoded
+ * messages are collected until the Disruptor signals the end of a batch, the batch size is reached or the oldest
+ * message has waited for the maximum batch latency. The whole batch is then passed through every
+ * {@link MessageProcessor} as a single {@link Messages} collection. If processing the batch fails, all messages of the
+ * batch which have not been written to the output buffer yet are reported as processing failures. They aren't processed
+ * again, because the processors might already have changed them.
+ */
+public class ProcessBufferProcessor implements WorkHandler<MessageEvent>, EventHandler<MessageEvent> {
     private static final Logger LOG = LoggerFactory.getLogger(ProcessBufferProcessor.class);
 
     private final Meter incomingMessages;
@@ -61,8 +80,17 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
     private final DecodingProcessor decodingProcessor;
     private final Provider<Stream> defaultStreamProvider;
     private final FailureSubmissionService failureSubmissionService;
+    private final long ordinal;
+    private final long numberOfConsumers;
+    private final int maxBatchSize;
+    private final long maxBatchLatencyNanos;
     private volatile Message currentMessage;
 
+    // only accessed by the processor thread
+    private final List<Message> batch = new ArrayList<>();
+    private final Set<Message> writtenMessages = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long batchStartTime;
+
     @AssistedInject
     public ProcessBufferProcessor(MetricRegistry metricRegistry,
                                   OrderedMessageProcessors orderedMessageProcessors,
@@ -70,6 +98,10 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
                                   ProcessingStatusRecorder processingStatusRecorder,
                                   ULID ulid,
                                   @Assisted DecodingProcessor decodingProcessor,
+                                  @Assisted("ordinal") long ordinal,
+                                  @Assisted("numberOfConsumers") long numberOfConsumers,
+                                  @Named("processbuffer_batch_size") int maxBatchSize,
+                                  @Named("processbuffer_batch_max_latency") Duration maxBatchLatency,
                                   @DefaultStream Provider<Stream> defaultStreamProvider,
                                   FailureSubmissionService failureSubmissionService) {
         this.orderedMessageProcessors = orderedMessageProcessors;
@@ -77,6 +109,10 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
         this.processingStatusRecorder = processingStatusRecorder;
         this.ulid = ulid;
         this.decodingProcessor = decodingProcessor;
+        this.ordinal = ordinal;
+        this.numberOfConsumers = numberOfConsumers;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchLatencyNanos = maxBatchLatency.toNanoseconds();
         this.defaultStreamProvider = defaultStreamProvider;
         this.failureSubmissionService = failureSubmissionService;
 
@@ -92,10 +128,13 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
             // Decode the RawMessage to a Message object. The DecodingProcessor used to be a separate handler in the
             // ProcessBuffer. Due to performance problems discovered during 1.0.0 testing, we decided to move this here.
             // TODO The DecodingProcessor does not need to be a EventHandler. We decided to do it like this to keep the change as small as possible for 1.0.0.
-            decodingProcessor.onEvent(event, 0L, false);
+            // messages from the DecodeBuffer have already been decoded
+            if (event.getRaw() != null) {
+                decodingProcessor.onEvent(event, 0L, false);
+            }
 
             if (event.isSingleMessage()) {
-                dispatchMessage(event.getMessage());
+                dispatchMessages(Collections.singletonList(event.getMessage()));
             } else {
                 final Collection<Message> messageList = event.getMessages();
                 if (messageList == null) {
@@ -104,7 +143,7 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
                 }
 
                 for (final Message message : messageList) {
-                    dispatchMessage(message);
+                    dispatchMessages(Collections.singletonList(message));
                 }
             }
         } finally {
@@ -112,47 +151,102 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
         }
     }
 
+    @Override
+    public void onEvent(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if (sequence % numberOfConsumers == ordinal) {
+            addToBatch(event, sequence, endOfBatch);
+        }
+
+        if (!batch.isEmpty() && (endOfBatch || batch.size() >= maxBatchSize
+                || System.nanoTime() - batchStartTime >= maxBatchLatencyNanos)) {
+            try {
+                dispatchMessages(batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void addToBatch(MessageEvent event, long sequence, boolean endOfBatch) throws Exception {
+        final boolean wasEmpty = batch.isEmpty();
+        try {
+            if (event.getRaw() != null) {
+                decodingProcessor.onEvent(event, sequence, endOfBatch);
+            }
+
+            if (event.isSingleMessage()) {
+                batch.add(event.getMessage());
+            } else if (event.getMessages() != null) {
+                // skip message events which could not be decoded properly
+                batch.addAll(event.getMessages());
+            }
+        } finally {
+            // the messages are referenced by the batch from now on
+            event.clearMessages();
+        }
+        if (wasEmpty && !batch.isEmpty()) {
+            batchStartTime = System.nanoTime();
+        }
+    }
+
     public Optional<Message> getCurrentMessage() {
         return Optional.ofNullable(currentMessage);
     }
 
-    private void dispatchMessage(final Message msg) {
-        currentMessage = msg;
-        incomingMessages.mark();
+    private void dispatchMessages(final List<Message> messageBatch) {
+        currentMessage = messageBatch.get(0);
+        incomingMessages.mark(messageBatch.size());
 
         if (LOG.isTraceEnabled()) {
-            LOG.trace("Starting to process message <{}>.", msg.getId());
+            for (Message msg : messageBatch) {
+                LOG.trace("Starting to process message <{}>.", msg.getId());
+            }
         }
 
         try (final Timer.Context ignored = processTime.time()) {
-            handleMessage(msg);
-            if (LOG.isTraceEnabled()) {
-                LOG.trace("Finished processing message <{}>. Writing to output buffer.", msg.getId());
-            }
-        } catch (Exception e) {
-            if (LOG.isDebugEnabled()) {
-                // Log warning including the stacktrace
-                LOG.warn("Unable to process message <{}>:", msg.getId(), e);
-                // Log full message content to aid debugging
-                LOG.debug("Failed message <{}>: {}", msg.getId(), msg.toDumpString());
-            } else {
-                // Only logs a single line warning without stacktrace
-                LOG.warn("Unable to process message <{}>: {}", msg.getId(), e);
+            try {
+                handleMessages(messageBatch);
+                if (LOG.isTraceEnabled()) {
+                    LOG.trace("Finished processing {} message(s). Writing to output buffer.", messageBatch.size());
+                }
+            } catch (Exception e) {
+                // the message processors handle the whole batch, we can't tell which message caused the failure
+                for (Message msg : messageBatch) {
+                    // messages which have already been handed on must not be submitted twice
+                    if (!writtenMessages.contains(msg)) {
+                        reportFailure(msg, e);
+                    }
+                }
             }
-
-            failureSubmissionService.submitUnknownProcessingError(msg, String.format(Locale.ENGLISH,
-                    "Unable to process message <%s>: %s",
-                    msg.getId(), e));
-
         } finally {
+            writtenMessages.clear();
             currentMessage = null;
-            outgoingMessages.mark();
+            outgoingMessages.mark(messageBatch.size());
+        }
+    }
+
+    private void reportFailure(Message msg, Exception e) {
+        if (LOG.isDebugEnabled()) {
+            // Log warning including the stacktrace
+            LOG.warn("Unable to process message <{}>:", msg.getId(), e);
+            // Log full message content to aid debugging
+            LOG.debug("Failed message <{}>: {}", msg.getId(), msg.toDumpString());
+        } else {
+            // Only logs a single line warning without stacktrace
+            LOG.warn("Unable to process message <{}>: {}", msg.getId(), e);
         }
+
+        failureSubmissionService.submitUnknownProcessingError(msg, String.format(Locale.ENGLISH,
+                "Unable to process message <%s>: %s",
+                msg.getId(), e));
     }
 
-    private void handleMessage(@Nonnull Message msg) {
-        msg.addStream(defaultStreamProvider.get());
-        Messages messages = msg;
+    private void handleMessages(List<Message> messageBatch) {
+        final Stream defaultStream = defaultStreamProvider.get();
+        for (Message msg : messageBatch) {
+            msg.addStream(defaultStream);
+        }
+        Messages messages = messageBatch.size() == 1 ? messageBatch.get(0) : new MessageCollection(messageBatch);
 
         for (MessageProcessor messageProcessor : orderedMessageProcessors) {
             messages = messageProcessor.process(messages);
@@ -174,10 +268,13 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
             if(failureSubmissionService.submitProcessingErrors(message)) {
                 outputBuffer.insertBlocking(message);
             }
+            writtenMessages.add(message);
         }
     }
 
     public interface Factory {
-        ProcessBufferProcessor create(DecodingProcessor decodingProcessor);
+        ProcessBufferProcessor create(DecodingProcessor decodingProcessor,
+                                      @Assisted("ordinal") long ordinal,
+                                      @Assisted("numberOfConsumers") long numberOfConsumers);
     }
 }
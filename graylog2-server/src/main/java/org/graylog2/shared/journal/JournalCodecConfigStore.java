@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.CodecConfigStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Node-local {@link CodecConfigStore} for the disk journal.
+ * <p>
+ * The reference of a codec configuration is a fingerprint of its serialized JSON form. Every configuration is
+ * written to the {@code journal-codec-configs} directory inside the data directory before its reference is handed
+ * out, so journal segments written before a restart can still be decoded, even if the input has been changed or
+ * deleted in the meantime. The directory must not be inside the journal directory, the journal treats every
+ * subdirectory as one of its logs.
+ * <p>
+ * Stored configurations which haven't been registered for longer than the journal keeps its segments are removed by
+ * {@link #removeUnused(Instant)}.
+ */
+@Singleton
+public class JournalCodecConfigStore implements CodecConfigStore {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalCodecConfigStore.class);
+    private static final String DIRECTORY_NAME = "journal-codec-configs";
+    private static final Pattern REFERENCE_PATTERN = Pattern.compile("[0-9a-f]{32}");
+
+    private final Path directory;
+    // inputs hand the same configuration instance to all of their messages, weak keys use identity comparison
+    private final Cache<Configuration, String> references = CacheBuilder.newBuilder().weakKeys().build();
+    private final ConcurrentMap<String, Configuration> configurations = new ConcurrentHashMap<>();
+    // references handed out since the start of the node, their files are kept up to date by removeUnused()
+    private final Set<String> registeredReferences = ConcurrentHashMap.newKeySet();
+    private final Object fileLock = new Object();
+    private final Meter unknownReferences;
+
+    @Inject
+    public JournalCodecConfigStore(@Named("data_dir") Path dataDirectory, MetricRegistry metricRegistry) {
+        this.directory = dataDirectory.resolve(DIRECTORY_NAME);
+        this.unknownReferences = metricRegistry.meter(name(JournalCodecConfigStore.class, "unknownReferences"));
+    }
+
+    @Override
+    public String register(Configuration configuration) {
+        try {
+            return references.get(configuration, () -> persist(configuration));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to register codec configuration", e.getCause());
+        }
+    }
+
+    private String persist(Configuration configuration) throws IOException {
+        final String json = configuration.serializeToJson();
+        if (json == null) {
+            return "";
+        }
+        final String reference = Hashing.murmur3_128().hashString(json, StandardCharsets.UTF_8).toString();
+        if (registeredReferences.contains(reference)) {
+            return reference;
+        }
+
+        final Path file = directory.resolve(reference + ".json");
+        synchronized (fileLock) {
+            if (Files.exists(file)) {
+                // the file may be left over from before a restart, don't let removeUnused() delete it
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            } else {
+                Files.createDirectories(directory);
+                final Path tempFile = Files.createTempFile(directory, reference, ".tmp");
+                Files.write(tempFile, json.getBytes(StandardCharsets.UTF_8));
+                Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                LOG.debug("Stored codec configuration <{}> in {}", reference, file);
+            }
+            registeredReferences.add(reference);
+        }
+        configurations.putIfAbsent(reference, configuration);
+        return reference;
+    }
+
+    @Nullable
+    @Override
+    public Configuration lookup(String reference) {
+        if (reference.isEmpty()) {
+            return Configuration.EMPTY_CONFIGURATION;
+        }
+        if (!REFERENCE_PATTERN.matcher(reference).matches()) {
+            LOG.warn("Invalid codec configuration reference <{}>", reference);
+            unknownReferences.mark();
+            return null;
+        }
+        try {
+            final Configuration configuration = configurations.computeIfAbsent(reference, this::load);
+            if (configuration == null) {
+                unknownReferences.mark();
+            }
+            return configuration;
+        } catch (UncheckedIOException e) {
+            LOG.error("Unable to load codec configuration <{}> from {}", reference, directory, e.getCause());
+            unknownReferences.mark();
+            return null;
+        }
+    }
+
+    /**
+     * Removes the stored configurations which haven't been registered since the given point in time. The files of
+     * configurations registered since the start of this node are kept and marked as used now.
+     *
+     * @param cutoff the point in time before which a configuration must have been registered last to be removed
+     * @return the number of removed configurations
+     * @throws IOException if the directory could not be read
+     */
+    public int removeUnused(Instant cutoff) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        int removed = 0;
+        synchronized (fileLock) {
+            final FileTime now = FileTime.from(Instant.now());
+            for (String reference : registeredReferences) {
+                try {
+                    Files.setLastModifiedTime(directory.resolve(reference + ".json"), now);
+                } catch (NoSuchFileException e) {
+                    LOG.warn("Stored codec configuration <{}> has been deleted from {}", reference, directory);
+                }
+            }
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    final String fileName = file.getFileName().toString();
+                    final int extension = fileName.lastIndexOf('.');
+                    final String reference = extension < 0 ? fileName : fileName.substring(0, extension);
+                    if (registeredReferences.contains(reference)
+                            || Files.getLastModifiedTime(file).toInstant().isAfter(cutoff)) {
+                        continue;
+                    }
+                    Files.deleteIfExists(file);
+                    configurations.remove(reference);
+                    removed++;
+                    LOG.debug("Removed unused codec configuration file {}", file);
+                }
+            }
+        }
+        return removed;
+    }
+
+    @Nullable
+    private Configuration load(String reference) {
+        final Path file = directory.resolve(reference + ".json");
+        try {
+            final String json = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            return Configuration.deserializeFromJson(json);
+        } catch (NoSuchFileException e) {
+            LOG.warn("Unknown codec configuration reference <{}>, file {} does not exist", reference, file);
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
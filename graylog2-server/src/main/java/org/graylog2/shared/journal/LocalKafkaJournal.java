@@ -63,6 +63,7 @@ import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -76,7 +77,9 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -87,11 +90,15 @@ import java.util.SortedMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.concurrent.TimeUnit.DAYS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
@@ -106,6 +113,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     private static final String LEGACY_CLASS_NAME = "org.graylog2.shared.journal.KafkaJournal";
 
     private static final int NUM_IO_THREADS = 1;
+    private static final String MESSAGE_JOURNAL_TOPIC = "messagejournal";
+    private static final String COMMITTED_READ_OFFSET_FILE_NAME = "graylog2-committed-read-offset";
 
     public static final long DEFAULT_COMMITTED_OFFSET = Long.MIN_VALUE;
     public static final int NOTIFY_ON_UTILIZATION_PERCENTAGE = 95;
@@ -145,9 +154,9 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     };
 
     private final LogManager logManager;
-    private final Log kafkaLog;
-    private final File committedReadOffsetFile;
-    private final AtomicLong committedOffset = new AtomicLong(DEFAULT_COMMITTED_OFFSET);
+    private final Partition[] partitions;
+    private final AtomicInteger nextWritePartition = new AtomicInteger();
+    private final AtomicInteger nextReadPartition = new AtomicInteger();
     private final MetricRegistry metricRegistry;
     private final ScheduledExecutorService scheduler;
     private final ServerStatus serverStatus;
@@ -165,9 +174,9 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     private final LogRetentionCleaner logRetentionCleaner;
     private final long maxSegmentSize;
     private final int maxMessageSize;
+    private final long retentionSize;
     private final String metricPrefix;
 
-    private long nextReadOffset = 0L;
     private ScheduledFuture<?> checkpointFlusherFuture;
     private ScheduledFuture<?> dirtyLogFlushFuture;
     private ScheduledFuture<?> logRetentionFuture;
@@ -188,16 +197,52 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                              @Named("message_journal_flush_interval") long flushInterval,
                              @Named("message_journal_flush_age") Duration flushAge,
                              @Named("lb_throttle_threshold_percentage") int throttleThresholdPercentage,
+                             @Named("message_journal_partitions") int partitions,
                              MetricRegistry metricRegistry,
                              ServerStatus serverStatus) {
 
         this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
-             throttleThresholdPercentage, metricRegistry, serverStatus, LocalKafkaJournal.class.getName());
+             throttleThresholdPercentage, partitions, metricRegistry, serverStatus, LocalKafkaJournal.class.getName());
+    }
+
+    public LocalKafkaJournal(Path journalDirectory,
+                             ScheduledExecutorService scheduler,
+                             Size segmentSize,
+                             Duration segmentAge,
+                             Size retentionSize,
+                             Duration retentionAge,
+                             long flushInterval,
+                             Duration flushAge,
+                             int throttleThresholdPercentage,
+                             MetricRegistry metricRegistry,
+                             ServerStatus serverStatus) {
+
+        this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
+             throttleThresholdPercentage, 1, metricRegistry, serverStatus, LocalKafkaJournal.class.getName());
+    }
+
+    public LocalKafkaJournal(Path journalDirectory,
+                             ScheduledExecutorService scheduler,
+                             Size segmentSize,
+                             Duration segmentAge,
+                             Size retentionSize,
+                             Duration retentionAge,
+                             long flushInterval,
+                             Duration flushAge,
+                             int throttleThresholdPercentage,
+                             MetricRegistry metricRegistry,
+                             ServerStatus serverStatus,
+                             String metricPrefix) {
+
+        this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
+             throttleThresholdPercentage, 1, metricRegistry, serverStatus, metricPrefix);
     }
 
     /**
      * @param throttleThresholdPercentage The journal utilization percent at which throttling will be triggered.
      *                                    Expressed as an integer between 1 and 100. The value -1 disables throttling.
+     * @param partitions                  The number of partitions (separate logs) of the journal. Every partition
+     *                                    gets an equal share of the retention size.
      */
     public LocalKafkaJournal(Path journalDirectory,
                              ScheduledExecutorService scheduler,
@@ -208,9 +253,11 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                              long flushInterval,
                              Duration flushAge,
                              int throttleThresholdPercentage,
+                             int partitions,
                              MetricRegistry metricRegistry,
                              ServerStatus serverStatus,
                              String metricPrefix) {
+        checkArgument(partitions > 0, "The number of journal partitions must be positive");
 
         // Only check throttleThresholdPercentage range if throttling is not disabled;
         if (throttleThresholdPercentage == THRESHOLD_THROTTLING_DISABLED) {
@@ -224,6 +271,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         this.maxSegmentSize = segmentSize.toBytes();
         // Max message size should not be bigger than max segment size.
         this.maxMessageSize = Ints.saturatedCast(maxSegmentSize);
+        this.retentionSize = retentionSize.toBytes();
         this.metricPrefix = metricPrefix;
         this.metricRegistry = metricRegistry;
 
@@ -246,8 +294,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                 .put(LogConfig.FlushMessagesProp(), flushInterval)
                 // flushMs: The amount of time the log can have dirty data before a flush is forced
                 .put(LogConfig.FlushMsProp(), flushAge.getMillis())
-                // retentionSize: The approximate total number of bytes this log can use
-                .put(LogConfig.RetentionBytesProp(), retentionSize.toBytes())
+                // retentionSize: The approximate total number of bytes this log can use, shared by all partitions
+                .put(LogConfig.RetentionBytesProp(), retentionSize.toBytes() / partitions)
                 // retentionMs: The age approximate maximum age of the last segment that is retained
                 .put(LogConfig.RetentionMsProp(), retentionAge.getMillis())
                 // maxMessageSize: The maximum size of a message in the log (ensure that it's not larger than the max segment size)
@@ -296,23 +344,6 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             }
         }
 
-        // TODO add check for directory, etc
-        committedReadOffsetFile = new File(journalDirectory.toFile(), "graylog2-committed-read-offset");
-        try {
-            if (!committedReadOffsetFile.createNewFile()) {
-                final String line = Files.asCharSource(committedReadOffsetFile, StandardCharsets.UTF_8).readFirstLine();
-                // the file contains the last offset graylog2 has successfully processed.
-                // thus the nextReadOffset is one beyond that number
-                if (line != null) {
-                    committedOffset.set(Long.parseLong(line.trim()));
-                    nextReadOffset = committedOffset.get() + 1;
-                }
-            }
-        } catch (IOException e) {
-            LOG.error("Cannot access offset file: {}", e.getMessage());
-            final AccessDeniedException accessDeniedException = new AccessDeniedException(committedReadOffsetFile.getAbsolutePath(), null, e.getMessage());
-            throw new RuntimeException(accessDeniedException);
-        }
         try {
             final BrokerState brokerState = new BrokerState();
             brokerState.newState(RunningAsBroker.state());
@@ -331,21 +362,35 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                     brokerState,
                     JODA_TIME);
 
-            final TopicAndPartition topicAndPartition = new TopicAndPartition("messagejournal", 0);
-            final Option<Log> messageLog = logManager.getLog(topicAndPartition);
-            if (messageLog.isEmpty()) {
-                kafkaLog = logManager.createLog(topicAndPartition, logManager.defaultConfig());
-            } else {
-                kafkaLog = messageLog.get();
+            this.partitions = new Partition[partitions];
+            for (int i = 0; i < partitions; i++) {
+                final TopicAndPartition topicAndPartition = new TopicAndPartition(MESSAGE_JOURNAL_TOPIC, i);
+                final Option<Log> messageLog = logManager.getLog(topicAndPartition);
+                final Log kafkaLog;
+                if (messageLog.isEmpty()) {
+                    kafkaLog = logManager.createLog(topicAndPartition, logManager.defaultConfig());
+                } else {
+                    kafkaLog = messageLog.get();
+                }
+                // the first partition keeps the file name of the unpartitioned journal
+                final String offsetFileName = i == 0 ? COMMITTED_READ_OFFSET_FILE_NAME : COMMITTED_READ_OFFSET_FILE_NAME + "-" + i;
+                this.partitions[i] = new Partition(i, kafkaLog, new File(journalDirectory.toFile(), offsetFileName));
             }
+            checkUnusedPartitions(journalDirectory, partitions);
 
             // Set up more metrics
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_SIZE), (Gauge<Long>) kafkaLog::size);
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_LOG_END_OFFSET), (Gauge<Long>) kafkaLog::logEndOffset);
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_NUMBER_OF_SEGMENTS), (Gauge<Integer>) kafkaLog::numberOfSegments);
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_UNFLUSHED_MESSAGES), (Gauge<Long>) kafkaLog::unflushedMessages);
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_RECOVERY_POINT), (Gauge<Long>) kafkaLog::recoveryPoint);
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_LAST_FLUSH_TIME), (Gauge<Long>) kafkaLog::lastFlushTime);
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_SIZE), (Gauge<Long>) this::size);
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_LOG_END_OFFSET), (Gauge<Long>) this::getLogEndOffset);
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_NUMBER_OF_SEGMENTS), (Gauge<Integer>) this::numberOfSegments);
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_UNFLUSHED_MESSAGES), (Gauge<Long>) () -> sum(partition -> partition.log.unflushedMessages()));
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_RECOVERY_POINT), (Gauge<Long>) () -> Arrays.stream(this.partitions)
+                    .mapToLong(partition -> journalOffset(partition, partition.log.recoveryPoint()))
+                    .min()
+                    .orElse(0L));
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_LAST_FLUSH_TIME), (Gauge<Long>) () -> Arrays.stream(this.partitions)
+                    .mapToLong(partition -> partition.log.lastFlushTime())
+                    .min()
+                    .orElse(0L));
 
             // must not be a lambda, because the serialization cannot determine the proper Metric type :(
             this.metricRegistry.register(getOldestSegmentMetricName(), (Gauge<Date>) new Gauge<Date>() {
@@ -360,7 +405,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                 }
             });
 
-            LOG.info("Initialized Kafka based journal at {}", journalDirectory);
+            LOG.info("Initialized Kafka based journal with {} partition(s) at {}", partitions, journalDirectory);
 
             offsetFlusher = new OffsetFileFlusher();
             dirtyLogFlusher = new DirtyLogFlusher();
@@ -377,6 +422,24 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         }
     }
 
+    // partitions beyond the configured number are never read, refuse to start instead of silently dropping their messages
+    private void checkUnusedPartitions(Path journalDirectory, int partitions) {
+        for (final Map.Entry<TopicAndPartition, Log> entry : JavaConversions.mapAsJavaMap(logManager.logsByTopicPartition()).entrySet()) {
+            final TopicAndPartition topicAndPartition = entry.getKey();
+            final int id = topicAndPartition.partition();
+            if (!MESSAGE_JOURNAL_TOPIC.equals(topicAndPartition.topic()) || id < partitions) {
+                continue;
+            }
+            final Partition unused = new Partition(id, entry.getValue(), new File(journalDirectory.toFile(), COMMITTED_READ_OFFSET_FILE_NAME + "-" + id));
+            final long unprocessed = unused.uncommittedEntries();
+            if (unprocessed > 0) {
+                throw new IllegalStateException("Journal partition " + id + " still contains " + unprocessed +
+                        " unprocessed message(s), but only " + partitions + " partition(s) are configured. Set " +
+                        "message_journal_partitions to at least " + (id + 1) + " until the journal has been processed.");
+            }
+        }
+    }
+
     @Override
     public void flush() {
         offsetFlusher.run();
@@ -427,13 +490,14 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     private void registerUncommittedGauge(MetricRegistry metricRegistry, String name) {
         try {
             metricRegistry.register(name,
-                    (Gauge<Long>) () -> {
-                        if (getCommittedOffset() == DEFAULT_COMMITTED_OFFSET && size() == 0) {
+                    (Gauge<Long>) () -> sum(partition -> {
+                        final long committedOffset = partition.committedOffset.get();
+                        if (committedOffset == DEFAULT_COMMITTED_OFFSET && partition.log.size() == 0) {
                             // nothing committed at all
                             return 0L;
                         }
-                        return Math.max(0, getLogEndOffset() - 1 - committedOffset.get());
-                    });
+                        return Math.max(0, partition.log.logEndOffset() - 1 - committedOffset);
+                    }));
         } catch (IllegalArgumentException ignored) {
             // already registered, we'll ignore that.
         }
@@ -496,13 +560,26 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     }
 
     /**
-     * Writes the list of entries to the journal.
+     * Writes the list of entries to the journal. The entries of a partitioned journal are written to the partitions
+     * in turn.
      *
      * @param entries journal entries to be written
      * @return the last position written to in the journal
      */
     @Override
     public long write(List<Entry> entries) {
+        return write(Math.floorMod(nextWritePartition.getAndIncrement(), partitions.length), entries);
+    }
+
+    /**
+     * Writes the list of entries to the given partition of the journal.
+     *
+     * @param partition the partition to write to, see {@link #partitionFor(String)}
+     * @param entries   journal entries to be written
+     * @return the last position written to in the journal
+     */
+    public long write(int partition, List<Entry> entries) {
+        final Partition journalPartition = partitions[partition];
         try (Timer.Context ignored = writeTime.time()) {
             long payloadSize = 0L;
             long messageSetSize = 0L;
@@ -534,7 +611,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                         LOG.debug("Flushing {} bytes message set with {} messages to avoid overflowing segment with max size of {} bytes",
                                 messageSetSize, messages.size(), maxSegmentSize);
                     }
-                    lastWriteOffset = flushMessages(messages, payloadSize);
+                    lastWriteOffset = flushMessages(journalPartition, messages, payloadSize);
                     // Reset the messages list and size counters to start a new batch.
                     messages.clear();
                     messageSetSize = 0;
@@ -550,14 +627,14 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
 
             // Flush the rest of the messages.
             if (messages.size() > 0) {
-                lastWriteOffset = flushMessages(messages, payloadSize);
+                lastWriteOffset = flushMessages(journalPartition, messages, payloadSize);
             }
 
             return lastWriteOffset;
         }
     }
 
-    private long flushMessages(List<Message> messages, long payloadSize) {
+    private long flushMessages(Partition partition, List<Message> messages, long payloadSize) {
         if (messages.isEmpty()) {
             LOG.debug("No messages to flush, not trying to write an empty message set.");
             return -1L;
@@ -569,16 +646,17 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             LOG.debug("Trying to write ByteBufferMessageSet with size of {} bytes to journal", messageSet.sizeInBytes());
         }
 
-        final LogAppendInfo appendInfo = kafkaLog.append(messageSet, true);
+        final LogAppendInfo appendInfo = partition.log.append(messageSet, true);
         long lastWriteOffset = appendInfo.lastOffset();
 
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Wrote {} messages to journal: {} bytes (payload {} bytes), log position {} to {}",
-                    messages.size(), messageSet.sizeInBytes(), payloadSize, appendInfo.firstOffset(), lastWriteOffset);
+            LOG.debug("Wrote {} messages to journal partition {}: {} bytes (payload {} bytes), log position {} to {}",
+                    messages.size(), partition.id, messageSet.sizeInBytes(), payloadSize, appendInfo.firstOffset(), lastWriteOffset);
         }
         writtenMessages.mark(messages.size());
+        partition.written.release();
 
-        return lastWriteOffset;
+        return journalOffset(partition, lastWriteOffset);
     }
 
     /**
@@ -594,9 +672,45 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         return write(Collections.singletonList(journalEntry));
     }
 
+    /**
+     * Reads the next messages from the journal. A partitioned journal is read from the partitions in turn, until one
+     * of them returns messages.
+     */
     @Override
     public List<JournalReadEntry> read(long requestedMaximumCount) {
-        return readNext(nextReadOffset, requestedMaximumCount);
+        final int firstPartition = Math.floorMod(nextReadPartition.getAndIncrement(), partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            final List<JournalReadEntry> messages = read((firstPartition + i) % partitions.length, requestedMaximumCount);
+            if (!messages.isEmpty()) {
+                return messages;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Reads the next messages from the given partition of the journal.
+     *
+     * @param partition             the partition to read from
+     * @param requestedMaximumCount Maximum number of entries to return.
+     * @return A list of entries
+     */
+    public List<JournalReadEntry> read(int partition, long requestedMaximumCount) {
+        final Partition journalPartition = partitions[partition];
+        return readNext(journalPartition, journalPartition.nextReadOffset, requestedMaximumCount);
+    }
+
+    /**
+     * Blocks until messages have been written to the given partition since this method returned the last time.
+     *
+     * @param partition the partition to wait for
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void awaitMessages(int partition) throws InterruptedException {
+        final Semaphore written = partitions[partition].written;
+        written.acquire();
+        // we don't care how many messages were written in the meantime, they will all be read eventually
+        written.drainPermits();
     }
 
     /**
@@ -604,17 +718,21 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      * returns an empty list of entries, but we know there are more entries in the journal, we'll try to skip the
      * problematic offset(s) until we find entries again.
      *
-     * @param startOffset Offset to start reading at
+     * @param startOffset Offset to start reading at, in a partitioned journal this also selects the partition
      * @param requestedMaximumCount Maximum number of entries to return.
      * @return A list of entries
      */
     public List<JournalReadEntry> readNext(long startOffset, long requestedMaximumCount) {
+        return readNext(partitions[partitionOf(startOffset)], partitionOffset(startOffset), requestedMaximumCount);
+    }
+
+    private List<JournalReadEntry> readNext(Partition partition, long startOffset, long requestedMaximumCount) {
         // Capture the log end offset early for the failure handling below. The end offset will change during the
         // runtime of the retry loop because new messages are written to the journal. If we would use the changing
         // end offset in the error handling while loop, we would skip valid messages.
-        final long logEndOffset = getLogEndOffset();
+        final long logEndOffset = partition.log.logEndOffset();
 
-        List<JournalReadEntry> messages = read(startOffset, requestedMaximumCount);
+        List<JournalReadEntry> messages = read(partition, startOffset, requestedMaximumCount);
 
         if (messages.isEmpty()) {
             // If we got an empty result BUT we know that there are more messages in the log, we bump the readOffset
@@ -631,7 +749,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                         failedReadOffset, retryReadOffset);
 
                 // Retry the read with an increased offset to skip corrupt segments
-                messages = read(retryReadOffset, requestedMaximumCount);
+                messages = read(partition, retryReadOffset, requestedMaximumCount);
 
                 // Bump offsets in case we still read an empty result
                 failedReadOffset++;
@@ -646,11 +764,15 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      * Read from the journal, starting at the given offset. If the underlying journal implementation returns an empty
      * list of entries, it will be returned even if we know there are more entries in the journal.
      *
-     * @param readOffset Offset to start reading at
+     * @param readOffset Offset to start reading at, in a partitioned journal this also selects the partition
      * @param requestedMaximumCount Maximum number of entries to return.
      * @return A list of entries
      */
     public List<JournalReadEntry> read(long readOffset, long requestedMaximumCount) {
+        return read(partitions[partitionOf(readOffset)], partitionOffset(readOffset), requestedMaximumCount);
+    }
+
+    private List<JournalReadEntry> read(Partition partition, long readOffset, long requestedMaximumCount) {
         // Always read at least one!
         final long maximumCount = Math.max(1, requestedMaximumCount);
         long maxOffset = readOffset + maximumCount;
@@ -660,7 +782,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         }
         final List<JournalReadEntry> messages = new ArrayList<>(Ints.saturatedCast(maximumCount));
         try (Timer.Context ignored = readTime.time()) {
-            final long logStartOffset = getLogStartOffset();
+            final long logStartOffset = partition.logStartOffset();
 
             if (readOffset < logStartOffset) {
                 LOG.info(
@@ -674,7 +796,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                     maximumCount, readOffset, maxOffset);
 
             // TODO benchmark and make read-ahead strategy configurable for performance tuning
-            final MessageSet messageSet = kafkaLog.read(readOffset,
+            final MessageSet messageSet = partition.log.read(readOffset,
                     5 * 1024 * 1024,
                     Option.<Object>apply(maxOffset)).messageSet();
 
@@ -697,9 +819,9 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                     LOG.trace("Read message {} contains {}", bytesToHex(keyBytes), bytesToHex(payloadBytes));
                 }
                 totalBytes += payloadBytes.length;
-                messages.add(new JournalReadEntry(payloadBytes, messageAndOffset.offset()));
+                messages.add(new JournalReadEntry(payloadBytes, journalOffset(partition, messageAndOffset.offset())));
                 // remember where to read from
-                nextReadOffset = messageAndOffset.nextOffset();
+                partition.nextReadOffset = messageAndOffset.nextOffset();
             }
             if (messages.isEmpty()) {
                 LOG.debug("No messages available to read for offset interval [{}, {}).", readOffset, maxOffset);
@@ -743,6 +865,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      */
     @Override
     public void markJournalOffsetCommitted(long offset) {
+        final AtomicLong committedOffset = partitions[partitionOf(offset)].committedOffset;
+        final long partitionOffset = partitionOffset(offset);
         long prev;
         // the caller will not care about offsets going backwards, so we need to make sure we don't backtrack
         int i = 0;
@@ -753,7 +877,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                 LOG.warn("Committing journal offset spins {} times now, this might be a bug. Continuing to try update.",
                         i);
             }
-        } while (!committedOffset.compareAndSet(prev, Math.max(offset, prev)));
+        } while (!committedOffset.compareAndSet(prev, Math.max(partitionOffset, prev)));
 
     }
 
@@ -784,12 +908,100 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         }
     }
 
+    /**
+     * Returns the committed offset. For a partitioned journal this is the lowest committed journal offset of the
+     * partitions which have committed anything.
+     *
+     * @return the committed offset or {@link #DEFAULT_COMMITTED_OFFSET} if nothing has been committed yet
+     */
     public long getCommittedOffset() {
-        return committedOffset.get();
+        long lowest = Long.MAX_VALUE;
+        for (final Partition partition : partitions) {
+            final long committedOffset = partition.committedOffset.get();
+            if (committedOffset != DEFAULT_COMMITTED_OFFSET) {
+                lowest = Math.min(lowest, journalOffset(partition, committedOffset));
+            }
+        }
+        return lowest == Long.MAX_VALUE ? DEFAULT_COMMITTED_OFFSET : lowest;
+    }
+
+    /**
+     * Returns the committed offset of the given partition, as an offset within the partition.
+     */
+    public long getCommittedOffset(int partition) {
+        return partitions[partition].committedOffset.get();
     }
 
+    /**
+     * Returns the next read offset. For a partitioned journal this is the lowest next journal offset to read of the
+     * partitions which have been written to.
+     */
     public long getNextReadOffset() {
-        return nextReadOffset;
+        long lowest = Long.MAX_VALUE;
+        for (final Partition partition : partitions) {
+            if (partition.log.logEndOffset() > 0) {
+                lowest = Math.min(lowest, journalOffset(partition, partition.nextReadOffset));
+            }
+        }
+        return lowest == Long.MAX_VALUE ? 0L : lowest;
+    }
+
+    /**
+     * Returns the next read offset of the given partition, as an offset within the partition.
+     */
+    public long getNextReadOffset(int partition) {
+        return partitions[partition].nextReadOffset;
+    }
+
+    /**
+     * Returns the number of journal entries which have not been committed yet.
+     *
+     * @return the number of uncommitted entries of all partitions
+     */
+    public long getUncommittedEntries() {
+        return sum(Partition::uncommittedEntries);
+    }
+
+    public int getNumberOfPartitions() {
+        return partitions.length;
+    }
+
+    /**
+     * Returns the partition for the messages of the given input. All messages of an input are written to the same
+     * partition, so they are read in the order they have been received.
+     *
+     * @param inputId the ID of the input, may be {@code null}
+     * @return the partition for the input
+     */
+    public int partitionFor(@Nullable String inputId) {
+        return inputId == null ? 0 : Math.floorMod(inputId.hashCode(), partitions.length);
+    }
+
+    /**
+     * Returns the partition of an offset returned by {@link #read(long)}.
+     *
+     * @param offset the journal offset
+     * @return the partition of the offset
+     */
+    public int partitionOf(long offset) {
+        return (int) Math.floorMod(offset, (long) partitions.length);
+    }
+
+    // the offsets of all partitions are interleaved into one journal offset, which is the plain log offset for a single partition
+    private long journalOffset(Partition partition, long partitionOffset) {
+        return partitionOffset * partitions.length + partition.id;
+    }
+
+    private long partitionOffset(long offset) {
+        return Math.floorDiv(offset, (long) partitions.length);
+    }
+
+    private long sum(ToLongFunction<Partition> value) {
+        long sum = 0L;
+        for (final Partition partition : partitions) {
+            sum += value.applyAsLong(partition);
+        }
+        return sum;
     }
 
     @Override
@@ -852,7 +1064,9 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
 
     // default visibility for tests
     public Iterable<LogSegment> getSegments() {
-        return JavaConversions.asJavaIterable(kafkaLog.logSegments());
+        return Iterables.concat(Arrays.stream(partitions)
+                .map(partition -> JavaConversions.asJavaIterable(partition.log.logSegments()))
+                .collect(Collectors.toList()));
     }
 
     /**
@@ -861,7 +1075,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      * @return journal size in bytes
      */
     public long size() {
-        return kafkaLog.size();
+        return sum(partition -> partition.log.size());
     }
 
     /**
@@ -870,7 +1084,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      * @return number of segments
      */
     public int numberOfSegments() {
-        return kafkaLog.numberOfSegments();
+        return Ints.saturatedCast(sum(partition -> partition.log.numberOfSegments()));
     }
 
     /**
@@ -884,39 +1098,91 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      * @return the offset of the last message which has been successfully processed.
      */
     public long getCommittedReadOffset() {
-        return committedOffset.get();
+        return getCommittedOffset();
     }
 
     /**
-     * Discards all data in the journal prior to the given offset.
+     * Discards all data in the journal prior to the given offset. In a partitioned journal every partition is
+     * truncated to its last offset below the given journal offset.
      *
      * @param offset offset to truncate to, so that no offset in the journal is larger than this.
      */
     public void truncateTo(long offset) {
-        kafkaLog.truncateTo(offset);
+        for (final Partition partition : partitions) {
+            partition.log.truncateTo(firstPartitionOffsetAtOrAbove(partition, offset));
+        }
     }
 
     /**
-     * Returns the first valid offset in the entire journal.
+     * Reads all entries of all partitions with journal offsets in the given range.
+     *
+     * @param firstOffset the first journal offset to read, inclusive
+     * @param lastOffset  the last journal offset to read, inclusive
+     * @return the entries ordered by their journal offset
+     */
+    public List<JournalReadEntry> readRange(long firstOffset, long lastOffset) {
+        final List<JournalReadEntry> entries = new ArrayList<>();
+        for (final Partition partition : partitions) {
+            final long first = Math.max(firstPartitionOffsetAtOrAbove(partition, firstOffset), partition.logStartOffset());
+            final long last = Math.min(firstPartitionOffsetAtOrAbove(partition, lastOffset + 1) - 1, partition.log.logEndOffset() - 1);
+            if (last >= first) {
+                entries.addAll(read(partition, first, last - first + 1));
+            }
+        }
+        entries.sort(Comparator.comparingLong(JournalReadEntry::getOffset));
+        return entries;
+    }
+
+    // the lowest offset within the partition whose journal offset is not below the given journal offset
+    private long firstPartitionOffsetAtOrAbove(Partition partition, long offset) {
+        return Math.max(0L, Math.floorDiv(offset - partition.id + partitions.length - 1, (long) partitions.length));
+    }
+
+    /**
+     * Returns the first valid offset in the entire journal. For a partitioned journal this is the lowest first
+     * journal offset of the partitions which contain messages.
      *
      * @return first offset
      */
     public long getLogStartOffset() {
-        final Iterable<LogSegment> logSegments = JavaConversions.asJavaIterable(kafkaLog.logSegments());
-        final LogSegment segment = Iterables.getFirst(logSegments, null);
-        if (segment == null) {
-            return 0;
+        long lowest = Long.MAX_VALUE;
+        for (final Partition partition : partitions) {
+            if (partition.log.size() > 0) {
+                lowest = Math.min(lowest, journalOffset(partition, partition.logStartOffset()));
+            }
         }
-        return segment.baseOffset();
+        return lowest == Long.MAX_VALUE ? partitions[0].logStartOffset() : lowest;
+    }
+
+    /**
+     * Returns the first valid offset of the given partition, as an offset within the partition.
+     */
+    public long getLogStartOffset(int partition) {
+        return partitions[partition].logStartOffset();
     }
 
     /**
-     * returns the offset for the next value to be inserted in the entire journal.
+     * returns the offset for the next value to be inserted in the entire journal. For a partitioned journal this is
+     * one beyond the highest journal offset written to any partition.
      *
      * @return the next offset value (last valid offset is this number - 1)
      */
     public long getLogEndOffset() {
-        return kafkaLog.logEndOffset();
+        long highest = 0L;
+        for (final Partition partition : partitions) {
+            final long logEndOffset = partition.log.logEndOffset();
+            if (logEndOffset > 0) {
+                highest = Math.max(highest, journalOffset(partition, logEndOffset - 1) + 1);
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * Returns the next offset to be inserted into the given partition, as an offset within the partition.
+     */
+    public long getLogEndOffset(int partition) {
+        return partitions[partition].log.logEndOffset();
     }
 
     /**
@@ -933,15 +1199,70 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     }
 
 
+    private static class Partition {
+        private final int id;
+        private final Log log;
+        private final File committedReadOffsetFile;
+        private final AtomicLong committedOffset = new AtomicLong(DEFAULT_COMMITTED_OFFSET);
+        private final Semaphore written = new Semaphore(0);
+        private volatile long nextReadOffset = 0L;
+
+        Partition(int id, Log log, File committedReadOffsetFile) {
+            this.id = id;
+            this.log = log;
+            this.committedReadOffsetFile = committedReadOffsetFile;
+
+            try {
+                if (!committedReadOffsetFile.createNewFile()) {
+                    final String line = Files.asCharSource(committedReadOffsetFile, StandardCharsets.UTF_8).readFirstLine();
+                    // the file contains the last offset graylog2 has successfully processed.
+                    // thus the nextReadOffset is one beyond that number
+                    if (line != null) {
+                        committedOffset.set(Long.parseLong(line.trim()));
+                        nextReadOffset = committedOffset.get() + 1;
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("Cannot access offset file: {}", e.getMessage());
+                final AccessDeniedException accessDeniedException = new AccessDeniedException(committedReadOffsetFile.getAbsolutePath(), null, e.getMessage());
+                throw new RuntimeException(accessDeniedException);
+            }
+        }
+
+        long uncommittedEntries() {
+            final long committed = committedOffset.get();
+            final long logEndOffset = log.logEndOffset();
+            if (committed == DEFAULT_COMMITTED_OFFSET) {
+                // nothing committed at all, the entire log is uncommitted, or completely empty.
+                return log.size() == 0 ? 0 : logEndOffset - logStartOffset();
+            }
+            return logEndOffset - 1 - committed;
+        }
+
+        long logStartOffset() {
+            final LogSegment segment = Iterables.getFirst(JavaConversions.asJavaIterable(log.logSegments()), null);
+            if (segment == null) {
+                return 0;
+            }
+            return segment.baseOffset();
+        }
+    }
+
     public class OffsetFileFlusher implements Runnable {
         @Override
         public void run() {
+            for (final Partition partition : partitions) {
+                flush(partition.committedOffset.get(), partition.committedReadOffsetFile);
+            }
+        }
+
+        private void flush(long committedOffset, File committedReadOffsetFile) {
             // Do not write the file if committedOffset has never been updated.
-            if (committedOffset.get() == DEFAULT_COMMITTED_OFFSET) {
+            if (committedOffset == DEFAULT_COMMITTED_OFFSET) {
                 return;
             }
             try (final FileOutputStream fos = new FileOutputStream(committedReadOffsetFile)) {
-                fos.write(String.valueOf(committedOffset.get()).getBytes(StandardCharsets.UTF_8));
+                fos.write(String.valueOf(committedOffset).getBytes(StandardCharsets.UTF_8));
                 // flush stream
                 fos.flush();
                 // actually sync to disk
@@ -975,16 +1296,21 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         public Integer call() throws Exception {
             loggerForCleaner.debug("Beginning log cleanup");
             int total = 0;
+            int purgedSegments = 0;
             final Timer.Context ctx = new Timer().time();
-            for (final Log kafkaLog : JavaConversions.asJavaIterable(logManager.allLogs())) {
+            checkUtilization();
+            for (final Partition partition : partitions) {
+                final Log kafkaLog = partition.log;
                 if (kafkaLog.config().compact()) {
                     continue;
                 }
                 loggerForCleaner.debug("Garbage collecting {}", kafkaLog.name());
-                total += cleanupExpiredSegments(kafkaLog) +
-                        cleanupSegmentsToMaintainSize(kafkaLog) +
-                        cleanupSegmentsToRemoveCommitted(kafkaLog);
+                final int expiredSegments = cleanupExpiredSegments(kafkaLog);
+                final int segmentsOverSize = cleanupSegmentsToMaintainSize(kafkaLog);
+                total += expiredSegments + segmentsOverSize + cleanupSegmentsToRemoveCommitted(partition);
+                purgedSegments += segmentsOverSize;
             }
+            LocalKafkaJournal.this.purgedSegmentsInLastRetention.set(purgedSegments);
 
             loggerForCleaner.debug("Log cleanup completed. {} files deleted in {} seconds",
                     total,
@@ -995,7 +1321,6 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         private int cleanupExpiredSegments(final Log kafkaLog) {
             // don't run if nothing will be done
             if (kafkaLog.size() == 0 && kafkaLog.numberOfSegments() < 1) {
-                LocalKafkaJournal.this.purgedSegmentsInLastRetention.set(0);
                 return 0;
             }
             int deletedSegments = kafkaLog.deleteOldSegments(new AbstractFunction1<LogSegment, Object>() {
@@ -1012,7 +1337,6 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                     return shouldDelete;
                 }
             });
-            LocalKafkaJournal.this.purgedSegmentsInLastRetention.set(deletedSegments);
             return deletedSegments;
         }
 
@@ -1039,9 +1363,11 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             }
         }
 
-        private int cleanupSegmentsToMaintainSize(Log kafkaLog) {
-            final long retentionSize = kafkaLog.config().retentionSize();
-            final long currentSize = kafkaLog.size();
+        /**
+         * The utilization and throttling is based on the size of all partitions.
+         */
+        private void checkUtilization() {
+            final long currentSize = size();
             final double utilizationPercentage = retentionSize > 0 ? (currentSize * 100) / retentionSize : 0.0;
             if (utilizationPercentage > LocalKafkaJournal.NOTIFY_ON_UTILIZATION_PERCENTAGE) {
                 LOG.warn("Journal utilization ({}%) has gone over {}%.", utilizationPercentage,
@@ -1052,9 +1378,12 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             if (throttleThresholdPercentage != THRESHOLD_THROTTLING_DISABLED) {
                 updateLoadBalancerStatus(utilizationPercentage);
             }
+        }
 
+        private int cleanupSegmentsToMaintainSize(Log kafkaLog) {
+            final long retentionSize = kafkaLog.config().retentionSize();
+            final long currentSize = kafkaLog.size();
             if (retentionSize < 0 || currentSize < retentionSize) {
-                LocalKafkaJournal.this.purgedSegmentsInLastRetention.set(0);
                 return 0;
             }
             final long[] diff = {currentSize - retentionSize};
@@ -1075,11 +1404,11 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                     }
                 }
             });
-            LocalKafkaJournal.this.purgedSegmentsInLastRetention.set(deletedSegments);
             return deletedSegments;
         }
 
-        private int cleanupSegmentsToRemoveCommitted(Log kafkaLog) {
+        private int cleanupSegmentsToRemoveCommitted(Partition partition) {
+            final Log kafkaLog = partition.log;
             if (kafkaLog.numberOfSegments() <= 1) {
                 loggerForCleaner.debug(
                         "[cleanup-committed] The journal is already minimal at {} segment(s), not trying to remove more segments.",
@@ -1089,7 +1418,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             // we need to iterate through all segments to the find the cutoff point for the committed offset.
             // unfortunately finding the largest offset contained in a segment is expensive (it involves reading the entire file)
             // so we have to get a global view.
-            final long committedOffset = LocalKafkaJournal.this.committedOffset.get();
+            final long committedOffset = partition.committedOffset.get();
             final HashSet<LogSegment> logSegments = Sets.newHashSet(
                     JavaConversions.asJavaIterable(kafkaLog.logSegments(committedOffset, Long.MAX_VALUE))
             );
@@ -18,10 +18,12 @@ package org.graylog2.shared.journal;
 
 import com.google.inject.Scopes;
 import org.graylog2.plugin.PluginModule;
+import org.graylog2.plugin.journal.CodecConfigStore;
 
 public class LocalKafkaJournalModule extends PluginModule {
     @Override
     protected void configure() {
         bind(Journal.class).to(LocalKafkaJournal.class).in(Scopes.SINGLETON);
+        bind(CodecConfigStore.class).to(JournalCodecConfigStore.class);
     }
 }
@@ -19,6 +19,8 @@ package org.graylog2.shared.messageq;
 import com.google.inject.Scopes;
 import org.graylog2.Configuration;
 import org.graylog2.plugin.PluginModule;
+import org.graylog2.plugin.journal.CodecConfigStore;
+import org.graylog2.shared.journal.JournalCodecConfigStore;
 import org.graylog2.shared.journal.Journal;
 import org.graylog2.shared.journal.LocalKafkaJournal;
 import org.graylog2.shared.journal.LocalKafkaJournalModule;
@@ -61,6 +63,7 @@ public class MessageQueueModule extends PluginModule {
             serviceBinder().addBinding().to(LocalKafkaJournal.class).in(Scopes.SINGLETON);
         } else {
             binder().bind(Journal.class).to(NoopJournal.class).in(Scopes.SINGLETON);
+            binder().bind(CodecConfigStore.class).to(JournalCodecConfigStore.class);
             serviceBinder().addBinding().to(NoopJournal.class).in(Scopes.SINGLETON);
         }
 
@@ -24,7 +24,9 @@ import org.graylog2.shared.messageq.MessageQueueAcknowledger;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Singleton
 public class LocalKafkaMessageQueueAcknowledger extends AbstractMessageQueueAcknowledger<Long> {
@@ -39,14 +41,15 @@ public class LocalKafkaMessageQueueAcknowledger extends AbstractMessageQueueAckn
 
     @Override
     public void acknowledge(List<Message> messages) {
+        // the offsets of a partitioned journal are only ordered within their partition
         @SuppressWarnings("ConstantConditions")
-        final Optional<Long> max =
+        final Map<Integer, Long> maxByPartition =
                 messages.stream()
                         .map(Message::getMessageQueueId)
                         .filter(this::isValidMessageQueueId)
                         .map(Long.class::cast)
-                        .max(Long::compare);
-        max.ifPresent(this::doAcknowledge);
+                        .collect(Collectors.toMap(kafkaJournal::partitionOf, Function.identity(), Math::max));
+        maxByPartition.values().forEach(this::doAcknowledge);
         metrics.acknowledgedMessages().mark(messages.size());
     }
 
@@ -21,10 +21,13 @@ import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.Uninterruptibles;
+import org.graylog2.plugin.journal.CodecConfigStore;
 import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.shared.buffers.ProcessBuffer;
 import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.LocalKafkaJournal;
 import org.graylog2.shared.messageq.AbstractMessageQueueReader;
 import org.graylog2.shared.messageq.MessageQueueReader;
 import org.graylog2.shared.metrics.HdrHistogram;
@@ -32,10 +35,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import javax.inject.Named;
 import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -43,33 +48,35 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 @Singleton
 public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
     private static final Logger log = LoggerFactory.getLogger(LocalKafkaMessageQueueReader.class);
-    private final Journal journal;
+    private final LocalKafkaJournal journal;
     private final ProcessBuffer processBuffer;
-    private final Semaphore journalFilled;
     private final MetricRegistry metricRegistry;
     private final Meter readMessages;
     private final Metrics readerMetrics;
     private Histogram requestedReadCount;
     private final Counter readBlocked;
+    private final CodecConfigStore codecConfigStore;
     private Thread executionThread;
+    private volatile List<Thread> partitionReaders = Collections.emptyList();
+    private final AtomicReference<Exception> partitionReaderFailure = new AtomicReference<>();
 
     @Inject
-    public LocalKafkaMessageQueueReader(Journal journal,
+    public LocalKafkaMessageQueueReader(LocalKafkaJournal journal,
                                         ProcessBuffer processBuffer,
-                                        @Named("JournalSignal") Semaphore journalFilled,
                                         MetricRegistry metricRegistry,
                                         EventBus eventBus,
-                                        MessageQueueReader.Metrics readerMetrics) {
+                                        MessageQueueReader.Metrics readerMetrics,
+                                        CodecConfigStore codecConfigStore) {
 
         super(eventBus);
 
         this.journal = journal;
         this.processBuffer = processBuffer;
-        this.journalFilled = journalFilled;
         this.metricRegistry = metricRegistry;
         readBlocked = metricRegistry.counter(name(this.getClass(), "readBlocked"));
         readMessages = metricRegistry.meter(name(this.getClass(), "readMessages"));
         this.readerMetrics = readerMetrics;
+        this.codecConfigStore = codecConfigStore;
     }
 
     @Override
@@ -86,6 +93,7 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
     @Override
     protected void triggerShutdown() {
         executionThread.interrupt();
+        partitionReaders.forEach(Thread::interrupt);
     }
 
     @Override
@@ -97,37 +105,74 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
             throw e;
         }
 
-        while (isRunning()) {
+        // every partition gets its own reader thread, the first partition is read by the service thread
+        final int partitions = journal.getNumberOfPartitions();
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("journal-reader-%d")
+                .setDaemon(true)
+                .build();
+        final List<Thread> readers = new ArrayList<>(partitions - 1);
+        for (int partition = 1; partition < partitions; partition++) {
+            final int readerPartition = partition;
+            readers.add(threadFactory.newThread(() -> {
+                try {
+                    readPartition(readerPartition, partitions);
+                } catch (Exception e) {
+                    if (partitionReaderFailure.compareAndSet(null, e)) {
+                        executionThread.interrupt();
+                    }
+                }
+            }));
+        }
+        partitionReaders = readers;
+        readers.forEach(Thread::start);
+
+        try {
+            readPartition(0, partitions);
+        } finally {
+            for (Thread reader : readers) {
+                reader.interrupt();
+                reader.join();
+            }
+        }
+        final Exception failure = partitionReaderFailure.get();
+        if (failure != null) {
+            throw failure;
+        }
+        log.info("Stopping.");
+    }
+
+    private void readPartition(int partition, int partitions) {
+        while (isRunning() && partitionReaderFailure.get() == null) {
             // TODO interfere with reading if we are not 100% certain we should be reading, see #listenForLifecycleChanges
             if (!shouldBeReading()) {
                 Uninterruptibles.sleepUninterruptibly(100, MILLISECONDS);
                 // don't read immediately, but check if we should be shutting down.
                 continue;
             }
-            // approximate count to read from the journal to backfill the processing chain
-            final long remainingCapacity = processBuffer.getRemainingCapacity();
+            // approximate count to read from the journal to backfill the processing chain, shared by all partitions
+            final long remainingCapacity = processBuffer.getRemainingCapacity() / partitions;
             requestedReadCount.update(remainingCapacity);
-            final List<Journal.JournalReadEntry> encodedRawMessages = journal.read(remainingCapacity);
+            final List<Journal.JournalReadEntry> encodedRawMessages = journal.read(partition, remainingCapacity);
             if (encodedRawMessages.isEmpty()) {
                 log.debug("No messages to read from Journal, waiting until the writer adds more messages.");
                 // block until something is written to the journal again
                 try {
                     readBlocked.inc();
-                    journalFilled.acquire();
+                    journal.awaitMessages(partition);
                 } catch (InterruptedException ignored) {
                     // this can happen when we are blocked but the system wants to shut down. We don't have to do anything in that case.
                     continue;
                 }
                 log.debug("Messages have been written to Journal, continuing to read.");
-                // we don't care how many messages were inserted in the meantime, we'll read all of them eventually
-                journalFilled.drainPermits();
             } else {
                 readMessages.mark(encodedRawMessages.size());
                 readerMetrics.readMessages().mark(encodedRawMessages.size());
                 log.debug("Processing {} messages from journal.", encodedRawMessages.size());
                 for (final Journal.JournalReadEntry encodedRawMessage : encodedRawMessages) {
                     final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayload(),
-                                                                    encodedRawMessage.getOffset());
+                                                                    encodedRawMessage.getOffset(),
+                                                                    codecConfigStore);
                     readerMetrics.readBytes().mark(encodedRawMessage.getPayload().length);
                     if (rawMessage == null) {
                         // never insert null objects into the ringbuffer, as that is useless
@@ -139,8 +184,5 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
                 }
             }
         }
-        log.info("Stopping.");
     }
-
-
 }
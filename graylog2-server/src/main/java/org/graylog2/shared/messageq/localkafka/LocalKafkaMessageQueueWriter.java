@@ -31,12 +31,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
-import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -46,16 +45,13 @@ public class LocalKafkaMessageQueueWriter extends AbstractIdleService implements
     private static final Logger LOG = LoggerFactory.getLogger(LocalKafkaMessageQueueWriter.class);
 
     private LocalKafkaJournal kafkaJournal;
-    private Semaphore journalFilled;
     private final Metrics metrics;
     private final Retryer<Void> writeRetryer;
 
     @Inject
     public LocalKafkaMessageQueueWriter(LocalKafkaJournal kafkaJournal,
-                                        @Named("JournalSignal") Semaphore journalFilled,
                                         MessageQueueWriter.Metrics metrics) {
         this.kafkaJournal = kafkaJournal;
-        this.journalFilled = journalFilled;
         this.metrics = metrics;
 
         writeRetryer = RetryerBuilder.<Void>newBuilder()
@@ -74,38 +70,53 @@ public class LocalKafkaMessageQueueWriter extends AbstractIdleService implements
 
         final AtomicLong msgBytes = new AtomicLong(0);
 
-        final List<Journal.Entry> journalEntries = entries.stream()
+        final Map<Integer, List<Journal.Entry>> journalEntries = entries.stream()
                 .filter(Objects::nonNull)
-                .map(e -> new Journal.Entry(e.getMessageIdBytes(), e.getEncodedRawMessage()))
-                .peek(e -> msgBytes.addAndGet(e.getMessageBytes().length))
-                .collect(Collectors.toList());
+                .peek(e -> msgBytes.addAndGet(e.getEncodedRawMessage().length))
+                .collect(Collectors.groupingBy(this::partitionFor,
+                        Collectors.mapping(e -> new Journal.Entry(e.getMessageIdBytes(), e.getEncodedRawMessage()),
+                                Collectors.toList())));
+
+        int writtenMessages = 0;
+        for (Map.Entry<Integer, List<Journal.Entry>> partitionEntries : journalEntries.entrySet()) {
+            write(partitionEntries.getKey(), partitionEntries.getValue());
+            writtenMessages += partitionEntries.getValue().size();
+        }
 
+        metrics.writtenMessages().mark(writtenMessages);
+        metrics.writtenBytes().mark(msgBytes.get());
+    }
+
+    private int partitionFor(RawMessageEvent event) {
+        if (kafkaJournal.getNumberOfPartitions() == 1) {
+            return 0;
+        }
+        return kafkaJournal.partitionFor(event.getSourceInputId());
+    }
+
+    private void write(int partition, List<Journal.Entry> journalEntries) throws MessageQueueException {
         try {
-            writeToJournal(journalEntries);
+            writeToJournal(partition, journalEntries);
         } catch (Exception e) {
             LOG.error("Unable to write to journal - retrying", e);
 
             // Use retryer with exponential back-off to avoid spamming the logs.
             try {
                 writeRetryer.call(() -> {
-                    writeToJournal(journalEntries);
+                    writeToJournal(partition, journalEntries);
                     return null;
                 });
             } catch (ExecutionException | RetryException ex) {
                 throw new MessageQueueException("Retryer exception", ex);
             }
         }
-
-        metrics.writtenMessages().mark(journalEntries.size());
-        metrics.writtenBytes().mark(msgBytes.get());
     }
 
-    private void writeToJournal(List<Journal.Entry> entries) {
-        final long lastOffset = kafkaJournal.write(entries);
+    private void writeToJournal(int partition, List<Journal.Entry> entries) {
+        final long lastOffset = kafkaJournal.write(partition, entries);
 
         LOG.debug("Processed batch, last journal offset: {}, signalling reader.",
                 lastOffset);
-        journalFilled.release();
     }
 
     @Override
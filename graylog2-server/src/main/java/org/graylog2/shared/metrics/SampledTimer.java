@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.metrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Timer;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * {@link Timer} which only measures the duration of a random sample of the invocations started with
+ * {@link #sample()}.
+ * <p>
+ * With a sample rate of {@code N}, on average one in {@code N} invocations reads the clock and updates the reservoir.
+ * The remaining invocations only increment a counter, so {@link #getCount()} stays exact. The rates are estimated
+ * from the sampled invocations, each of them counts {@code N} times. With a sample rate of 1, every invocation is
+ * timed, like with a plain {@link Timer}.
+ */
+public class SampledTimer extends Timer {
+    private final Clock clock;
+    private final LongAdder count = new LongAdder();
+    private final Meter meter;
+    private final Sample unsampled = new Sample() {
+        @Override
+        public void close() {
+            count.increment();
+        }
+    };
+    private volatile int sampleRate;
+
+    public SampledTimer() {
+        this(1);
+    }
+
+    public SampledTimer(int sampleRate) {
+        this(sampleRate, new ExponentiallyDecayingReservoir(), Clock.defaultClock());
+    }
+
+    public SampledTimer(int sampleRate, Reservoir reservoir, Clock clock) {
+        super(reservoir, clock);
+        this.clock = clock;
+        this.meter = new Meter(clock);
+        setSampleRate(sampleRate);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Changes the sample rate. Invocations which have already been recorded keep the weight of the previous rate.
+     *
+     * @param sampleRate time one in {@code sampleRate} invocations, must be positive
+     */
+    public void setSampleRate(int sampleRate) {
+        checkArgument(sampleRate > 0, "Sample rate must be positive, got %s", sampleRate);
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Decides whether the next invocation should be timed. Can be used to time related invocations of several timers
+     * with the same sample rate together, see {@link #sample(boolean)}.
+     *
+     * @return {@code true} for one in {@link #getSampleRate() sample rate} calls on average
+     */
+    public boolean nextSampled() {
+        return nextSampled(sampleRate);
+    }
+
+    /**
+     * @param sampleRate the sample rate, must be positive
+     * @return {@code true} for one in {@code sampleRate} calls on average
+     */
+    public static boolean nextSampled(int sampleRate) {
+        return sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0;
+    }
+
+    /**
+     * Starts an invocation, which is timed if it is part of the sample.
+     *
+     * @return the invocation, which has to be {@link Sample#close() closed} when it's done
+     */
+    public Sample sample() {
+        return sample(nextSampled());
+    }
+
+    /**
+     * Starts an invocation.
+     *
+     * @param timed whether the invocation is part of the sample and should be timed
+     * @return the invocation, which has to be {@link Sample#close() closed} when it's done
+     */
+    public Sample sample(boolean timed) {
+        if (!timed) {
+            return unsampled;
+        }
+        final int weight = sampleRate;
+        final long startTime = clock.getTick();
+        return new Sample() {
+            @Override
+            public void close() {
+                update(clock.getTick() - startTime, weight);
+            }
+        };
+    }
+
+    @Override
+    public void update(long duration, TimeUnit unit) {
+        update(unit.toNanos(duration), 1);
+    }
+
+    @Override
+    public void update(Duration duration) {
+        update(duration.toNanos(), 1);
+    }
+
+    private void update(long durationNanos, int weight) {
+        super.update(durationNanos, TimeUnit.NANOSECONDS);
+        count.increment();
+        meter.mark(weight);
+    }
+
+    @Override
+    public <T> T time(Callable<T> event) throws Exception {
+        try (final Sample ignored = sample()) {
+            return event.call();
+        }
+    }
+
+    @Override
+    public <T> T timeSupplier(Supplier<T> event) {
+        try (final Sample ignored = sample()) {
+            return event.get();
+        }
+    }
+
+    @Override
+    public void time(Runnable event) {
+        try (final Sample ignored = sample()) {
+            event.run();
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getFifteenMinuteRate() {
+        return meter.getFifteenMinuteRate();
+    }
+
+    @Override
+    public double getFiveMinuteRate() {
+        return meter.getFiveMinuteRate();
+    }
+
+    @Override
+    public double getMeanRate() {
+        return meter.getMeanRate();
+    }
+
+    @Override
+    public double getOneMinuteRate() {
+        return meter.getOneMinuteRate();
+    }
+
+    /**
+     * A started invocation of a {@link SampledTimer}.
+     */
+    public abstract static class Sample implements AutoCloseable {
+        /**
+         * Finishes the invocation and records its duration if it has been timed.
+         */
+        @Override
+        public abstract void close();
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.streams;
+
+import com.codahale.metrics.Timer;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.plugin.streams.StreamRuleType;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Precompiled matcher for the {@link StreamRuleType#EXACT} and {@link StreamRuleType#PRESENCE} stream rules.
+ * <p>
+ * Rules are grouped by the message field they look at. Every field is read once per message and the outcome of all
+ * rules on that field is computed with a hash lookup of the field value and a few bitset operations over the
+ * streams, so the matching cost depends on the number of distinct fields instead of the number of rules.
+ * <p>
+ * The outcome is reported as two bitsets indexed by stream position: streams which had at least one matching rule
+ * and streams which had at least one non-matching rule. This is all that is needed to evaluate both
+ * {@link org.graylog2.plugin.streams.Stream.MatchingType#OR OR} and
+ * {@link org.graylog2.plugin.streams.Stream.MatchingType#AND AND} streams.
+ * <p>
+ * The execution timer of every rule is updated with the time it took to evaluate all rules on the rule's field.
+ * <p>
+ * Instances are thread-safe once all rules have been added.
+ */
+class FieldIndexedStreamRules {
+    private final Map<String, ExactField> exactFields = new HashMap<>();
+    private final Map<String, PresenceField> presenceFields = new HashMap<>();
+
+    static boolean supports(StreamRule streamRule) {
+        final StreamRuleType type = streamRule.getType();
+        return streamRule.getField() != null && (type == StreamRuleType.EXACT || type == StreamRuleType.PRESENCE);
+    }
+
+    /**
+     * @param streamIndex    the position of the rule's stream, used as bit index in the match results
+     * @param streamRule     the stream rule, must be {@link #supports(StreamRule) supported}
+     * @param executionTimer the execution timer of the stream rule
+     */
+    void add(int streamIndex, StreamRule streamRule, Timer executionTimer) {
+        final boolean inverted = streamRule.getInverted();
+        switch (streamRule.getType()) {
+            case EXACT:
+                final ExactField exactField = exactFields.computeIfAbsent(streamRule.getField(), field -> new ExactField());
+                exactField.add(streamIndex, streamRule.getValue(), inverted);
+                exactField.addExecutionTimer(executionTimer);
+                break;
+            case PRESENCE:
+                final PresenceField presenceField = presenceFields.computeIfAbsent(streamRule.getField(), field -> new PresenceField());
+                presenceField.add(streamIndex, inverted);
+                presenceField.addExecutionTimer(executionTimer);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported stream rule type " + streamRule.getType());
+        }
+    }
+
+    boolean isEmpty() {
+        return exactFields.isEmpty() && presenceFields.isEmpty();
+    }
+
+    /**
+     * Evaluates all indexed rules for the given message.
+     *
+     * @param message    the message to match
+     * @param matched    receives the streams for which at least one rule matched
+     * @param notMatched receives the streams for which at least one rule did not match
+     */
+    void match(Message message, BitSet matched, BitSet notMatched) {
+        for (Map.Entry<String, ExactField> entry : exactFields.entrySet()) {
+            final long start = System.nanoTime();
+            final ExactField field = entry.getValue();
+            field.match(message.getField(entry.getKey()), matched, notMatched);
+            field.updateExecutionTimers(System.nanoTime() - start);
+        }
+        for (Map.Entry<String, PresenceField> entry : presenceFields.entrySet()) {
+            final long start = System.nanoTime();
+            final PresenceField field = entry.getValue();
+            field.match(message.getField(entry.getKey()), matched, notMatched);
+            field.updateExecutionTimers(System.nanoTime() - start);
+        }
+    }
+
+    private abstract static class IndexedField {
+        private final List<Timer> executionTimers = new ArrayList<>();
+
+        void addExecutionTimer(Timer executionTimer) {
+            executionTimers.add(executionTimer);
+        }
+
+        void updateExecutionTimers(long durationNanos) {
+            for (Timer executionTimer : executionTimers) {
+                executionTimer.update(durationNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    // same semantics as org.graylog2.streams.matchers.ExactMatcher
+    private static class ExactField extends IndexedField {
+        private final ValueRules regular = new ValueRules();
+        private final ValueRules inverted = new ValueRules();
+
+        void add(int streamIndex, String value, boolean isInverted) {
+            (isInverted ? inverted : regular).add(streamIndex, value);
+        }
+
+        void match(Object fieldValue, BitSet matched, BitSet notMatched) {
+            if (fieldValue == null) {
+                matched.or(inverted.anyValue);
+                notMatched.or(regular.anyValue);
+                return;
+            }
+            final String value = fieldValue.toString().trim();
+            regular.apply(value, matched, notMatched);
+            inverted.apply(value, notMatched, matched);
+        }
+    }
+
+    private static class ValueRules {
+        // scratch space for apply(), the stream router engine is shared by all processing threads
+        private static final ThreadLocal<BitSet> SCRATCH = ThreadLocal.withInitial(BitSet::new);
+
+        // streams with at least one rule for the given value
+        private final Map<String, BitSet> byValue = new HashMap<>();
+        // streams with at least one rule
+        private final BitSet anyValue = new BitSet();
+        // streams with rules for at least two distinct values, they always have a rule with a different value
+        private final BitSet multipleValues = new BitSet();
+        private final Map<Integer, Set<String>> valuesByStream = new HashMap<>();
+
+        void add(int streamIndex, String value) {
+            byValue.computeIfAbsent(value, v -> new BitSet()).set(streamIndex);
+            anyValue.set(streamIndex);
+            final Set<String> values = valuesByStream.computeIfAbsent(streamIndex, i -> new HashSet<>());
+            values.add(value);
+            if (values.size() > 1) {
+                multipleValues.set(streamIndex);
+            }
+        }
+
+        /**
+         * @param value     the trimmed field value
+         * @param equal     receives the streams with a rule for exactly this value
+         * @param different receives the streams with a rule for another value
+         */
+        void apply(String value, BitSet equal, BitSet different) {
+            final BitSet sameValue = byValue.get(value);
+            if (sameValue == null) {
+                different.or(anyValue);
+                return;
+            }
+            equal.or(sameValue);
+            final BitSet otherValue = SCRATCH.get();
+            otherValue.clear();
+            otherValue.or(anyValue);
+            otherValue.andNot(sameValue);
+            otherValue.or(multipleValues);
+            different.or(otherValue);
+        }
+    }
+
+    // same semantics as org.graylog2.streams.matchers.FieldPresenceMatcher
+    private static class PresenceField extends IndexedField {
+        private final BitSet regular = new BitSet();
+        private final BitSet inverted = new BitSet();
+
+        void add(int streamIndex, boolean isInverted) {
+            (isInverted ? inverted : regular).set(streamIndex);
+        }
+
+        void match(Object fieldValue, BitSet matched, BitSet notMatched) {
+            final boolean present = fieldValue != null
+                    && (!(fieldValue instanceof String) || !((String) fieldValue).trim().isEmpty());
+            if (present) {
+                matched.or(regular);
+                notMatched.or(inverted);
+            } else {
+                matched.or(inverted);
+                notMatched.or(regular);
+            }
+        }
+    }
+}
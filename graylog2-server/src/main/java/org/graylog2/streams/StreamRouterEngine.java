@@ -20,7 +20,6 @@ import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.SimpleTimeLimiter;
 import com.google.common.util.concurrent.TimeLimiter;
 import com.google.common.util.concurrent.UncheckedTimeoutException;
@@ -30,20 +29,28 @@ import org.graylog2.plugin.streams.DefaultStream;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.streams.StreamRule;
 import org.graylog2.plugin.streams.StreamRuleType;
+import org.graylog2.streams.matchers.RegexMatcher;
 import org.graylog2.streams.matchers.StreamRuleMatcher;
+import org.graylog2.utilities.regex.RegexEngine;
+import org.graylog2.utilities.regex.RegexPattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Provider;
+import java.util.BitSet;
 import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Stream routing engine to select matching streams for a message.
@@ -61,8 +68,13 @@ public class StreamRouterEngine {
     private final long streamProcessingTimeout;
     private final String fingerprint;
     private final Provider<Stream> defaultStreamProvider;
+    private final RegexEngine regexEngine;
 
     private final List<Rule> rulesList;
+    private final FieldIndexedStreamRules indexedRules = new FieldIndexedStreamRules();
+    // streams which have at least one valid rule, AND streams without any rules never match
+    private final BitSet streamsWithRules = new BitSet();
+    private final List<RegexPrefilter> regexPrefilters = Lists.newArrayList();
 
     public interface Factory {
         StreamRouterEngine create(List<Stream> streams, ExecutorService executorService);
@@ -73,7 +85,8 @@ public class StreamRouterEngine {
                               @Assisted ExecutorService executorService,
                               StreamFaultManager streamFaultManager,
                               StreamMetrics streamMetrics,
-                              @DefaultStream Provider<Stream> defaultStreamProvider) {
+                              @DefaultStream Provider<Stream> defaultStreamProvider,
+                              RegexEngine regexEngine) {
         this.streams = streams;
         this.streamFaultManager = streamFaultManager;
         this.streamMetrics = streamMetrics;
@@ -81,6 +94,7 @@ public class StreamRouterEngine {
         this.streamProcessingTimeout = streamFaultManager.getStreamProcessingTimeout();
         this.fingerprint = new StreamListFingerprint(streams).getFingerprint();
         this.defaultStreamProvider = defaultStreamProvider;
+        this.regexEngine = regexEngine;
 
         final List<Rule> alwaysMatchRules = Lists.newArrayList();
         final List<Rule> presenceRules = Lists.newArrayList();
@@ -91,15 +105,21 @@ public class StreamRouterEngine {
         final List<Rule> containsRules = Lists.newArrayList();
         final List<Rule> matchInputRules = Lists.newArrayList();
 
-        for (Stream stream : streams) {
+        for (int streamIndex = 0; streamIndex < streams.size(); streamIndex++) {
+            final Stream stream = streams.get(streamIndex);
             for (StreamRule streamRule : stream.getStreamRules()) {
                 final Rule rule;
                 try {
-                    rule = new Rule(stream, streamRule, stream.getMatchingType());
+                    rule = new Rule(stream, streamIndex, streamRule, stream.getMatchingType());
                 } catch (InvalidStreamRuleTypeException e) {
                     LOG.warn("Invalid stream rule type. Skipping matching for this rule. " + e.getMessage(), e);
                     continue;
                 }
+                streamsWithRules.set(streamIndex);
+                if (FieldIndexedStreamRules.supports(streamRule)) {
+                    indexedRules.add(streamIndex, streamRule, streamMetrics.getExecutionTimer(stream.getId(), streamRule.getId()));
+                    continue;
+                }
                 switch (streamRule.getType()) {
                     case ALWAYS_MATCH:
                         alwaysMatchRules.add(rule);
@@ -129,6 +149,8 @@ public class StreamRouterEngine {
             }
         }
 
+        addRegexPrefilters(regexRules);
+
         final int size = alwaysMatchRules.size() + presenceRules.size() + exactRules.size() + greaterRules.size() + smallerRules.size() + containsRules.size() + regexRules.size() + matchInputRules.size();
         this.rulesList = Lists.newArrayListWithCapacity(size);
         this.rulesList.addAll(alwaysMatchRules);
@@ -141,6 +163,57 @@ public class StreamRouterEngine {
         this.rulesList.addAll(regexRules);
     }
 
+    /**
+     * Combines the patterns of the linear time regex rules on the same field into one pattern. If the combined
+     * pattern doesn't match a message, none of the rules needs to be matched on their own.
+     */
+    private void addRegexPrefilters(List<Rule> regexRules) {
+        final Map<String, List<Rule>> rulesByField = new LinkedHashMap<>();
+        for (Rule rule : regexRules) {
+            // a \Q without \E would quote the rest of the combined pattern
+            if (rule.isLinearTime() && !rule.getStreamRule().getValue().contains("\\Q")) {
+                rulesByField.computeIfAbsent(rule.getStreamRule().getField(), field -> Lists.newArrayList()).add(rule);
+            }
+        }
+
+        for (Map.Entry<String, List<Rule>> fieldRules : rulesByField.entrySet()) {
+            final Set<String> patterns = fieldRules.getValue().stream()
+                    .map(rule -> withoutEndAnchor(rule.getStreamRule().getValue()))
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            if (patterns.size() < 2) {
+                continue;
+            }
+            final RegexPattern combinedPattern;
+            try {
+                combinedPattern = regexEngine.compile(patterns.stream()
+                        .map(pattern -> "(?:" + pattern + ")")
+                        .collect(Collectors.joining("|")), Pattern.DOTALL);
+            } catch (RuntimeException e) {
+                // e.g. several patterns use the same group name
+                LOG.debug("Unable to combine the regex stream rules on field <{}>: {}", fieldRules.getKey(), e.getMessage());
+                continue;
+            }
+            if (!combinedPattern.isLinearTime()) {
+                continue;
+            }
+            final int prefilterIndex = regexPrefilters.size();
+            regexPrefilters.add(new RegexPrefilter(fieldRules.getKey(), combinedPattern));
+            fieldRules.getValue().forEach(rule -> rule.setPrefilterIndex(prefilterIndex));
+        }
+    }
+
+    // the prefilter only has to match a superset of the rule patterns, a '$' at the end of a pattern can be dropped
+    private static String withoutEndAnchor(String pattern) {
+        if (!pattern.endsWith("$")) {
+            return pattern;
+        }
+        int backslashes = 0;
+        while (backslashes < pattern.length() - 1 && pattern.charAt(pattern.length() - 2 - backslashes) == '\\') {
+            backslashes++;
+        }
+        return backslashes % 2 == 0 ? pattern.substring(0, pattern.length() - 1) : pattern;
+    }
+
     /**
      * Returns the list of streams that are processed by the engine.
      *
@@ -166,47 +239,57 @@ public class StreamRouterEngine {
      * @return the list of matching streams
      */
     public List<Stream> match(Message message) {
-        final Set<Stream> result = Sets.newHashSet();
-        final Set<String> blackList = Sets.newHashSet();
+        // indexed by stream position: streams with at least one matching rule and with at least one non-matching rule
+        final BitSet matched = new BitSet(streams.size());
+        final BitSet notMatched = new BitSet(streams.size());
+        // indexed by prefilter position: prefilters which have been matched and those which found a match
+        final BitSet prefiltersEvaluated = new BitSet(regexPrefilters.size());
+        final BitSet prefiltersMatched = new BitSet(regexPrefilters.size());
+
+        indexedRules.match(message, matched, notMatched);
 
         for (final Rule rule : rulesList) {
-            if (blackList.contains(rule.getStreamId())) {
+            final Stream.MatchingType matchingType = rule.getMatchingType();
+            final int streamIndex = rule.getStreamIndex();
+            // skip streams which can't match anymore (AND) or are already matched (OR)
+            if (matchingType == Stream.MatchingType.AND ? notMatched.get(streamIndex) : matched.get(streamIndex)) {
                 continue;
             }
 
             final StreamRule streamRule = rule.getStreamRule();
             final StreamRuleType streamRuleType = streamRule.getType();
-            final Stream.MatchingType matchingType = rule.getMatchingType();
             if (!ruleTypesNotNeedingFieldPresence.contains(streamRuleType)
                 && !message.hasField(streamRule.getField())) {
-                if (matchingType == Stream.MatchingType.AND) {
-                    result.remove(rule.getStream());
-                    // blacklist stream because it can't match anymore
-                    blackList.add(rule.getStreamId());
-                }
-
+                notMatched.set(streamIndex);
                 continue;
             }
 
             final Stream stream;
-            if (streamRuleType != StreamRuleType.REGEX) {
+            if (rule.getPrefilterIndex() >= 0
+                    && !prefilterMatches(rule.getPrefilterIndex(), message, prefiltersEvaluated, prefiltersMatched)) {
+                // none of the patterns on the field matches
+                stream = streamRule.getInverted() ? rule.getStream() : null;
+            } else if (streamRuleType != StreamRuleType.REGEX || rule.isLinearTime()) {
                 stream = rule.match(message);
             } else {
                 stream = rule.matchWithTimeOut(message, streamProcessingTimeout, TimeUnit.MILLISECONDS);
             }
 
             if (stream == null) {
-                if (matchingType == Stream.MatchingType.AND) {
-                    result.remove(rule.getStream());
-                    // blacklist stream because it can't match anymore
-                    blackList.add(rule.getStreamId());
-                }
+                notMatched.set(streamIndex);
             } else {
+                matched.set(streamIndex);
+            }
+        }
+
+        final List<Stream> result = Lists.newArrayList();
+        for (int streamIndex = streamsWithRules.nextSetBit(0); streamIndex >= 0; streamIndex = streamsWithRules.nextSetBit(streamIndex + 1)) {
+            final Stream stream = streams.get(streamIndex);
+            final boolean streamMatched = stream.getMatchingType() == Stream.MatchingType.AND
+                    ? !notMatched.get(streamIndex)
+                    : matched.get(streamIndex);
+            if (streamMatched) {
                 result.add(stream);
-                if (matchingType == Stream.MatchingType.OR) {
-                    // blacklist stream because it is already matched
-                    blackList.add(rule.getStreamId());
-                }
             }
         }
 
@@ -236,6 +319,18 @@ public class StreamRouterEngine {
         return ImmutableList.copyOf(result);
     }
 
+    private boolean prefilterMatches(int prefilterIndex, Message message, BitSet evaluated, BitSet matched) {
+        if (!evaluated.get(prefilterIndex)) {
+            evaluated.set(prefilterIndex);
+            final RegexPrefilter prefilter = regexPrefilters.get(prefilterIndex);
+            final Object value = message.getField(prefilter.field);
+            if (value != null && prefilter.pattern.matcher(value.toString()).find()) {
+                matched.set(prefilterIndex);
+            }
+        }
+        return matched.get(prefilterIndex);
+    }
+
     /**
      * Returns a list of stream rule matches. Can be used to test streams and stream rule matches.
      * This is meant for testing, do NOT use in production processing pipeline! (use {@link #match(org.graylog2.plugin.Message) match} instead)
@@ -250,7 +345,7 @@ public class StreamRouterEngine {
 
             for (final StreamRule streamRule : stream.getStreamRules()) {
                 try {
-                    final Rule rule = new Rule(stream, streamRule, stream.getMatchingType());
+                    final Rule rule = new Rule(stream, -1, streamRule, stream.getMatchingType());
                     match.addRule(rule);
                 } catch (InvalidStreamRuleTypeException e) {
                     LOG.warn("Invalid stream rule type. Skipping matching for this rule. " + e.getMessage(), e);
@@ -267,19 +362,38 @@ public class StreamRouterEngine {
 
     private class Rule {
         private final Stream stream;
+        private final int streamIndex;
         private final StreamRule rule;
         private final String streamId;
         private final String streamRuleId;
         private final StreamRuleMatcher matcher;
         private final Stream.MatchingType matchingType;
+        // linear time regex rules can't take excessive time, they don't need the timeout
+        private final boolean linearTime;
+        // position of the regex prefilter covering this rule or -1
+        private int prefilterIndex = -1;
 
-        public Rule(Stream stream, StreamRule rule, Stream.MatchingType matchingType) throws InvalidStreamRuleTypeException {
+        public Rule(Stream stream, int streamIndex, StreamRule rule, Stream.MatchingType matchingType) throws InvalidStreamRuleTypeException {
             this.stream = stream;
+            this.streamIndex = streamIndex;
             this.rule = rule;
             this.streamId = stream.getId();
             this.streamRuleId = rule.getId();
             this.matchingType = matchingType;
-            this.matcher = StreamRuleMatcherFactory.build(rule.getType());
+            this.matcher = StreamRuleMatcherFactory.build(rule.getType(), regexEngine);
+            this.linearTime = matcher instanceof RegexMatcher && ((RegexMatcher) matcher).isLinearTime(rule);
+        }
+
+        public boolean isLinearTime() {
+            return linearTime;
+        }
+
+        public int getPrefilterIndex() {
+            return prefilterIndex;
+        }
+
+        public void setPrefilterIndex(int prefilterIndex) {
+            this.prefilterIndex = prefilterIndex;
         }
 
         public Stream.MatchingType getMatchingType() {
@@ -336,6 +450,20 @@ public class StreamRouterEngine {
         public String getStreamId() {
             return streamId;
         }
+
+        public int getStreamIndex() {
+            return streamIndex;
+        }
+    }
+
+    private static class RegexPrefilter {
+        private final String field;
+        private final RegexPattern pattern;
+
+        RegexPrefilter(String field, RegexPattern pattern) {
+            this.field = field;
+            this.pattern = pattern;
+        }
     }
 
     /**
@@ -26,14 +26,20 @@ import org.graylog2.streams.matchers.InputMatcher;
 import org.graylog2.streams.matchers.RegexMatcher;
 import org.graylog2.streams.matchers.SmallerMatcher;
 import org.graylog2.streams.matchers.StreamRuleMatcher;
+import org.graylog2.utilities.regex.JavaRegexEngine;
+import org.graylog2.utilities.regex.RegexEngine;
 
 public class StreamRuleMatcherFactory {
     public static StreamRuleMatcher build(StreamRuleType ruleType) throws InvalidStreamRuleTypeException {
+        return build(ruleType, JavaRegexEngine.INSTANCE);
+    }
+
+    public static StreamRuleMatcher build(StreamRuleType ruleType, RegexEngine regexEngine) throws InvalidStreamRuleTypeException {
         switch (ruleType) {
             case EXACT:
                 return new ExactMatcher();
             case REGEX:
-                return new RegexMatcher();
+                return new RegexMatcher(regexEngine);
             case GREATER:
                 return new GreaterMatcher();
             case SMALLER:
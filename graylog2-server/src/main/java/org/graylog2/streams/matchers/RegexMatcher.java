@@ -16,12 +16,17 @@
  */
 package org.graylog2.streams.matchers;
 
+import com.google.auto.value.AutoValue;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.streams.StreamRule;
 import org.graylog2.utilities.InterruptibleCharSequence;
+import org.graylog2.utilities.regex.JavaRegexEngine;
+import org.graylog2.utilities.regex.RegexEngine;
+import org.graylog2.utilities.regex.RegexPattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,12 +40,25 @@ public class RegexMatcher implements StreamRuleMatcher {
     private static final Logger LOG = LoggerFactory.getLogger(RegexMatcher.class);
 
     private static final long CACHESIZE = 1000;
-    private static final LoadingCache<String, Pattern> patternCache = CacheBuilder.newBuilder().maximumSize(CACHESIZE).build(new CacheLoader<String, Pattern>() {
-        @Override
-        public Pattern load(String key) throws Exception {
-            return Pattern.compile(key, Pattern.DOTALL);
-        }
-    });
+    // shared by all matchers, they are created again whenever the stream router engine is rebuilt
+    private static final LoadingCache<PatternKey, RegexPattern> PATTERN_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(CACHESIZE)
+            .build(new CacheLoader<PatternKey, RegexPattern>() {
+                @Override
+                public RegexPattern load(PatternKey key) throws Exception {
+                    return key.regexEngine().compile(key.pattern(), Pattern.DOTALL);
+                }
+            });
+
+    private final RegexEngine regexEngine;
+
+    public RegexMatcher() {
+        this(JavaRegexEngine.INSTANCE);
+    }
+
+    public RegexMatcher(RegexEngine regexEngine) {
+        this.regexEngine = regexEngine;
+    }
 
     @Override
     public boolean match(Message msg, StreamRule rule) {
@@ -48,8 +66,10 @@ public class RegexMatcher implements StreamRuleMatcher {
             return rule.getInverted();
 
         try {
-            final Pattern pattern = patternCache.get(rule.getValue());
-            final CharSequence charSequence = new InterruptibleCharSequence(msg.getField(rule.getField()).toString());
+            final RegexPattern pattern = PATTERN_CACHE.get(PatternKey.create(regexEngine, rule.getValue()));
+            final String value = msg.getField(rule.getField()).toString();
+            // linear time patterns can't run away, no need to make them interruptible
+            final CharSequence charSequence = pattern.isLinearTime() ? value : new InterruptibleCharSequence(value);
             return rule.getInverted() ^ pattern.matcher(charSequence).find();
         } catch (ExecutionException e) {
             LOG.error("Unable to get pattern from regex cache: ", e);
@@ -58,4 +78,26 @@ public class RegexMatcher implements StreamRuleMatcher {
         return false;
     }
 
+    /**
+     * @return {@code true} if the rule's pattern is matched in linear time and doesn't need to be guarded by a timeout
+     */
+    public boolean isLinearTime(StreamRule rule) {
+        try {
+            return PATTERN_CACHE.getUnchecked(PatternKey.create(regexEngine, rule.getValue())).isLinearTime();
+        } catch (UncheckedExecutionException e) {
+            return false;
+        }
+    }
+
+    // the same pattern compiles differently with each engine
+    @AutoValue
+    abstract static class PatternKey {
+        abstract RegexEngine regexEngine();
+
+        abstract String pattern();
+
+        static PatternKey create(RegexEngine regexEngine, String pattern) {
+            return new AutoValue_RegexMatcher_PatternKey(regexEngine, pattern);
+        }
+    }
 }
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A map from IPv4 and IPv6 subnets to values, stored as binary prefix tries over the address bits.
+ * <p>
+ * Lookups return the value of the longest (most specific) subnet containing the address. They take at most 32 (IPv4)
+ * or 128 (IPv6) steps, independent of the number of subnets, and don't allocate. IPv4 addresses never match IPv6
+ * subnets and vice versa.
+ * <p>
+ * Instances are immutable and thread-safe, use {@link #builder()} to create them.
+ *
+ * @param <V> the value type
+ * @see IpPrefixTrie
+ */
+public class IpPrefixMap<V> {
+    private final Trie<V> ipv4;
+    private final Trie<V> ipv6;
+
+    private IpPrefixMap(Trie<V> ipv4, Trie<V> ipv6) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+    }
+
+    public static <V> Builder<V> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * @param address the address to look up
+     * @return the value of the longest subnet containing the address or {@code null} if there is none
+     */
+    @Nullable
+    public V get(InetAddress address) {
+        final byte[] bytes = address.getAddress();
+        return (address instanceof Inet4Address ? ipv4 : ipv6).get(bytes);
+    }
+
+    /**
+     * @return the number of distinct subnets in the map
+     */
+    public int size() {
+        return ipv4.entries + ipv6.entries;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public static class Builder<V> {
+        private final Trie<V> ipv4 = new Trie<>();
+        private final Trie<V> ipv6 = new Trie<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a subnet in CIDR notation, e.g. {@code 10.0.0.0/8} or {@code fe80::/10}. The host bits of the address
+         * are ignored. A value added earlier for the same subnet is replaced.
+         *
+         * @param cidr  the subnet
+         * @param value the value
+         * @return the builder
+         * @throws IllegalArgumentException if the subnet is invalid
+         */
+        public Builder<V> put(String cidr, V value) {
+            return IpPrefixTrie.parseCidr(cidr, (address, prefixLength) -> put(address, prefixLength, value));
+        }
+
+        public Builder<V> put(InetAddress address, int prefixLength, V value) {
+            requireNonNull(value, "value must not be null");
+            final byte[] bytes = address.getAddress();
+            if (prefixLength < 0 || prefixLength > bytes.length * 8) {
+                throw new IllegalArgumentException("Invalid prefix length " + prefixLength + " for " + address.getHostAddress());
+            }
+            trie(address).put(bytes, prefixLength, value);
+            return this;
+        }
+
+        /**
+         * Adds all addresses from {@code start} to {@code end} (inclusive). The range is split into the smallest set
+         * of subnets covering it, so arbitrary ranges need at most {@code 2 * address bits} subnets.
+         *
+         * @param start the first address of the range
+         * @param end   the last address of the range
+         * @param value the value
+         * @return the builder
+         * @throws IllegalArgumentException if the addresses have different families or {@code start} is after {@code end}
+         */
+        public Builder<V> putRange(InetAddress start, InetAddress end, V value) {
+            requireNonNull(value, "value must not be null");
+            final byte[] startBytes = start.getAddress();
+            final byte[] endBytes = end.getAddress();
+            if (startBytes.length != endBytes.length) {
+                throw new IllegalArgumentException("Range " + start.getHostAddress() + " - " + end.getHostAddress()
+                        + " mixes IPv4 and IPv6 addresses");
+            }
+            final int bits = startBytes.length * 8;
+            BigInteger current = new BigInteger(1, startBytes);
+            final BigInteger last = new BigInteger(1, endBytes);
+            if (current.compareTo(last) > 0) {
+                throw new IllegalArgumentException("Invalid range " + start.getHostAddress() + " - " + end.getHostAddress());
+            }
+
+            final Trie<V> trie = trie(start);
+            while (current.compareTo(last) <= 0) {
+                // the largest aligned block starting at the current address which doesn't exceed the range
+                int hostBits = current.signum() == 0 ? bits : Math.min(current.getLowestSetBit(), bits);
+                while (hostBits > 0 && current.add(BigInteger.ONE.shiftLeft(hostBits)).subtract(BigInteger.ONE).compareTo(last) > 0) {
+                    hostBits--;
+                }
+                trie.put(toBytes(current, startBytes.length), bits - hostBits, value);
+                current = current.add(BigInteger.ONE.shiftLeft(hostBits));
+            }
+            return this;
+        }
+
+        private Trie<V> trie(InetAddress address) {
+            return address instanceof Inet4Address ? ipv4 : ipv6;
+        }
+
+        public IpPrefixMap<V> build() {
+            return new IpPrefixMap<>(ipv4.copy(), ipv6.copy());
+        }
+
+        private static byte[] toBytes(BigInteger value, int length) {
+            final byte[] bytes = value.toByteArray();
+            final byte[] result = new byte[length];
+            // toByteArray() has a leading sign byte or omits leading zero bytes
+            final int count = Math.min(bytes.length, length);
+            System.arraycopy(bytes, bytes.length - count, result, length - count, count);
+            return result;
+        }
+    }
+
+    /**
+     * The nodes are stored in arrays, node 0 is the root. A child index of 0 means there is no child, because the
+     * root can't be the child of another node.
+     */
+    private static class Trie<V> {
+        private int[] children;
+        private Object[] values;
+        private int size;
+        private int entries;
+
+        Trie() {
+            this(new int[32], new Object[16], 1, 0);
+        }
+
+        private Trie(int[] children, Object[] values, int size, int entries) {
+            this.children = children;
+            this.values = values;
+            this.size = size;
+            this.entries = entries;
+        }
+
+        void put(byte[] address, int prefixLength, V value) {
+            int node = 0;
+            for (int bit = 0; bit < prefixLength; bit++) {
+                final int slot = 2 * node + IpPrefixTrie.bitAt(address, bit);
+                if (children[slot] == 0) {
+                    // newNode() might replace the array, don't inline
+                    final int child = newNode();
+                    children[slot] = child;
+                }
+                node = children[slot];
+            }
+            if (values[node] == null) {
+                entries++;
+            }
+            values[node] = value;
+        }
+
+        @Nullable
+        @SuppressWarnings("unchecked")
+        V get(byte[] address) {
+            final int bits = address.length * 8;
+            Object match = values[0];
+            int node = 0;
+            for (int bit = 0; bit < bits; bit++) {
+                node = children[2 * node + IpPrefixTrie.bitAt(address, bit)];
+                if (node == 0) {
+                    break;
+                }
+                if (values[node] != null) {
+                    match = values[node];
+                }
+            }
+            return (V) match;
+        }
+
+        private int newNode() {
+            if (size == values.length) {
+                children = Arrays.copyOf(children, children.length * 2);
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            return size++;
+        }
+
+        Trie<V> copy() {
+            return new Trie<>(Arrays.copyOf(children, 2 * size), Arrays.copyOf(values, size), size, entries);
+        }
+    }
+}
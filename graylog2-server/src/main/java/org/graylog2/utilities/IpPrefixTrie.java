@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+import com.google.common.net.InetAddresses;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.BiFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A set of IPv4 and IPv6 subnets, stored as binary prefix tries over the address bits.
+ * <p>
+ * Checking whether an address is contained in one of the subnets takes at most 32 (IPv4) or 128 (IPv6) steps,
+ * independent of the number of subnets, and doesn't allocate. IPv4 addresses never match IPv6 subnets and vice versa.
+ * <p>
+ * Instances are immutable and thread-safe, use {@link #builder()} to create them.
+ */
+public class IpPrefixTrie {
+    private final Trie ipv4;
+    private final Trie ipv6;
+
+    private IpPrefixTrie(Trie ipv4, Trie ipv6) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public boolean contains(InetAddress address) {
+        final byte[] bytes = address.getAddress();
+        return (address instanceof Inet4Address ? ipv4 : ipv6).contains(bytes);
+    }
+
+    public boolean isEmpty() {
+        return ipv4.isEmpty() && ipv6.isEmpty();
+    }
+
+    public static class Builder {
+        private final Trie ipv4 = new Trie();
+        private final Trie ipv6 = new Trie();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a subnet in CIDR notation, e.g. {@code 10.0.0.0/8} or {@code fe80::/10}. The host bits of the address
+         * are ignored.
+         *
+         * @param cidr the subnet
+         * @return the builder
+         * @throws IllegalArgumentException if the subnet is invalid
+         */
+        public Builder add(String cidr) {
+            return parseCidr(cidr, this::add);
+        }
+
+        public Builder add(InetAddress address, int prefixLength) {
+            final byte[] bytes = address.getAddress();
+            if (prefixLength < 0 || prefixLength > bytes.length * 8) {
+                throw new IllegalArgumentException("Invalid prefix length " + prefixLength + " for " + address.getHostAddress());
+            }
+            (address instanceof Inet4Address ? ipv4 : ipv6).add(bytes, prefixLength);
+            return this;
+        }
+
+        public IpPrefixTrie build() {
+            return new IpPrefixTrie(ipv4.copy(), ipv6.copy());
+        }
+    }
+
+    // shared with IpPrefixMap
+    static <T> T parseCidr(String cidr, BiFunction<InetAddress, Integer, T> consumer) {
+        requireNonNull(cidr, "CIDR must not be null");
+        final int index = cidr.indexOf('/');
+        if (index < 0) {
+            throw new IllegalArgumentException("Invalid subnet: " + cidr);
+        }
+        final InetAddress address = InetAddresses.forString(cidr.substring(0, index).trim());
+        final int prefixLength;
+        try {
+            prefixLength = Integer.parseInt(cidr.substring(index + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid prefix length: " + cidr, e);
+        }
+        return consumer.apply(address, prefixLength);
+    }
+
+    /**
+     * The nodes are stored in arrays, node 0 is the root. A child index of 0 means there is no child, because the
+     * root can't be the child of another node.
+     */
+    private static class Trie {
+        private int[] children;
+        private final BitSet terminal;
+        private int size;
+
+        Trie() {
+            this(new int[32], new BitSet(), 1);
+        }
+
+        private Trie(int[] children, BitSet terminal, int size) {
+            this.children = children;
+            this.terminal = terminal;
+            this.size = size;
+        }
+
+        boolean isEmpty() {
+            return terminal.isEmpty();
+        }
+
+        void add(byte[] address, int prefixLength) {
+            int node = 0;
+            for (int bit = 0; bit < prefixLength; bit++) {
+                if (terminal.get(node)) {
+                    // already covered by a shorter prefix
+                    return;
+                }
+                final int slot = 2 * node + bitAt(address, bit);
+                if (children[slot] == 0) {
+                    // newNode() might replace the array, don't inline
+                    final int child = newNode();
+                    children[slot] = child;
+                }
+                node = children[slot];
+            }
+            terminal.set(node);
+        }
+
+        boolean contains(byte[] address) {
+            final int bits = address.length * 8;
+            int node = 0;
+            for (int bit = 0; ; bit++) {
+                if (terminal.get(node)) {
+                    return true;
+                }
+                if (bit == bits) {
+                    return false;
+                }
+                node = children[2 * node + bitAt(address, bit)];
+                if (node == 0) {
+                    return false;
+                }
+            }
+        }
+
+        private int newNode() {
+            if (2 * size == children.length) {
+                children = Arrays.copyOf(children, children.length * 2);
+            }
+            return size++;
+        }
+
+        Trie copy() {
+            return new Trie(Arrays.copyOf(children, 2 * size), (BitSet) terminal.clone(), size);
+        }
+    }
+
+    static int bitAt(byte[] address, int bit) {
+        return (address[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+    }
+}
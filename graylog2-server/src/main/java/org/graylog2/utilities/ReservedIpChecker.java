@@ -17,17 +17,16 @@
 
 package org.graylog2.utilities;
 
+import com.google.common.net.InetAddresses;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.UnknownHostException;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.net.InetAddress;
 
+/**
+ * Checks whether an IP address belongs to one of the special-purpose IPv4 and IPv6 address blocks.
+ */
 public class ReservedIpChecker {
     private static final Logger LOG = LoggerFactory.getLogger(ReservedIpChecker.class);
     private static final String[] RESERVED_IPV4_BLOCKS = {
@@ -50,63 +49,66 @@ public class ReservedIpChecker {
             "255.255.255.255/32"
     };
 
-    private static ReservedIpChecker instance;
+    // IPv4-mapped addresses (::ffff:0:0/96) are parsed as IPv4 addresses and checked against the IPv4 blocks
+    private static final String[] RESERVED_IPV6_BLOCKS = {
+            "::/128",
+            "::1/128",
+            "64:ff9b::/96",
+            "64:ff9b:1::/48",
+            "100::/64",
+            "2001::/23",
+            "2001:db8::/32",
+            "2002::/16",
+            "fc00::/7",
+            "fe80::/10",
+            "ff00::/8"
+    };
+
+    private static final ReservedIpChecker INSTANCE = new ReservedIpChecker();
 
-    private final List<IpSubnet> ipBlocks;
+    private final IpPrefixTrie ipBlocks;
 
     public ReservedIpChecker() {
         this.ipBlocks = loadReservedIpBlocks();
     }
 
-    private List<IpSubnet> loadReservedIpBlocks() {
-
-        return Arrays.stream(RESERVED_IPV4_BLOCKS)
-                .map(stringToSubnet())
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(Collectors.toList());
+    private static IpPrefixTrie loadReservedIpBlocks() {
+        final IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+        for (String[] blocks : new String[][]{RESERVED_IPV4_BLOCKS, RESERVED_IPV6_BLOCKS}) {
+            for (String block : blocks) {
+                try {
+                    builder.add(block);
+                } catch (IllegalArgumentException e) {
+                    LOG.warn("Invalid reserved IP block <{}>", block, e);
+                }
+            }
+        }
+        return builder.build();
     }
 
     public boolean isEmpty() {
         return ipBlocks.isEmpty();
     }
 
+    public boolean isReservedIpAddress(InetAddress address) {
+        return ipBlocks.contains(address);
+    }
+
     public boolean isReservedIpAddress(String address) {
         if (StringUtils.isBlank(address)) {
             return false;
         }
 
-        return ipBlocks.stream().anyMatch(e -> subnetContainsAddress(e, address));
-    }
-
-    private static Function<String, Optional<IpSubnet>> stringToSubnet() {
-        return line -> {
-            IpSubnet subnet;
-            try {
-                subnet = new IpSubnet(line);
-            } catch (UnknownHostException ignore) {
-                subnet = null;
-            }
-
-            return Optional.ofNullable(subnet);
-        };
-    }
-
-    private static boolean subnetContainsAddress(IpSubnet subnet, String targetAddress) {
+        final InetAddress inetAddress;
         try {
-            return subnet.contains(targetAddress);
-        } catch (UnknownHostException ignore) {
+            inetAddress = InetAddresses.forString(address.trim());
+        } catch (IllegalArgumentException e) {
             return false;
         }
+        return isReservedIpAddress(inetAddress);
     }
 
-
-    public static synchronized ReservedIpChecker getInstance() {
-
-        if (instance == null) {
-            instance = new ReservedIpChecker();
-        }
-
-        return instance;
+    public static ReservedIpChecker getInstance() {
+        return INSTANCE;
     }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities.regex;
+
+import java.util.regex.Pattern;
+
+/**
+ * {@link RegexEngine} using the backtracking implementation of {@link java.util.regex.Pattern}.
+ */
+public class JavaRegexEngine implements RegexEngine {
+    public static final JavaRegexEngine INSTANCE = new JavaRegexEngine();
+
+    @Override
+    public RegexPattern compile(String regex, int flags) {
+        return new JavaPattern(Pattern.compile(regex, flags));
+    }
+
+    static class JavaPattern implements RegexPattern {
+        private final Pattern pattern;
+
+        JavaPattern(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        @Override
+        public String pattern() {
+            return pattern.pattern();
+        }
+
+        @Override
+        public boolean isLinearTime() {
+            return false;
+        }
+
+        @Override
+        public Matcher matcher(CharSequence input) {
+            final java.util.regex.Matcher matcher = pattern.matcher(input);
+            return new Matcher() {
+                @Override
+                public boolean find() {
+                    return matcher.find();
+                }
+
+                @Override
+                public int start() {
+                    return matcher.start();
+                }
+
+                @Override
+                public int start(int group) {
+                    return matcher.start(group);
+                }
+
+                @Override
+                public int end() {
+                    return matcher.end();
+                }
+
+                @Override
+                public int end(int group) {
+                    return matcher.end(group);
+                }
+
+                @Override
+                public String group() {
+                    return matcher.group();
+                }
+
+                @Override
+                public String group(int group) {
+                    return matcher.group(group);
+                }
+
+                @Override
+                public int groupCount() {
+                    return matcher.groupCount();
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return pattern.pattern();
+        }
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities.regex;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.regex.Pattern;
+
+/**
+ * {@link RegexEngine} which matches in linear time using RE2/J, an automaton based engine without backtracking.
+ * <p>
+ * Patterns are written in Java syntax and translated to RE2 syntax. Constructs which RE2 doesn't support
+ * (e.g. backreferences, lookaround, possessive quantifiers) or which would match differently in RE2 (e.g. nested
+ * character classes, {@code \b}, {@code \v}, multi-line mode) can't be translated, those patterns fall back to
+ * {@link java.util.regex.Pattern}. {@link RegexPattern#isLinearTime()} tells which engine is used.
+ * <p>
+ * Known differences: with case-insensitive matching, RE2 also folds the non-ASCII characters U+017F (long s) and
+ * U+212A (Kelvin sign) to {@code s} and {@code k}. A {@code $} at the end of the pattern also matches before a line
+ * terminator at the end of the input like in {@link java.util.regex.Pattern}, and the match ends before that line
+ * terminator. The next {@link RegexPattern.Matcher#find()} continues after the line terminator though, so a pattern
+ * which can match the empty string isn't found a second time right before it.
+ */
+public class LinearTimeRegexEngine implements RegexEngine {
+    private static final Logger LOG = LoggerFactory.getLogger(LinearTimeRegexEngine.class);
+
+    private static final int SUPPORTED_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.DOTALL;
+    // line terminators of java.util.regex without UNIX_LINES
+    private static final String LINE_TERMINATOR = "(?:\\r\\n|[\\n\\r\\x{85}\\x{2028}\\x{2029}])";
+    private static final String NOT_LINE_TERMINATOR = "[^\\n\\r\\x{85}\\x{2028}\\x{2029}]";
+    private static final String WHITESPACE = "\\t\\n\\x0B\\f\\r ";
+    private static final Pattern INLINE_CASE_INSENSITIVE = Pattern.compile("\\(\\?[is-]*i");
+
+    @Override
+    public RegexPattern compile(String regex, int flags) {
+        // validates the pattern, invalid patterns are rejected with the usual error message
+        final Pattern javaPattern = Pattern.compile(regex, flags);
+
+        final Translation translation = translateToRe2(regex, flags);
+        if (translation != null) {
+            try {
+                return new Re2jPattern(regex,
+                        com.google.re2j.Pattern.compile(translation.regex, re2jFlags(flags)),
+                        translation.endOfInputGroup);
+            } catch (com.google.re2j.PatternSyntaxException e) {
+                LOG.debug("Pattern <{}> isn't supported by RE2/J, falling back to java.util.regex: {}", regex, e.getMessage());
+            }
+        } else {
+            LOG.debug("Pattern <{}> can't be matched in linear time, falling back to java.util.regex", regex);
+        }
+        return new JavaRegexEngine.JavaPattern(javaPattern);
+    }
+
+    private static int re2jFlags(int flags) {
+        int re2jFlags = 0;
+        if ((flags & Pattern.CASE_INSENSITIVE) != 0) {
+            re2jFlags |= com.google.re2j.Pattern.CASE_INSENSITIVE;
+        }
+        if ((flags & Pattern.DOTALL) != 0) {
+            re2jFlags |= com.google.re2j.Pattern.DOTALL;
+        }
+        return re2jFlags;
+    }
+
+    /**
+     * Translates a regular expression from Java to RE2 syntax, keeping the Java semantics.
+     *
+     * @param regex a valid regular expression in Java syntax
+     * @param flags match flags of {@link java.util.regex.Pattern}
+     * @return the regular expression in RE2 syntax or {@code null} if it can't be translated
+     */
+    @Nullable
+    @VisibleForTesting
+    static String translate(String regex, int flags) {
+        final Translation translation = translateToRe2(regex, flags);
+        return translation == null ? null : translation.regex;
+    }
+
+    @Nullable
+    private static Translation translateToRe2(String regex, int flags) {
+        if ((flags & ~SUPPORTED_FLAGS) != 0) {
+            return null;
+        }
+        final boolean dotAll = (flags & Pattern.DOTALL) != 0;
+        final StringBuilder result = new StringBuilder(regex.length() + 16);
+        if (isCaseInsensitive(regex, flags) && !isAscii(regex)) {
+            // java.util.regex only folds ASCII characters without UNICODE_CASE, RE2 folds all characters
+            return null;
+        }
+
+        // for every open group: whether it's a capturing group
+        final Deque<Boolean> groups = new ArrayDeque<>();
+        boolean endOfInputGroup = false;
+        boolean inClass = false;
+
+        final int length = regex.length();
+        int i = 0;
+        while (i < length) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                final char escaped = regex.charAt(i + 1);
+                switch (escaped) {
+                    case 'Q':
+                        if (inClass) {
+                            return null;
+                        }
+                        final int end = regex.indexOf("\\E", i + 2);
+                        final int next = end < 0 ? length : end + 2;
+                        result.append(regex, i, next);
+                        if (end < 0) {
+                            result.append("\\E");
+                        }
+                        i = next;
+                        continue;
+                    case 'u':
+                        result.append("\\x{").append(regex, i + 2, i + 6).append('}');
+                        i += 6;
+                        continue;
+                    case 's':
+                        result.append(inClass ? WHITESPACE : "[" + WHITESPACE + "]");
+                        i += 2;
+                        continue;
+                    case 'S':
+                        if (inClass) {
+                            return null;
+                        }
+                        result.append("[^" + WHITESPACE + "]");
+                        i += 2;
+                        continue;
+                    case '0': case '1': case '2': case '3': case '4': case '5': case '6': case '7': case '8': case '9':
+                    case 'k': // backreferences and octal escapes
+                    case 'b': case 'B': // word boundaries of java.util.regex aren't restricted to ASCII
+                    case 'v': case 'V': case 'h': case 'H': case 'R': case 'X': case 'G': case 'Z':
+                    case 'e': case 'c': case 'N': case 'E':
+                        return null;
+                    default:
+                        result.append(c).append(escaped);
+                        i += 2;
+                        continue;
+                }
+            }
+
+            if (inClass) {
+                if (c == '[' || (c == '&' && i + 1 < length && regex.charAt(i + 1) == '&')) {
+                    // union and intersection of classes, RE2 would treat them as literals
+                    return null;
+                }
+                if (c == ']') {
+                    inClass = false;
+                }
+                result.append(c);
+                i++;
+                continue;
+            }
+
+            switch (c) {
+                case '[':
+                    inClass = true;
+                    result.append(c);
+                    i++;
+                    if (i < length && regex.charAt(i) == '^') {
+                        result.append('^');
+                        i++;
+                    }
+                    if (i < length && regex.charAt(i) == ']') {
+                        return null;
+                    }
+                    continue;
+                case '(':
+                    if (i + 1 < length && regex.charAt(i + 1) == '?') {
+                        final int groupEnd = translateSpecialGroup(regex, i, dotAll, result);
+                        if (groupEnd < 0) {
+                            return null;
+                        }
+                        if (regex.charAt(groupEnd - 1) == ')') {
+                            // inline flags without a group, e.g. (?i)
+                            i = groupEnd;
+                            continue;
+                        }
+                        groups.push(regex.charAt(i + 2) == '<');
+                        i = groupEnd;
+                        continue;
+                    }
+                    groups.push(true);
+                    result.append(c);
+                    i++;
+                    continue;
+                case ')':
+                    if (groups.isEmpty()) {
+                        return null;
+                    }
+                    groups.pop();
+                    result.append(c);
+                    i++;
+                    continue;
+                case '.':
+                    result.append(dotAll ? "." : NOT_LINE_TERMINATOR);
+                    i++;
+                    continue;
+                case '$':
+                    // java.util.regex also matches before a line terminator at the end of the input. The translation
+                    // consumes that line terminator in an additional last group, so the match can end before it.
+                    if (!groups.isEmpty() || i + 1 < length) {
+                        return null;
+                    }
+                    result.append('(').append(LINE_TERMINATOR).append("?)\\z");
+                    endOfInputGroup = true;
+                    i++;
+                    continue;
+                default:
+                    result.append(c);
+                    i++;
+            }
+        }
+        return new Translation(result.toString(), endOfInputGroup);
+    }
+
+    private static boolean isCaseInsensitive(String regex, int flags) {
+        return (flags & Pattern.CASE_INSENSITIVE) != 0 || INLINE_CASE_INSENSITIVE.matcher(regex).find();
+    }
+
+    // escapes which can denote non-ASCII characters count as non-ASCII
+    private static boolean isAscii(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c > 0x7f) {
+                return false;
+            }
+            if (c == '\\' && i + 1 < regex.length()) {
+                final char escaped = regex.charAt(++i);
+                if (escaped == 'x' || escaped == 'u' || escaped == 'p' || escaped == 'P') {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Translates a group starting with {@code (?}.
+     *
+     * @return the index after the translated prefix of the group or -1 if the group can't be translated
+     */
+    private static int translateSpecialGroup(String regex, int start, boolean dotAll, StringBuilder result) {
+        final char type = regex.charAt(start + 2);
+        if (type == ':') {
+            result.append("(?:");
+            return start + 3;
+        }
+        if (type == '<') {
+            final char next = regex.charAt(start + 3);
+            if (next == '=' || next == '!') {
+                // lookbehind
+                return -1;
+            }
+            // named group
+            result.append("(?P<");
+            return start + 3;
+        }
+        // inline flags, e.g. (?i) or (?i-s:...)
+        int i = start + 2;
+        boolean negated = false;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == ')' || c == ':') {
+                if (i == start + 2) {
+                    return -1;
+                }
+                result.append(regex, start, i + 1);
+                return i + 1;
+            }
+            if (c == '-') {
+                negated = true;
+            } else if (c == 's') {
+                // the translation of '.' depends on the DOTALL flag of the whole pattern
+                if (negated || !dotAll) {
+                    return -1;
+                }
+            } else if (c != 'i') {
+                // lookahead, atomic groups and flags RE2 doesn't support or interprets differently
+                return -1;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static class Translation {
+        private final String regex;
+        // whether the last group of the regex has been added to hold the line terminator matched by a final '$'
+        private final boolean endOfInputGroup;
+
+        Translation(String regex, boolean endOfInputGroup) {
+            this.regex = regex;
+            this.endOfInputGroup = endOfInputGroup;
+        }
+    }
+
+    private static class Re2jPattern implements RegexPattern {
+        private final String regex;
+        private final com.google.re2j.Pattern pattern;
+        private final int groupCount;
+        private final boolean endOfInputGroup;
+
+        Re2jPattern(String regex, com.google.re2j.Pattern pattern, boolean endOfInputGroup) {
+            this.regex = regex;
+            this.pattern = pattern;
+            this.groupCount = endOfInputGroup ? pattern.groupCount() - 1 : pattern.groupCount();
+            this.endOfInputGroup = endOfInputGroup;
+        }
+
+        @Override
+        public String pattern() {
+            return regex;
+        }
+
+        @Override
+        public boolean isLinearTime() {
+            return true;
+        }
+
+        @Override
+        public Matcher matcher(CharSequence input) {
+            final com.google.re2j.Matcher matcher = pattern.matcher(input);
+            return new Matcher() {
+                @Override
+                public boolean find() {
+                    return matcher.find();
+                }
+
+                @Override
+                public int start() {
+                    return matcher.start();
+                }
+
+                @Override
+                public int start(int group) {
+                    return matcher.start(checkGroup(group));
+                }
+
+                @Override
+                public int end() {
+                    if (endOfInputGroup) {
+                        // the line terminator matched by a final '$' isn't part of the match
+                        final int lineTerminatorStart = matcher.start(groupCount + 1);
+                        if (lineTerminatorStart >= 0) {
+                            return lineTerminatorStart;
+                        }
+                    }
+                    return matcher.end();
+                }
+
+                @Override
+                public int end(int group) {
+                    return group == 0 ? end() : matcher.end(checkGroup(group));
+                }
+
+                @Override
+                public String group() {
+                    return endOfInputGroup ? input.subSequence(start(), end()).toString() : matcher.group();
+                }
+
+                @Override
+                public String group(int group) {
+                    return group == 0 ? group() : matcher.group(checkGroup(group));
+                }
+
+                @Override
+                public int groupCount() {
+                    return groupCount;
+                }
+
+                private int checkGroup(int group) {
+                    if (group < 0 || group > groupCount) {
+                        throw new IndexOutOfBoundsException("No group " + group);
+                    }
+                    return group;
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return regex;
+        }
+    }
+}
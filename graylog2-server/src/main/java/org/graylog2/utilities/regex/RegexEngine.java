@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities.regex;
+
+/**
+ * Compiles regular expressions in Java syntax.
+ * <p>
+ * Implementations may use a different matching algorithm than {@link java.util.regex.Pattern}, but compiled patterns
+ * have to match the same input as the JDK implementation would. Patterns which are invalid for
+ * {@link java.util.regex.Pattern} are rejected with a {@link java.util.regex.PatternSyntaxException}.
+ */
+public interface RegexEngine {
+    /**
+     * @param regex the regular expression
+     * @param flags match flags of {@link java.util.regex.Pattern}, e.g. {@link java.util.regex.Pattern#DOTALL}
+     * @return the compiled pattern
+     * @throws java.util.regex.PatternSyntaxException if the regular expression is invalid
+     */
+    RegexPattern compile(String regex, int flags);
+
+    default RegexPattern compile(String regex) {
+        return compile(regex, 0);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities.regex;
+
+import com.github.joschi.jadconfig.ParameterException;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * The regular expression engine used for regex stream rules, regex extractors and the {@code regex} pipeline function.
+ */
+public enum RegexEngineType {
+    /**
+     * Always use {@link java.util.regex.Pattern}.
+     */
+    JAVA {
+        @Override
+        public RegexEngine create() {
+            return JavaRegexEngine.INSTANCE;
+        }
+    },
+    /**
+     * Use {@link LinearTimeRegexEngine}, which falls back to {@link java.util.regex.Pattern} for patterns it can't
+     * handle.
+     */
+    LINEAR {
+        @Override
+        public RegexEngine create() {
+            return new LinearTimeRegexEngine();
+        }
+    };
+
+    public abstract RegexEngine create();
+
+    @Override
+    public String toString() {
+        return super.toString().toLowerCase(Locale.ENGLISH);
+    }
+
+    public static class Converter implements com.github.joschi.jadconfig.Converter<RegexEngineType> {
+        @Override
+        public RegexEngineType convertFrom(String value) {
+            try {
+                return RegexEngineType.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException("Unable to parse regex engine <" + value + ">. Valid engines are: " +
+                        Arrays.stream(RegexEngineType.values()).map(RegexEngineType::toString)
+                                .collect(Collectors.toList()) + ".");
+            }
+        }
+
+        @Override
+        public String convertTo(RegexEngineType value) {
+            return value.toString();
+        }
+    }
+}
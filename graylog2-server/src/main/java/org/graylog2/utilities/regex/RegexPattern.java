@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities.regex;
+
+import java.util.regex.MatchResult;
+
+/**
+ * A compiled regular expression. Instances are immutable and thread-safe.
+ */
+public interface RegexPattern {
+    /**
+     * @return the regular expression this pattern has been compiled from
+     */
+    String pattern();
+
+    /**
+     * @return {@code true} if matching takes linear time in the length of the input for this pattern, i.e. it can't
+     * run into catastrophic backtracking
+     */
+    boolean isLinearTime();
+
+    Matcher matcher(CharSequence input);
+
+    /**
+     * Finds matches of a pattern in an input sequence. Instances are not thread-safe.
+     * <p>
+     * The {@link MatchResult} methods refer to the last successful {@link #find()}.
+     */
+    interface Matcher extends MatchResult {
+        /**
+         * Finds the next subsequence of the input which matches the pattern.
+         *
+         * @return {@code true} if a match has been found
+         */
+        boolean find();
+    }
+}
@@ -34,18 +34,20 @@ import org.junit.jupiter.api.Assertions;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.IOException;
 import java.net.InetAddress;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class GeoIpResolverEngineTest {
@@ -90,10 +92,10 @@ public class GeoIpResolverEngineTest {
         when(s3GeoIpFileService.getActiveAsnFile()).thenReturn("/etc/graylog/server/asn.mmdb");
         when(s3GeoIpFileService.getActiveCityFile()).thenReturn("/etc/graylog/server/standard_location.mmdb");
         when(maxMindAsnResolver.isEnabled()).thenReturn(true);
-        when(maxMindCityResolver.getGeoIpData(publicIp))
-                .thenReturn(Optional.of(maxMindLocationInfo));
-        when(maxMindAsnResolver.getGeoIpData(publicIp))
-                .thenReturn(Optional.of(maxMindAsnInfo));
+        when(maxMindCityResolver.lookup(publicIp))
+                .thenReturn(GeoIpLookupResult.of(maxMindLocationInfo));
+        when(maxMindAsnResolver.lookup(publicIp))
+                .thenReturn(GeoIpLookupResult.of(maxMindAsnInfo));
         when(maxMindCityResolver.isEnabled()).thenReturn(true);
 
         when(geoIpVendorResolverService.createCityResolver(any(GeoIpResolverConfig.class), any(Timer.class)))
@@ -260,9 +262,9 @@ public class GeoIpResolverEngineTest {
     public void testFilterIpInfo() {
 
         when(ipInfoAsnResolver.isEnabled()).thenReturn(true);
-        when(ipInfoAsnResolver.getGeoIpData(publicIp)).thenReturn(Optional.of(ipInfoAsnInfo));
+        when(ipInfoAsnResolver.lookup(publicIp)).thenReturn(GeoIpLookupResult.of(ipInfoAsnInfo));
         when(ipInfoCityResolver.isEnabled()).thenReturn(true);
-        when(ipInfoCityResolver.getGeoIpData(publicIp)).thenReturn(Optional.of(ipInfoLocationInfo));
+        when(ipInfoCityResolver.lookup(publicIp)).thenReturn(GeoIpLookupResult.of(ipInfoLocationInfo));
 
         when(geoIpVendorResolverService.createCityResolver(any(GeoIpResolverConfig.class), any(Timer.class)))
                 .thenReturn(ipInfoCityResolver);
@@ -354,4 +356,77 @@ public class GeoIpResolverEngineTest {
         assertFalse("Message should not be filtered out", filtered);
         assertEquals("Filter should not add new message fields", messageFields.size(), message.getFields().size());
     }
+
+    @Test
+    public void lookupResultsAreCached() {
+        final GeoIpResolverEngine engine = new GeoIpResolverEngine(geoIpVendorResolverService, config, s3GeoIpFileService, metricRegistry);
+
+        for (int i = 0; i < 3; i++) {
+            final Map<String, Object> fields = new HashMap<>();
+            fields.put("_id", java.util.UUID.randomUUID().toString());
+            fields.put("source_ip", publicIp.getHostAddress());
+            fields.put("destination_ip", publicIp);
+
+            final Message message = new Message(fields);
+            engine.filter(message);
+
+            Assertions.assertEquals(maxMindLocationInfo.cityName(), message.getField("source_geo_city"));
+            Assertions.assertEquals(maxMindLocationInfo.cityName(), message.getField("destination_geo_city"));
+            Assertions.assertEquals(maxMindAsnInfo.asn(), message.getField("destination_as_number"));
+        }
+
+        verify(maxMindCityResolver, times(1)).lookup(publicIp);
+        verify(maxMindAsnResolver, times(1)).lookup(publicIp);
+        assertEquals(5L, metricRegistry.getGauges().get("org.graylog.plugins.map.geoip.GeoIpResolverEngine.location-cache.hits").getValue());
+        assertEquals(1L, metricRegistry.getGauges().get("org.graylog.plugins.map.geoip.GeoIpResolverEngine.location-cache.misses").getValue());
+    }
+
+    @Test
+    public void failedLookupsAreNotCached() {
+        when(maxMindCityResolver.lookup(publicIp)).thenReturn(GeoIpLookupResult.failure(new IOException("boom")));
+        final GeoIpResolverEngine engine = new GeoIpResolverEngine(geoIpVendorResolverService, config, s3GeoIpFileService, metricRegistry);
+
+        for (int i = 0; i < 2; i++) {
+            final Map<String, Object> fields = new HashMap<>();
+            fields.put("_id", java.util.UUID.randomUUID().toString());
+            fields.put("source_ip", publicIp);
+            engine.filter(new Message(fields));
+        }
+
+        verify(maxMindCityResolver, times(2)).lookup(publicIp);
+        verify(maxMindAsnResolver, times(1)).lookup(publicIp);
+    }
+
+    @Test
+    public void couldBeIpAddress() {
+        for (String ip : new String[]{"127.0.0.1", "  10.0.0.1\t\n", "::", "::1", "2001:4860:4860::8888",
+                "::ffff:192.168.1.1", "FE80::1", "ffff:ffff:ffff:ffff:ffff:ffff:255.255.255.255"}) {
+            Assert.assertTrue(ip, GeoIpResolverEngine.couldBeIpAddress(ip));
+            assertNotNull(ip, InetAddresses.forString(ip.trim()));
+        }
+        Assert.assertTrue(GeoIpResolverEngine.couldBeIpAddress("fe80::1%eth0"));
+        for (String value : new String[]{"", " ", "1", "a", "localhost", "example.org", "beef", "2022-07-15T10:00:00.000Z",
+                "Message from 127.0.0.1", "12345.1.1.1", "1.2.3.4/24", "[::1]", "0123456789abcdef0123456789abcdef0123456789abcdef"}) {
+            Assert.assertFalse(value, GeoIpResolverEngine.couldBeIpAddress(value));
+        }
+    }
+
+    @Test
+    public void getIpAddressFieldsSkipsValuesWhichAreNoIpAddresses() {
+        GeoIpResolverConfig conf = config.toBuilder().enforceGraylogSchema(false).build();
+        final GeoIpResolverEngine engine = new GeoIpResolverEngine(geoIpVendorResolverService, conf, s3GeoIpFileService, metricRegistry);
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("_id", java.util.UUID.randomUUID().toString());
+        fields.put("message", "Hello from 1.2.3.4");
+        fields.put("count", 42);
+        fields.put("source_ip", "1.2.3.4");
+        fields.put("destination_ip", publicIp);
+
+        List<String> ipFields = engine.getIpAddressFields(new Message(fields));
+
+        Assertions.assertEquals(2, ipFields.size());
+        Assertions.assertTrue(ipFields.contains("source_ip"));
+        Assertions.assertTrue(ipFields.contains("destination_ip"));
+    }
 }
@@ -56,7 +56,7 @@ class MaxMindIpLocationResolverTest {
         mocks = MockitoAnnotations.openMocks(this);
         Timer timer = new Timer(new UniformReservoir(1));
         when(resolver.getTimer()).thenReturn(timer.time());
-        when(resolver.doGetGeoIpData(any(InetAddress.class))).thenCallRealMethod();
+        when(resolver.doLookup(any(InetAddress.class))).thenCallRealMethod();
 
     }
 
@@ -76,7 +76,7 @@ class MaxMindIpLocationResolverTest {
         when(resolver.getCityResponse(any(InetAddress.class))).thenReturn(cityResponse);
 
         InetAddress address = InetAddress.getByName("localhost");
-        Optional<GeoLocationInformation> optInfo = resolver.doGetGeoIpData(address);
+        Optional<GeoLocationInformation> optInfo = resolver.doLookup(address).data();
 
         assertTrue(optInfo.isPresent());
         GeoLocationInformation info = optInfo.get();
@@ -97,7 +97,7 @@ class MaxMindIpLocationResolverTest {
         when(resolver.getCityResponse(any(InetAddress.class))).thenReturn(cityResponse);
 
         InetAddress address = InetAddress.getByName("localhost");
-        Optional<GeoLocationInformation> optInfo = resolver.doGetGeoIpData(address);
+        Optional<GeoLocationInformation> optInfo = resolver.doLookup(address).data();
 
         assertTrue(optInfo.isPresent());
         GeoLocationInformation info = optInfo.get();
@@ -114,7 +114,7 @@ class MaxMindIpLocationResolverTest {
         when(resolver.getCityResponse(any(InetAddress.class))).thenReturn(cityResponse);
 
         InetAddress address = InetAddress.getByName("localhost");
-        Optional<GeoLocationInformation> optInfo = resolver.doGetGeoIpData(address);
+        Optional<GeoLocationInformation> optInfo = resolver.doLookup(address).data();
         assertTrue(optInfo.isPresent());
         GeoLocationInformation info = optInfo.get();
         assertEquals("N/A", info.cityName());
@@ -129,7 +129,7 @@ class MaxMindIpLocationResolverTest {
         when(resolver.getCityResponse(any(InetAddress.class))).thenReturn(cityResponse);
 
         InetAddress address = InetAddress.getByName("localhost");
-        Optional<GeoLocationInformation> optInfo = resolver.doGetGeoIpData(address);
+        Optional<GeoLocationInformation> optInfo = resolver.doLookup(address).data();
         assertFalse(optInfo.isPresent());
 
     }
@@ -143,7 +143,7 @@ class MaxMindIpLocationResolverTest {
         when(resolver.getCityResponse(any(InetAddress.class))).thenReturn(cityResponse);
 
         InetAddress address = InetAddress.getByName("localhost");
-        Optional<GeoLocationInformation> optInfo = resolver.doGetGeoIpData(address);
+        Optional<GeoLocationInformation> optInfo = resolver.doLookup(address).data();
         assertFalse(optInfo.isPresent());
 
     }
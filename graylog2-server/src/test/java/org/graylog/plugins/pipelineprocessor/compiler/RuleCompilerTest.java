@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.compiler;
+
+import org.graylog.plugins.pipelineprocessor.BaseParserTest;
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+import org.graylog.plugins.pipelineprocessor.ast.Rule;
+import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.ast.statements.Statement;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
+import org.graylog.plugins.pipelineprocessor.functions.messages.HasField;
+import org.graylog.plugins.pipelineprocessor.functions.messages.SetField;
+import org.graylog.plugins.pipelineprocessor.parser.FunctionRegistry;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RuleCompilerTest extends BaseParserTest {
+    private final RuleCompiler compiler = new RuleCompiler();
+
+    @BeforeClass
+    public static void registerFunctions() {
+        final Map<String, Function<?>> functions = commonFunctions();
+
+        functions.put(StringConversion.NAME, new StringConversion());
+        functions.put(HasField.NAME, new HasField());
+        functions.put(SetField.NAME, new SetField());
+        functionRegistry = new FunctionRegistry(functions);
+    }
+
+    @Test
+    public void compiledConditionMatchesInterpreter() {
+        final Rule rule = parser.parseRule("rule \"test\" when " +
+                "has_field(\"source\") && ($message.source == \"router\" || NOT (to_string($message.facility) != \"kernel\")) " +
+                "then end", true);
+        final CompiledRule compiled = compiler.compile(rule);
+
+        final Message router = messageWith("router", "daemon");
+        final Message kernel = messageWith("host", "kernel");
+        final Message other = messageWith("host", "daemon");
+
+        for (Message message : new Message[]{router, kernel, other}) {
+            assertThat(compiled.when().evaluate(new EvaluationContext(message)))
+                    .isEqualTo(rule.when().evaluateBool(new EvaluationContext(message)));
+        }
+        assertThat(compiled.when().evaluate(new EvaluationContext(router))).isTrue();
+        assertThat(compiled.when().evaluate(new EvaluationContext(kernel))).isTrue();
+        assertThat(compiled.when().evaluate(new EvaluationContext(other))).isFalse();
+    }
+
+    @Test
+    public void missingFieldDoesNotMatch() {
+        final Rule rule = parser.parseRule("rule \"test\" when $message.missing == \"value\" then end", true);
+        final CompiledRule compiled = compiler.compile(rule);
+
+        assertThat(compiled.when().evaluate(new EvaluationContext(messageWith("router", "daemon")))).isFalse();
+    }
+
+    @Test
+    public void compiledActionsModifyMessage() {
+        final Rule rule = parser.parseRule("rule \"test\" when true then " +
+                "let prefix = \"net-\";\n" +
+                "set_field(\"device\", prefix + to_string($message.source));\n" +
+                "end", true);
+        final CompiledRule compiled = compiler.compile(rule);
+
+        final Message message = messageWith("router", "daemon");
+        final EvaluationContext context = new EvaluationContext(message);
+        assertThat(compiled.when().evaluate(context)).isTrue();
+        for (Statement statement : compiled.then()) {
+            statement.evaluate(context);
+        }
+
+        assertThat(context.hasEvaluationErrors()).isFalse();
+        assertThat(message.getField("device")).isEqualTo("net-router");
+    }
+
+    @Test
+    public void compiledFunctionCallsMatchInterpreter() {
+        final Rule rule = parser.parseRule("rule \"test\" when true then " +
+                "set_field(\"copy\", to_string($message.facility));\n" +
+                "set_field(to_string($message.facility), to_string($message.missing, \"default\"));\n" +
+                "end", true);
+        final CompiledRule compiled = compiler.compile(rule);
+
+        final Message interpretedMessage = messageWith("router", "daemon");
+        final EvaluationContext interpretedContext = new EvaluationContext(interpretedMessage);
+        for (Statement statement : rule.then()) {
+            statement.evaluate(interpretedContext);
+        }
+
+        final Message compiledMessage = messageWith("router", "daemon");
+        final EvaluationContext compiledContext = new EvaluationContext(compiledMessage);
+        for (Statement statement : compiled.then()) {
+            statement.evaluate(compiledContext);
+        }
+
+        assertThat(compiledContext.hasEvaluationErrors()).isFalse();
+        assertThat(compiledMessage.getField("copy")).isEqualTo("daemon").isEqualTo(interpretedMessage.getField("copy"));
+        assertThat(compiledMessage.getField("daemon")).isEqualTo("default").isEqualTo(interpretedMessage.getField("daemon"));
+    }
+
+    private static Message messageWith(String source, String facility) {
+        final Message message = new Message("hello test", source, Tools.nowUTC());
+        message.addField("facility", facility);
+        return message;
+    }
+}
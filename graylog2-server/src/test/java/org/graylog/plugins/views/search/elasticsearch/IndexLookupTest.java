@@ -17,12 +17,11 @@
 package org.graylog.plugins.views.search.elasticsearch;
 
 import org.graylog2.indexer.ranges.IndexRange;
-import org.graylog2.indexer.ranges.IndexRangeService;
+import org.graylog2.indexer.ranges.IndexRangeCacheService;
 import org.graylog2.plugin.database.Persisted;
 import org.graylog2.plugin.indexer.searches.timeranges.InvalidRangeParametersException;
 import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
 import org.graylog2.plugin.streams.Stream;
-import org.graylog2.streams.StreamService;
 import org.joda.time.DateTime;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -45,15 +44,13 @@ import static org.mockito.Mockito.when;
 
 class IndexLookupTest {
 
-    private IndexRangeService indexRangeService;
-    private StreamService streamService;
+    private IndexRangeCacheService indexRangeCacheService;
     private IndexLookup sut;
 
     @BeforeEach
     void setUp() {
-        indexRangeService = mock(IndexRangeService.class);
-        streamService = mock(StreamService.class);
-        sut = new IndexLookup(indexRangeService, streamService);
+        indexRangeCacheService = mock(IndexRangeCacheService.class);
+        sut = new IndexLookup(indexRangeCacheService);
     }
 
     @Test
@@ -103,7 +100,7 @@ class IndexLookupTest {
         final IndexRange indexRange2 = mockIndexRange("index2");
 
         final SortedSet<IndexRange> indexRanges = sortedSetOf(indexRange1, indexRange2);
-        when(indexRangeService.find(any(DateTime.class), any(DateTime.class))).thenReturn(indexRanges);
+        when(indexRangeCacheService.find(any(), any(DateTime.class), any(DateTime.class))).thenReturn(indexRanges);
 
         return new ArrayList<>(indexRanges);
     }
@@ -111,7 +108,7 @@ class IndexLookupTest {
     private Set<String> mockStreams(String... ids) {
         Set<Stream> streams = Arrays.stream(ids).map(this::mockStream).collect(Collectors.toSet());
 
-        when(streamService.loadByIds(any())).thenReturn(streams);
+        when(indexRangeCacheService.getByIds(any())).thenReturn(streams);
 
         return streams.stream().map(Persisted::getId).collect(Collectors.toSet());
     }
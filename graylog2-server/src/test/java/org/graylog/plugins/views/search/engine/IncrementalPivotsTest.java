@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.SearchType;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.searchtypes.pivot.Pivot;
+import org.graylog.plugins.views.search.searchtypes.pivot.PivotResult;
+import org.graylog.plugins.views.search.searchtypes.pivot.SeriesSpec;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.Time;
+import org.graylog.plugins.views.search.searchtypes.pivot.buckets.TimeUnitInterval;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Average;
+import org.graylog.plugins.views.search.searchtypes.pivot.series.Count;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IncrementalPivotsTest {
+    private static final DateTime NOW = new DateTime(2020, 10, 1, 12, 0, 30, DateTimeZone.UTC);
+
+    private IncrementalPivots incrementalPivots;
+
+    @Before
+    public void setUp() {
+        incrementalPivots = new IncrementalPivots(100, Duration.ZERO, new MetricRegistry());
+        DateTimeUtils.setCurrentMillisFixed(NOW.getMillis());
+    }
+
+    @After
+    public void tearDown() {
+        DateTimeUtils.setCurrentMillisSystem();
+    }
+
+    private static Pivot histogram(SeriesSpec series) {
+        return Pivot.builder()
+                .id("histogram")
+                .rowGroups(ImmutableList.of(Time.builder()
+                        .field("timestamp")
+                        .interval(TimeUnitInterval.Builder.builder().timeunit("1m").build())
+                        .build()))
+                .series(ImmutableList.of(series))
+                .rollup(true)
+                .build();
+    }
+
+    private static Query query(Pivot pivot) throws Exception {
+        return Query.builder()
+                .id("query")
+                .query(ElasticsearchQueryString.of("*"))
+                .timerange(RelativeRange.create(600))
+                .searchTypes(ImmutableSet.of(pivot))
+                .build();
+    }
+
+    private static PivotResult.Row bucketRow(DateTime bucket, long count) {
+        return PivotResult.Row.builder()
+                .key(ImmutableList.of(bucket.toString()))
+                .addValue(PivotResult.Value.create(ImmutableList.of("count()"), count, true, "row-leaf"))
+                .source("leaf")
+                .build();
+    }
+
+    private static PivotResult pivotResult(String id, DateTime firstBucket, long... counts) {
+        final PivotResult.Builder builder = PivotResult.builder()
+                .id(id)
+                .effectiveTimerange(AbsoluteRange.create(firstBucket, NOW));
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            builder.addRow(bucketRow(firstBucket.plusMinutes(i), counts[i]));
+            total += counts[i];
+        }
+        return builder.total(total).build();
+    }
+
+    private static QueryResult queryResult(Query query, PivotResult... pivotResults) {
+        final ImmutableMap.Builder<String, SearchType.Result> results = ImmutableMap.builder();
+        for (PivotResult pivotResult : pivotResults) {
+            results.put(pivotResult.id(), pivotResult);
+        }
+        return QueryResult.builder().query(query).searchTypes(results.build()).build();
+    }
+
+    private static Map<String, SearchType> searchTypesById(Query query) {
+        final ImmutableMap.Builder<String, SearchType> searchTypes = ImmutableMap.builder();
+        query.searchTypes().forEach(searchType -> searchTypes.put(searchType.id(), searchType));
+        return searchTypes.build();
+    }
+
+    @Test
+    public void runsFullWindowFirst() throws Exception {
+        final Query query = query(histogram(Count.builder().build()));
+
+        final IncrementalPivots.Execution execution = incrementalPivots.prepare(query);
+
+        final Map<String, SearchType> searchTypes = searchTypesById(execution.query());
+        assertThat(searchTypes).containsOnlyKeys("histogram");
+        assertThat(query.effectiveTimeRange(searchTypes.get("histogram")))
+                .isEqualTo(AbsoluteRange.create(NOW.minusMinutes(10), NOW));
+
+        final QueryResult result = queryResult(execution.query(),
+                pivotResult("histogram", new DateTime(2020, 10, 1, 11, 50, DateTimeZone.UTC), 1, 1, 1));
+        final QueryResult completed = execution.complete(result).orElseThrow(AssertionError::new);
+        assertThat(completed.query()).isEqualTo(query);
+        assertThat(completed.searchTypes()).isEqualTo(result.searchTypes());
+    }
+
+    @Test
+    public void onlyQueriesTailAndHeadOfWindowAfterwards() throws Exception {
+        final Query query = query(histogram(Count.builder().build()));
+        final IncrementalPivots.Execution first = incrementalPivots.prepare(query);
+        final long[] firstCounts = new long[11];
+        Arrays.fill(firstCounts, 1);
+        first.complete(queryResult(first.query(),
+                pivotResult("histogram", new DateTime(2020, 10, 1, 11, 50, DateTimeZone.UTC), firstCounts)));
+
+        final DateTime later = NOW.plusSeconds(100);
+        DateTimeUtils.setCurrentMillisFixed(later.getMillis());
+        final IncrementalPivots.Execution second = incrementalPivots.prepare(query);
+
+        final Map<String, SearchType> searchTypes = searchTypesById(second.query());
+        assertThat(searchTypes).containsOnlyKeys("histogram", "histogram-incremental-head");
+        assertThat(second.query().effectiveTimeRange(searchTypes.get("histogram")))
+                .isEqualTo(AbsoluteRange.create(new DateTime(2020, 10, 1, 12, 0, DateTimeZone.UTC), later));
+        assertThat(second.query().effectiveTimeRange(searchTypes.get("histogram-incremental-head")))
+                .isEqualTo(AbsoluteRange.create(later.minusMinutes(10), new DateTime(2020, 10, 1, 11, 53, DateTimeZone.UTC)));
+
+        final QueryResult result = queryResult(second.query(),
+                pivotResult("histogram", new DateTime(2020, 10, 1, 12, 0, DateTimeZone.UTC), 5, 2, 1),
+                // the bucket starting at the end of the head query must be ignored
+                pivotResult("histogram-incremental-head", new DateTime(2020, 10, 1, 11, 52, DateTimeZone.UTC), 3, 100));
+        final QueryResult completed = second.complete(result).orElseThrow(AssertionError::new);
+
+        assertThat(completed.query()).isEqualTo(query);
+        assertThat(completed.searchTypes()).containsOnlyKeys("histogram");
+        final PivotResult pivotResult = (PivotResult) completed.searchTypes().get("histogram");
+        final List<Object> counts = new ArrayList<>();
+        pivotResult.rows().forEach(row -> counts.add(row.values().get(0).value()));
+        // 11:52 from the head query, 11:53 - 11:59 from the previous result, 12:00 - 12:02 from the tail query
+        assertThat(counts).containsExactly(3L, 1L, 1L, 1L, 1L, 1L, 1L, 1L, 5L, 2L, 1L, 18L);
+        assertThat(pivotResult.rows().get(0).key()).containsExactly(new DateTime(2020, 10, 1, 11, 52, DateTimeZone.UTC).toString());
+        assertThat(pivotResult.rows().get(11).key()).isEmpty();
+        assertThat(pivotResult.total()).isEqualTo(18L);
+        assertThat(pivotResult.effectiveTimerange()).isEqualTo(AbsoluteRange.create(later.minusMinutes(10), later));
+    }
+
+    @Test
+    public void leavesPivotsWithNonMergeableSeriesAlone() throws Exception {
+        final Query query = query(histogram(Average.builder().field("took_ms").build()));
+
+        assertThat(incrementalPivots.prepare(query).query()).isSameAs(query);
+    }
+
+    @Test
+    public void leavesQueriesAloneIfDisabled() throws Exception {
+        final IncrementalPivots disabled = new IncrementalPivots(0, Duration.ZERO, new MetricRegistry());
+        final Query query = query(histogram(Count.builder().build()));
+
+        assertThat(disabled.prepare(query).query()).isSameAs(query);
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.elasticsearch.IndexLookup;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.when;
+
+public class QueryExecutionPoolTest {
+    private static final DateTime NOW = new DateTime(2020, 10, 1, 12, 0, DateTimeZone.UTC);
+
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private IndexLookup indexLookup;
+
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        when(indexLookup.indexNamesForStreamsInTimeRange(anySet(), any())).thenReturn(Collections.emptySet());
+    }
+
+    @Test
+    public void classifiesQueriesByTimeRangeAndIndexCount() {
+        final QueryExecutionPool pool = pool(1, 1);
+
+        assertThat(pool.isHeavy(interactiveQuery())).isFalse();
+        assertThat(pool.isHeavy(heavyQuery())).isTrue();
+
+        when(indexLookup.indexNamesForStreamsInTimeRange(anySet(), any())).thenReturn(Collections.singleton("graylog_0"));
+        assertThat(pool.isHeavy(interactiveQuery())).isFalse();
+        when(indexLookup.indexNamesForStreamsInTimeRange(anySet(), any())).thenReturn(ImmutableSet.of("graylog_0", "graylog_1", "graylog_2"));
+        assertThat(pool.isHeavy(interactiveQuery())).isTrue();
+    }
+
+    @Test
+    public void runsInteractiveQueriesFirstAndUsersInTurns() throws Exception {
+        final QueryExecutionPool pool = pool(1, 1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        pool.submit("admin", interactiveQuery(), () -> await(blocker));
+
+        final CompletableFuture<QueryResult> heavy = pool.submit("alice", heavyQuery(), record("alice-heavy"));
+        final CompletableFuture<QueryResult> alice1 = pool.submit("alice", interactiveQuery(), record("alice-1"));
+        final CompletableFuture<QueryResult> alice2 = pool.submit("alice", interactiveQuery(), record("alice-2"));
+        final CompletableFuture<QueryResult> bob1 = pool.submit("bob", interactiveQuery(), record("bob-1"));
+        blocker.countDown();
+
+        CompletableFuture.allOf(heavy, alice1, alice2, bob1).get(10, TimeUnit.SECONDS);
+        assertThat(executed).containsExactly("alice-1", "bob-1", "alice-2", "alice-heavy");
+    }
+
+    @Test
+    public void runsHeavyQueriesWhichWaitedTooLongFirst() throws Exception {
+        final QueryExecutionPool pool = pool(1, 1, Duration.millis(50));
+        final CountDownLatch blocker = new CountDownLatch(1);
+        pool.submit("admin", interactiveQuery(), () -> await(blocker));
+
+        final CompletableFuture<QueryResult> heavy = pool.submit("alice", heavyQuery(), record("alice-heavy"));
+        Thread.sleep(100);
+        final CompletableFuture<QueryResult> interactive = pool.submit("bob", interactiveQuery(), record("bob-1"));
+        blocker.countDown();
+
+        CompletableFuture.allOf(heavy, interactive).get(10, TimeUnit.SECONDS);
+        assertThat(executed).containsExactly("alice-heavy", "bob-1");
+    }
+
+    @Test
+    public void limitsConcurrentHeavyQueries() throws Exception {
+        final QueryExecutionPool pool = pool(2, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CompletableFuture<QueryResult> heavy1 = pool.submit("alice", heavyQuery(), () -> {
+            executed.add("heavy-1");
+            started.countDown();
+            return await(blocker);
+        });
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        final CompletableFuture<QueryResult> heavy2 = pool.submit("bob", heavyQuery(), record("heavy-2"));
+        final CompletableFuture<QueryResult> interactive = pool.submit("carol", interactiveQuery(), record("interactive"));
+
+        // the second thread is kept free for interactive queries
+        interactive.get(10, TimeUnit.SECONDS);
+        assertThat(heavy2).isNotDone();
+
+        blocker.countDown();
+        CompletableFuture.allOf(heavy1, heavy2).get(10, TimeUnit.SECONDS);
+        assertThat(executed).containsExactly("heavy-1", "interactive", "heavy-2");
+    }
+
+    @Test
+    public void cancellingQueuedQueryRemovesIt() throws Exception {
+        final QueryExecutionPool pool = pool(1, 1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CompletableFuture<QueryResult> running = pool.submit("admin", interactiveQuery(), () -> await(blocker));
+        final CompletableFuture<QueryResult> queued = pool.submit("admin", interactiveQuery(), record("cancelled"));
+        final CompletableFuture<QueryResult> next = pool.submit("admin", interactiveQuery(), record("next"));
+
+        assertThat(queued.cancel(true)).isTrue();
+        blocker.countDown();
+
+        CompletableFuture.allOf(running, next).get(10, TimeUnit.SECONDS);
+        assertThat(queued).isCancelled();
+        assertThat(executed).containsExactly("next");
+    }
+
+    @Test
+    public void cancellingRunningQueryInterruptsIt() throws Exception {
+        final QueryExecutionPool pool = pool(1, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final AtomicBoolean wasInterrupted = new AtomicBoolean(false);
+        final CompletableFuture<QueryResult> running = pool.submit("admin", interactiveQuery(), () -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                wasInterrupted.set(true);
+                interrupted.countDown();
+            }
+            return QueryResult.incomplete();
+        });
+
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        running.cancel(true);
+
+        assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(wasInterrupted).isTrue();
+
+        // the worker thread is not affected by the cancellation of its previous query
+        pool.submit("admin", interactiveQuery(), record("next")).get(10, TimeUnit.SECONDS);
+        assertThat(executed).containsExactly("next");
+    }
+
+    @Test
+    public void cancellingSharedQueryKeepsItRunningForWaitingCallers() throws Exception {
+        final QueryExecutionPool pool = pool(2, 1);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final QueryResultCache cache = cache(metricRegistry);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final QueryResult result = QueryResult.incomplete();
+
+        final CompletableFuture<QueryResult> owner = pool.submit("alice", interactiveQuery(),
+                () -> cache.get(interactiveQuery(), query -> block(started, blocker, interrupted, result)));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        final CompletableFuture<QueryResult> waiter = pool.submit("bob", interactiveQuery(),
+                () -> cache.get(interactiveQuery(), query -> record("duplicate").get()));
+        awaitCacheHit(metricRegistry);
+
+        owner.cancel(true);
+        blocker.countDown();
+
+        assertThat(waiter.get(10, TimeUnit.SECONDS)).isSameAs(result);
+        assertThat(interrupted.getCount()).isEqualTo(1);
+        assertThat(executed).isEmpty();
+    }
+
+    @Test
+    public void cancelledWaiterStopsWaitingForSharedQuery() throws Exception {
+        final QueryExecutionPool pool = pool(2, 1);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final QueryResultCache cache = cache(metricRegistry);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final QueryResult result = QueryResult.incomplete();
+
+        final CompletableFuture<QueryResult> owner = pool.submit("alice", interactiveQuery(),
+                () -> cache.get(interactiveQuery(), query -> block(started, blocker, interrupted, result)));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        final CompletableFuture<QueryResult> waiter = pool.submit("bob", interactiveQuery(),
+                () -> cache.get(interactiveQuery(), query -> QueryResult.incomplete()));
+        awaitCacheHit(metricRegistry);
+
+        waiter.cancel(true);
+
+        // the thread of the waiter is free again while the shared query is still running
+        pool.submit("carol", interactiveQuery(), record("next")).get(10, TimeUnit.SECONDS);
+        assertThat(executed).containsExactly("next");
+        blocker.countDown();
+        assertThat(owner.get(10, TimeUnit.SECONDS)).isSameAs(result);
+        assertThat(interrupted.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void abortsSharedQueryWhenAllCallersAreCancelled() throws Exception {
+        final QueryExecutionPool pool = pool(2, 1);
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final QueryResultCache cache = cache(metricRegistry);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        final CompletableFuture<QueryResult> owner = pool.submit("alice", interactiveQuery(),
+                () -> cache.get(interactiveQuery(), query -> block(started, new CountDownLatch(1), interrupted, QueryResult.incomplete())));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        final CompletableFuture<QueryResult> waiter = pool.submit("bob", interactiveQuery(),
+                () -> cache.get(interactiveQuery(), query -> QueryResult.incomplete()));
+        awaitCacheHit(metricRegistry);
+
+        owner.cancel(true);
+        assertThat(interrupted.getCount()).isEqualTo(1);
+        waiter.cancel(true);
+
+        assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private QueryExecutionPool pool(int threads, int heavyThreads) {
+        return pool(threads, heavyThreads, Duration.standardMinutes(1));
+    }
+
+    private QueryExecutionPool pool(int threads, int heavyThreads, Duration heavyMaxWait) {
+        return new QueryExecutionPool(threads, heavyThreads, Duration.standardDays(7), 2, heavyMaxWait, indexLookup, new MetricRegistry());
+    }
+
+    private static QueryResultCache cache(MetricRegistry metricRegistry) {
+        return new QueryResultCache(100, Duration.standardMinutes(1), Duration.standardSeconds(10), metricRegistry);
+    }
+
+    private static void awaitCacheHit(MetricRegistry metricRegistry) throws InterruptedException {
+        while (metricRegistry.meter(MetricRegistry.name(QueryResultCache.class, "hits")).getCount() == 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static QueryResult block(CountDownLatch started, CountDownLatch blocker, CountDownLatch interrupted, QueryResult result) {
+        started.countDown();
+        try {
+            blocker.await();
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+        }
+        return result;
+    }
+
+    private Supplier<QueryResult> record(String name) {
+        return () -> {
+            executed.add(name);
+            return QueryResult.incomplete();
+        };
+    }
+
+    private static QueryResult await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return QueryResult.incomplete();
+    }
+
+    private static Query interactiveQuery() {
+        return query(AbsoluteRange.create(NOW.minusHours(1), NOW));
+    }
+
+    private static Query heavyQuery() {
+        return query(AbsoluteRange.create(NOW.minusDays(90), NOW));
+    }
+
+    private static Query query(AbsoluteRange timeRange) {
+        return Query.builder()
+                .id("query")
+                .query(ElasticsearchQueryString.of("*"))
+                .timerange(timeRange)
+                .build();
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.errors.QueryError;
+import org.graylog.plugins.views.search.errors.SearchException;
+import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
+import org.graylog2.plugin.indexer.searches.timeranges.RelativeRange;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class QueryResultCacheTest {
+    private MetricRegistry metricRegistry;
+    private QueryResultCache cache;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        cache = newCache(100);
+    }
+
+    private QueryResultCache newCache(int size) {
+        return new QueryResultCache(size, Duration.standardMinutes(1), Duration.standardSeconds(10), metricRegistry);
+    }
+
+    private static Query query(String queryString) throws Exception {
+        return Query.builder()
+                .id("query1")
+                .query(ElasticsearchQueryString.of(queryString))
+                .timerange(RelativeRange.create(300))
+                .build();
+    }
+
+    private static Function<Query, QueryResult> countingRunner(AtomicInteger counter) {
+        return query -> {
+            counter.incrementAndGet();
+            return QueryResult.builder().query(query).searchTypes(Collections.emptyMap()).build();
+        };
+    }
+
+    @Test
+    public void reusesResultOfIdenticalQuery() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+
+        final QueryResult first = cache.get(query("source:foo"), countingRunner(runs));
+        final QueryResult second = cache.get(query("source:foo"), countingRunner(runs));
+
+        assertThat(runs).hasValue(1);
+        assertThat(second).isSameAs(first);
+        assertThat(first.query().timerange()).isInstanceOf(AbsoluteRange.class);
+        assertThat(metricRegistry.meter(MetricRegistry.name(QueryResultCache.class, "hits")).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter(MetricRegistry.name(QueryResultCache.class, "misses")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void runsDifferentQueriesSeparately() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+
+        cache.get(query("source:foo"), countingRunner(runs));
+        cache.get(query("source:bar"), countingRunner(runs));
+
+        assertThat(runs).hasValue(2);
+    }
+
+    @Test
+    public void alwaysRunsQueriesIfDisabled() throws Exception {
+        final QueryResultCache disabledCache = newCache(0);
+        final AtomicInteger runs = new AtomicInteger();
+        final Query query = query("source:foo");
+
+        final QueryResult result = disabledCache.get(query, countingRunner(runs));
+        disabledCache.get(query, countingRunner(runs));
+
+        assertThat(runs).hasValue(2);
+        assertThat(result.query()).isSameAs(query);
+    }
+
+    @Test
+    public void doesNotCacheFailedResults() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        final Function<Query, QueryResult> failingRunner = query -> {
+            runs.incrementAndGet();
+            return QueryResult.failedQueryWithError(query, new QueryError(query, "failed"));
+        };
+
+        cache.get(query("source:foo"), failingRunner);
+        cache.get(query("source:foo"), failingRunner);
+
+        assertThat(runs).hasValue(2);
+    }
+
+    @Test
+    public void doesNotCacheExceptions() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+
+        assertThatThrownBy(() -> cache.get(query("source:foo"), query -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        cache.get(query("source:foo"), countingRunner(runs));
+
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    public void rethrowsOriginalExceptionToWaitingCallers() throws Exception {
+        // absolute time ranges keep both callers in the same time slot
+        final Query query = query("source:foo").toBuilder()
+                .timerange(AbsoluteRange.create(new DateTime(2020, 10, 1, 11, 0, DateTimeZone.UTC), new DateTime(2020, 10, 1, 12, 0, DateTimeZone.UTC)))
+                .build();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread owner = new Thread(() -> assertThatThrownBy(() -> cache.get(query, cacheableQuery -> {
+            Uninterruptibles.awaitUninterruptibly(release);
+            throw new SearchException(new QueryError(cacheableQuery, "boom"));
+        })).isInstanceOf(SearchException.class));
+        owner.start();
+
+        final AtomicReference<Throwable> waiterFailure = new AtomicReference<>();
+        final Thread waiter = new Thread(() -> {
+            try {
+                cache.get(query, countingRunner(new AtomicInteger()));
+            } catch (Throwable t) {
+                waiterFailure.set(t);
+            }
+        });
+        waiter.start();
+        while (metricRegistry.meter(MetricRegistry.name(QueryResultCache.class, "hits")).getCount() == 0) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        owner.join();
+        waiter.join();
+
+        assertThat(waiterFailure.get()).isInstanceOf(SearchException.class);
+    }
+
+    @Test
+    public void doesNotCacheAllMessagesQueries() throws Exception {
+        final Query query = query("source:foo").toBuilder().timerange(RelativeRange.allTime()).build();
+
+        assertThat(cache.cacheKey(query, DateTime.now(DateTimeZone.UTC))).isNull();
+    }
+
+    @Test
+    public void roundsRelativeTimeRangesToGranularity() throws Exception {
+        final Query query = query("source:foo");
+        final DateTime now = new DateTime(2020, 10, 1, 12, 0, 3, DateTimeZone.UTC);
+
+        final Query key = cache.cacheKey(query, now);
+
+        assertThat(key).isNotNull();
+        assertThat(key.timerange()).isEqualTo(AbsoluteRange.create(
+                new DateTime(2020, 10, 1, 11, 55, 0, DateTimeZone.UTC),
+                new DateTime(2020, 10, 1, 12, 0, 0, DateTimeZone.UTC)));
+        assertThat(cache.cacheKey(query, now.plusSeconds(6))).isEqualTo(key);
+        assertThat(cache.cacheKey(query, now.plusSeconds(7))).isNotEqualTo(key);
+    }
+
+    @Test
+    public void keepsAbsoluteTimeRanges() throws Exception {
+        final AbsoluteRange timeRange = AbsoluteRange.create(
+                new DateTime(2020, 10, 1, 11, 0, 1, DateTimeZone.UTC),
+                new DateTime(2020, 10, 1, 12, 0, 1, DateTimeZone.UTC));
+        final Query query = query("source:foo").toBuilder().timerange(timeRange).build();
+
+        assertThat(cache.cacheKey(query, DateTime.now(DateTimeZone.UTC))).isEqualTo(query);
+    }
+}
@@ -40,6 +40,7 @@ import org.graylog.plugins.views.search.rest.TestSearchUser;
 import org.graylog.plugins.views.search.searchtypes.MessageList;
 import org.graylog2.plugin.indexer.searches.timeranges.AbsoluteRange;
 import org.graylog2.shared.rest.exceptions.MissingStreamPermissionException;
+import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -50,6 +51,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
 
+import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotFoundException;
 import java.util.Collections;
 import java.util.Optional;
@@ -60,6 +62,7 @@ import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anySet;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -80,18 +83,7 @@ public class SearchExecutorTest {
 
     @BeforeEach
     void setUp() {
-        final SearchJobService searchJobService = new InMemorySearchJobService();
-        this.searchExecutor = new SearchExecutor(searchDomain,
-                searchJobService,
-                queryEngine,
-                new PluggableSearchValidation(new SearchExecutionGuard(Collections.emptyMap()), Collections.emptySet()),
-                new PluggableSearchNormalization(Collections.singleton(
-                        new DecorateQueryStringsNormalizer(
-                                new QueryStringDecorators(
-                                        Optional.of((queryString, job, query) -> PositionTrackingQuery.of("decorated"))
-                                )
-                        )
-                )));
+        this.searchExecutor = newSearchExecutor(Duration.standardMinutes(1), false);
         when(queryEngine.execute(any(), any())).thenAnswer(invocation -> {
             final SearchJob searchJob = invocation.getArgument(0);
             searchJob.addQueryResultFuture("query", CompletableFuture.completedFuture(QueryResult.emptyResult()));
@@ -220,6 +212,56 @@ public class SearchExecutorTest {
                 .contains(ElasticsearchQueryString.of("decorated"));
     }
 
+    @Test
+    void keepsSearchJobRunningAfterTimeoutByDefault() {
+        final CompletableFuture<QueryResult> execution = neverCompletingQuery();
+        final SearchExecutor searchExecutor = newSearchExecutor(Duration.millis(10), false);
+
+        assertThatExceptionOfType(InternalServerErrorException.class)
+                .isThrownBy(() -> searchExecutor.execute(makeSearch(), TestSearchUser.builder().build(), ExecutionState.empty()))
+                .withMessage("Timeout while executing search job");
+        assertThat(execution).isNotCancelled();
+    }
+
+    @Test
+    void cancelsSearchJobAfterTimeoutIfConfigured() {
+        final CompletableFuture<QueryResult> execution = neverCompletingQuery();
+        final SearchExecutor searchExecutor = newSearchExecutor(Duration.millis(10), true);
+
+        assertThatExceptionOfType(InternalServerErrorException.class)
+                .isThrownBy(() -> searchExecutor.execute(makeSearch(), TestSearchUser.builder().build(), ExecutionState.empty()));
+        assertThat(execution).isCancelled();
+    }
+
+    private CompletableFuture<QueryResult> neverCompletingQuery() {
+        final CompletableFuture<QueryResult> execution = new CompletableFuture<>();
+        doAnswer(invocation -> {
+            final SearchJob searchJob = invocation.getArgument(0);
+            searchJob.addQueryResultFuture("query", execution);
+            searchJob.addQueryExecution("query", execution);
+            searchJob.seal();
+            return searchJob;
+        }).when(queryEngine).execute(any(), any());
+        return execution;
+    }
+
+    private SearchExecutor newSearchExecutor(Duration searchJobTimeout, boolean cancelOnTimeout) {
+        final SearchJobService searchJobService = new InMemorySearchJobService();
+        return new SearchExecutor(searchDomain,
+                searchJobService,
+                queryEngine,
+                new PluggableSearchValidation(new SearchExecutionGuard(Collections.emptyMap()), Collections.emptySet()),
+                new PluggableSearchNormalization(Collections.singleton(
+                        new DecorateQueryStringsNormalizer(
+                                new QueryStringDecorators(
+                                        Optional.of((queryString, job, query) -> PositionTrackingQuery.of("decorated"))
+                                )
+                        )
+                )),
+                searchJobTimeout,
+                cancelOnTimeout);
+    }
+
     private Search makeSearch() {
         return Search.builder().build();
     }
@@ -62,7 +62,7 @@ class CommandFactoryTest {
 
     @Test
     void buildsCommandFromRequest() {
-        MessagesRequest request = MessagesRequest.builder().build();
+        MessagesRequest request = MessagesRequest.builder().parallelism(4).build();
         ExportMessagesCommand command = sut.buildFromRequest(request);
 
         assertAll(
@@ -70,7 +70,8 @@ class CommandFactoryTest {
                 () -> assertThat(command.streams()).isEqualTo(request.streams()),
                 () -> assertThat(command.fieldsInOrder()).isEqualTo(request.fieldsInOrder()),
                 () -> assertThat(command.limit()).isEqualTo(request.limit()),
-                () -> assertThat(command.chunkSize()).isEqualTo(request.chunkSize())
+                () -> assertThat(command.chunkSize()).isEqualTo(request.chunkSize()),
+                () -> assertThat(command.parallelism()).isEqualTo(request.parallelism())
         );
     }
 
@@ -16,6 +16,7 @@
  */
 package org.graylog.plugins.views.search.export;
 
+import com.codahale.metrics.MetricRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -36,12 +37,14 @@ class MessagesExporterImplTest {
     private ExportBackend backend;
     private DecoratingMessagesExporter sut;
     private ChunkDecorator chunkDecorator;
+    private MetricRegistry metricRegistry;
 
     @BeforeEach
     void setUp() {
         backend = mock(ExportBackend.class);
         chunkDecorator = mock(ChunkDecorator.class);
-        sut = new DecoratingMessagesExporter(backend, chunkDecorator);
+        metricRegistry = new MetricRegistry();
+        sut = new DecoratingMessagesExporter(backend, chunkDecorator, metricRegistry);
     }
 
     @Test
@@ -58,6 +61,21 @@ class MessagesExporterImplTest {
         assertThat(results).containsExactly(decoratedChunk);
     }
 
+    @Test
+    void recordsExportThroughput() {
+        ExportMessagesCommand command = ExportMessagesCommand.withDefaults();
+
+        SimpleMessageChunk chunk = TestData.simpleMessageChunk("field-1", new Object[]{"a"}, new Object[]{"b"});
+
+        when(chunkDecorator.decorate(any(), any())).then(invocation -> invocation.getArgument(0));
+
+        exportWithStubbedSingleChunkFromBackend(command, chunk);
+
+        assertThat(metricRegistry.meter(MetricRegistry.name(MessagesExporter.class, "messages")).getCount()).isEqualTo(2);
+        assertThat(metricRegistry.timer(MetricRegistry.name(MessagesExporter.class, "duration")).getCount()).isEqualTo(1);
+        assertThat(metricRegistry.histogram(MetricRegistry.name(MessagesExporter.class, "throughput")).getCount()).isEqualTo(1);
+    }
+
     private ArrayList<SimpleMessageChunk> exportWithStubbedSingleChunkFromBackend(ExportMessagesCommand command, SimpleMessageChunk chunkFromBackend) {
         @SuppressWarnings("unchecked")
         ArgumentCaptor<Consumer<SimpleMessageChunk>> captor = ArgumentCaptor.forClass(Consumer.class);
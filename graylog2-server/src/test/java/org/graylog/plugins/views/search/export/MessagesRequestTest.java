@@ -21,6 +21,7 @@ import org.junit.jupiter.api.Test;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.graylog.plugins.views.search.export.ExportMessagesCommand.DEFAULT_CHUNK_SIZE;
 import static org.graylog.plugins.views.search.export.ExportMessagesCommand.DEFAULT_FIELDS;
+import static org.graylog.plugins.views.search.export.ExportMessagesCommand.DEFAULT_PARALLELISM;
 import static org.graylog.plugins.views.search.export.ExportMessagesCommand.DEFAULT_QUERY;
 import static org.graylog.plugins.views.search.export.ExportMessagesCommand.DEFAULT_STREAMS;
 import static org.junit.jupiter.api.Assertions.assertAll;
@@ -35,6 +36,7 @@ class MessagesRequestTest {
                 () -> assertThat(defaultRequest.queryString()).isEqualTo(DEFAULT_QUERY),
                 () -> assertThat(defaultRequest.streams()).isEqualTo(DEFAULT_STREAMS),
                 () -> assertThat(defaultRequest.fieldsInOrder()).isEqualTo(DEFAULT_FIELDS),
-                () -> assertThat(defaultRequest.chunkSize()).isEqualTo(DEFAULT_CHUNK_SIZE));
+                () -> assertThat(defaultRequest.chunkSize()).isEqualTo(DEFAULT_CHUNK_SIZE),
+                () -> assertThat(defaultRequest.parallelism()).isEqualTo(DEFAULT_PARALLELISM));
     }
 }
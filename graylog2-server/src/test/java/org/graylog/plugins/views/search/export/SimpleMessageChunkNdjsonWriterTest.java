@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.export;
+
+import org.graylog2.rest.MoreMediaTypes;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.graylog.plugins.views.search.export.LinkedHashSetUtil.linkedHashSetOf;
+import static org.graylog.plugins.views.search.export.TestData.simpleMessage;
+import static org.graylog.plugins.views.search.export.TestData.simpleMessageChunk;
+
+class SimpleMessageChunkNdjsonWriterTest {
+    private SimpleMessageChunkNdjsonWriter sut;
+
+    @BeforeEach
+    void setUp() {
+        sut = new SimpleMessageChunkNdjsonWriter();
+    }
+
+    @Test
+    void isWritableForSimpleMessages() {
+        boolean isWritable = sut.isWriteable(SimpleMessageChunk.class, null, null, MoreMediaTypes.APPLICATION_NDJSON_TYPE);
+        assertThat(isWritable).isTrue();
+    }
+
+    @Test
+    void isNotWritableForCsv() {
+        boolean isWritable = sut.isWriteable(SimpleMessageChunk.class, null, null, MoreMediaTypes.TEXT_CSV_TYPE);
+        assertThat(isWritable).isFalse();
+    }
+
+    @Test
+    void writesOneObjectPerLineWithFieldsInOrder() {
+        SimpleMessageChunk chunk = simpleMessageChunk("timestamp,source,count",
+                new Object[]{"2015-01-01 01:00:00.000", "source-1", 23},
+                new Object[]{"2015-01-02 01:00:00.000", "source-2", 42});
+        SimpleMessageChunk firstChunk = chunk.toBuilder().chunkOrder(SimpleMessageChunk.ChunkOrder.FIRST).build();
+
+        String result = write(firstChunk);
+
+        assertThat(result).isEqualTo(
+                "{\"timestamp\":\"2015-01-01 01:00:00.000\",\"source\":\"source-1\",\"count\":23}\n" +
+                        "{\"timestamp\":\"2015-01-02 01:00:00.000\",\"source\":\"source-2\",\"count\":42}\n");
+    }
+
+    @Test
+    void leavesOutMissingFields() {
+        SimpleMessageChunk chunk = SimpleMessageChunk.from(
+                linkedHashSetOf("timestamp", "source", "message"),
+                simpleMessage("timestamp,message", new Object[]{"2015-01-02 01:00:00.000", "more \"text\""}));
+
+        String result = write(chunk);
+
+        assertThat(result).isEqualTo("{\"timestamp\":\"2015-01-02 01:00:00.000\",\"message\":\"more \\\"text\\\"\"}\n");
+    }
+
+    private String write(SimpleMessageChunk chunk) {
+        ByteArrayOutputStream entityStream = new ByteArrayOutputStream();
+        try {
+            sut.writeTo(chunk, SimpleMessageChunk.class, null, null, null, null, entityStream);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new String(entityStream.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
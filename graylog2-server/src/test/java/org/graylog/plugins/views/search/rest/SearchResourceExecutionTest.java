@@ -35,6 +35,7 @@ import org.graylog.plugins.views.search.filter.StreamFilter;
 import org.graylog.plugins.views.search.permissions.SearchUser;
 import org.graylog2.plugin.database.users.User;
 import org.graylog2.shared.rest.exceptions.MissingStreamPermissionException;
+import org.joda.time.Duration;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -93,7 +94,9 @@ public class SearchResourceExecutionTest {
                 searchJobService,
                 queryEngine,
                 new PluggableSearchValidation(executionGuard, Collections.emptySet()),
-                new PluggableSearchNormalization(Collections.emptySet()));
+                new PluggableSearchNormalization(Collections.emptySet()),
+                Duration.standardMinutes(1),
+                false);
 
         this.searchResource = new SearchResource(searchDomain, searchExecutor, searchJobService, eventBus) {
             @Override
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.graylog2.Configuration;
+import org.graylog2.outputs.OutputRouter;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BatchedOutputBufferProcessorTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private ServerStatus serverStatus;
+
+    @Mock
+    private OutputRouter outputRouter;
+
+    @Mock
+    private MessageOutput defaultOutput;
+
+    @Mock
+    private MessageOutput streamOutput;
+
+    @Mock
+    private MessageOutput otherStreamOutput;
+
+    private MetricRegistry metricRegistry;
+    private Configuration configuration;
+
+    @Before
+    public void setUp() throws Exception {
+        metricRegistry = new MetricRegistry();
+        configuration = new Configuration();
+        when(serverStatus.getDetailedMessageRecordingStrategy()).thenReturn(ServerStatus.MessageDetailRecordingStrategy.NEVER);
+        when(outputRouter.getStreamOutputsForMessage(any())).thenReturn(Collections.emptySet());
+        when(defaultOutput.isRunning()).thenReturn(true);
+        when(streamOutput.isRunning()).thenReturn(true);
+        when(otherStreamOutput.isRunning()).thenReturn(true);
+    }
+
+    @Test
+    public void writesOwnMessagesAtEndOfBatch() throws Exception {
+        final BatchedOutputBufferProcessor processor = createProcessor(1, 2);
+        final List<Message> messages = buildMessages(4);
+
+        processor.onEvent(event(messages.get(0)), 0, false);
+        processor.onEvent(event(messages.get(1)), 1, false);
+        processor.onEvent(event(messages.get(2)), 2, false);
+
+        verify(defaultOutput, never()).write(anyList());
+
+        processor.onEvent(event(messages.get(3)), 3, true);
+
+        // Only the odd sequences belong to the processor with ordinal 1
+        verify(defaultOutput, times(1)).write(eq(ImmutableList.of(messages.get(1), messages.get(3))));
+        verify(defaultOutput, never()).write(any(Message.class));
+    }
+
+    @Test
+    public void writesStreamOutputsOncePerBatch() throws Exception {
+        final BatchedOutputBufferProcessor processor = createProcessor(0, 1);
+        final List<Message> messages = buildMessages(3);
+        when(outputRouter.getStreamOutputsForMessage(messages.get(0))).thenReturn(ImmutableSet.of(streamOutput, otherStreamOutput));
+        when(outputRouter.getStreamOutputsForMessage(messages.get(2))).thenReturn(ImmutableSet.of(streamOutput));
+
+        for (int i = 0; i < messages.size(); i++) {
+            processor.onEvent(event(messages.get(i)), i, i == messages.size() - 1);
+        }
+
+        verify(defaultOutput, times(1)).write(eq(messages));
+        verify(streamOutput, timeout(10000).times(1)).write(eq(ImmutableList.of(messages.get(0), messages.get(2))));
+        verify(otherStreamOutput, timeout(10000).times(1)).write(eq(ImmutableList.of(messages.get(0))));
+    }
+
+    @Test
+    public void doesNotWaitLongerThanOutputModuleTimeoutForStreamOutputs() throws Exception {
+        configuration = new Configuration() {
+            @Override
+            public long getOutputModuleTimeout() {
+                return 100;
+            }
+        };
+        final BatchedOutputBufferProcessor processor = createProcessor(0, 1);
+        final Message message = buildMessages(1).get(0);
+        final CountDownLatch blockedOutput = new CountDownLatch(1);
+        when(outputRouter.getStreamOutputsForMessage(message)).thenReturn(ImmutableSet.of(streamOutput));
+        doAnswer(invocation -> {
+            blockedOutput.await();
+            return null;
+        }).when(streamOutput).write(anyList());
+
+        try {
+            final long start = System.nanoTime();
+            processor.onEvent(event(message), 0, true);
+
+            assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+            verify(defaultOutput, times(1)).write(eq(ImmutableList.of(message)));
+        } finally {
+            blockedOutput.countDown();
+        }
+    }
+
+    @Test
+    public void skipsStoppedOutputs() throws Exception {
+        final BatchedOutputBufferProcessor processor = createProcessor(0, 1);
+        final Message message = buildMessages(1).get(0);
+        when(outputRouter.getStreamOutputsForMessage(message)).thenReturn(ImmutableSet.of(streamOutput));
+        when(streamOutput.isRunning()).thenReturn(false);
+
+        processor.onEvent(event(message), 0, true);
+
+        verify(defaultOutput, times(1)).write(eq(ImmutableList.of(message)));
+        verify(streamOutput, after(100).never()).write(anyList());
+    }
+
+    private BatchedOutputBufferProcessor createProcessor(long ordinal, long numberOfConsumers) {
+        return new BatchedOutputBufferProcessor(configuration, metricRegistry, serverStatus, outputRouter, defaultOutput,
+                ordinal, numberOfConsumers);
+    }
+
+    private MessageEvent event(Message message) {
+        final MessageEvent event = new MessageEvent();
+        event.setMessage(message);
+        return event;
+    }
+
+    private List<Message> buildMessages(int count) {
+        final ImmutableList.Builder<Message> builder = ImmutableList.builder();
+        for (int i = 0; i < count; i++) {
+            builder.add(new Message("message" + i, "test", Tools.nowUTC()));
+        }
+        return builder.build();
+    }
+}
@@ -39,6 +39,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -116,6 +118,42 @@ public class MessagesTest {
         verify(trafficAccounting, times(1)).addSystemTraffic(82);
     }
 
+    @Test
+    public void bulkIndexAsyncShouldAccountMessageSizes() throws Exception {
+        when(messagesAdapter.bulkIndexAsync(any())).thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+        final IndexSet indexSet = mock(IndexSet.class);
+        final List<Map.Entry<IndexSet, Message>> messageList = ImmutableList.of(
+                createMessageListEntry(indexSet, messageWithSize(17)),
+                createMessageListEntry(indexSet, messageWithSize(23)),
+                createMessageListEntry(indexSet, messageWithSize(42))
+        );
+
+        final List<String> result = messages.bulkIndexAsync(messageList, Runnable::run).get(10, TimeUnit.SECONDS);
+
+        assertThat(result).isEmpty();
+        verify(messagesAdapter, never()).bulkIndex(any());
+        verify(trafficAccounting, times(1)).addOutputTraffic(82);
+    }
+
+    @Test
+    public void bulkIndexAsyncShouldRetrySynchronouslyOnRetryableException() throws Exception {
+        final CompletableFuture<List<Messages.IndexingError>> failedRequest = new CompletableFuture<>();
+        failedRequest.completeExceptionally(new RuntimeException(new IOException("Connection reset")));
+        when(messagesAdapter.bulkIndexAsync(any())).thenReturn(failedRequest);
+        when(messagesAdapter.bulkIndex(any())).thenReturn(Collections.emptyList());
+        final IndexSet indexSet = mock(IndexSet.class);
+        final List<Map.Entry<IndexSet, Message>> messageList = ImmutableList.of(
+                createMessageListEntry(indexSet, messageWithSize(17)),
+                createMessageListEntry(indexSet, messageWithSize(23))
+        );
+
+        final List<String> result = messages.bulkIndexAsync(messageList, Runnable::run).get(10, TimeUnit.SECONDS);
+
+        assertThat(result).isEmpty();
+        verify(messagesAdapter, times(1)).bulkIndex(any());
+        verify(trafficAccounting, times(1)).addOutputTraffic(40);
+    }
+
     @Test
     public void bulkIndexRequests_allNonIndexBlockErrorsPropagatedToTheFailureSubmissionService() throws Exception {
         // given
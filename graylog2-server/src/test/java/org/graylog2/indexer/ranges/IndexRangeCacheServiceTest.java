@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.eventbus.EventBus;
+import org.graylog2.database.NotFoundException;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.IndexSetRegistry;
+import org.graylog2.indexer.indexset.IndexSetConfig;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamService;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Collections;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IndexRangeCacheServiceTest {
+    private static final DateTime DAY_1 = new DateTime(2020, 1, 1, 0, 0, DateTimeZone.UTC);
+    private static final DateTime DAY_2 = DAY_1.plusDays(1);
+    private static final DateTime DAY_3 = DAY_1.plusDays(2);
+    private static final DateTime DAY_4 = DAY_1.plusDays(3);
+    private static final DateTime EPOCH = new DateTime(0L, DateTimeZone.UTC);
+
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private IndexRangeService indexRangeService;
+    @Mock
+    private IndexSetRegistry indexSetRegistry;
+    @Mock
+    private StreamService streamService;
+    @Mock
+    private ScheduledExecutorService executorService;
+
+    private IndexRangeCacheService cacheService;
+
+    @Before
+    public void setUp() throws Exception {
+        final Stream stream1 = mockStream("stream-1", "index-set-1");
+        final Stream stream2 = mockStream("stream-2", "index-set-2");
+        when(streamService.loadAll()).thenReturn(ImmutableList.of(stream1, stream2));
+
+        final IndexSetConfig indexSetConfig = mock(IndexSetConfig.class);
+        when(indexSetConfig.id()).thenReturn("index-set-1");
+        final IndexSet indexSet = mock(IndexSet.class);
+        when(indexSet.getConfig()).thenReturn(indexSetConfig);
+        when(indexSet.isManagedIndex(any())).thenAnswer(invocation -> invocation.<String>getArgument(0).startsWith("graylog_"));
+        when(indexSetRegistry.getAll()).thenReturn(ImmutableSet.of(indexSet));
+
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(executorService).execute(any());
+
+        cacheService = new IndexRangeCacheService(new EventBus(), indexRangeService, indexSetRegistry, streamService, executorService);
+    }
+
+    @Test
+    public void findReturnsRangesOfStreamsOverlappingTimeRange() throws Exception {
+        final IndexRange range1 = range("graylog_1", DAY_1, DAY_2, "stream-1");
+        final IndexRange range2 = range("graylog_2", DAY_2, DAY_3, "stream-1", "stream-2");
+        final IndexRange range3 = range("graylog_3", DAY_3, DAY_4, "stream-2");
+        startWith(range1, range2, range3);
+
+        assertThat(cacheService.find(ImmutableSet.of("stream-1"), DAY_1.plusHours(12), DAY_2.plusHours(12)))
+                .containsExactly(range1, range2);
+        assertThat(cacheService.find(ImmutableSet.of("stream-1"), DAY_3.plusHours(1), DAY_4))
+                .isEmpty();
+        assertThat(cacheService.find(ImmutableSet.of("stream-2"), DAY_3.plusHours(1), DAY_4))
+                .containsExactly(range3);
+        assertThat(cacheService.find(ImmutableSet.of("stream-1", "stream-2"), DAY_1, DAY_4))
+                .containsExactly(range1, range2, range3);
+        assertThat(cacheService.find(ImmutableSet.of("stream-3"), DAY_1, DAY_4))
+                .isEmpty();
+    }
+
+    @Test
+    public void findReturnsIncompleteRangesOfIndexSetOfStreams() throws Exception {
+        final IndexRange incomplete = range("graylog_1", DAY_1, DAY_2);
+        final IndexRange unknown = range("graylog_2", EPOCH, EPOCH);
+        final IndexRange unmanaged = range("other_1", DAY_1, DAY_2);
+        startWith(incomplete, unknown, unmanaged);
+
+        assertThat(cacheService.find(ImmutableSet.of("stream-1"), DAY_1, DAY_2))
+                .containsExactly(unknown, incomplete);
+        assertThat(cacheService.find(ImmutableSet.of("stream-1"), DAY_3, DAY_4))
+                .containsExactly(unknown);
+        assertThat(cacheService.find(ImmutableSet.of("stream-2"), DAY_1, DAY_2))
+                .isEmpty();
+    }
+
+    @Test
+    public void appliesUpdatedIndexRanges() throws Exception {
+        final IndexRange range1 = range("graylog_1", DAY_1, DAY_2, "stream-1");
+        final IndexRange range2 = range("graylog_2", DAY_2, DAY_3, "stream-1");
+        startWith(range1);
+
+        when(indexRangeService.get("graylog_1")).thenThrow(new NotFoundException("deleted"));
+        when(indexRangeService.get("graylog_2")).thenReturn(range2);
+        cacheService.handleIndexRangesUpdate(IndexRangesUpdatedEvent.create(ImmutableSet.of("graylog_1", "graylog_2")));
+
+        assertThat(cacheService.find(ImmutableSet.of("stream-1"), DAY_1, DAY_4))
+                .containsExactly(range2);
+    }
+
+    @Test
+    public void getByIdsIgnoresUnknownStreams() {
+        cacheService.updateStreams();
+
+        assertThat(cacheService.getByIds(ImmutableSet.of("stream-1", "stream-3")))
+                .extracting(Stream::getId)
+                .containsExactly("stream-1");
+        assertThat(cacheService.getByIds(Collections.emptySet())).isEmpty();
+    }
+
+    private void startWith(IndexRange... indexRanges) {
+        when(indexRangeService.findAll()).thenReturn(ImmutableSortedSet.copyOf(IndexRange.COMPARATOR, ImmutableList.copyOf(indexRanges)));
+        cacheService.updateStreams();
+        cacheService.reloadIndexRanges();
+    }
+
+    private static IndexRange range(String indexName, DateTime begin, DateTime end, String... streamIds) {
+        return MongoIndexRange.create(indexName, begin, end, DAY_4, 0, streamIds.length == 0 ? null : ImmutableList.copyOf(streamIds));
+    }
+
+    private static Stream mockStream(String id, String indexSetId) {
+        final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn(id);
+        when(stream.getIndexSetId()).thenReturn(indexSetId);
+        return stream;
+    }
+}
@@ -25,6 +25,7 @@ import org.graylog.testing.mongodb.MongoDBInstance;
 import org.graylog2.audit.NullAuditEventSender;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.database.NotFoundException;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.indexer.ElasticsearchException;
 import org.graylog2.indexer.IndexSetRegistry;
 import org.graylog2.indexer.indices.HealthStatus;
@@ -32,6 +33,7 @@ import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.indices.events.IndicesClosedEvent;
 import org.graylog2.indexer.indices.events.IndicesDeletedEvent;
 import org.graylog2.indexer.indices.events.IndicesReopenedEvent;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
 import org.graylog2.indexer.searches.IndexRangeStats;
 import org.graylog2.plugin.system.NodeId;
 import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
@@ -51,6 +53,7 @@ import java.util.SortedSet;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class MongoIndexRangeServiceTest {
@@ -67,13 +70,15 @@ public class MongoIndexRangeServiceTest {
     private Indices indices;
     @Mock
     private IndexSetRegistry indexSetRegistry;
+    @Mock
+    private ClusterEventBus clusterEventBus;
     private EventBus localEventBus;
     private MongoIndexRangeService indexRangeService;
 
     @Before
     public void setUp() throws Exception {
         localEventBus = new EventBus("local-event-bus");
-        indexRangeService = new MongoIndexRangeService(mongodb.mongoConnection(), objectMapperProvider, indices, indexSetRegistry, new NullAuditEventSender(), mock(NodeId.class), localEventBus);
+        indexRangeService = new MongoIndexRangeService(mongodb.mongoConnection(), objectMapperProvider, indices, indexSetRegistry, new NullAuditEventSender(), mock(NodeId.class), localEventBus, clusterEventBus);
     }
 
     @Test
@@ -156,6 +161,18 @@ public class MongoIndexRangeServiceTest {
         assertThat(indexRangeService.findAll()).hasSize(1);
     }
 
+    @Test
+    @MongoDBFixtures("MongoIndexRangeServiceTest.json")
+    public void saveAndRemovePublishIndexRangesUpdatedEvent() throws Exception {
+        final DateTime now = DateTime.now(DateTimeZone.UTC);
+        indexRangeService.save(MongoIndexRange.create("graylog", now, now, now, 42));
+        verify(clusterEventBus).post(IndexRangesUpdatedEvent.create("graylog"));
+
+        assertThat(indexRangeService.remove("graylog_1")).isTrue();
+        assertThat(indexRangeService.remove("graylog_1")).isFalse();
+        verify(clusterEventBus).post(IndexRangesUpdatedEvent.create("graylog_1"));
+    }
+
     @Test
     @MongoDBFixtures("MongoIndexRangeServiceTest.json")
     public void calculateRangeReturnsIndexRange() throws Exception {
@@ -34,13 +34,12 @@ import org.junit.Test;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.graylog2.inputs.codecs.GelfChunkAggregator.CHUNK_COUNTER;
 import static org.graylog2.inputs.codecs.GelfChunkAggregator.COMPLETE_MESSAGES;
-import static org.graylog2.inputs.codecs.GelfChunkAggregator.ChunkEntry;
 import static org.graylog2.inputs.codecs.GelfChunkAggregator.DUPLICATE_CHUNKS;
 import static org.graylog2.inputs.codecs.GelfChunkAggregator.EXPIRED_CHUNKS;
 import static org.graylog2.inputs.codecs.GelfChunkAggregator.EXPIRED_MESSAGES;
@@ -259,44 +258,113 @@ public class GelfChunkAggregatorTest {
     }
 
     @Test
-    public void testChunkEntryCompareTo() throws Exception {
-        // Test if the ChunkEntry#compareTo() method can handle ChunkEntry objects which have the same timestamp.
-        // See: https://github.com/Graylog2/graylog2-server/issues/1462
+    public void completeMessageSharesChunkBuffers() {
+        final byte[] messageId = generateMessageId();
+        final ByteBuf chunk1 = createChunk(messageId, (byte) 0, (byte) 2, "Hello ".getBytes(StandardCharsets.UTF_8));
+        final ByteBuf chunk2 = createChunk(messageId, (byte) 1, (byte) 2, "World".getBytes(StandardCharsets.UTF_8));
+
+        assertNull(aggregator.addChunk(chunk2).getMessage());
+        final ByteBuf message = aggregator.addChunk(chunk1).getMessage();
+
+        assertNotNull(message);
+        assertThat(message.toString(StandardCharsets.UTF_8)).isEqualTo("Hello World");
+        // the message holds a reference to every chunk buffer instead of a copy of its data
+        assertThat(chunk1.refCnt()).isEqualTo(2);
+        assertThat(chunk2.refCnt()).isEqualTo(2);
+
+        message.release();
+        assertThat(chunk1.refCnt()).isEqualTo(1);
+        assertThat(chunk2.refCnt()).isEqualTo(1);
+    }
 
-        final ConcurrentSkipListSet<GelfChunkAggregator.ChunkEntry> sortedEvictionSet = new ConcurrentSkipListSet<>();
-        final long currentTime = System.currentTimeMillis();
+    @Test
+    public void chunksOfLargeBuffersAreCopied() {
+        final byte[] messageId = generateMessageId();
+        final ByteBuf chunk1 = createChunk(messageId, (byte) 0, (byte) 2, "Hello ".getBytes(StandardCharsets.UTF_8));
+        // e.g. the fixed size receive buffer of a UDP datagram
+        final ByteBuf chunk2 = Unpooled.buffer(65536)
+                .writeBytes(createChunk(messageId, (byte) 1, (byte) 2, "World".getBytes(StandardCharsets.UTF_8)));
+
+        assertNull(aggregator.addChunk(chunk2).getMessage());
+        assertThat(chunk2.refCnt()).isEqualTo(1);
+        final ByteBuf message = aggregator.addChunk(chunk1).getMessage();
+
+        assertNotNull(message);
+        assertThat(message.toString(StandardCharsets.UTF_8)).isEqualTo("Hello World");
+    }
 
-        for (int i = 0; i < 10; i++) {
-            sortedEvictionSet.add(new GelfChunkAggregator.ChunkEntry(1, currentTime, "a" + i));
-        }
+    @Test
+    public void expiredChunksAreReleased() {
+        final DateTime initialTime = new DateTime(2014, 1, 1, 1, 59, 59, 0, DateTimeZone.UTC);
+        final InstantMillisProvider clock = new InstantMillisProvider(initialTime);
+        DateTimeUtils.setCurrentMillisProvider(clock);
 
-        final int size = sortedEvictionSet.size();
+        aggregator = new GelfChunkAggregator(mock(ScheduledThreadPoolExecutor.class), metricRegistry);
+        final GelfChunkAggregator.ChunkEvictionTask evictionTask = aggregator.new ChunkEvictionTask();
+
+        final ByteBuf chunk = createChunk(generateMessageId(), (byte) 0, (byte) 2, new byte[16]);
+        assertNull(aggregator.addChunk(chunk).getMessage());
+        assertThat(chunk.refCnt()).isEqualTo(2);
+
+        // not outdated yet, the message has to survive the eviction of its timer wheel slot
+        clock.tick(Period.seconds(5));
+        evictionTask.run();
+        assertEquals(1, counterValueNamed(metricRegistry, WAITING_MESSAGES));
+        assertEquals(0, counterValueNamed(metricRegistry, EXPIRED_MESSAGES));
 
-        for (int i = 0; i < size; i++) {
-            sortedEvictionSet.remove(sortedEvictionSet.first());
+        clock.tick(Period.seconds(1));
+        evictionTask.run();
+        assertEquals(0, counterValueNamed(metricRegistry, WAITING_MESSAGES));
+        assertEquals(1, counterValueNamed(metricRegistry, EXPIRED_MESSAGES));
+        assertEquals(1, counterValueNamed(metricRegistry, EXPIRED_CHUNKS));
+        assertThat(chunk.refCnt()).isEqualTo(1);
+    }
+
+    @Test
+    public void evictionAfterLongPause() {
+        final DateTime initialTime = new DateTime(2014, 1, 1, 1, 59, 59, 0, DateTimeZone.UTC);
+        final InstantMillisProvider clock = new InstantMillisProvider(initialTime);
+        DateTimeUtils.setCurrentMillisProvider(clock);
+
+        aggregator = new GelfChunkAggregator(mock(ScheduledThreadPoolExecutor.class), metricRegistry);
+        final GelfChunkAggregator.ChunkEvictionTask evictionTask = aggregator.new ChunkEvictionTask();
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(aggregator.addChunk(createChunk(generateMessageId(i), (byte) 0, (byte) 2, new byte[16])).getMessage());
+            clock.tick(Period.millis(700));
         }
 
-        assertTrue("eviction set should be empty", sortedEvictionSet.isEmpty());
+        // more than one round of the timer wheel
+        clock.tick(Period.hours(1));
+        evictionTask.run();
+
+        assertEquals(0, counterValueNamed(metricRegistry, WAITING_MESSAGES));
+        assertEquals(3, counterValueNamed(metricRegistry, EXPIRED_MESSAGES));
+        assertEquals(3, counterValueNamed(metricRegistry, EXPIRED_CHUNKS));
     }
 
     @Test
-    public void testChunkEntryEquals() throws Exception {
-        final GelfChunkAggregator.ChunkEntry entry = new ChunkEntry(1, 0L, "id");
+    public void invalidSequenceNumber() {
+        final ByteBuf chunk = createChunk(generateMessageId(), (byte) 2, (byte) 2, new byte[16]);
 
-        assertThat(entry).isEqualTo(new ChunkEntry(1, 0L, "id"));
-        assertThat(entry).isEqualTo(new ChunkEntry(2, 0L, "id"));
-        assertThat(entry).isNotEqualTo(new ChunkEntry(1, 1L, "id"));
-        assertThat(entry).isNotEqualTo(new ChunkEntry(1, 0L, "foo"));
+        final CodecAggregator.Result result = aggregator.addChunk(chunk);
+
+        assertFalse(result.isValid());
+        assertNull(result.getMessage());
+        assertEquals(0, counterValueNamed(metricRegistry, WAITING_MESSAGES));
+        assertThat(chunk.refCnt()).isEqualTo(1);
     }
 
     @Test
-    public void testChunkEntryHashCode() throws Exception {
-        final GelfChunkAggregator.ChunkEntry entry = new ChunkEntry(1, 0L, "id");
+    public void unchunkedMessageIsPassedThrough() {
+        final ByteBuf buffer = Unpooled.copiedBuffer("{\"short_message\":\"foo\"}", StandardCharsets.UTF_8);
+
+        final ByteBuf message = aggregator.addChunk(buffer).getMessage();
 
-        assertThat(entry.hashCode()).isEqualTo(new ChunkEntry(1, 0L, "id").hashCode());
-        assertThat(entry.hashCode()).isEqualTo(new ChunkEntry(2, 0L, "id").hashCode());
-        assertThat(entry.hashCode()).isNotEqualTo(new ChunkEntry(1, 1L, "id").hashCode());
-        assertThat(entry.hashCode()).isNotEqualTo(new ChunkEntry(1, 0L, "foo").hashCode());
+        assertNotNull(message);
+        assertThat(message.toString(StandardCharsets.UTF_8)).isEqualTo("{\"short_message\":\"foo\"}");
+        assertThat(buffer.refCnt()).isEqualTo(2);
+        assertEquals(0, counterValueNamed(metricRegistry, CHUNK_COUNTER));
     }
 
     private ByteBuf[] createChunkedMessage(int messageSize, int maxChunkSize) {
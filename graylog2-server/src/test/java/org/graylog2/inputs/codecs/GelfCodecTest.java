@@ -34,9 +34,12 @@ import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
 import java.time.DateTimeException;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
 import static org.hamcrest.Matchers.isA;
 import static org.junit.Assume.assumeTrue;
 
@@ -414,4 +417,95 @@ public class GelfCodecTest {
         assertThat(message).isNotNull();
         assertThat(message.getTimestamp()).isEqualTo(DateTime.parse("2017-07-21T14:23:00.661Z"));
     }
+
+    @Test
+    public void streamingDecoderBuildsSameMessageAsTreeDecoder() throws Exception {
+        final String json = "{"
+                + "\"version\": \"1.1\","
+                + "\"host\": \"example.org\","
+                + "\"short_message\": \"A short message that helps you identify what is going on\","
+                + "\"full_message\": \"Backtrace here\\n\\nMore stuff\","
+                + "\"timestamp\": 1385053862.3072,"
+                + "\"level\": 1,"
+                + "\"line\": \"42\","
+                + "\"facility\": \"test\","
+                + "\"_user_id\": 9001,"
+                + "\"_big\": 123456789012345678901234567890,"
+                + "\"_ratio\": 0.25,"
+                + "\"_object\": {\"a\": [1, 2, {\"b\": null}]},"
+                + "\"_array\": [\"x\", true],"
+                + "\"_null\": null,"
+                + "\"_bool\": false,"
+                + "\"_some_info\": \"foo\","
+                + "\"_some_info\": \"bar\","
+                + "\"_\": \"underscore\","
+                + "\"_source\": \"ignored\","
+                + "\"_level\": 7,"
+                + "\"_gl2_source_input\": \"settable\","
+                + "\"_version\": \"3.11\","
+                + "}";
+
+        assertStreamingDecoderParity(json.getBytes(StandardCharsets.UTF_8));
+        assertStreamingDecoderParity(TestHelper.zlibCompress(json));
+        assertStreamingDecoderParity(TestHelper.gzipCompress(json));
+    }
+
+    @Test
+    public void streamingDecoderRejectsInvalidMessages() throws Exception {
+        final GelfCodec streamingCodec = streamingCodec(Collections.emptyMap());
+
+        assertThatIllegalStateException()
+                .isThrownBy(() -> streamingCodec.decode(new RawMessage(new byte[0])))
+                .withMessage("JSON is null/could not be parsed (invalid JSON)");
+        assertThatIllegalStateException()
+                .isThrownBy(() -> streamingCodec.decode(new RawMessage("{\"host\": ".getBytes(StandardCharsets.UTF_8))))
+                .withMessage("JSON is null/could not be parsed (invalid JSON)");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> streamingCodec.decode(new RawMessage("[1, 2]".getBytes(StandardCharsets.UTF_8))))
+                .withMessageEndingWith("is missing mandatory \"short_message\" or \"message\" field.");
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> streamingCodec.decode(new RawMessage("{\"host\": 1, \"short_message\": \"foo\"}".getBytes(StandardCharsets.UTF_8))))
+                .withMessageEndingWith("has invalid \"host\": 1");
+    }
+
+    @Test
+    public void streamingDecoderRespectsDecompressSizeLimit() throws Exception {
+        final GelfCodec streamingCodec = streamingCodec(Collections.singletonMap("decompress_size_limit", 20));
+        final String json = "{\"host\": \"example.org\", \"short_message\": \"A short message that helps you identify what is going on\"}";
+
+        assertThatIllegalStateException()
+                .isThrownBy(() -> streamingCodec.decode(new RawMessage(TestHelper.zlibCompress(json))))
+                .withMessage("JSON is null/could not be parsed (invalid JSON)")
+                .withCauseInstanceOf(JsonParseException.class);
+    }
+
+    @Test
+    public void streamingDecoderUsesConfiguredCharsetForUncompressedMessages() throws Exception {
+        final String json = "{\"host\": \"example.org\", \"short_message\": \"Gr\u00fc\u00dfe\"}";
+        final GelfCodec streamingCodec = streamingCodec(Collections.singletonMap("charset_name", "ISO-8859-1"));
+
+        final Message message = streamingCodec.decode(new RawMessage(json.getBytes(StandardCharsets.ISO_8859_1)));
+
+        assertThat(message).isNotNull();
+        assertThat(message.getMessage()).isEqualTo("Gr\u00fc\u00dfe");
+    }
+
+    private GelfCodec streamingCodec(Map<String, Object> config) {
+        final Map<String, Object> configuration = new HashMap<>(config);
+        configuration.put("streaming_decoder", true);
+        return new GelfCodec(new Configuration(configuration), aggregator);
+    }
+
+    private void assertStreamingDecoderParity(byte[] payload) {
+        final Message expected = codec.decode(new RawMessage(payload));
+        final Message actual = streamingCodec(Collections.emptyMap()).decode(new RawMessage(payload));
+
+        assertThat(expected).isNotNull();
+        assertThat(actual).isNotNull();
+        final Map<String, Object> expectedFields = new HashMap<>(expected.getFields());
+        final Map<String, Object> actualFields = new HashMap<>(actual.getFields());
+        expectedFields.remove(Message.FIELD_ID);
+        actualFields.remove(Message.FIELD_ID);
+        assertThat(actualFields).isEqualTo(expectedFields);
+    }
 }
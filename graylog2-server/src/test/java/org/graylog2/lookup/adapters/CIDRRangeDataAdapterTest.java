@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.adapters;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+import com.google.common.net.InetAddresses;
+import org.graylog2.lookup.AllowedAuxiliaryPathChecker;
+import org.graylog2.plugin.lookup.LookupCachePurge;
+import org.graylog2.plugin.lookup.LookupResult;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.graylog2.lookup.adapters.CIDRRangeDataAdapter.Config;
+import static org.graylog2.lookup.adapters.CIDRRangeDataAdapter.NAME;
+import static org.mockito.ArgumentMatchers.isA;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CIDRRangeDataAdapterTest {
+    @Rule
+    public MockitoRule rule = MockitoJUnit.rule();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Mock
+    AllowedAuxiliaryPathChecker pathChecker;
+
+    @Mock
+    private LookupCachePurge cachePurge;
+
+    @Before
+    public void setUp() {
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+    }
+
+    @Test
+    public void doGet_returns_most_specific_subnet() throws Exception {
+        final CIDRRangeDataAdapter adapter = startAdapter(config(resource("CIDRRangeDataAdapterTest.csv"), "cidr", null, "site"));
+
+        assertThat(adapter.doGet("10.1.1.1")).isEqualTo(LookupResult.multi("Berlin",
+                ImmutableMap.<Object, Object>of("cidr", "10.1.0.0/16", "site", "Berlin", "owner", "IT")));
+        assertThat(adapter.doGet("10.1.20.7")).isEqualTo(LookupResult.multi("Berlin",
+                ImmutableMap.<Object, Object>of("cidr", "10.1.20.0/24", "site", "Berlin", "owner", "Finance")));
+        assertThat(adapter.doGet(" 192.168.7.1 ").singleValue()).isEqualTo("Hamburg");
+        assertThat(adapter.doGet(InetAddresses.forString("2001:db8:1:2::1")).singleValue()).isEqualTo("Hamburg");
+        assertThat(adapter.doGet("192.168.7.2")).isEqualTo(LookupResult.empty());
+        assertThat(adapter.doGet("10.2.0.1")).isEqualTo(LookupResult.empty());
+        assertThat(adapter.doGet("example.org")).isEqualTo(LookupResult.empty());
+        assertThat(adapter.getError()).isEmpty();
+    }
+
+    @Test
+    public void doGet_supports_address_ranges() throws Exception {
+        final CIDRRangeDataAdapter adapter = startAdapter(config(resource("CIDRRangeDataAdapterTest-ranges.csv"), "first", "last", "site"));
+
+        assertThat(adapter.doGet("10.2.0.0").singleValue()).isEqualTo("Munich");
+        assertThat(adapter.doGet("10.2.3.255").singleValue()).isEqualTo("Munich");
+        assertThat(adapter.doGet("10.2.4.9")).isEqualTo(LookupResult.empty());
+        assertThat(adapter.doGet("10.2.4.10").singleValue()).isEqualTo("Munich DMZ");
+        assertThat(adapter.doGet("10.2.4.99").singleValue()).isEqualTo("Munich DMZ");
+        assertThat(adapter.doGet("10.2.4.100")).isEqualTo(LookupResult.empty());
+    }
+
+    @Test
+    public void start_with_invalid_file_sets_error() throws Exception {
+        final CIDRRangeDataAdapter adapter = startAdapter(config(resource("CIDRRangeDataAdapterTest-invalid.csv"), "cidr", null, "site"));
+
+        assertThat(adapter.getError()).isPresent();
+        assertThat(adapter.doGet("10.1.0.1")).isEqualTo(LookupResult.empty());
+    }
+
+    @Test
+    public void refresh_replaces_data_and_keeps_previous_data_for_invalid_file() throws Exception {
+        final Path csvFile = temporaryFolder.newFile("networks.csv").toPath();
+        Files.copy(resource("CIDRRangeDataAdapterTest.csv"), csvFile, StandardCopyOption.REPLACE_EXISTING);
+        final CIDRRangeDataAdapter adapter = startAdapter(config(csvFile, "cidr", null, "site"));
+        assertThat(adapter.doGet("10.1.1.1").singleValue()).isEqualTo("Berlin");
+
+        Files.copy(resource("CIDRRangeDataAdapterTest-invalid.csv"), csvFile, StandardCopyOption.REPLACE_EXISTING);
+        adapter.doRefresh(cachePurge);
+
+        assertThat(adapter.getError()).isPresent();
+        assertThat(adapter.doGet("10.1.1.1").singleValue()).isEqualTo("Berlin");
+        verify(cachePurge, never()).purgeAll();
+
+        Files.write(csvFile, "\"cidr\",\"site\"\n\"10.1.0.0/16\",\"Potsdam\"\n".getBytes());
+        adapter.doRefresh(cachePurge);
+
+        assertThat(adapter.getError()).isEmpty();
+        assertThat(adapter.doGet("10.1.1.1").singleValue()).isEqualTo("Potsdam");
+        assertThat(adapter.doGet("192.168.7.1")).isEqualTo(LookupResult.empty());
+        verify(cachePurge).purgeAll();
+    }
+
+    private CIDRRangeDataAdapter startAdapter(Config config) throws Exception {
+        final CIDRRangeDataAdapter adapter = new CIDRRangeDataAdapter("id", "name", config, new MetricRegistry(), pathChecker);
+        adapter.doStart();
+        return adapter;
+    }
+
+    private static Path resource(String name) throws Exception {
+        final URL resource = Resources.getResource("org/graylog2/lookup/adapters/" + name);
+        return Paths.get(resource.toURI());
+    }
+
+    private static Config config(Path path, String cidrColumn, String rangeEndColumn, String valueColumn) {
+        final Config.Builder builder = Config.builder()
+                .type(NAME)
+                .path(path.toString())
+                .separator(",")
+                .quotechar("\"")
+                .cidrColumn(cidrColumn)
+                .valueColumn(valueColumn)
+                .checkInterval(60);
+        if (rangeEndColumn != null) {
+            builder.rangeEndColumn(rangeEndColumn);
+        }
+        return builder.build();
+    }
+}
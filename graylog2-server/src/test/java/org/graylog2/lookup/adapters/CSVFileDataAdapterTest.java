@@ -24,14 +24,21 @@ import org.graylog2.plugin.lookup.LookupCachePurge;
 import org.graylog2.plugin.lookup.LookupResult;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.io.IOException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
@@ -43,12 +50,16 @@ import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CSVFileDataAdapterTest {
     @Rule
     public MockitoRule rule = MockitoJUnit.rule();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private final Path csvFile;
     private CSVFileDataAdapter csvFileDataAdapter;
 
@@ -70,7 +81,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void doGet_successfully_returns_values() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, dataDir()));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
         csvFileDataAdapter.doStart();
 
@@ -91,7 +102,7 @@ public class CSVFileDataAdapterTest {
                                     .checkInterval(60)
                                     .caseInsensitiveLookup(false)
                                     .build();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, dataDir()));
         when(pathChecker.fileIsInAllowedPath((isA(Path.class)))).thenReturn(true);
         csvFileDataAdapter.doStart();
 
@@ -100,11 +111,62 @@ public class CSVFileDataAdapterTest {
         assertThat(csvFileDataAdapter.doGet("quux")).isEqualTo(LookupResult.empty());
     }
 
+    @Test
+    public void doGet_successfully_returns_values_from_memory_mapped_file() throws Exception {
+        final Config config = baseConfigBuilder().memoryMapped(true).build();
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, dataDir());
+        csvFileDataAdapter.doStart();
+
+        assertThat(csvFileDataAdapter.doGet("foo")).isEqualTo(LookupResult.single("23"));
+        assertThat(csvFileDataAdapter.doGet("bar")).isEqualTo(LookupResult.single("42"));
+        assertThat(csvFileDataAdapter.doGet("quux")).isEqualTo(LookupResult.empty());
+        assertThat(csvFileDataAdapter.doGet("FOO")).isEqualTo(LookupResult.empty());
+        assertThat(mappedFiles()).hasSize(1);
+
+        csvFileDataAdapter.doStop();
+        assertThat(mappedFiles()).isEmpty();
+    }
+
+    @Test
+    public void doGet_memory_mapped_case_insensitive() throws Exception {
+        final Config config = baseConfigBuilder().memoryMapped(true).caseInsensitiveLookup(true).build();
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, dataDir());
+        csvFileDataAdapter.doStart();
+
+        assertThat(csvFileDataAdapter.doGet("FOO")).isEqualTo(LookupResult.single("23"));
+        assertThat(csvFileDataAdapter.doGet("Bar")).isEqualTo(LookupResult.single("42"));
+    }
+
+    @Test
+    public void refresh_memory_mapped_replaces_file() throws Exception {
+        final Path file = temporaryFolder.newFile("lookup.csv").toPath();
+        Files.write(file, "key,value\nfoo,23\n".getBytes(StandardCharsets.UTF_8));
+        final Config config = baseConfigBuilder().path(file.toString()).memoryMapped(true).build();
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+        // left behind by a previous run
+        Files.createDirectories(dataDir().resolve("lookup-tables"));
+        Files.createFile(dataDir().resolve("lookup-tables").resolve("csvfile-id-stale.kv"));
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, dataDir());
+        csvFileDataAdapter.doStart();
+        assertThat(mappedFiles()).hasSize(1);
+        final Path initialFile = mappedFiles().get(0);
+
+        Files.write(file, "key,value\nfoo,24\nbar,42\n".getBytes(StandardCharsets.UTF_8));
+        csvFileDataAdapter.doRefresh(cachePurge);
+
+        assertThat(csvFileDataAdapter.doGet("foo")).isEqualTo(LookupResult.single("24"));
+        assertThat(csvFileDataAdapter.doGet("bar")).isEqualTo(LookupResult.single("42"));
+        assertThat(mappedFiles()).hasSize(1).doesNotContain(initialFile);
+        verify(cachePurge).purgeAll();
+    }
+
     @Test
     public void doGet_failure_filePathInvalid() throws Exception {
         final Config config = baseConfig();
         when(pathChecker.fileIsInAllowedPath((isA(Path.class)))).thenReturn(false);
-        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker);
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, dataDir());
         assertThatThrownBy(() -> csvFileDataAdapter.doStart())
                 .isExactlyInstanceOf(IllegalStateException.class)
                 .hasMessageStartingWith(CSVFileDataAdapter.ALLOWED_PATH_ERROR);
@@ -113,7 +175,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void refresh_success() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, dataDir()));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true).thenReturn(true);
         csvFileDataAdapter.doStart();
         csvFileDataAdapter.doRefresh(cachePurge);
@@ -123,7 +185,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void refresh_failure_disallowedFileLocation() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, dataDir()));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true).thenReturn(false);
         csvFileDataAdapter.doStart();
         csvFileDataAdapter.doRefresh(cachePurge);
@@ -188,6 +250,10 @@ public class CSVFileDataAdapterTest {
     }
 
     private Config baseConfig() {
+        return baseConfigBuilder().build();
+    }
+
+    private Config.Builder baseConfigBuilder() {
         return Config.builder()
                      .type(NAME)
                      .path(csvFile.toString())
@@ -196,7 +262,16 @@ public class CSVFileDataAdapterTest {
                      .keyColumn("key")
                      .valueColumn("value")
                      .checkInterval(60)
-                     .caseInsensitiveLookup(false)
-                     .build();
+                     .caseInsensitiveLookup(false);
+    }
+
+    private Path dataDir() {
+        return temporaryFolder.getRoot().toPath();
+    }
+
+    private List<Path> mappedFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dataDir().resolve("lookup-tables"))) {
+            return files.collect(Collectors.toList());
+        }
     }
 }
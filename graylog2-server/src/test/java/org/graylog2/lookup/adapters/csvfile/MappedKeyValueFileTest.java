@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.adapters.csvfile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MappedKeyValueFileTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void getReturnsValues() throws Exception {
+        final MappedKeyValueFile.Builder builder = MappedKeyValueFile.builder(temporaryFolder.getRoot().toPath().resolve("table.kv"));
+        for (int i = 0; i < 10_000; i++) {
+            builder.put("key-" + i, "value-" + i);
+        }
+        builder.put("küy", "välue").put("", "empty key").put("empty value", "");
+        final MappedKeyValueFile table = builder.build();
+
+        assertThat(table.size()).isEqualTo(10_003);
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(table.get("key-" + i)).isEqualTo("value-" + i);
+        }
+        assertThat(table.get("küy")).isEqualTo("välue");
+        assertThat(table.get("")).isEqualTo("empty key");
+        assertThat(table.get("empty value")).isEmpty();
+        assertThat(table.get("key-10000")).isNull();
+        assertThat(table.get("KEY-1")).isNull();
+    }
+
+    @Test
+    public void emptyTable() throws Exception {
+        final MappedKeyValueFile table = MappedKeyValueFile.builder(temporaryFolder.getRoot().toPath().resolve("table.kv")).build();
+
+        assertThat(table.size()).isZero();
+        assertThat(table.get("foo")).isNull();
+    }
+
+    @Test
+    public void duplicateKeysAreRejected() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("table.kv");
+
+        assertThatThrownBy(() -> {
+            try (MappedKeyValueFile.Builder builder = MappedKeyValueFile.builder(file)) {
+                builder.put("foo", "1").put("bar", "2").put("foo", "3").build();
+            }
+        }).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("<foo>");
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    public void tableIsReadableAfterDelete() throws Exception {
+        final Path file = temporaryFolder.getRoot().toPath().resolve("table.kv");
+        final MappedKeyValueFile table = MappedKeyValueFile.builder(file).put("foo", "bar").build();
+
+        table.delete();
+
+        assertThat(Files.exists(file)).isFalse();
+        assertThat(table.get("foo")).isEqualTo("bar");
+    }
+}
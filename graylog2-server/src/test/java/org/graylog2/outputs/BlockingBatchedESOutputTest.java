@@ -17,6 +17,7 @@
 package org.graylog2.outputs;
 
 import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import org.graylog2.Configuration;
@@ -29,17 +30,26 @@ import org.graylog2.shared.messageq.MessageQueueAcknowledger;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class BlockingBatchedESOutputTest {
     @Rule
@@ -64,6 +74,12 @@ public class BlockingBatchedESOutputTest {
             public int getOutputBatchSize() {
                 return 3;
             }
+
+            @Override
+            public int getOutputFlushInterval() {
+                // forceFlushIfTimedout() flushes even right after a flush
+                return 0;
+            }
         };
     }
 
@@ -96,6 +112,226 @@ public class BlockingBatchedESOutputTest {
         verify(messages, times(1)).bulkIndex(eq(messageList));
     }
 
+    @Test
+    public void writeFlushesWhenByteLimitIsReached() throws Exception {
+        final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(2);
+        final long firstMessageSize = messageList.get(0).getValue().getSize();
+        final Configuration byteLimitConfig = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return 3;
+            }
+
+            @Override
+            public Size getOutputBatchSizeBytes() {
+                return Size.bytes(firstMessageSize);
+            }
+        };
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, byteLimitConfig, journal, acknowledger);
+
+        for (Map.Entry<IndexSet, Message> entry : messageList) {
+            output.writeMessageEntry(entry);
+        }
+
+        // Every message reaches the byte limit on its own, the count limit is never hit
+        verify(messages, times(1)).bulkIndex(eq(messageList.subList(0, 1)));
+        verify(messages, times(1)).bulkIndex(eq(messageList.subList(1, 2)));
+    }
+
+    @Test
+    public void forceFlushIfTimedOutFlushesBuffersOfAllThreads() throws Exception {
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, config, journal, acknowledger);
+
+        final List<Map.Entry<IndexSet, Message>> firstList = buildMessages(config.getOutputBatchSize() - 1);
+        final List<Map.Entry<IndexSet, Message>> secondList = buildMessages(config.getOutputBatchSize() - 1);
+
+        writeInThread(output, firstList);
+        writeInThread(output, secondList);
+
+        // Every thread fills its own buffer, so neither of them reached the batch size
+        verify(messages, never()).bulkIndex(anyList());
+
+        output.forceFlushIfTimedout();
+
+        verify(messages, times(1)).bulkIndex(eq(firstList));
+        verify(messages, times(1)).bulkIndex(eq(secondList));
+    }
+
+    @Test
+    public void asyncFlushAcknowledgesBatchesInOrder() throws Exception {
+        final Configuration asyncConfig = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return 2;
+            }
+
+            @Override
+            public int getOutputBulkMaxInFlightRequests() {
+                return 2;
+            }
+        };
+        final CompletableFuture<List<String>> firstRequest = new CompletableFuture<>();
+        final CompletableFuture<List<String>> secondRequest = new CompletableFuture<>();
+        when(messages.bulkIndexAsync(anyList(), any())).thenReturn(firstRequest, secondRequest);
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, asyncConfig, journal, acknowledger);
+
+        final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(4);
+        for (Map.Entry<IndexSet, Message> entry : messageList) {
+            output.writeMessageEntry(entry);
+        }
+
+        // Both batches are in flight without blocking the writing thread
+        verify(messages, times(1)).bulkIndexAsync(eq(messageList.subList(0, 2)), any());
+        verify(messages, times(1)).bulkIndexAsync(eq(messageList.subList(2, 4)), any());
+
+        // The second batch must not be acknowledged before the first one
+        secondRequest.complete(Collections.emptyList());
+        verify(acknowledger, never()).acknowledge(anyList());
+
+        firstRequest.complete(Collections.emptyList());
+        final InOrder inOrder = inOrder(acknowledger);
+        inOrder.verify(acknowledger).acknowledge(eq(messageValues(messageList.subList(0, 2))));
+        inOrder.verify(acknowledger).acknowledge(eq(messageValues(messageList.subList(2, 4))));
+    }
+
+    @Test
+    public void doesNotAcknowledgeOffsetsAboveMessagesBufferedInOtherStripes() throws Exception {
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, config, journal, acknowledger);
+
+        final List<Map.Entry<IndexSet, Message>> lowerOffsets = buildMessages(config.getOutputBatchSize() - 1, 0);
+        final List<Map.Entry<IndexSet, Message>> higherOffsets = buildMessages(config.getOutputBatchSize(), 10);
+
+        // the first stripe keeps its messages buffered while the second one fills up and flushes
+        writeInThread(output, lowerOffsets);
+        writeInThread(output, higherOffsets);
+
+        verify(messages, times(1)).bulkIndex(eq(higherOffsets));
+        verify(acknowledger, never()).acknowledge(anyList());
+
+        output.forceFlushIfTimedout();
+
+        verify(messages, times(1)).bulkIndex(eq(lowerOffsets));
+        verify(acknowledger, times(1)).acknowledge(eq(messageValues(ImmutableList.<Map.Entry<IndexSet, Message>>builder()
+                .addAll(lowerOffsets)
+                .addAll(higherOffsets)
+                .build())));
+    }
+
+    @Test
+    public void failedBatchDoesNotHoldBackOtherStripes() throws Exception {
+        final List<Map.Entry<IndexSet, Message>> failing = buildMessages(config.getOutputBatchSize(), 0);
+        final List<Map.Entry<IndexSet, Message>> succeeding = buildMessages(config.getOutputBatchSize() - 1, 10);
+        when(messages.bulkIndex(eq(failing))).thenThrow(new RuntimeException("bulk request failed"));
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, config, journal, acknowledger);
+
+        writeInThread(output, succeeding);
+        writeInThread(output, failing);
+        output.forceFlushIfTimedout();
+
+        verify(acknowledger, times(1)).acknowledge(eq(messageValues(succeeding)));
+    }
+
+    @Test
+    public void interruptedAsyncFlushDoesNotHoldBackOtherStripes() throws Exception {
+        final Configuration asyncConfig = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return 3;
+            }
+
+            @Override
+            public int getOutputBulkMaxInFlightRequests() {
+                return 2;
+            }
+        };
+        when(messages.bulkIndexAsync(anyList(), any())).thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, asyncConfig, journal, acknowledger);
+
+        final List<Map.Entry<IndexSet, Message>> interrupted = buildMessages(asyncConfig.getOutputBatchSize(), 0);
+        final List<Map.Entry<IndexSet, Message>> succeeding = buildMessages(asyncConfig.getOutputBatchSize() - 1, 10);
+
+        writeInThread(output, succeeding);
+        final Thread thread = new Thread(() -> {
+            Thread.currentThread().interrupt();
+            for (Map.Entry<IndexSet, Message> entry : interrupted) {
+                try {
+                    output.writeMessageEntry(entry);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        output.forceFlushIfTimedout();
+
+        verify(messages, never()).bulkIndexAsync(eq(interrupted), any());
+        verify(acknowledger, times(1)).acknowledge(eq(messageValues(succeeding)));
+    }
+
+    @Test
+    public void stopWaitsForBulkRequestsInFlight() throws Exception {
+        final Configuration asyncConfig = new Configuration() {
+            @Override
+            public int getOutputBatchSize() {
+                return 2;
+            }
+
+            @Override
+            public int getOutputBulkMaxInFlightRequests() {
+                return 2;
+            }
+        };
+        final CompletableFuture<List<String>> request = new CompletableFuture<>();
+        when(messages.bulkIndexAsync(anyList(), any())).thenReturn(request);
+        final BlockingBatchedESOutput output = new BlockingBatchedESOutput(metricRegistry, messages, asyncConfig, journal, acknowledger);
+
+        final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(2);
+        for (Map.Entry<IndexSet, Message> entry : messageList) {
+            output.writeMessageEntry(entry);
+        }
+
+        final Thread completion = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            request.complete(Collections.emptyList());
+        });
+        completion.start();
+        output.stop();
+        completion.join();
+
+        verify(acknowledger, times(1)).acknowledge(eq(messageValues(messageList)));
+    }
+
+    private List<Message> messageValues(List<Map.Entry<IndexSet, Message>> messageList) {
+        return messageList.stream().map(Map.Entry::getValue).collect(Collectors.toList());
+    }
+
+    private void writeInThread(BlockingBatchedESOutput output, List<Map.Entry<IndexSet, Message>> messageList) throws Exception {
+        final Thread thread = new Thread(() -> {
+            for (Map.Entry<IndexSet, Message> entry : messageList) {
+                try {
+                    output.writeMessageEntry(entry);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+    }
+
+    private List<Map.Entry<IndexSet, Message>> buildMessages(final int count, final long firstOffset) {
+        final List<Map.Entry<IndexSet, Message>> messageList = buildMessages(count);
+        long offset = firstOffset;
+        for (Map.Entry<IndexSet, Message> entry : messageList) {
+            entry.getValue().setMessageQueueId(offset++);
+        }
+        return messageList;
+    }
+
     private List<Map.Entry<IndexSet, Message>> buildMessages(final int count) {
         final ImmutableList.Builder<Map.Entry<IndexSet, Message>> builder = ImmutableList.builder();
         for (int i = 0; i < count; i++) {
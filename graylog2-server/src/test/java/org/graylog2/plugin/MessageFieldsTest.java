@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin;
+
+import org.junit.Test;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MessageFieldsTest {
+    @Test
+    public void putGetAndRemove() {
+        final MessageFields fields = new MessageFields();
+
+        assertThat(fields.put("foo", "bar")).isNull();
+        assertThat(fields.put("foo", "baz")).isEqualTo("bar");
+        assertThat(fields.get("foo")).isEqualTo("baz");
+        assertThat(fields.containsKey("foo")).isTrue();
+        assertThat(fields.get("missing")).isNull();
+        assertThat(fields.get(null)).isNull();
+        assertThat(fields).hasSize(1);
+
+        assertThat(fields.remove("foo")).isEqualTo("baz");
+        assertThat(fields.remove("foo")).isNull();
+        assertThat(fields).isEmpty();
+    }
+
+    @Test
+    public void usesCanonicalInstancesOfReservedFieldNames() {
+        final MessageFields fields = new MessageFields();
+        final String customName = new String("field_name");
+
+        fields.put(new String(Message.FIELD_SOURCE), "source");
+        fields.put(customName, 1);
+
+        assertThat(fields.keySet()).anySatisfy(key -> assertThat(key).isSameAs(Message.FIELD_SOURCE));
+        assertThat(fields.keySet()).anySatisfy(key -> assertThat(key).isSameAs(customName));
+    }
+
+    @Test
+    public void iteratorRemovesEntries() {
+        final MessageFields fields = new MessageFields();
+        final Map<String, Object> expected = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            fields.put("field_" + i, i);
+            expected.put("field_" + i, i);
+        }
+
+        final Set<String> returned = new HashSet<>();
+        final Iterator<Map.Entry<String, Object>> it = fields.entrySet().iterator();
+        while (it.hasNext()) {
+            final Map.Entry<String, Object> entry = it.next();
+            // every entry is returned exactly once, even though removals shift other entries around
+            assertThat(returned.add(entry.getKey())).isTrue();
+            if ((Integer) entry.getValue() % 3 != 0) {
+                it.remove();
+                expected.remove(entry.getKey());
+            }
+        }
+
+        assertThat(returned).hasSize(200);
+        assertThat(fields).isEqualTo(expected);
+        for (String key : expected.keySet()) {
+            assertThat(fields.get(key)).isEqualTo(expected.get(key));
+        }
+        assertThatThrownBy(it::remove).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void entrySetValueUpdatesField() {
+        final MessageFields fields = new MessageFields();
+        fields.put("foo", "bar");
+        fields.put("baz", "qux");
+
+        for (Map.Entry<String, Object> entry : fields.entrySet()) {
+            assertThat(entry.setValue(entry.getValue() + "!")).isIn("bar", "qux");
+        }
+
+        assertThat(fields).containsEntry("foo", "bar!").containsEntry("baz", "qux!");
+    }
+
+    @Test
+    public void iteratorFailsFastOnConcurrentModification() {
+        final MessageFields fields = new MessageFields();
+        fields.put("foo", "bar");
+        fields.put("baz", "qux");
+
+        final Iterator<Map.Entry<String, Object>> it = fields.entrySet().iterator();
+        it.next();
+        // replacing a value is not a structural modification
+        fields.put("foo", "changed");
+        it.next();
+        fields.put("new", "field");
+
+        assertThatThrownBy(it::next).isInstanceOf(ConcurrentModificationException.class);
+        assertThatThrownBy(it::remove).isInstanceOf(ConcurrentModificationException.class);
+    }
+
+    @Test
+    public void behavesLikeHashMap() {
+        final Random random = new Random(42L);
+        final MessageFields fields = new MessageFields();
+        final Map<String, Object> expected = new HashMap<>();
+
+        for (int i = 0; i < 20_000; i++) {
+            final String key = "field_" + random.nextInt(200);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertThat(fields.remove(key)).isEqualTo(expected.remove(key));
+                    break;
+                default:
+                    assertThat(fields.put(key, i)).isEqualTo(expected.put(key, i));
+            }
+            assertThat(fields.size()).isEqualTo(expected.size());
+        }
+
+        assertThat(fields).isEqualTo(expected);
+        for (String key : expected.keySet()) {
+            assertThat(fields.get(key)).isEqualTo(expected.get(key));
+        }
+
+        fields.clear();
+        assertThat(fields).isEmpty();
+        assertThat(fields.entrySet()).isEmpty();
+    }
+}
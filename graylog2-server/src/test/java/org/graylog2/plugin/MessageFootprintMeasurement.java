@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin;
+
+import com.codahale.metrics.Counter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.graylog2.shared.SuppressForbidden;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Measures the heap a {@link Message} needs for its fields, streams, index sets and size, comparing the
+ * {@link java.util.HashMap}, {@link java.util.HashSet} and {@link Counter} the message used to hold with the
+ * {@link MessageFields}, {@link SmallSet} and {@code long} it holds now.
+ * <p>
+ * Each message gets 20 fields whose names are created per message like a codec would decode them, 8 of them
+ * reserved Graylog fields, as well as 2 streams and 1 index set. Field values, streams and index sets are shared by
+ * all messages, so only the containers and field names are measured. The measurement compares the used heap after
+ * garbage collection before and after allocating the messages, so run it on an otherwise idle JVM with a fixed heap:
+ * <pre>
+ * java -Xms2g -Xmx2g -XX:+UseParallelGC -cp &lt;test classpath&gt; org.graylog2.plugin.MessageFootprintMeasurement
+ * </pre>
+ */
+public class MessageFootprintMeasurement {
+    private static final int MESSAGES = 200_000;
+    private static final List<String> RESERVED_FIELD_NAMES = ImmutableList.of(
+            Message.FIELD_ID,
+            Message.FIELD_MESSAGE,
+            Message.FIELD_SOURCE,
+            Message.FIELD_TIMESTAMP,
+            Message.FIELD_GL2_SOURCE_INPUT,
+            Message.FIELD_GL2_SOURCE_NODE,
+            Message.FIELD_GL2_REMOTE_IP,
+            Message.FIELD_GL2_MESSAGE_ID);
+    private static final int CUSTOM_FIELDS = 12;
+    private static final Object VALUE = "value";
+    private static final Object STREAM_1 = new Object();
+    private static final Object STREAM_2 = new Object();
+    private static final Object INDEX_SET = new Object();
+
+    public static void main(String[] args) throws InterruptedException {
+        final long previous = bytesPerMessage(() -> new Storage(Maps.newHashMap(), Sets.newHashSet(), Sets.newHashSet(), new Counter()));
+        final long current = bytesPerMessage(() -> new Storage(new MessageFields(), new SmallSet<>(), new SmallSet<>(), null));
+
+        System.out.println("HashMap/HashSet/Counter:     " + previous + " bytes per message");
+        System.out.println("MessageFields/SmallSet/long: " + current + " bytes per message");
+        System.out.println("Saved:                       " + (previous - current) + " bytes per message");
+    }
+
+    private static long bytesPerMessage(Supplier<Storage> storageSupplier) throws InterruptedException {
+        final Storage[] messages = new Storage[MESSAGES];
+        final long before = usedHeapAfterGc();
+        for (int i = 0; i < MESSAGES; i++) {
+            final Storage storage = storageSupplier.get();
+            for (String name : RESERVED_FIELD_NAMES) {
+                storage.fields.put(new String(name.toCharArray()), VALUE);
+            }
+            for (int field = 0; field < CUSTOM_FIELDS; field++) {
+                storage.fields.put("custom_field_" + field, VALUE);
+            }
+            storage.streams.add(STREAM_1);
+            storage.streams.add(STREAM_2);
+            storage.indexSets.add(INDEX_SET);
+            storage.recordSize(42);
+            messages[i] = storage;
+        }
+        final long after = usedHeapAfterGc();
+        // keep the messages reachable until the heap has been measured
+        if (messages[MESSAGES - 1] == null) {
+            throw new IllegalStateException();
+        }
+        return (after - before) / MESSAGES;
+    }
+
+    @SuppressForbidden("Measuring the retained heap needs a full garbage collection")
+    private static long usedHeapAfterGc() throws InterruptedException {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * The storage a message needs for its fields, streams, index sets and size.
+     */
+    private static class Storage {
+        final Map<String, Object> fields;
+        final Set<Object> streams;
+        final Set<Object> indexSets;
+        final Counter sizeCounter;
+        long size;
+
+        Storage(Map<String, Object> fields, Set<Object> streams, Set<Object> indexSets, Counter sizeCounter) {
+            this.fields = fields;
+            this.streams = streams;
+            this.indexSets = indexSets;
+            this.sizeCounter = sizeCounter;
+        }
+
+        void recordSize(long bytes) {
+            if (sizeCounter != null) {
+                sizeCounter.inc(bytes);
+            } else {
+                size += bytes;
+            }
+        }
+    }
+}
@@ -19,6 +19,8 @@ package org.graylog2.plugin;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.eaio.uuid.UUID;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -40,6 +42,7 @@ import org.junit.Test;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.io.ByteArrayOutputStream;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -456,6 +459,55 @@ public class MessageTest {
         assertThat(streams).containsOnly("stream-id");
     }
 
+    @Test
+    public void testWriteElasticSearchObjectMatchesToElasticSearchObject() throws Exception {
+        final Stream stream = mock(Stream.class);
+        when(stream.getId()).thenReturn("stream-id");
+        when(stream.getIndexSet()).thenReturn(mock(IndexSet.class));
+        message.addStream(stream);
+        message.addField("field1", "wat");
+        message.addField("number", 42L);
+        message.addField("date", new DateTime(2018, 4, 19, 12, 0, DateTimeZone.UTC));
+        message.addField("gl2_accounted_message_size", 1);
+
+        final JsonNode streamed = writeElasticSearchObject(message, invalidTimestampMeter);
+
+        assertThat(streamed).isEqualTo(objectMapper.readTree(objectMapper.writeValueAsBytes(message.toElasticSearchObject(objectMapper, invalidTimestampMeter))));
+        assertThat(streamed.has(Message.FIELD_ID)).isFalse();
+        assertThat(streamed.get("gl2_accounted_message_size").asLong()).isEqualTo(message.getSize());
+    }
+
+    @Test
+    public void testWriteElasticSearchObjectWithInvalidKey() throws Exception {
+        message.addField("field.3", "dot");
+        message.addField("field_3", "underscore");
+
+        final JsonNode streamed = writeElasticSearchObject(message, invalidTimestampMeter);
+
+        assertThat(streamed).isEqualTo(objectMapper.readTree(objectMapper.writeValueAsBytes(message.toElasticSearchObject(objectMapper, invalidTimestampMeter))));
+        assertThat(streamed.has("field.3")).isFalse();
+    }
+
+    @Test
+    public void testWriteElasticSearchObjectWithoutDateTimeTimestamp() throws Exception {
+        message.addField("timestamp", "time!");
+
+        final Meter errorMeter = metricRegistry.meter("test-meter");
+        final JsonNode streamed = writeElasticSearchObject(message, errorMeter);
+
+        assertThat(streamed.get("timestamp").asText()).isEqualTo(Tools.buildElasticSearchTimeFormat(Tools.nowUTC()));
+        assertThat(streamed.has(Message.FIELD_GL2_PROCESSING_ERROR)).isTrue();
+        assertEquals(1, errorMeter.getCount());
+    }
+
+    private JsonNode writeElasticSearchObject(Message message, Meter meter) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            message.writeElasticSearchObject(objectMapper, generator, meter);
+        }
+        return objectMapper.readTree(outputStream.toByteArray());
+    }
+
     @Test
     public void testToElasticsearchObjectAddsAccountedMessageSize() {
         final Message message = new Message("message", "source", Tools.nowUTC());
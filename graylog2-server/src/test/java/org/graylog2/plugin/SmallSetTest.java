@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SmallSetTest {
+    @Test
+    public void keepsInsertionOrderWithoutDuplicates() {
+        final SmallSet<String> set = new SmallSet<>(ImmutableList.of("a", "b", "a", "c"));
+
+        assertThat(set).containsExactly("a", "b", "c");
+        assertThat(set.add("b")).isFalse();
+        assertThat(set.remove("b")).isTrue();
+        assertThat(set.remove("b")).isFalse();
+        assertThat(set).containsExactly("a", "c");
+    }
+
+    @Test
+    public void iteratorRemovesElements() {
+        final SmallSet<Integer> set = new SmallSet<>(ImmutableList.of(1, 2, 3, 4));
+
+        final Iterator<Integer> iterator = set.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) {
+                iterator.remove();
+            }
+        }
+
+        assertThat(set).containsExactly(1, 3);
+    }
+
+    @Test
+    public void behavesLikeHashSetBeyondArraySize() {
+        final Random random = new Random(42L);
+        final SmallSet<Integer> set = new SmallSet<>();
+        final Set<Integer> expected = new HashSet<>();
+
+        for (int i = 0; i < 5_000; i++) {
+            final int value = random.nextInt(SmallSet.MAX_ARRAY_SIZE * 3);
+            if (random.nextBoolean()) {
+                assertThat(set.add(value)).isEqualTo(expected.add(value));
+            } else {
+                assertThat(set.remove(value)).isEqualTo(expected.remove(value));
+            }
+            assertThat(set).hasSize(expected.size());
+        }
+
+        assertThat(set).isEqualTo(expected);
+
+        set.clear();
+        assertThat(set).isEmpty();
+        assertThat(set.add(1)).isTrue();
+        assertThat(set).containsExactly(1);
+    }
+}
@@ -16,9 +16,14 @@
  */
 package org.graylog2.plugin.journal;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.system.NodeId;
+import org.graylog2.shared.journal.JournalCodecConfigStore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
 import java.io.IOException;
@@ -27,8 +32,13 @@ import java.nio.charset.StandardCharsets;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class RawMessageTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test
     public void minimalEncodeDecode() throws IOException {
         final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
@@ -44,4 +54,38 @@ public class RawMessageTest {
         assertArrayEquals("testmessage".getBytes(StandardCharsets.UTF_8), decodedMsg.getPayload());
         assertEquals("raw", decodedMsg.getCodecName());
     }
+
+    @Test
+    public void encodeDecodeWithCodecConfigReference() throws IOException {
+        final CodecConfigStore codecConfigStore = new JournalCodecConfigStore(temporaryFolder.newFolder().toPath(), new MetricRegistry());
+        final Configuration codecConfig = new Configuration(ImmutableMap.of("charset", "UTF-8"));
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(codecConfig);
+
+        final byte[] encoded = rawMessage.encode(codecConfigStore);
+        final RawMessage decodedMsg = RawMessage.decode(encoded, 1, codecConfigStore);
+
+        assertNotNull(decodedMsg);
+        assertEquals(RawMessage.CODEC_CONFIG_REFERENCE_VERSION, decodedMsg.getVersion());
+        assertArrayEquals("testmessage".getBytes(StandardCharsets.UTF_8), decodedMsg.getPayload());
+        assertSame(codecConfig, decodedMsg.getCodecConfig());
+
+        // referenced codec configurations cannot be resolved without the store
+        assertNull(RawMessage.decode(encoded, 1));
+    }
+
+    @Test
+    public void decodeCurrentVersionWithCodecConfigStore() throws IOException {
+        final CodecConfigStore codecConfigStore = new JournalCodecConfigStore(temporaryFolder.newFolder().toPath(), new MetricRegistry());
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(new Configuration(ImmutableMap.of("charset", "UTF-8")));
+
+        final RawMessage decodedMsg = RawMessage.decode(rawMessage.encode(), 1, codecConfigStore);
+
+        assertNotNull(decodedMsg);
+        assertEquals(RawMessage.CURRENT_VERSION, decodedMsg.getVersion());
+        assertEquals("UTF-8", decodedMsg.getCodecConfig().getString("charset"));
+    }
 }
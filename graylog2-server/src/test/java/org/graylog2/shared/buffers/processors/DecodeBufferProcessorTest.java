@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.buffers.ProcessBuffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DecodeBufferProcessorTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private DecodingProcessor decodingProcessor;
+    @Mock
+    private ProcessBuffer processBuffer;
+
+    private MetricRegistry metricRegistry;
+    private DecodeBufferProcessor processor;
+
+    @Before
+    public void setUp() {
+        metricRegistry = new MetricRegistry();
+        processor = new DecodeBufferProcessor(metricRegistry, decodingProcessor, processBuffer);
+    }
+
+    private static MessageEvent rawEvent(String codecName) {
+        final MessageEvent event = new MessageEvent();
+        final RawMessage raw = new RawMessage(new byte[0]);
+        raw.setCodecName(codecName);
+        event.setRaw(raw);
+        return event;
+    }
+
+    @Test
+    public void passesDecodedMessageToProcessBuffer() throws Exception {
+        final Message message = new Message("test", "source", Tools.nowUTC());
+        doAnswer(invocation -> {
+            invocation.<MessageEvent>getArgument(0).setMessage(message);
+            return null;
+        }).when(decodingProcessor).onEvent(any(), anyLong(), anyBoolean());
+        final MessageEvent event = rawEvent("gelf");
+
+        processor.onEvent(event);
+
+        verify(processBuffer).insertBlocking(message);
+        assertThat(event.getMessage()).isNull();
+        assertThat(metricRegistry.timer("org.graylog2.shared.buffers.DecodeBuffer.gelf.decodeTime").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void passesAllMessagesOfMultiMessageCodecToProcessBuffer() throws Exception {
+        final List<Message> messages = ImmutableList.of(
+                new Message("test1", "source", Tools.nowUTC()),
+                new Message("test2", "source", Tools.nowUTC()));
+        doAnswer(invocation -> {
+            invocation.<MessageEvent>getArgument(0).setMessages(messages);
+            return null;
+        }).when(decodingProcessor).onEvent(any(), anyLong(), anyBoolean());
+
+        processor.onEvent(rawEvent("netflow"));
+
+        verify(processBuffer).insertBlocking(messages);
+        assertThat(metricRegistry.timer("org.graylog2.shared.buffers.DecodeBuffer.netflow.decodeTime").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void skipsMessagesWhichCouldNotBeDecoded() throws Exception {
+        processor.onEvent(rawEvent("gelf"));
+
+        verify(processBuffer, never()).insertBlocking(any(Message.class));
+        verify(processBuffer, never()).insertBlocking(any(Collection.class));
+        assertThat(metricRegistry.timer("org.graylog2.shared.buffers.DecodeBuffer.gelf.decodeTime").getCount()).isEqualTo(1);
+    }
+}
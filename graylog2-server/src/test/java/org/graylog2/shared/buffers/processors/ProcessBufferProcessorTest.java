@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Duration;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import de.huxhorn.sulky.ulid.ULID;
+import org.graylog.failure.FailureSubmissionService;
+import org.graylog2.buffers.OutputBuffer;
+import org.graylog2.messageprocessors.OrderedMessageProcessors;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Messages;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.messageprocessors.MessageProcessor;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.system.processing.ProcessingStatusRecorder;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnit;
+import org.mockito.junit.MockitoRule;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProcessBufferProcessorTest {
+    @Rule
+    public final MockitoRule mockitoRule = MockitoJUnit.rule();
+
+    @Mock
+    private OrderedMessageProcessors orderedMessageProcessors;
+    @Mock
+    private MessageProcessor messageProcessor;
+    @Mock
+    private OutputBuffer outputBuffer;
+    @Mock
+    private ProcessingStatusRecorder processingStatusRecorder;
+    @Mock
+    private DecodingProcessor decodingProcessor;
+    @Mock
+    private Stream defaultStream;
+    @Mock
+    private FailureSubmissionService failureSubmissionService;
+
+    @Before
+    public void setUp() {
+        when(orderedMessageProcessors.iterator()).thenAnswer(invocation -> ImmutableList.of(messageProcessor).iterator());
+        when(messageProcessor.process(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(failureSubmissionService.submitProcessingErrors(any())).thenReturn(true);
+    }
+
+    private ProcessBufferProcessor newProcessor(long ordinal, long numberOfConsumers, int batchSize) {
+        return new ProcessBufferProcessor(new MetricRegistry(),
+                orderedMessageProcessors,
+                outputBuffer,
+                processingStatusRecorder,
+                new ULID(),
+                decodingProcessor,
+                ordinal,
+                numberOfConsumers,
+                batchSize,
+                Duration.minutes(1L),
+                () -> defaultStream,
+                failureSubmissionService);
+    }
+
+    private static MessageEvent event(Message message) {
+        final MessageEvent event = new MessageEvent();
+        event.setRaw(new RawMessage(new byte[0]));
+        event.setMessage(message);
+        return event;
+    }
+
+    private static Message message(String text) {
+        return new Message(text, "source", Tools.nowUTC());
+    }
+
+    @Test
+    public void processesSingleMessagesInWorkerPool() throws Exception {
+        final ProcessBufferProcessor processor = newProcessor(0, 1, 1);
+        final Message message = message("test");
+
+        processor.onEvent(event(message));
+
+        verify(messageProcessor).process(message);
+        verify(outputBuffer).insertBlocking(message);
+        assertThat(message.getStreams()).containsExactly(defaultStream);
+        assertThat(message.getField(Message.FIELD_GL2_MESSAGE_ID)).isNotNull();
+    }
+
+    @Test
+    public void doesNotDecodeAlreadyDecodedMessages() throws Exception {
+        final ProcessBufferProcessor processor = newProcessor(0, 1, 1);
+        final Message message = message("test");
+        final MessageEvent event = new MessageEvent();
+        event.setMessage(message);
+
+        processor.onEvent(event);
+
+        verify(decodingProcessor, never()).onEvent(any(), anyLong(), anyBoolean());
+        verify(outputBuffer).insertBlocking(message);
+    }
+
+    @Test
+    public void processesMessagesOfDisruptorBatchTogether() throws Exception {
+        final ProcessBufferProcessor processor = newProcessor(0, 1, 100);
+        final List<Message> messages = ImmutableList.of(message("1"), message("2"), message("3"));
+
+        processor.onEvent(event(messages.get(0)), 0, false);
+        processor.onEvent(event(messages.get(1)), 1, false);
+
+        verify(messageProcessor, never()).process(any());
+        verify(outputBuffer, never()).insertBlocking(any());
+
+        processor.onEvent(event(messages.get(2)), 2, true);
+
+        final ArgumentCaptor<Messages> captor = ArgumentCaptor.forClass(Messages.class);
+        verify(messageProcessor, times(1)).process(captor.capture());
+        assertThat(captor.getValue()).containsExactlyElementsOf(messages);
+        for (Message message : messages) {
+            verify(outputBuffer).insertBlocking(message);
+        }
+    }
+
+    @Test
+    public void flushesBatchWhenBatchSizeIsReached() throws Exception {
+        final ProcessBufferProcessor processor = newProcessor(0, 1, 2);
+
+        processor.onEvent(event(message("1")), 0, false);
+        processor.onEvent(event(message("2")), 1, false);
+        processor.onEvent(event(message("3")), 2, false);
+
+        verify(messageProcessor, times(1)).process(any());
+        verify(outputBuffer, times(2)).insertBlocking(any());
+
+        processor.onEvent(event(message("4")), 3, true);
+
+        verify(messageProcessor, times(2)).process(any());
+        verify(outputBuffer, times(4)).insertBlocking(any());
+    }
+
+    @Test
+    public void onlyHandlesOwnSequences() throws Exception {
+        final ProcessBufferProcessor processor = newProcessor(1, 2, 100);
+        final Message even = message("even");
+        final Message odd = message("odd");
+        final MessageEvent evenEvent = event(even);
+
+        processor.onEvent(evenEvent, 0, false);
+        processor.onEvent(event(odd), 1, true);
+
+        verify(outputBuffer).insertBlocking(odd);
+        verify(outputBuffer, never()).insertBlocking(even);
+        // events of other processors are left alone
+        assertThat(evenEvent.getMessage()).isSameAs(even);
+    }
+
+    @Test
+    public void reportsAllMessagesOfFailedBatch() throws Exception {
+        final ProcessBufferProcessor processor = newProcessor(0, 1, 100);
+        when(messageProcessor.process(any())).thenThrow(new IllegalStateException("boom"));
+        final List<Message> messages = Lists.newArrayList(message("1"), message("2"));
+
+        processor.onEvent(event(messages.get(0)), 0, false);
+        processor.onEvent(event(messages.get(1)), 1, true);
+
+        verify(outputBuffer, never()).insertBlocking(any());
+        for (Message message : messages) {
+            verify(failureSubmissionService).submitUnknownProcessingError(eq(message), anyString());
+        }
+    }
+
+    @Test
+    public void doesNotProcessMessagesOfFailedBatchAgain() throws Exception {
+        final ProcessBufferProcessor processor = newProcessor(0, 1, 100);
+        final Message good = message("good");
+        final Message bad = message("bad");
+        when(messageProcessor.process(any())).thenAnswer(invocation -> {
+            final Messages messages = invocation.getArgument(0);
+            if (Iterables.contains(messages, bad)) {
+                throw new IllegalStateException("boom");
+            }
+            return messages;
+        });
+
+        processor.onEvent(event(good), 0, false);
+        processor.onEvent(event(bad), 1, true);
+
+        verify(messageProcessor, times(1)).process(any());
+        verify(outputBuffer, never()).insertBlocking(any());
+        verify(failureSubmissionService).submitUnknownProcessingError(eq(good), anyString());
+        verify(failureSubmissionService).submitUnknownProcessingError(eq(bad), anyString());
+    }
+
+    @Test
+    public void doesNotReportMessagesAlreadyWrittenToOutputBuffer() throws Exception {
+        final ProcessBufferProcessor processor = newProcessor(0, 1, 100);
+        final List<Message> messages = Lists.newArrayList(message("1"), message("2"), message("3"));
+        doNothing().doThrow(new IllegalStateException("boom")).when(outputBuffer).insertBlocking(any());
+
+        processor.onEvent(event(messages.get(0)), 0, false);
+        processor.onEvent(event(messages.get(1)), 1, false);
+        processor.onEvent(event(messages.get(2)), 2, true);
+
+        verify(outputBuffer, times(1)).insertBlocking(messages.get(0));
+        verify(outputBuffer, times(1)).insertBlocking(messages.get(1));
+        verify(outputBuffer, never()).insertBlocking(messages.get(2));
+        verify(failureSubmissionService, never()).submitUnknownProcessingError(eq(messages.get(0)), anyString());
+        verify(failureSubmissionService).submitUnknownProcessingError(eq(messages.get(1)), anyString());
+        verify(failureSubmissionService).submitUnknownProcessingError(eq(messages.get(2)), anyString());
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableMap;
+import org.graylog2.plugin.configuration.Configuration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JournalCodecConfigStoreTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path dataDirectory;
+    private MetricRegistry metricRegistry;
+
+    @Before
+    public void setUp() throws IOException {
+        dataDirectory = temporaryFolder.newFolder("data").toPath();
+        metricRegistry = new MetricRegistry();
+    }
+
+    @Test
+    public void sameConfigurationYieldsSameReference() {
+        final JournalCodecConfigStore store = new JournalCodecConfigStore(dataDirectory, metricRegistry);
+
+        final String first = store.register(new Configuration(ImmutableMap.of("port", 1234)));
+        final String second = store.register(new Configuration(ImmutableMap.of("port", 1234)));
+        final String other = store.register(new Configuration(ImmutableMap.of("port", 4321)));
+
+        assertThat(first).isEqualTo(second).isNotEqualTo(other);
+    }
+
+    @Test
+    public void referencesSurviveRestart() {
+        final String reference = new JournalCodecConfigStore(dataDirectory, metricRegistry)
+                .register(new Configuration(ImmutableMap.of("charset", "UTF-8")));
+
+        final Configuration configuration = new JournalCodecConfigStore(dataDirectory, metricRegistry).lookup(reference);
+
+        assertThat(configuration).isNotNull();
+        assertThat(configuration.getString("charset")).isEqualTo("UTF-8");
+    }
+
+    @Test
+    public void emptyConfiguration() {
+        final JournalCodecConfigStore store = new JournalCodecConfigStore(dataDirectory, metricRegistry);
+
+        assertThat(store.register(Configuration.EMPTY_CONFIGURATION)).isEmpty();
+        assertThat(store.lookup("")).isSameAs(Configuration.EMPTY_CONFIGURATION);
+    }
+
+    @Test
+    public void unknownReference() {
+        final JournalCodecConfigStore store = new JournalCodecConfigStore(dataDirectory, metricRegistry);
+
+        assertThat(store.lookup("0123456789abcdef0123456789abcdef")).isNull();
+        assertThat(store.lookup("../../etc/passwd")).isNull();
+        assertThat(metricRegistry.meter("org.graylog2.shared.journal.JournalCodecConfigStore.unknownReferences").getCount())
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void configurationsAreNotStoredInsideTheJournalDirectory() throws IOException {
+        new JournalCodecConfigStore(dataDirectory, metricRegistry).register(new Configuration(ImmutableMap.of("port", 1234)));
+
+        try (Stream<Path> files = Files.list(dataDirectory)) {
+            assertThat(files).extracting(path -> path.getFileName().toString()).containsExactly("journal-codec-configs");
+        }
+    }
+
+    @Test
+    public void removeUnusedKeepsConfigurationsRegisteredSinceCutoff() throws IOException {
+        final String stale = new JournalCodecConfigStore(dataDirectory, metricRegistry)
+                .register(new Configuration(ImmutableMap.of("port", 1234)));
+        final String reused = new JournalCodecConfigStore(dataDirectory, metricRegistry)
+                .register(new Configuration(ImmutableMap.of("port", 4321)));
+        final Instant lastWeek = Instant.now().minus(7, ChronoUnit.DAYS);
+        try (Stream<Path> files = Files.list(dataDirectory.resolve("journal-codec-configs"))) {
+            files.forEach(file -> {
+                try {
+                    Files.setLastModifiedTime(file, FileTime.from(lastWeek));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        // a restarted node, which still writes messages with one of the configurations
+        final JournalCodecConfigStore store = new JournalCodecConfigStore(dataDirectory, metricRegistry);
+        store.register(new Configuration(ImmutableMap.of("port", 4321)));
+
+        assertThat(store.removeUnused(Instant.now().minus(1, ChronoUnit.DAYS))).isEqualTo(1);
+        assertThat(store.lookup(stale)).isNull();
+        assertThat(store.lookup(reused)).isNotNull();
+        assertThat(store.removeUnused(Instant.now().minus(1, ChronoUnit.DAYS))).isZero();
+    }
+}
@@ -424,6 +424,132 @@ public class LocalKafkaJournalTest {
         assertEquals(1, countSegmentsInDir(messageJournalDir));
     }
 
+    @Test
+    public void partitionedJournal() throws Exception {
+        final LocalKafkaJournal journal = new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                4,
+                new MetricRegistry(),
+                serverStatus,
+                LocalKafkaJournal.class.getName());
+        for (int partition = 0; partition < 4; partition++) {
+            assertTrue(new File(journalDirectory, "messagejournal-" + partition).isDirectory());
+        }
+        assertThat(journal.partitionFor("input-id")).isBetween(0, 3).isEqualTo(journal.partitionFor("input-id"));
+
+        journal.write(1, Lists.newArrayList(
+                journal.createEntry("id1".getBytes(UTF_8), "message1".getBytes(UTF_8)),
+                journal.createEntry("id2".getBytes(UTF_8), "message2".getBytes(UTF_8))));
+        journal.write(3, Lists.newArrayList(journal.createEntry("id3".getBytes(UTF_8), "message3".getBytes(UTF_8))));
+
+        assertThat(journal.read(0, 10)).isEmpty();
+        final List<Journal.JournalReadEntry> partitionOne = journal.read(1, 10);
+        assertThat(partitionOne).extracting(entry -> new String(entry.getPayload(), UTF_8))
+                .containsExactly("message1", "message2");
+        assertThat(partitionOne).extracting(entry -> journal.partitionOf(entry.getOffset())).containsOnly(1);
+        final List<Journal.JournalReadEntry> partitionThree = journal.read(3, 10);
+        assertThat(partitionThree).extracting(entry -> new String(entry.getPayload(), UTF_8)).containsExactly("message3");
+        assertThat(journal.size()).isPositive();
+        assertThat(journal.getUncommittedEntries()).isEqualTo(3);
+
+        journal.markJournalOffsetCommitted(partitionOne.get(1).getOffset());
+        assertThat(journal.getUncommittedEntries()).isEqualTo(1);
+
+        journal.flush();
+        final Path offsetFile = journalDirectory.toPath().resolve("graylog2-committed-read-offset-1");
+        assertThat(new String(Files.readAllBytes(offsetFile), UTF_8)).isEqualTo("1");
+    }
+
+    @Test
+    public void partitionedJournalReportsInterleavedOffsets() throws Exception {
+        final LocalKafkaJournal journal = createPartitionedJournal(4);
+
+        // partition 1 gets the journal offsets 1 and 5, partition 3 gets the journal offset 3
+        journal.write(1, Lists.newArrayList(
+                journal.createEntry("id1".getBytes(UTF_8), "message1".getBytes(UTF_8)),
+                journal.createEntry("id2".getBytes(UTF_8), "message2".getBytes(UTF_8))));
+        journal.write(3, Lists.newArrayList(journal.createEntry("id3".getBytes(UTF_8), "message3".getBytes(UTF_8))));
+
+        assertThat(journal.getLogStartOffset()).isEqualTo(1);
+        assertThat(journal.getLogEndOffset()).isEqualTo(6);
+        assertThat(journal.getCommittedOffset()).isEqualTo(LocalKafkaJournal.DEFAULT_COMMITTED_OFFSET);
+
+        assertThat(journal.readRange(0, 5)).extracting(entry -> new String(entry.getPayload(), UTF_8))
+                .containsExactly("message1", "message3", "message2");
+        assertThat(journal.readRange(2, 4)).extracting(Journal.JournalReadEntry::getOffset).containsExactly(3L);
+
+        journal.markJournalOffsetCommitted(5);
+        journal.markJournalOffsetCommitted(3);
+        assertThat(journal.getCommittedOffset()).isEqualTo(3);
+        assertThat(journal.getCommittedOffset(1)).isEqualTo(1);
+        assertThat(journal.getLogEndOffset(1)).isEqualTo(2);
+    }
+
+    @Test
+    public void truncatesEveryPartitionOfPartitionedJournal() throws Exception {
+        final LocalKafkaJournal journal = createPartitionedJournal(4);
+
+        journal.write(1, Lists.newArrayList(
+                journal.createEntry("id1".getBytes(UTF_8), "message1".getBytes(UTF_8)),
+                journal.createEntry("id2".getBytes(UTF_8), "message2".getBytes(UTF_8))));
+        journal.write(3, Lists.newArrayList(journal.createEntry("id3".getBytes(UTF_8), "message3".getBytes(UTF_8))));
+
+        journal.truncateTo(4);
+
+        assertThat(journal.getLogEndOffset()).isEqualTo(4);
+        assertThat(journal.readRange(0, 10)).extracting(entry -> new String(entry.getPayload(), UTF_8))
+                .containsExactly("message1", "message3");
+    }
+
+    @Test
+    public void refusesToDropPartitionsWithUnprocessedMessages() throws Exception {
+        final LocalKafkaJournal journal = createPartitionedJournal(4);
+        journal.startAsync().awaitRunning();
+        journal.write(3, Lists.newArrayList(journal.createEntry("id1".getBytes(UTF_8), "message1".getBytes(UTF_8))));
+        journal.stopAsync().awaitTerminated();
+
+        try {
+            createPartitionedJournal(2);
+            fail("Journal must not start while a dropped partition contains unprocessed messages");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessageContaining("Journal partition 3 still contains 1 unprocessed message(s)");
+        }
+    }
+
+    @Test
+    public void dropsPartitionsWithoutUnprocessedMessages() throws Exception {
+        final LocalKafkaJournal journal = createPartitionedJournal(4);
+        journal.startAsync().awaitRunning();
+        journal.write(3, Lists.newArrayList(journal.createEntry("id1".getBytes(UTF_8), "message1".getBytes(UTF_8))));
+        journal.read(3, 10).forEach(entry -> journal.markJournalOffsetCommitted(entry.getOffset()));
+        journal.stopAsync().awaitTerminated();
+
+        assertThat(createPartitionedJournal(2).getNumberOfPartitions()).isEqualTo(2);
+    }
+
+    private LocalKafkaJournal createPartitionedJournal(int partitions) {
+        return new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                partitions,
+                new MetricRegistry(),
+                serverStatus,
+                LocalKafkaJournal.class.getName());
+    }
+
     @Test
     public void lockedJournalDir() throws Exception {
         // Grab the lock before starting the KafkaJournal.
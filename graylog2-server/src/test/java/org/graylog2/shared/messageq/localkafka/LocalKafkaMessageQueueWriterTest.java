@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.messageq.localkafka;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.CodecConfigStore;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.system.NodeId;
+import org.graylog2.shared.buffers.RawMessageEncoderHandler;
+import org.graylog2.shared.buffers.RawMessageEvent;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.LocalKafkaJournal;
+import org.graylog2.shared.messageq.MessageQueueWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class LocalKafkaMessageQueueWriterTest {
+
+    @Mock
+    LocalKafkaJournal kafkaJournal;
+
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS)
+    MessageQueueWriter.Metrics metrics;
+
+    @Mock
+    CodecConfigStore codecConfigStore;
+
+    @Mock
+    NodeId nodeId;
+
+    @InjectMocks
+    LocalKafkaMessageQueueWriter writer;
+
+    @Test
+    void writesMessagesOfEachInputToItsPartition() throws Exception {
+        when(kafkaJournal.getNumberOfPartitions()).thenReturn(4);
+        when(kafkaJournal.partitionFor("input-1")).thenReturn(1);
+        when(kafkaJournal.partitionFor("input-2")).thenReturn(3);
+
+        writer.write(ImmutableList.of(encodedEvent("input-1"), encodedEvent("input-2"), encodedEvent("input-1")));
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<List<Journal.Entry>> firstPartition = ArgumentCaptor.forClass(List.class);
+        verify(kafkaJournal).write(eq(1), firstPartition.capture());
+        assertThat(firstPartition.getValue()).hasSize(2);
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<List<Journal.Entry>> secondPartition = ArgumentCaptor.forClass(List.class);
+        verify(kafkaJournal).write(eq(3), secondPartition.capture());
+        assertThat(secondPartition.getValue()).hasSize(1);
+
+        verify(kafkaJournal, never()).write(eq(0), anyList());
+    }
+
+    @Test
+    void writesEverythingToTheOnlyPartition() throws Exception {
+        when(kafkaJournal.getNumberOfPartitions()).thenReturn(1);
+
+        writer.write(ImmutableList.of(encodedEvent("input-1"), encodedEvent("input-2")));
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<List<Journal.Entry>> entries = ArgumentCaptor.forClass(List.class);
+        verify(kafkaJournal).write(eq(0), entries.capture());
+        assertThat(entries.getValue()).hasSize(2);
+    }
+
+    // goes through the encoder handler, which clears the raw message before the event reaches the writer
+    private RawMessageEvent encodedEvent(String inputId) throws Exception {
+        final RawMessage rawMessage = new RawMessage("message".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+        rawMessage.addSourceNode(inputId, nodeId);
+
+        final RawMessageEvent event = new RawMessageEvent();
+        event.setRawMessage(rawMessage);
+        new RawMessageEncoderHandler(new MetricRegistry(), codecConfigStore, false).onEvent(event);
+        return event;
+    }
+}
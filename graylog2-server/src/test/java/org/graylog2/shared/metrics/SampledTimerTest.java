@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.metrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.UniformReservoir;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.within;
+
+public class SampledTimerTest {
+    private final ManualClock clock = new ManualClock();
+
+    @Test
+    public void timesEveryInvocationWithSampleRateOne() {
+        final SampledTimer timer = new SampledTimer(1, new UniformReservoir(), clock);
+
+        for (int i = 0; i < 10; i++) {
+            try (SampledTimer.Sample ignored = timer.sample()) {
+                clock.advance(5);
+            }
+        }
+
+        assertThat(timer.getCount()).isEqualTo(10L);
+        assertThat(timer.getSnapshot().size()).isEqualTo(10);
+        assertThat(timer.getSnapshot().getMax()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void keepsExactCountWhenSampling() {
+        final SampledTimer timer = new SampledTimer(100, new UniformReservoir(), clock);
+
+        final int invocations = 10_000;
+        for (int i = 0; i < invocations; i++) {
+            try (SampledTimer.Sample ignored = timer.sample()) {
+                clock.advance(1);
+            }
+        }
+
+        assertThat(timer.getCount()).isEqualTo(invocations);
+        assertThat(timer.getSnapshot().size()).isBetween(1, invocations / 10);
+        assertThat(timer.getSnapshot().getMin()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Test
+    public void untimedInvocationsDontReadTheClock() {
+        final SampledTimer timer = new SampledTimer(1, new UniformReservoir(), clock);
+        final int reads = clock.reads;
+
+        try (SampledTimer.Sample ignored = timer.sample(false)) {
+            clock.advance(5);
+        }
+
+        assertThat(clock.reads).isEqualTo(reads);
+        assertThat(timer.getCount()).isEqualTo(1L);
+        assertThat(timer.getSnapshot().size()).isZero();
+    }
+
+    @Test
+    public void weighsSampledInvocationsForRates() {
+        final SampledTimer timer = new SampledTimer(10, new UniformReservoir(), clock);
+
+        timer.sample(true).close();
+        timer.sample(false).close();
+
+        assertThat(timer.getCount()).isEqualTo(2L);
+        clock.advance(1000);
+        // one timed invocation with weight 10 in one second
+        assertThat(timer.getMeanRate()).isCloseTo(10.0, within(0.001));
+    }
+
+    @Test
+    public void directUpdatesAreCounted() {
+        final SampledTimer timer = new SampledTimer(10, new UniformReservoir(), clock);
+
+        timer.update(3, TimeUnit.MILLISECONDS);
+        try (com.codahale.metrics.Timer.Context ignored = timer.time()) {
+            clock.advance(1);
+        }
+
+        assertThat(timer.getCount()).isEqualTo(2L);
+        assertThat(timer.getSnapshot().size()).isEqualTo(2);
+    }
+
+    @Test
+    public void rejectsInvalidSampleRate() {
+        assertThatIllegalArgumentException().isThrownBy(() -> new SampledTimer(0));
+    }
+
+    private static class ManualClock extends Clock {
+        private long tick;
+        private int reads;
+
+        void advance(long millis) {
+            tick += TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        public long getTick() {
+            reads++;
+            return tick;
+        }
+    }
+}
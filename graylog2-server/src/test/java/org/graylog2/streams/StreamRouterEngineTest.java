@@ -26,6 +26,9 @@ import org.graylog2.plugin.streams.StreamRule;
 import org.graylog2.plugin.streams.StreamRuleType;
 import org.graylog2.shared.SuppressForbidden;
 import org.graylog2.streams.matchers.StreamRuleMock;
+import org.graylog2.utilities.regex.JavaRegexEngine;
+import org.graylog2.utilities.regex.LinearTimeRegexEngine;
+import org.graylog2.utilities.regex.RegexEngine;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Before;
@@ -69,9 +72,13 @@ public class StreamRouterEngineTest {
         when(streamFaultManager.getStreamProcessingTimeout()).thenReturn(250L);
     }
 
-    @SuppressForbidden("Executors#newSingleThreadExecutor() is okay for tests")
     private StreamRouterEngine newEngine(List<Stream> streams) {
-        return new StreamRouterEngine(streams, Executors.newSingleThreadExecutor(), streamFaultManager, streamMetrics, defaultStreamProvider);
+        return newEngine(streams, JavaRegexEngine.INSTANCE);
+    }
+
+    @SuppressForbidden("Executors#newSingleThreadExecutor() is okay for tests")
+    private StreamRouterEngine newEngine(List<Stream> streams, RegexEngine regexEngine) {
+        return new StreamRouterEngine(streams, Executors.newSingleThreadExecutor(), streamFaultManager, streamMetrics, defaultStreamProvider, regexEngine);
     }
 
     @Test
@@ -304,6 +311,82 @@ public class StreamRouterEngineTest {
         assertEquals(Lists.newArrayList(stream), engine.match(message));
     }
 
+    @Test
+    public void testLinearTimeRegexMatch() throws Exception {
+        final StreamMock stream = getStreamMock("test");
+        final StreamRuleMock rule = new StreamRuleMock(ImmutableMap.of(
+                "_id", new ObjectId(),
+                "field", "testfield",
+                "value", "^(a+)+$",
+                "type", StreamRuleType.REGEX.toInteger(),
+                "stream_id", stream.getId()
+        ));
+
+        stream.setStreamRules(Lists.newArrayList(rule));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(stream), new LinearTimeRegexEngine());
+        final Message message = getMessage();
+
+        // Would backtrack for a very long time with java.util.regex and run into the timeout.
+        message.addField("testfield", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!");
+
+        assertTrue(engine.match(message).isEmpty());
+
+        message.addField("testfield", "aaaaaaaaaa");
+
+        assertEquals(Lists.newArrayList(stream), engine.match(message));
+    }
+
+    @Test
+    public void testLinearTimeRegexRulesOnSameField() throws Exception {
+        final StreamMock stream1 = getStreamMock("test1");
+        final StreamMock stream2 = getStreamMock("test2");
+        final StreamMock stream3 = getStreamMock("test3");
+        final StreamRuleMock rule1 = new StreamRuleMock(ImmutableMap.of(
+                "_id", new ObjectId(),
+                "field", "testfield",
+                "value", "^foo$",
+                "type", StreamRuleType.REGEX.toInteger(),
+                "stream_id", stream1.getId()
+        ));
+        final StreamRuleMock rule2 = new StreamRuleMock(ImmutableMap.of(
+                "_id", new ObjectId(),
+                "field", "testfield",
+                "value", "(?i)bar",
+                "type", StreamRuleType.REGEX.toInteger(),
+                "stream_id", stream2.getId()
+        ));
+        final StreamRuleMock rule3 = new StreamRuleMock(ImmutableMap.<String, Object>builder()
+                .put("_id", new ObjectId())
+                .put("field", "testfield")
+                .put("value", "baz")
+                .put("type", StreamRuleType.REGEX.toInteger())
+                .put("inverted", true)
+                .put("stream_id", stream3.getId())
+                .build());
+
+        stream1.setStreamRules(Lists.newArrayList(rule1));
+        stream2.setStreamRules(Lists.newArrayList(rule2));
+        stream3.setStreamRules(Lists.newArrayList(rule3));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(stream1, stream2, stream3), new LinearTimeRegexEngine());
+
+        final Message message1 = getMessage();
+        message1.addField("testfield", "qux");
+        assertEquals(Lists.newArrayList(stream3), engine.match(message1));
+
+        final Message message2 = getMessage();
+        message2.addField("testfield", "foo\n");
+        assertEquals(Lists.newArrayList(stream1, stream3), engine.match(message2));
+
+        final Message message3 = getMessage();
+        message3.addField("testfield", "foo BAR baz");
+        assertEquals(Lists.newArrayList(stream2), engine.match(message3));
+
+        final Message message4 = getMessage();
+        assertEquals(Lists.newArrayList(stream3), engine.match(message4));
+    }
+
     @Test
     public void testMultipleRulesMatch() throws Exception {
         final StreamMock stream = getStreamMock("test");
@@ -764,6 +847,83 @@ public class StreamRouterEngineTest {
                 Lists.newArrayList(stream), engine.match(message2));
     }
 
+    @Test
+    public void testIndexedRulesOnSameField() {
+        final StreamRule sourceA = getStreamRuleMock("StreamRule1Id", StreamRuleType.EXACT, "source", "a");
+        final StreamRule sourceB = getStreamRuleMock("StreamRule2Id", StreamRuleType.EXACT, "source", "b");
+        final StreamRule notSourceA = getStreamRuleMock("StreamRule3Id", StreamRuleType.EXACT, "source", "a");
+        when(notSourceA.getInverted()).thenReturn(true);
+        final StreamRule facilityPresent = getStreamRuleMock("StreamRule4Id", StreamRuleType.PRESENCE, "facility", null);
+
+        final StreamMock andStream = getStreamMock("and", Stream.MatchingType.AND);
+        andStream.setStreamRules(Lists.newArrayList(sourceA, sourceB));
+        final StreamMock orStream = getStreamMock("or", Stream.MatchingType.OR);
+        orStream.setStreamRules(Lists.newArrayList(sourceA, sourceB));
+        final StreamMock invertedStream = getStreamMock("inverted", Stream.MatchingType.AND);
+        invertedStream.setStreamRules(Lists.newArrayList(notSourceA, facilityPresent));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(andStream, orStream, invertedStream));
+
+        final Message sourceAMessage = getMessage();
+        sourceAMessage.addField("source", " a ");
+        sourceAMessage.addField("facility", "kernel");
+        assertThat(engine.match(sourceAMessage)).containsExactly(orStream);
+
+        final Message sourceCMessage = getMessage();
+        sourceCMessage.addField("source", "c");
+        sourceCMessage.addField("facility", "kernel");
+        assertThat(engine.match(sourceCMessage)).containsExactly(invertedStream);
+
+        final Message blankFacilityMessage = getMessage();
+        blankFacilityMessage.addField("source", "b");
+        blankFacilityMessage.addField("facility", " ");
+        assertThat(engine.match(blankFacilityMessage)).containsExactly(orStream);
+    }
+
+    @Test
+    public void testIndexedAndNonIndexedRulesCombined() {
+        final StreamRule exact = getStreamRuleMock("StreamRule1Id", StreamRuleType.EXACT, "source", "router");
+        final StreamRule greater = getStreamRuleMock("StreamRule2Id", StreamRuleType.GREATER, "level", "3");
+
+        final StreamMock stream = getStreamMock("combined", Stream.MatchingType.AND);
+        stream.setStreamRules(Lists.newArrayList(exact, greater));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(stream));
+
+        final Message matching = getMessage();
+        matching.addField("source", "router");
+        matching.addField("level", 5);
+        assertThat(engine.match(matching)).containsExactly(stream);
+
+        final Message wrongSource = getMessage();
+        wrongSource.addField("source", "switch");
+        wrongSource.addField("level", 5);
+        assertThat(engine.match(wrongSource)).isEmpty();
+
+        final Message missingLevel = getMessage();
+        missingLevel.addField("source", "router");
+        assertThat(engine.match(missingLevel)).isEmpty();
+    }
+
+    @Test
+    public void testIndexedRulesUpdateExecutionTimers() {
+        final StreamRule exact = getStreamRuleMock("StreamRule1Id", StreamRuleType.EXACT, "source", "router");
+        final StreamRule presence = getStreamRuleMock("StreamRule2Id", StreamRuleType.PRESENCE, "facility", null);
+
+        final StreamMock stream = getStreamMock("indexed", Stream.MatchingType.OR);
+        stream.setStreamRules(Lists.newArrayList(exact, presence));
+
+        final StreamRouterEngine engine = newEngine(Lists.newArrayList(stream));
+
+        final Message message = getMessage();
+        message.addField("source", "router");
+        engine.match(message);
+        engine.match(message);
+
+        assertThat(streamMetrics.getExecutionTimer(stream.getId(), "StreamRule1Id").getCount()).isEqualTo(2);
+        assertThat(streamMetrics.getExecutionTimer(stream.getId(), "StreamRule2Id").getCount()).isEqualTo(2);
+    }
+
     private StreamMock getStreamMock(String title) {
         return getStreamMock(title, Stream.MatchingType.AND);
     }
@@ -19,9 +19,13 @@ package org.graylog2.streams.matchers;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.streams.StreamRule;
 import org.graylog2.plugin.streams.StreamRuleType;
+import org.graylog2.utilities.regex.JavaRegexEngine;
+import org.graylog2.utilities.regex.LinearTimeRegexEngine;
+import org.graylog2.utilities.regex.RegexEngine;
 import org.junit.Test;
 
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -158,6 +162,68 @@ public class RegexMatcherTest extends MatcherTest {
         assertTrue(matcher.match(msg, rule));
     }
 
+    @Test
+    public void testLinearTimeEngineMatch() {
+        final StreamRule rule = getSampleRule();
+        rule.setValue("^foo.bar$");
+
+        final RegexMatcher matcher = new RegexMatcher(new LinearTimeRegexEngine());
+        assertTrue(matcher.isLinearTime(rule));
+
+        final Message msg = getSampleMessage();
+        msg.addField("something", "foo\nbar");
+        assertTrue(matcher.match(msg, rule));
+
+        msg.addField("something", "foo\nbar\nbaz");
+        assertFalse(matcher.match(msg, rule));
+    }
+
+    @Test
+    public void testLinearTimeEngineFallback() {
+        final StreamRule rule = getSampleRule();
+        rule.setValue("(foo)\\1");
+
+        final RegexMatcher matcher = new RegexMatcher(new LinearTimeRegexEngine());
+        assertFalse(matcher.isLinearTime(rule));
+
+        final Message msg = getSampleMessage();
+        msg.addField("something", "foofoo");
+        assertTrue(matcher.match(msg, rule));
+    }
+
+    @Test
+    public void testInvalidPatternIsNotLinearTime() {
+        final StreamRule rule = getSampleRule();
+        rule.setValue("foo(");
+
+        final RegexMatcher matcher = new RegexMatcher(new LinearTimeRegexEngine());
+        assertFalse(matcher.isLinearTime(rule));
+    }
+
+    @Test
+    public void testPatternsAreSharedBetweenMatchersOfTheSameEngine() {
+        final StreamRule rule = getSampleRule();
+        rule.setValue("^shared-pattern-[0-9]+$");
+        final Message msg = getSampleMessage();
+        msg.addField("something", "shared-pattern-42");
+
+        final AtomicInteger compilations = new AtomicInteger();
+        final RegexEngine countingEngine = (regex, flags) -> {
+            compilations.incrementAndGet();
+            return JavaRegexEngine.INSTANCE.compile(regex, flags);
+        };
+
+        // matchers are created again on every rebuild of the stream router engine
+        assertTrue(new RegexMatcher(countingEngine).match(msg, rule));
+        assertTrue(new RegexMatcher(countingEngine).match(msg, rule));
+        assertEquals(1, compilations.get());
+
+        // patterns of other engines are kept apart
+        assertTrue(new RegexMatcher(new LinearTimeRegexEngine()).isLinearTime(rule));
+        assertFalse(new RegexMatcher(countingEngine).isLinearTime(rule));
+        assertEquals(1, compilations.get());
+    }
+
     @Override
     protected StreamRule getSampleRule() {
         StreamRule rule = super.getSampleRule();
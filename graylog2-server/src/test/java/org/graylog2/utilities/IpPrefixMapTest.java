@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+import com.google.common.net.InetAddresses;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class IpPrefixMapTest {
+
+    @Test
+    void returnsValueOfLongestMatchingPrefix() {
+        final IpPrefixMap<String> map = IpPrefixMap.<String>builder()
+                .put("10.0.0.0/8", "network")
+                .put("10.1.0.0/16", "site")
+                .put("10.1.2.3/32", "host")
+                .put("2001:db8::/32", "ipv6")
+                .build();
+
+        assertThat(map.size()).isEqualTo(4);
+        assertThat(get(map, "10.200.0.1")).isEqualTo("network");
+        assertThat(get(map, "10.1.0.1")).isEqualTo("site");
+        assertThat(get(map, "10.1.2.3")).isEqualTo("host");
+        assertThat(get(map, "10.1.2.4")).isEqualTo("site");
+        assertThat(get(map, "11.0.0.1")).isNull();
+        assertThat(get(map, "2001:db8:ffff::1")).isEqualTo("ipv6");
+        assertThat(get(map, "2001:db9::1")).isNull();
+        // numerically within 10.0.0.0/8, but an IPv6 address
+        assertThat(get(map, "::a00:1")).isNull();
+    }
+
+    @Test
+    void laterValueForSameSubnetWins() {
+        final IpPrefixMap<String> map = IpPrefixMap.<String>builder()
+                .put("192.168.0.0/24", "first")
+                .put("192.168.0.77/24", "second")
+                .build();
+
+        assertThat(map.size()).isEqualTo(1);
+        assertThat(get(map, "192.168.0.1")).isEqualTo("second");
+    }
+
+    @Test
+    void splitsRangesIntoSubnets() {
+        final IpPrefixMap<String> map = IpPrefixMap.<String>builder()
+                .putRange(InetAddresses.forString("192.168.0.5"), InetAddresses.forString("192.168.1.200"), "range")
+                .putRange(InetAddresses.forString("2001:db8::"), InetAddresses.forString("2001:db8::ff"), "ipv6")
+                .build();
+
+        assertThat(get(map, "192.168.0.4")).isNull();
+        assertThat(get(map, "192.168.0.5")).isEqualTo("range");
+        assertThat(get(map, "192.168.0.255")).isEqualTo("range");
+        assertThat(get(map, "192.168.1.0")).isEqualTo("range");
+        assertThat(get(map, "192.168.1.200")).isEqualTo("range");
+        assertThat(get(map, "192.168.1.201")).isNull();
+        assertThat(get(map, "2001:db8::ff")).isEqualTo("ipv6");
+        assertThat(get(map, "2001:db8::100")).isNull();
+    }
+
+    @Test
+    void rangeOfWholeAddressSpace() {
+        final IpPrefixMap<String> map = IpPrefixMap.<String>builder()
+                .putRange(InetAddresses.forString("0.0.0.0"), InetAddresses.forString("255.255.255.255"), "all")
+                .putRange(InetAddresses.forString("10.0.0.1"), InetAddresses.forString("10.0.0.1"), "single")
+                .build();
+
+        assertThat(map.size()).isEqualTo(2);
+        assertThat(get(map, "1.2.3.4")).isEqualTo("all");
+        assertThat(get(map, "10.0.0.1")).isEqualTo("single");
+        assertThat(get(map, "::1")).isNull();
+    }
+
+    @Test
+    void rejectsInvalidRanges() {
+        final IpPrefixMap.Builder<String> builder = IpPrefixMap.builder();
+
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.putRange(
+                InetAddresses.forString("10.0.0.2"), InetAddresses.forString("10.0.0.1"), "value"));
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.putRange(
+                InetAddresses.forString("10.0.0.1"), InetAddresses.forString("::1"), "value"));
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.put("10.0.0.0/33", "value"));
+    }
+
+    @Test
+    void emptyMap() {
+        final IpPrefixMap<String> map = IpPrefixMap.<String>builder().build();
+
+        assertThat(map.isEmpty()).isTrue();
+        assertThat(get(map, "1.2.3.4")).isNull();
+    }
+
+    private static String get(IpPrefixMap<String> map, String address) {
+        return map.get(InetAddresses.forString(address));
+    }
+}
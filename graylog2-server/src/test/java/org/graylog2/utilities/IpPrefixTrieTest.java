@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+import com.google.common.net.InetAddresses;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class IpPrefixTrieTest {
+
+    @Test
+    void matchesIpv4AndIpv6Subnets() {
+        final IpPrefixTrie trie = IpPrefixTrie.builder()
+                .add("10.0.0.0/8")
+                .add("192.168.1.0/24")
+                .add("203.0.113.7/32")
+                .add("fe80::/10")
+                .add("2001:db8:1::/48")
+                .build();
+
+        assertThat(trie.isEmpty()).isFalse();
+        assertThat(contains(trie, "10.0.0.0")).isTrue();
+        assertThat(contains(trie, "10.255.255.255")).isTrue();
+        assertThat(contains(trie, "11.0.0.0")).isFalse();
+        assertThat(contains(trie, "192.168.1.42")).isTrue();
+        assertThat(contains(trie, "192.168.2.42")).isFalse();
+        assertThat(contains(trie, "203.0.113.7")).isTrue();
+        assertThat(contains(trie, "203.0.113.8")).isFalse();
+        assertThat(contains(trie, "fe80::1")).isTrue();
+        assertThat(contains(trie, "febf:ffff::1")).isTrue();
+        assertThat(contains(trie, "fec0::1")).isFalse();
+        assertThat(contains(trie, "2001:db8:1:ffff::1")).isTrue();
+        assertThat(contains(trie, "2001:db8:2::1")).isFalse();
+    }
+
+    @Test
+    void doesNotMixAddressFamilies() {
+        final IpPrefixTrie trie = IpPrefixTrie.builder().add("10.0.0.0/8").add("::/96").build();
+
+        // numerically within 10.0.0.0/8, but an IPv6 address
+        assertThat(contains(trie, "::a00:1")).isTrue();
+        assertThat(IpPrefixTrie.builder().add("10.0.0.0/8").build().contains(InetAddresses.forString("::a00:1"))).isFalse();
+        assertThat(IpPrefixTrie.builder().add("::/96").build().contains(InetAddresses.forString("10.0.0.1"))).isFalse();
+    }
+
+    @Test
+    void ignoresHostBitsAndOverlappingSubnets() {
+        final IpPrefixTrie trie = IpPrefixTrie.builder()
+                .add("192.168.1.77/24")
+                .add("192.168.0.0/16")
+                .add("192.168.1.0/25")
+                .build();
+
+        assertThat(contains(trie, "192.168.1.1")).isTrue();
+        assertThat(contains(trie, "192.168.200.1")).isTrue();
+        assertThat(contains(trie, "192.169.0.1")).isFalse();
+    }
+
+    @Test
+    void zeroPrefixLengthMatchesAllAddressesOfTheFamily() {
+        final IpPrefixTrie trie = IpPrefixTrie.builder().add("0.0.0.0/0").build();
+
+        assertThat(contains(trie, "1.2.3.4")).isTrue();
+        assertThat(contains(trie, "255.255.255.255")).isTrue();
+        assertThat(contains(trie, "2001:db8::1")).isFalse();
+    }
+
+    @Test
+    void emptyTrie() {
+        final IpPrefixTrie trie = IpPrefixTrie.builder().build();
+
+        assertThat(trie.isEmpty()).isTrue();
+        assertThat(contains(trie, "1.2.3.4")).isFalse();
+        assertThat(contains(trie, "::1")).isFalse();
+    }
+
+    @Test
+    void rejectsInvalidSubnets() {
+        final IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.add("10.0.0.0"));
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.add("10.0.0.0/33"));
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.add("10.0.0.0/-1"));
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.add("10.0.0.0/foo"));
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.add("::/129"));
+        assertThatIllegalArgumentException().isThrownBy(() -> builder.add("example.org/8"));
+    }
+
+    private static boolean contains(IpPrefixTrie trie, String address) {
+        return trie.contains(InetAddresses.forString(address));
+    }
+}
@@ -17,6 +17,7 @@
 
 package org.graylog2.utilities;
 
+import com.google.common.net.InetAddresses;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -36,6 +37,30 @@ class ReservedIpCheckerTest {
         Assertions.assertTrue(ReservedIpChecker.getInstance().isReservedIpAddress("127.0.0.1"));
         Assertions.assertTrue(ReservedIpChecker.getInstance().isReservedIpAddress("192.168.1.10"));
         Assertions.assertFalse(ReservedIpChecker.getInstance().isReservedIpAddress("104.44.23.89"));
+        Assertions.assertFalse(ReservedIpChecker.getInstance().isReservedIpAddress("not an IP address"));
+        Assertions.assertFalse(ReservedIpChecker.getInstance().isReservedIpAddress(" "));
+    }
+
+    @Test
+    void testIsReservedIpv6Address() {
+
+        Assertions.assertTrue(ReservedIpChecker.getInstance().isReservedIpAddress("::1"));
+        Assertions.assertTrue(ReservedIpChecker.getInstance().isReservedIpAddress("fe80::1"));
+        Assertions.assertTrue(ReservedIpChecker.getInstance().isReservedIpAddress("fd12:3456:789a::1"));
+        Assertions.assertTrue(ReservedIpChecker.getInstance().isReservedIpAddress("2001:db8::8888"));
+        Assertions.assertTrue(ReservedIpChecker.getInstance().isReservedIpAddress("ff02::1"));
+        Assertions.assertTrue(ReservedIpChecker.getInstance().isReservedIpAddress("2001:1ff::1"));
+        Assertions.assertTrue(ReservedIpChecker.getInstance().isReservedIpAddress("::ffff:192.168.1.10"));
+        Assertions.assertFalse(ReservedIpChecker.getInstance().isReservedIpAddress("2001:4860:4860::8888"));
+        Assertions.assertFalse(ReservedIpChecker.getInstance().isReservedIpAddress("2001:200::1"));
+        Assertions.assertFalse(ReservedIpChecker.getInstance().isReservedIpAddress("::ffff:104.44.23.89"));
+    }
+
+    @Test
+    void testIsReservedInetAddress() {
+
+        Assertions.assertTrue(ReservedIpChecker.getInstance().isReservedIpAddress(InetAddresses.forString("10.1.2.3")));
+        Assertions.assertFalse(ReservedIpChecker.getInstance().isReservedIpAddress(InetAddresses.forString("8.8.8.8")));
     }
 
 }
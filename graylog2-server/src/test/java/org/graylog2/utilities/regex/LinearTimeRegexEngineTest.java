@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LinearTimeRegexEngineTest {
+    private final LinearTimeRegexEngine engine = new LinearTimeRegexEngine();
+
+    @Test
+    void translatesJavaSyntax() {
+        assertThat(LinearTimeRegexEngine.translate("(?<word>\\w+)", 0)).isEqualTo("(?P<word>\\w+)");
+        assertThat(LinearTimeRegexEngine.translate("\\u00e9", 0)).isEqualTo("\\x{00e9}");
+        assertThat(LinearTimeRegexEngine.translate("a\\sb", 0)).isEqualTo("a[\\t\\n\\x0B\\f\\r ]b");
+        assertThat(LinearTimeRegexEngine.translate("[\\s\\d]", 0)).isEqualTo("[\\t\\n\\x0B\\f\\r \\d]");
+        assertThat(LinearTimeRegexEngine.translate("a.b", Pattern.DOTALL)).isEqualTo("a.b");
+        assertThat(LinearTimeRegexEngine.translate("a.b", 0)).isEqualTo("a[^\\n\\r\\x{85}\\x{2028}\\x{2029}]b");
+        assertThat(LinearTimeRegexEngine.translate("\\Q(a)\\E", 0)).isEqualTo("\\Q(a)\\E");
+        assertThat(LinearTimeRegexEngine.translate("(?i)foo", 0)).isEqualTo("(?i)foo");
+    }
+
+    @Test
+    void rejectsConstructsWithoutLinearTimeEquivalent() {
+        assertThat(LinearTimeRegexEngine.translate("(a)\\1", 0)).isNull();
+        assertThat(LinearTimeRegexEngine.translate("a(?=b)", 0)).isNull();
+        assertThat(LinearTimeRegexEngine.translate("(?<=a)b", 0)).isNull();
+        assertThat(LinearTimeRegexEngine.translate("(?>a)", 0)).isNull();
+        assertThat(LinearTimeRegexEngine.translate("\\bfoo\\b", 0)).isNull();
+        assertThat(LinearTimeRegexEngine.translate("[a-z&&[^x]]", 0)).isNull();
+        assertThat(LinearTimeRegexEngine.translate("(?m)^foo", 0)).isNull();
+        assertThat(LinearTimeRegexEngine.translate("^foo", Pattern.MULTILINE)).isNull();
+        assertThat(LinearTimeRegexEngine.translate("café", Pattern.CASE_INSENSITIVE)).isNull();
+        assertThat(LinearTimeRegexEngine.translate("(foo$)", 0)).isNull();
+        assertThat(LinearTimeRegexEngine.translate("foo$|bar", 0)).isNull();
+    }
+
+    @Test
+    void matchesInLinearTime() {
+        final RegexPattern pattern = engine.compile("^(a+)+$");
+        assertThat(pattern.isLinearTime()).isTrue();
+        assertThat(pattern.pattern()).isEqualTo("^(a+)+$");
+
+        // catastrophic backtracking with java.util.regex
+        assertThat(pattern.matcher("aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa!").find()).isFalse();
+        assertThat(pattern.matcher("aaaa").find()).isTrue();
+    }
+
+    @Test
+    void keepsJavaSemantics() {
+        // '$' matches before a final line terminator
+        assertThat(engine.compile("foo$").matcher("foo\n").find()).isTrue();
+        assertThat(engine.compile("foo$").matcher("foo\nbar").find()).isFalse();
+        // the line terminator isn't part of the match
+        final RegexPattern.Matcher matcher = engine.compile("(o+)$").matcher("foo\r\n");
+        assertThat(matcher.find()).isTrue();
+        assertThat(matcher.group()).isEqualTo("oo");
+        assertThat(matcher.end()).isEqualTo(3);
+        assertThat(matcher.end(0)).isEqualTo(3);
+        assertThat(matcher.groupCount()).isEqualTo(1);
+        assertThat(matcher.group(1)).isEqualTo("oo");
+        assertThatThrownBy(() -> matcher.group(2)).isInstanceOf(IndexOutOfBoundsException.class);
+        assertThat(engine.compile("a|o$").matcher("foo").find()).isTrue();
+        // '.' doesn't match line terminators without DOTALL
+        assertThat(engine.compile("a.b").matcher("a\rb").find()).isFalse();
+        assertThat(engine.compile("a.b", Pattern.DOTALL).matcher("a\rb").find()).isTrue();
+        // '\s' includes the vertical tab
+        assertThat(engine.compile("a\\sb").matcher("a\u000Bb").find()).isTrue();
+    }
+
+    @Test
+    void reportsGroups() {
+        final RegexPattern.Matcher matcher = engine.compile("(\\w+)=(?<value>\\d+)?").matcher("x key= other=42");
+
+        assertThat(matcher.find()).isTrue();
+        assertThat(matcher.groupCount()).isEqualTo(2);
+        assertThat(matcher.group(1)).isEqualTo("key");
+        assertThat(matcher.group(2)).isNull();
+        assertThat(matcher.start(2)).isEqualTo(-1);
+
+        assertThat(matcher.find()).isTrue();
+        assertThat(matcher.group()).isEqualTo("other=42");
+        assertThat(matcher.start(2)).isEqualTo(13);
+        assertThat(matcher.end(2)).isEqualTo(15);
+    }
+
+    @Test
+    void fallsBackToJavaRegex() {
+        final RegexPattern pattern = engine.compile("(foo)\\1");
+
+        assertThat(pattern.isLinearTime()).isFalse();
+        assertThat(pattern.matcher("foofoo").find()).isTrue();
+        assertThat(pattern.matcher("foobar").find()).isFalse();
+    }
+
+    @Test
+    void rejectsInvalidPatterns() {
+        assertThatThrownBy(() -> engine.compile("foo(")).isInstanceOf(PatternSyntaxException.class);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+/* eslint-disable react/no-unescaped-entities */
+import React from 'react';
+
+import { Alert } from 'components/bootstrap';
+
+class CIDRRangeAdapterDocumentation extends React.Component {
+  render() {
+    const csvFile1 = `"cidr","site","owner","vlan"
+"10.1.0.0/16","Berlin","IT","100"
+"10.1.20.0/24","Berlin","Finance","120"
+"192.168.7.1","Hamburg","Facility","7"
+"2001:db8:1::/48","Hamburg","IT","200"`;
+
+    const csvFile2 = `"first","last","site"
+"10.2.0.0","10.2.3.255","Munich"
+"10.2.4.10","10.2.4.99","Munich DMZ"`;
+
+    return (
+      <div>
+        <p>The CIDR range data adapter looks up IP addresses in a list of subnets or IP address ranges read from a CSV file.</p>
+        <p>
+          If an IP address is contained in several entries, the most specific entry (e.g. the subnet with the longest
+          prefix) is returned. Besides the value column, the result contains all columns of the matching line as multi value.
+        </p>
+
+        <Alert style={{ marginBottom: 10 }} bsStyle="info">
+          <h4 style={{ marginBottom: 10 }}>CSV file requirements:</h4>
+          <ul className="no-padding">
+            <li>The first line in the CSV file needs to be a list of field/column names</li>
+            <li>The CIDR column contains a subnet in CIDR notation (IPv4 or IPv6), a single IP address or, if a range end column is configured, the first IP address of a range</li>
+            <li>The file uses <strong>utf-8</strong> encoding</li>
+            <li>The file is readable by <strong>every</strong> Graylog server node</li>
+          </ul>
+        </Alert>
+
+        <hr />
+
+        <h3 style={{ marginBottom: 10 }}>Example 1</h3>
+
+        <h5 style={{ marginBottom: 10 }}>Configuration</h5>
+        <p style={{ marginBottom: 10, padding: 0 }}>
+          Separator: <code>,</code><br />
+          Quote character: <code>"</code><br />
+          CIDR column: <code>cidr</code><br />
+          Value column: <code>site</code>
+        </p>
+
+        <h5 style={{ marginBottom: 10 }}>CSV File</h5>
+        <pre>{csvFile1}</pre>
+
+        <h3 style={{ marginBottom: 10 }}>Example 2</h3>
+
+        <h5 style={{ marginBottom: 10 }}>Configuration</h5>
+        <p style={{ marginBottom: 10, padding: 0 }}>
+          Separator: <code>,</code><br />
+          Quote character: <code>"</code><br />
+          CIDR column: <code>first</code><br />
+          Range end column: <code>last</code><br />
+          Value column: <code>site</code>
+        </p>
+
+        <h5 style={{ marginBottom: 10 }}>CSV File</h5>
+        <pre>{csvFile2}</pre>
+      </div>
+    );
+  }
+}
+
+export default CIDRRangeAdapterDocumentation;
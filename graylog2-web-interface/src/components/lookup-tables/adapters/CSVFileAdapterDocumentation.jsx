@@ -35,6 +35,11 @@ class CSVFileAdapterDocumentation extends React.Component {
       <div>
         <p>The CSV data adapter can read key value pairs from a CSV file.</p>
         <p>Please make sure your CSV file is formatted according to your configuration settings.</p>
+        <p>
+          Large CSV files with millions of lines can be kept in a memory-mapped file instead of the heap. The file is
+          created in the <code>lookup-tables</code> directory inside the Graylog data directory and needs about as
+          much disk space as the CSV file itself.
+        </p>
 
         <Alert style={{ marginBottom: 10 }} bsStyle="info">
           <h4 style={{ marginBottom: 10 }}>CSV file requirements:</h4>
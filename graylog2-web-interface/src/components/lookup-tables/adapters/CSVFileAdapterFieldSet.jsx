@@ -104,6 +104,14 @@ class CSVFileAdapterFieldSet extends React.Component {
                onChange={this.props.handleFormEvent}
                help="Enable if the key lookup should be case-insensitive."
                wrapperClassName="col-md-offset-3 col-md-9" />
+        <Input type="checkbox"
+               id="memory_mapped"
+               name="memory_mapped"
+               label="Keep data in a memory-mapped file"
+               checked={config.memory_mapped}
+               onChange={this.props.handleFormEvent}
+               help="Enable for large CSV files. The data is stored in a file in the Graylog data directory instead of the heap."
+               wrapperClassName="col-md-offset-3 col-md-9" />
       </fieldset>
     );
   }
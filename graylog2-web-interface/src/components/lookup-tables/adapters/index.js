@@ -17,6 +17,9 @@
 import { PluginManifest, PluginStore } from 'graylog-web-plugin/plugin';
 
 import {} from 'components/maps/adapter';
+import CIDRRangeAdapterFieldSet from './CIDRRangeAdapterFieldSet';
+import CIDRRangeAdapterSummary from './CIDRRangeAdapterSummary';
+import CIDRRangeAdapterDocumentation from './CIDRRangeAdapterDocumentation';
 import CSVFileAdapterFieldSet from './CSVFileAdapterFieldSet';
 import CSVFileAdapterSummary from './CSVFileAdapterSummary';
 import CSVFileAdapterDocumentation from './CSVFileAdapterDocumentation';
@@ -39,6 +42,13 @@ PluginStore.register(new PluginManifest({}, {
       summaryComponent: CSVFileAdapterSummary,
       documentationComponent: CSVFileAdapterDocumentation,
     },
+    {
+      type: 'cidrrange',
+      displayName: 'CIDR / IP Range from CSV File',
+      formComponent: CIDRRangeAdapterFieldSet,
+      summaryComponent: CIDRRangeAdapterSummary,
+      documentationComponent: CIDRRangeAdapterDocumentation,
+    },
     {
       type: 'dnslookup',
       displayName: 'DNS Lookup',